@@ -0,0 +1,108 @@
+package fi.nls.oskari.benchmark;
+
+import fi.nls.oskari.util.JSONHelper;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the vendored org.json library. The document resembles a GetMapLayers response
+ * with the given amount of layers.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar JSONBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JSONBenchmark {
+
+    @Param({"10", "1000"})
+    public int layers;
+
+    private JSONObject json;
+    private String text;
+
+    @Setup
+    public void setup() throws JSONException {
+        json = createLayerList(layers);
+        text = json.toString();
+    }
+
+    @Benchmark
+    public JSONObject parse() throws JSONException {
+        return new JSONObject(text);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return json.toString();
+    }
+
+    @Benchmark
+    public StringWriter write() throws JSONException {
+        final StringWriter writer = new StringWriter(text.length());
+        json.write(writer);
+        return writer;
+    }
+
+    @Benchmark
+    public JSONObject copy() {
+        return JSONHelper.copy(json);
+    }
+
+    @Benchmark
+    public JSONObject copyBySerializing() throws JSONException {
+        // the way JSON was copied before JSONHelper.copy()
+        return new JSONObject(json.toString());
+    }
+
+    private static JSONObject createLayerList(final int count) throws JSONException {
+        final JSONArray list = new JSONArray();
+        for (int i = 0; i < count; ++i) {
+            final JSONObject layer = new JSONObject();
+            layer.put("id", i);
+            layer.put("type", "wmslayer");
+            layer.put("name", "Layer \"" + i + "\" with a longer name");
+            layer.put("url", "https://example.com/geoserver/wms?layer=" + i);
+            layer.put("opacity", 100);
+            layer.put("minScale", 5669294.4);
+            layer.put("maxScale", 1.0);
+            layer.put("isQueryable", i % 2 == 0);
+
+            final JSONObject locale = new JSONObject();
+            for (String lang : new String[]{"fi", "sv", "en"}) {
+                final JSONObject name = new JSONObject();
+                name.put("name", "Taso " + i + " (" + lang + ")");
+                name.put("subtitle", "");
+                locale.put(lang, name);
+            }
+            layer.put("locale", locale);
+
+            final JSONArray styles = new JSONArray();
+            for (int s = 0; s < 3; ++s) {
+                final JSONObject style = new JSONObject();
+                style.put("name", "style" + s);
+                style.put("title", "Style " + s);
+                style.put("legend", "https://example.com/legend?style=" + s);
+                styles.put(style);
+            }
+            layer.put("styles", styles);
+
+            final JSONObject permissions = new JSONObject();
+            permissions.put("publish", "publication_permission_ok");
+            permissions.put("download", "download_permission_ok");
+            layer.put("permissions", permissions);
+            list.put(layer);
+        }
+        final JSONObject result = new JSONObject();
+        result.put("layers", list);
+        return result;
+    }
+}
@@ -0,0 +1,5 @@
+-- HTTP validators of the capabilities response and a hash of the data
+-- so unchanged capabilities aren't downloaded or parsed again on refresh
+ALTER TABLE oskari_capabilities_cache ADD COLUMN etag text;
+ALTER TABLE oskari_capabilities_cache ADD COLUMN last_modified text;
+ALTER TABLE oskari_capabilities_cache ADD COLUMN data_hash CHARACTER VARYING(64);
@@ -12,6 +12,7 @@ import fi.nls.oskari.annotation.OskariActionRoute;
 import fi.nls.oskari.control.*;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.ResponseHelper;
 import org.json.JSONObject;
@@ -68,6 +69,14 @@ public class MetricsHandler extends RestActionHandler {
         } catch (Exception e) {
             LOG.error(e, "Error writing thread state metrics");
         }
+        try {
+            // outgoing requests made with IOHelper.getURL()
+            StringWriter w = new StringWriter();
+            writer.writeValue(w, IOHelper.getMetrics());
+            JSONHelper.putValue(metricsJSON, "http", JSONHelper.createJSONObject(w.toString()));
+        } catch (Exception e) {
+            LOG.error(e, "Error writing http metrics");
+        }
 
         ResponseHelper.writeResponse(params, metricsJSON);
     }
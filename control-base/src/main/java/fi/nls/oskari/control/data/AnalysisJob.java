@@ -0,0 +1,116 @@
+package fi.nls.oskari.control.data;
+
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.worker.AbstractJob;
+import org.json.JSONObject;
+
+import java.util.UUID;
+
+/**
+ * Analysis executed in the background by AnalysisJobQueue. The job status is kept in Redis so
+ * the client can poll it from any node with the GetAnalysisJobStatus action route.
+ */
+public abstract class AnalysisJob extends AbstractJob<JSONObject> {
+
+    public static final String STATUS_QUEUED = "queued";
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_DONE = "done";
+    public static final String STATUS_ERROR = "error";
+
+    public static final String STAGE_WPS = "wps";
+    public static final String STAGE_STORE = "store";
+
+    public static final String KEY_ID = "jobId";
+    public static final String KEY_STATUS = "status";
+    public static final String KEY_STAGE = "stage";
+    public static final String KEY_RESULT = "result";
+    public static final String KEY_ERROR = "error";
+    static final String KEY_USER = "user";
+
+    private static final String CACHE_KEY_PREFIX = "oskari_analysis_job:";
+    // results are available for polling an hour after the job has finished
+    private static final int STATUS_EXPIRY_SECONDS = 60 * 60;
+
+    private final String id = UUID.randomUUID().toString();
+    private final String userUuid;
+    private volatile String status = STATUS_QUEUED;
+    private volatile String stage;
+
+    public AnalysisJob(final String userUuid) {
+        this.userUuid = userUuid;
+    }
+
+    /**
+     * Executes the analysis.
+     * @return response for the client
+     */
+    protected abstract JSONObject process() throws ActionException;
+
+    public String getKey() {
+        return id;
+    }
+
+    public String getUserUuid() {
+        return userUuid;
+    }
+
+    public JSONObject run() throws Exception {
+        status = STATUS_RUNNING;
+        save(null, null);
+        return process();
+    }
+
+    public void setStage(final String stage) {
+        this.stage = stage;
+        save(null, null);
+    }
+
+    void queued() {
+        save(null, null);
+    }
+
+    void done(final JSONObject result) {
+        status = STATUS_DONE;
+        save(result, null);
+    }
+
+    void failed(final String error) {
+        status = STATUS_ERROR;
+        save(null, error);
+    }
+
+    /**
+     * @return current status of the job for the client
+     */
+    public JSONObject getStatusJSON() {
+        final JSONObject json = new JSONObject();
+        JSONHelper.putValue(json, KEY_ID, id);
+        JSONHelper.putValue(json, KEY_STATUS, status);
+        if (stage != null) {
+            JSONHelper.putValue(json, KEY_STAGE, stage);
+        }
+        return json;
+    }
+
+    private void save(final JSONObject result, final String error) {
+        final JSONObject json = getStatusJSON();
+        JSONHelper.putValue(json, KEY_USER, userUuid);
+        if (result != null) {
+            JSONHelper.putValue(json, KEY_RESULT, result);
+        }
+        if (error != null) {
+            JSONHelper.putValue(json, KEY_ERROR, error);
+        }
+        JedisManager.setex(CACHE_KEY_PREFIX + id, STATUS_EXPIRY_SECONDS, json.toString());
+    }
+
+    /**
+     * @param id job id
+     * @return saved status of the job or null if not found
+     */
+    public static JSONObject getStatus(final String id) {
+        return JSONHelper.createJSONObject(JedisManager.get(CACHE_KEY_PREFIX + id));
+    }
+}
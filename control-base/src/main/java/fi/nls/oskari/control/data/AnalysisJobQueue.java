@@ -0,0 +1,131 @@
+package fi.nls.oskari.control.data;
+
+import fi.nls.oskari.control.ActionParamsException;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+import fi.nls.oskari.worker.Job;
+import fi.nls.oskari.worker.JobQueue;
+import org.json.JSONObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worker pool for analyses run in the background so long running analyses don't tie up
+ * request threads. The amount of workers, queued jobs and jobs per user can be configured
+ * in oskari-ext.properties:
+ *  analysis.jobs.workers=2
+ *  analysis.jobs.queue.max=50
+ *  analysis.jobs.user.max=2
+ */
+public class AnalysisJobQueue extends JobQueue {
+
+    private static final Logger log = LogFactory.getLogger(AnalysisJobQueue.class);
+
+    private static final String ERROR_QUEUE_FULL = "Analysis_queue_full";
+    private static final String ERROR_TOO_MANY_USER_JOBS = "Too_many_analysis_jobs";
+
+    private final int maxQueueSize;
+    private final int maxUserJobs;
+    // queued and running jobs by user uuid
+    private final ConcurrentMap<String, AtomicInteger> userJobs = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private static class QueueHolder {
+        // workers are started on first use
+        static final AnalysisJobQueue INSTANCE = new AnalysisJobQueue(
+                PropertyUtil.getOptional("analysis.jobs.workers", 2),
+                PropertyUtil.getOptional("analysis.jobs.queue.max", 50),
+                PropertyUtil.getOptional("analysis.jobs.user.max", 2));
+    }
+
+    public static AnalysisJobQueue getInstance() {
+        return QueueHolder.INSTANCE;
+    }
+
+    public AnalysisJobQueue(int nWorkers, int maxQueueSize, int maxUserJobs) {
+        super(nWorkers);
+        this.maxQueueSize = maxQueueSize;
+        this.maxUserJobs = maxUserJobs;
+    }
+
+    /**
+     * Queues the job for execution.
+     * @throws ActionParamsException if the queue is full or the user already has too many jobs
+     */
+    public void submit(final AnalysisJob job) throws ActionParamsException {
+        if (getQueueSize() >= maxQueueSize) {
+            throw new ActionParamsException(ERROR_QUEUE_FULL);
+        }
+        reserve(job.getUserUuid());
+        job.queued();
+        add(job);
+        log.debug("Queued analysis job", job.getKey(), "for user", job.getUserUuid());
+    }
+
+    @Override
+    public void onJobSuccess(final Job job, final Object value) {
+        if (!(job instanceof AnalysisJob)) {
+            return;
+        }
+        final AnalysisJob analysisJob = (AnalysisJob) job;
+        analysisJob.done((JSONObject) value);
+        release(analysisJob);
+    }
+
+    @Override
+    public void onJobFailed(final Job job, final Throwable value) {
+        super.onJobFailed(job, value);
+        if (!(job instanceof AnalysisJob)) {
+            return;
+        }
+        final AnalysisJob analysisJob = (AnalysisJob) job;
+        analysisJob.failed(value != null ? value.getMessage() : null);
+        release(analysisJob);
+    }
+
+    /**
+     * Counts a job for the user.
+     * @throws ActionParamsException if the user already has too many jobs
+     */
+    private void reserve(final String userUuid) throws ActionParamsException {
+        while (true) {
+            final AtomicInteger count = userJobs.get(userUuid);
+            if (count == null) {
+                if (userJobs.putIfAbsent(userUuid, new AtomicInteger(1)) == null) {
+                    return;
+                }
+                continue;
+            }
+            final int current = count.get();
+            if (current == 0) {
+                // the last job was just released, the counter is being removed
+                userJobs.remove(userUuid, count);
+                continue;
+            }
+            if (current >= maxUserJobs) {
+                throw new ActionParamsException(ERROR_TOO_MANY_USER_JOBS);
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                return;
+            }
+        }
+    }
+
+    private void release(final AnalysisJob job) {
+        final AtomicInteger count = userJobs.get(job.getUserUuid());
+        if (count != null && count.decrementAndGet() == 0) {
+            // a counter that has reached zero is never incremented again
+            userJobs.remove(job.getUserUuid(), count);
+        }
+    }
+
+    /**
+     * @return amount of queued and running jobs of the user
+     */
+    int getJobCount(final String userUuid) {
+        final AtomicInteger count = userJobs.get(userUuid);
+        return count != null ? count.get() : 0;
+    }
+}
@@ -53,6 +53,7 @@ public class CreateAnalysisLayerHandler extends ActionHandler {
     private static final String PARAM_FILTER1 = "filter1";
     private static final String PARAM_FILTER2 = "filter2";
     private static final String PARAM_SAVE_BLN = "saveAnalyse";
+    private static final String PARAM_ASYNC = "async";
     private static final String JSONFORMAT = "application/json";
 
     private static final String PARAMS_PROXY = "action_route=GetProxyRequest&serviceId=wfsquery&wfs_layer_id=";
@@ -93,7 +94,7 @@ public class CreateAnalysisLayerHandler extends ActionHandler {
         }
 
         final String analyse = params.getRequiredParam(PARAM_ANALYSE, ERROR_ANALYSE_PARAMETER_MISSING);
-        JSONObject analyseJson = JSONHelper.createJSONObject(analyse);
+        final JSONObject analyseJson = JSONHelper.createJSONObject(analyse);
         if (analyseJson == null) {
             // json corrupted/parsing failed
             throw new ActionParamsException(ERROR_ANALYSE_PARAMETER_MISSING);
@@ -106,18 +107,49 @@ public class CreateAnalysisLayerHandler extends ActionHandler {
         // Get baseProxyUrl
         final String baseUrl = getBaseProxyUrl(params);
 
+        final User user = params.getUser();
+        final boolean save = params.getHttpParam(PARAM_SAVE_BLN, true);
+
+        if (params.getHttpParam(PARAM_ASYNC, false)) {
+            // run in the background, client polls the result with GetAnalysisJobStatus
+            final AnalysisJob job = new AnalysisJob(user.getUuid()) {
+                protected JSONObject process() throws ActionException {
+                    return createAnalysis(analyse, analyseJson, filter1, filter2, baseUrl, user, save, this);
+                }
+            };
+            AnalysisJobQueue.getInstance().submit(job);
+            ResponseHelper.writeResponse(params, job.getStatusJSON());
+            return;
+        }
+        ResponseHelper.writeResponse(params,
+                createAnalysis(analyse, analyseJson, filter1, filter2, baseUrl, user, save, null));
+    }
+
+    /**
+     * Executes the analysis and stores the results.
+     *
+     * @param job job for reporting progress when run in the background, null otherwise
+     * @return response for the client
+     */
+    private JSONObject createAnalysis(final String analyse, final JSONObject analyseJson,
+                                      final String filter1, final String filter2, final String baseUrl,
+                                      final User user, final boolean save, final AnalysisJob job)
+            throws ActionException {
+
         // User
-        String uuid = params.getUser().getUuid();
+        String uuid = user.getUuid();
         // note! analysisLayer is replaced in aggregate handling!!
         AnalysisLayer analysisLayer = getAnalysisLayer(analyseJson, filter1, filter2, baseUrl, uuid);
         Analysis analysis = null;
 
         if (analysisLayer.getMethod().equals(AnalysisParser.LAYER_UNION)) {
             // no WPS for merge analysis
+            setProgress(job, AnalysisJob.STAGE_STORE);
             analysis = analysisDataService.mergeAnalysisData(
-                    analysisLayer, analyse, params.getUser());
+                    analysisLayer, analyse, user);
         } else {
             // Generate WPS XML
+            setProgress(job, AnalysisJob.STAGE_WPS);
             String featureSet = executeWPSprocess(analysisLayer);
             if (analysisLayer.getMethod().equals(AnalysisParser.UNION)
                     || analysisLayer.getMethod().equals(AnalysisParser.INTERSECT)
@@ -141,7 +173,7 @@ public class CreateAnalysisLayerHandler extends ActionHandler {
                 // Get geometry for aggretage features
                 try {
                     // Just return result as JSON and don't save analysis to DB
-                    if (!params.getHttpParam(PARAM_SAVE_BLN, true)) {
+                    if (!save) {
                         // NOTE!! Replacing the analysisLayer content for executing wps union method!
                         // Get response as geojson when no db store
                         analysisLayer = getAggregateLayer(analyse, filter1, filter2, baseUrl, analysisLayer, JSONFORMAT);
@@ -156,8 +188,7 @@ public class CreateAnalysisLayerHandler extends ActionHandler {
                         JSONObject results = new JSONObject();
                         JSONHelper.putValue(results, JSON_KEY_GEOJSON, geojson);
                         JSONHelper.putValue(results, JSON_KEY_AGGREGATE_RESULT,jsaggreOrdered);
-                        ResponseHelper.writeResponse(params, results);
-                        return;
+                        return results;
                     }
                     // NOTE!! Replacing the analysisLayer!  - response is gml
                     analysisLayer = getAggregateLayer(analyse, filter1, filter2, baseUrl, analysisLayer, null);
@@ -179,13 +210,13 @@ public class CreateAnalysisLayerHandler extends ActionHandler {
             // Fix property names for WFST (property names might be renamed in Wps method )
             featureSet = fixPropertyNames(featureSet, analysisLayer);
 
+            setProgress(job, AnalysisJob.STAGE_STORE);
             analysis = analysisDataService.storeAnalysisData(
-                    featureSet, analysisLayer, analyse, params.getUser());
+                    featureSet, analysisLayer, analyse, user);
         }
 
         if (analysis == null) {
-            this.MyError(ERROR_UNABLE_TO_STORE_ANALYSIS_DATA, params, null);
-            return;
+            return this.MyError(ERROR_UNABLE_TO_STORE_ANALYSIS_DATA, null);
         }
 
         analysisLayer.setWpsLayerId(analysis.getId()); // aka. analysis_id
@@ -195,7 +226,7 @@ public class CreateAnalysisLayerHandler extends ActionHandler {
 
         // copy permissions from source layer to new analysis
         final Resource sourceResource =
-                getSourcePermission(analysisParser.getSourceLayerId(analyseJson), params.getUser());
+                getSourcePermission(analysisParser.getSourceLayerId(analyseJson), user);
         if(sourceResource != null) {
             final Resource analysisResource = new Resource();
             analysisResource.setType(AnalysisLayer.TYPE);
@@ -230,10 +261,10 @@ public class CreateAnalysisLayerHandler extends ActionHandler {
         Set<String> downloadPermissionsList = permissionsService.getDownloadPermissions(AnalysisLayer.TYPE);
         Set<String> editAccessList = null;
         String permissionKey = "analysis+" + analysis.getId();
-        JSONObject permissions = OskariLayerWorker.getPermissions(params.getUser(), permissionKey, permissionsList, downloadPermissionsList, editAccessList);
+        JSONObject permissions = OskariLayerWorker.getPermissions(user, permissionKey, permissionsList, downloadPermissionsList, editAccessList);
         JSONHelper.putValue(analysisLayerJSON, "permissions", permissions);
 
-        ResponseHelper.writeResponse(params, analysisLayerJSON);
+        return analysisLayerJSON;
     }
 
     private AnalysisLayer getAggregateLayer(String analyse, String filter1, String filter2,
@@ -343,13 +374,19 @@ public class CreateAnalysisLayerHandler extends ActionHandler {
     /**
      * Break analyse and inform error to client
      */
-    private void MyError(String mes, ActionParameters params, Object ee) {
+    private JSONObject MyError(String mes, Object ee) {
 
         JSONObject errorResponse = new JSONObject();
 
         log.error(mes.replace("_", " "), ee);
         JSONHelper.putValue(errorResponse, "error", mes);
-        ResponseHelper.writeResponse(params, errorResponse);
+        return errorResponse;
+    }
+
+    private void setProgress(final AnalysisJob job, final String stage) {
+        if (job != null) {
+            job.setStage(stage);
+        }
     }
 
     /**
@@ -0,0 +1,37 @@
+package fi.nls.oskari.control.data;
+
+import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.control.ActionDeniedException;
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.control.ActionHandler;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.control.ActionParamsException;
+import fi.nls.oskari.util.ResponseHelper;
+import org.json.JSONObject;
+
+/**
+ * Returns the status of an analysis started with CreateAnalysisLayer and async=true.
+ * When the status is "done" the response has the same content as a synchronous
+ * CreateAnalysisLayer request under "result".
+ */
+@OskariActionRoute("GetAnalysisJobStatus")
+public class GetAnalysisJobStatusHandler extends ActionHandler {
+
+    private static final String PARAM_ID = "id";
+
+    @Override
+    public void handleAction(ActionParameters params) throws ActionException {
+        params.requireLoggedInUser();
+        final String id = params.getRequiredParam(PARAM_ID);
+
+        final JSONObject status = AnalysisJob.getStatus(id);
+        if (status == null) {
+            throw new ActionParamsException("Analysis job not found: " + id);
+        }
+        if (!params.getUser().getUuid().equals(status.optString(AnalysisJob.KEY_USER))) {
+            throw new ActionDeniedException("Analysis job belongs to another user");
+        }
+        status.remove(AnalysisJob.KEY_USER);
+        ResponseHelper.writeResponse(params, status);
+    }
+}
@@ -15,10 +15,30 @@ import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.map.layer.OskariLayerServiceIbatisImpl;
 import fi.nls.oskari.map.myplaces.service.GeoServerProxyService;
 import fi.nls.oskari.util.ConversionHelper;
+import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.util.ResponseHelper;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import static fi.nls.oskari.control.ActionConstants.*;
 
 @OskariActionRoute("GetFeatureInfoWMS")
@@ -40,6 +60,41 @@ public class GetGeoPointDataHandler extends ActionHandler {
     private static final String PARAM_ZOOM = "zoom";
     private static final String PARAM_GEOJSON = "geojson";
 
+    private ExecutorService executor;
+    private long timeout;
+    private int maxRequestsPerHost;
+    // limits concurrent GFI requests to a single service
+    private final ConcurrentMap<String, Semaphore> hostLimits = new ConcurrentHashMap<String, Semaphore>();
+
+    /**
+     * GFI requests for the layers are made concurrently. Configurable with:
+     *  actionhandler.GetFeatureInfoWMS.threads=20
+     *  actionhandler.GetFeatureInfoWMS.host.max=4
+     *  actionhandler.GetFeatureInfoWMS.timeout=15000 (ms for all the layers)
+     */
+    @Override
+    public void init() {
+        super.init();
+        final int threads = PropertyUtil.getOptional("actionhandler.GetFeatureInfoWMS.threads", 20);
+        maxRequestsPerHost = PropertyUtil.getOptional("actionhandler.GetFeatureInfoWMS.host.max", 4);
+        timeout = PropertyUtil.getOptional("actionhandler.GetFeatureInfoWMS.timeout", 15000);
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "GetFeatureInfoWMS");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void teardown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        super.teardown();
+    }
+
 	@Override
     public void handleAction(final ActionParameters params) throws ActionException {
 	     
@@ -62,14 +117,36 @@ public class GetGeoPointDataHandler extends ActionHandler {
             log.warn("Couldn't parse geojson from POST request", ee);
         }
 
-		for (String id : layerIdsArr) {
+        // load all the layers with one query
+        final List<String> dbLayerIds = new ArrayList<String>();
+        for (String id : layerIdsArr) {
+            if (id.indexOf('_') < 0 && ConversionHelper.getInt(id, -1) != -1) {
+                dbLayerIds.add(id);
+            }
+        }
+        final Map<Integer, OskariLayer> layers = new HashMap<Integer, OskariLayer>();
+        if (!dbLayerIds.isEmpty()) {
+            for (OskariLayer layer : mapLayerService.find(dbLayerIds, null)) {
+                layers.put(layer.getId(), layer);
+                // sublayers are listed under their parent if both were found
+                for (OskariLayer sublayer : layer.getSublayers()) {
+                    layers.put(sublayer.getId(), sublayer);
+                }
+            }
+        }
+
+        // requests are started in the requested layer order and the responses are merged in the same order
+        final long deadline = System.currentTimeMillis() + timeout;
+        final List<Future<JSONObject>> responses = new ArrayList<Future<JSONObject>>();
+		for (final String id : layerIdsArr) {
 			if (id.indexOf('_') >= 0) {
 			    if (id.startsWith("myplaces_")) {
 			        // Myplaces wfs query modifier
-                    final JSONObject response = myplacesService.getFeatureInfo(lat, lon, zoom, id, user.getUuid());
-                    if(response != null) {
-                        data.put(response);
-                    }
+                    responses.add(submit("myplaces", deadline, new Callable<JSONObject>() {
+                        public JSONObject call() {
+                            return myplacesService.getFeatureInfo(lat, lon, zoom, id, user.getUuid());
+                        }
+                    }));
 			    }
 			    continue;
 			}
@@ -80,7 +157,11 @@ public class GetGeoPointDataHandler extends ActionHandler {
                 continue;
 			}
 
-			final OskariLayer layer = mapLayerService.find(layerId);
+			final OskariLayer layer = layers.get(layerId);
+			if(layer == null) {
+                log.warn("Layer not found", id);
+                continue;
+			}
 			final String layerType = layer.getType();
 
 			if (OskariLayer.TYPE_WMS.equals(layerType)) {
@@ -96,12 +177,12 @@ public class GetGeoPointDataHandler extends ActionHandler {
 			    gfiParams.setY(params.getHttpParam(PARAM_Y));
 			    gfiParams.setZoom(zoom);
                 gfiParams.setSRSName(params.getHttpParam(PARAM_SRS, "EPSG:3067"));
-			    
-			    final JSONObject response = geoPointService.getWMSFeatureInfo(gfiParams);
-                if(response != null) {
-                    data.put(response);
-                }
-				continue;
+
+                responses.add(submit(getHost(layer), deadline, new Callable<JSONObject>() {
+                    public JSONObject call() {
+                        return geoPointService.getWMSFeatureInfo(gfiParams);
+                    }
+                }));
 			} else if (OskariLayer.TYPE_ARCGIS93.equals(layerType)) {
 				final GFIRestQueryParams gfiParams = new GFIRestQueryParams();
 
@@ -112,14 +193,32 @@ public class GetGeoPointDataHandler extends ActionHandler {
 
 				gfiParams.setSRSName(params.getHttpParam(PARAM_SRS, "3067"));
 
-				final JSONObject response = geoPointService.getRESTFeatureInfo(gfiParams);
-				if(response != null) {
-					data.put(response);
-				}
-				continue;
+                responses.add(submit(getHost(layer), deadline, new Callable<JSONObject>() {
+                    public JSONObject call() {
+                        return geoPointService.getRESTFeatureInfo(gfiParams);
+                    }
+                }));
 			}
 		}
 
+        for (Future<JSONObject> future : responses) {
+            try {
+                final JSONObject response = future.get(
+                        Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if(response != null) {
+                    data.put(response);
+                }
+            } catch (TimeoutException e) {
+                log.warn("GFI request didn't complete in", timeout, "ms");
+                future.cancel(true);
+            } catch (ExecutionException e) {
+                log.warn(e.getCause(), "GFI request failed");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ActionException("Interrupted while waiting for GFI responses", e);
+            }
+        }
+
 		try {
 	        final JSONObject rootJson = new JSONObject();
             rootJson.put("data", data);
@@ -129,4 +228,45 @@ public class GetGeoPointDataHandler extends ActionHandler {
 		    throw new ActionException("Could not populate GFI JSON: " + log.getAsString(data), je);
 		}
 	}
+
+    /**
+     * Runs the GFI request in the worker pool. The request waits for a free slot for the host until
+     * the deadline and returns null if it doesn't get one.
+     */
+    private Future<JSONObject> submit(final String host, final long deadline, final Callable<JSONObject> request) {
+        Semaphore limit = hostLimits.get(host);
+        if (limit == null) {
+            final Semaphore newLimit = new Semaphore(maxRequestsPerHost);
+            limit = hostLimits.putIfAbsent(host, newLimit);
+            if (limit == null) {
+                limit = newLimit;
+            }
+        }
+        final Semaphore hostLimit = limit;
+        return executor.submit(new Callable<JSONObject>() {
+            public JSONObject call() throws Exception {
+                if (!hostLimit.tryAcquire(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) {
+                    log.warn("Too many concurrent GFI requests to", host);
+                    return null;
+                }
+                try {
+                    return request.call();
+                } finally {
+                    hostLimit.release();
+                }
+            }
+        });
+    }
+
+    private String getHost(final OskariLayer layer) {
+        final String url = layer.getUrl();
+        if (url == null) {
+            return "";
+        }
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
 }
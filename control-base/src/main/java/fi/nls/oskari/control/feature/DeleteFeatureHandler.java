@@ -1,6 +1,5 @@
 package fi.nls.oskari.control.feature;
 
-import java.util.Set;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
@@ -20,6 +19,7 @@ import fi.mml.portti.domain.permissions.Permissions;
 import fi.mml.portti.service.db.permissions.PermissionsService;
 import fi.mml.portti.service.db.permissions.PermissionsServiceIbatisImpl;
 import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.cache.CacheTags;
 import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionHandler;
@@ -94,12 +94,8 @@ public class DeleteFeatureHandler extends ActionHandler {
 	
 	private void ClearLayerTiles(int layerId)
 	{
-		Set<String> keys = JedisManager.keys(KEY + Integer.toString(layerId));
-		
-		for(String key : keys)
-		{
-			JedisManager.delAll(key);
-		}
+		// old tiles are no longer referenced, they are removed by CacheSweeper
+		CacheTags.invalidate(KEY + Integer.toString(layerId), JedisManager.EXPIRY_TIME_DAY);
 	}
 }
 
@@ -2,7 +2,6 @@ package fi.nls.oskari.control.feature;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.Set;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -34,6 +33,7 @@ import fi.mml.portti.domain.permissions.Permissions;
 import fi.mml.portti.service.db.permissions.PermissionsService;
 import fi.mml.portti.service.db.permissions.PermissionsServiceIbatisImpl;
 import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.cache.CacheTags;
 import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionHandler;
@@ -245,12 +245,8 @@ public class InsertFeatureHandler extends ActionHandler {
 	
 	private void ClearLayerTiles(int layerId)
 	{
-		Set<String> keys = JedisManager.keys(KEY + Integer.toString(layerId));
-		
-		for(String key : keys)
-		{
-			JedisManager.del(key);
-		}
+		// old tiles are no longer referenced, they are removed by CacheSweeper
+		CacheTags.invalidate(KEY + Integer.toString(layerId), JedisManager.EXPIRY_TIME_DAY);
 	}
 }
 
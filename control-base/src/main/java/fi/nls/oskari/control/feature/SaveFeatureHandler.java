@@ -1,7 +1,6 @@
 package fi.nls.oskari.control.feature;
 
 import java.io.IOException;
-import java.util.Set;
 
 import fi.nls.oskari.util.JSONHelper;
 import org.apache.http.HttpEntity;
@@ -25,6 +24,7 @@ import fi.mml.portti.domain.permissions.Permissions;
 import fi.mml.portti.service.db.permissions.PermissionsService;
 import fi.mml.portti.service.db.permissions.PermissionsServiceIbatisImpl;
 import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.cache.CacheTags;
 import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionHandler;
@@ -205,12 +205,8 @@ public class SaveFeatureHandler extends ActionHandler {
 
 	private void ClearLayerTiles(int layerId)
 	{
-		Set<String> keys = JedisManager.keys(KEY + Integer.toString(layerId));
-		
-		for(String key : keys)
-		{
-			JedisManager.del(key);
-		}
+		// old tiles are no longer referenced, they are removed by CacheSweeper
+		CacheTags.invalidate(KEY + Integer.toString(layerId), JedisManager.EXPIRY_TIME_DAY);
 	}
 }
 
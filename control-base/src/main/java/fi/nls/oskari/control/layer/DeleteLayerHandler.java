@@ -3,6 +3,7 @@ package fi.nls.oskari.control.layer;
 import fi.mml.portti.service.db.permissions.PermissionsService;
 import fi.mml.portti.service.db.permissions.PermissionsServiceIbatisImpl;
 import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.cache.CacheTags;
 import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.*;
 import fi.nls.oskari.domain.map.OskariLayer;
@@ -47,8 +48,8 @@ public class DeleteLayerHandler extends ActionHandler {
             {
                 wfsLayerService.delete(layer.getId());
                 //final String key[] = {WFSLayerConfiguration.KEY + Integer.toString(layer.getId())};
-                JedisManager.delAll(WFSLayerConfiguration.KEY + Integer.toString(layer.getId()));
-                JedisManager.delAll(WFSLayerConfiguration.IMAGE_KEY + Integer.toString(layer.getId()));
+                WFSLayerConfiguration.invalidate(Integer.toString(layer.getId()));
+                CacheTags.invalidate(WFSLayerConfiguration.IMAGE_KEY + Integer.toString(layer.getId()), JedisManager.EXPIRY_TIME_DAY);
             }
         } catch (Exception e) {
             throw new ActionException("Couldn't delete map layer - id:" + layer.getId(), e);
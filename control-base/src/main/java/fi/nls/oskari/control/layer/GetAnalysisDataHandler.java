@@ -14,9 +14,11 @@ import fi.nls.oskari.map.analysis.service.AnalysisDbService;
 import fi.nls.oskari.map.analysis.service.AnalysisDbServiceIbatisImpl;
 import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.JSONResponseGenerator;
 import fi.nls.oskari.util.ResponseHelper;
-import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -51,22 +53,30 @@ public class GetAnalysisDataHandler extends ActionHandler {
         final Analysis analysis = analysisService.getAnalysisById(id);
         final String select_items = AnalysisHelper.getAnalysisSelectItems(analysis);
 
-        final JSONObject response = new JSONObject();
-        if (select_items != null) {
-
-            final List<HashMap<String, Object>> list = analysisService.getAnalysisDataByIdUid(id, user.getUuid(), select_items);
-            final JSONArray rows = new JSONArray();
-            for (HashMap<String, Object> analysisData : list) {
-                final JSONObject row = convertToOldResultJSON(analysisData, select_items);
-                if (row != null) {
-                    rows.put(row);
+        final List<HashMap<String, Object>> list = (select_items == null) ? null :
+                analysisService.getAnalysisDataByIdUid(id, user.getUuid(), select_items);
+        try {
+            // rows are written as soon as they are converted
+            ResponseHelper.writeResponse(params, new JSONResponseGenerator() {
+                public void generate(JSONWriter writer) throws JSONException {
+                    writer.object();
+                    if (list != null) {
+                        writer.key(JSKEY_ANALYSISDATA).array();
+                        for (HashMap<String, Object> analysisData : list) {
+                            final JSONObject row = convertToOldResultJSON(analysisData, select_items);
+                            if (row != null) {
+                                writer.value(row);
+                            }
+                        }
+                        writer.endArray();
+                        writer.key(ANALYSE_ID).value(id);
+                    }
+                    writer.endObject();
                 }
-            }
-            JSONHelper.putValue(response, JSKEY_ANALYSISDATA, rows);
-            JSONHelper.putValue(response, ANALYSE_ID, id);
+            });
+        } catch (JSONException e) {
+            throw new ActionException("Error writing analysis data", e);
         }
-
-        ResponseHelper.writeResponse(params, response);
     }
 
     /**
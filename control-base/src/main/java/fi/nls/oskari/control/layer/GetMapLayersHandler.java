@@ -5,11 +5,13 @@ import fi.nls.oskari.annotation.OskariActionRoute;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionHandler;
 import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.domain.User;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.JSONResponseGenerator;
 import fi.nls.oskari.util.ResponseHelper;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.json.JSONException;
+import org.json.JSONWriter;
 
 import static fi.nls.oskari.control.ActionConstants.*;
 
@@ -27,14 +29,20 @@ public class GetMapLayersHandler extends ActionHandler {
         final String lang = params.getHttpParam(PARAM_LANGUAGE, params.getLocale().getLanguage());
         final boolean isSecure = params.getHttpParam(PARAM_SECURE, params.getRequest().isSecure());
 
+        final User user = params.getUser();
+        final String crs = params.getHttpParam(PARAM_SRS);
+
         log.debug("Getting layers");
-        final JSONObject layers = OskariLayerWorker.getListOfAllMapLayers(params.getUser(), lang, params.getHttpParam(PARAM_SRS), isSecure);
-        JSONArray list = layers.optJSONArray(OskariLayerWorker.KEY_LAYERS);
-        // transform WKT for layers now that we know SRS
-        for(int i = 0; i < list.length(); ++i) {
-            OskariLayerWorker.transformWKTGeom(list.optJSONObject(i), params.getHttpParam(PARAM_SRS));
+        try {
+            // layers are written one by one, WKT is transformed now that we know SRS
+            ResponseHelper.writeResponse(params, new JSONResponseGenerator() {
+                public void generate(JSONWriter writer) throws JSONException {
+                    OskariLayerWorker.writeListOfAllMapLayers(writer, user, lang, crs, isSecure);
+                }
+            });
+        } catch (JSONException e) {
+            throw new ActionException("Error writing layers", e);
         }
         log.debug("Got layers");
-        ResponseHelper.writeResponse(params, layers);
     }
 }
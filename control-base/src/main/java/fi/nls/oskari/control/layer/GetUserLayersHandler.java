@@ -14,10 +14,13 @@ import fi.nls.oskari.map.userlayer.service.UserLayerDataService;
 import fi.nls.oskari.map.userlayer.service.UserLayerDbService;
 import fi.nls.oskari.map.userlayer.service.UserLayerDbServiceIbatisImpl;
 import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.JSONResponseGenerator;
 import fi.nls.oskari.util.ResponseHelper;
-import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -36,23 +39,33 @@ public class GetUserLayersHandler extends ActionHandler {
     @Override
     public void handleAction(ActionParameters params) throws ActionException {
 
-        final JSONObject response = new JSONObject();
-        final JSONArray layers = new JSONArray();
-        JSONHelper.putValue(response, JSKEY_USERLAYERS, layers);
-
         final User user = params.getUser();
-        if (!user.isGuest()) {
-            final List<UserLayer> list = userLayerService.getUserLayerByUid(user.getUuid());
-            final OskariLayer baseLayer = userLayerDataService.getBaseLayer();
-            for (UserLayer ul : list) {
-                // Parse userlayer data to userlayer
-                final JSONObject userLayer = userLayerDataService.parseUserLayer2JSON(ul, baseLayer);
-                JSONObject permissions = OskariLayerWorker.getAllowedPermissions();
-                JSONHelper.putValue(userLayer, "permissions", permissions);
-                layers.put(userLayer);
-            }
+        final List<UserLayer> list;
+        final OskariLayer baseLayer;
+        if (user.isGuest()) {
+            list = Collections.emptyList();
+            baseLayer = null;
+        } else {
+            list = userLayerService.getUserLayerByUid(user.getUuid());
+            baseLayer = userLayerDataService.getBaseLayer();
+        }
+        try {
+            // layers are written as soon as they are parsed
+            ResponseHelper.writeResponse(params, new JSONResponseGenerator() {
+                public void generate(JSONWriter writer) throws JSONException {
+                    writer.object().key(JSKEY_USERLAYERS).array();
+                    for (UserLayer ul : list) {
+                        // Parse userlayer data to userlayer
+                        final JSONObject userLayer = userLayerDataService.parseUserLayer2JSON(ul, baseLayer);
+                        JSONObject permissions = OskariLayerWorker.getAllowedPermissions();
+                        JSONHelper.putValue(userLayer, "permissions", permissions);
+                        writer.value(userLayer);
+                    }
+                    writer.endArray().endObject();
+                }
+            });
+        } catch (JSONException e) {
+            throw new ActionException("Error writing user layers", e);
         }
-
-        ResponseHelper.writeResponse(params, response);
     }
 }
@@ -8,13 +8,16 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.service.OskariComponentManager;
 import fi.nls.oskari.service.capabilities.CapabilitiesCacheService;
 import fi.nls.oskari.service.capabilities.OskariLayerCapabilities;
-import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.JSONResponseGenerator;
 import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.util.ResponseHelper;
 import fi.nls.oskari.wfs.GetGtWFSCapabilities;
 import fi.nls.oskari.wms.GetGtWMSCapabilities;
 import fi.nls.oskari.wmts.WMTSCapabilitiesParser;
+import fi.nls.oskari.wmts.domain.WMTSCapabilities;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 /**
  * Get capabilites for layer and returns JSON formatted as Oskari layers
@@ -60,7 +63,7 @@ public class GetWSCapabilitiesHandler extends ActionHandler {
             }
             else {
                 if (OskariLayer.TYPE_WMTS.equals(layerType)) {
-                    WMTSCapabilitiesParser parser = new WMTSCapabilitiesParser();
+                    final WMTSCapabilitiesParser parser = new WMTSCapabilitiesParser();
 
                     // setup capabilities URL
                     OskariLayerCapabilities caps  = capabilitiesService.getCapabilities(url, OskariLayer.TYPE_WMTS, user, pw, version);
@@ -70,9 +73,22 @@ public class GetWSCapabilitiesHandler extends ActionHandler {
                         caps = capabilitiesService.getCapabilities(url, OskariLayer.TYPE_WMTS, user, pw, version, true);
                         capabilitiesXML = caps.getData();
                     }
-                    JSONObject resultJSON = parser.parseCapabilitiesToJSON(capabilitiesXML, url, currentCrs);
-                    JSONHelper.putValue(resultJSON, "xml", caps.getData());
-                    ResponseHelper.writeResponse(params, resultJSON);
+                    WMTSCapabilities wmts = CapabilitiesCacheService.getParsed(caps, WMTSCapabilities.class);
+                    if (wmts == null) {
+                        wmts = parser.parseCapabilities(capabilitiesXML);
+                        CapabilitiesCacheService.putParsed(caps, WMTSCapabilities.class, wmts);
+                    }
+                    // layers are written one by one instead of building the JSON for the whole service
+                    final WMTSCapabilities capabilities = wmts;
+                    final String xml = caps.getData();
+                    ResponseHelper.writeResponse(params, new JSONResponseGenerator() {
+                        public void generate(JSONWriter writer) throws JSONException {
+                            writer.object();
+                            parser.writeCapabilitiesJSON(writer, capabilities, url, currentCrs);
+                            writer.key("xml").value(xml);
+                            writer.endObject();
+                        }
+                    });
                 }
                 else if(OskariLayer.TYPE_WFS.equals(layerType)) {
                     // New method for parsing WFSCetGapabilites to Oskari layers structure
@@ -8,6 +8,7 @@ import fi.mml.map.mapwindow.util.OskariLayerWorker;
 import fi.mml.portti.domain.permissions.Permissions;
 import fi.mml.portti.service.db.permissions.PermissionsService;
 import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.cache.CacheTags;
 import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.*;
 import fi.nls.oskari.domain.User;
@@ -151,8 +152,8 @@ public class SaveLayerHandler extends ActionHandler {
 
 
                     // Remove old redis data of WFSLayer_xx, new wfs conf data is inserted automatically
-                    JedisManager.delAll(WFSLayerConfiguration.KEY + Integer.toString(ml.getId()));
-                    JedisManager.delAll(WFSLayerConfiguration.IMAGE_KEY + Integer.toString(ml.getId()));
+                    WFSLayerConfiguration.invalidate(Integer.toString(ml.getId()));
+                    CacheTags.invalidate(WFSLayerConfiguration.IMAGE_KEY + Integer.toString(ml.getId()), JedisManager.EXPIRY_TIME_DAY);
                 }
 
                 //update maplayer projections - removes old ones and insert new ones
@@ -23,6 +23,7 @@ import fi.nls.oskari.view.modifier.ViewModifierManager;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import java.net.URLDecoder;
 import java.util.*;
@@ -292,12 +293,18 @@ UNRESTRICTED_USAGE_ROLE = PropertyUtil.get("view.published.usage.unrestrictedRol
         }
 
         // write response
+        final JSONObject env = EnvHelper.getEnvironmentJSON(params);
         try {
-            JSONObject appSetup = new JSONObject();
-            appSetup.put(KEY_ENV, EnvHelper.getEnvironmentJSON(params));
-            appSetup.put(KEY_STARTUP, startupSequence);
-            appSetup.put(KEY_CONFIGURATION, configuration);
-            ResponseHelper.writeResponse(params, appSetup);
+            // bundle configurations are written straight to the response
+            ResponseHelper.writeResponse(params, new JSONResponseGenerator() {
+                public void generate(JSONWriter writer) throws JSONException {
+                    writer.object()
+                            .key(KEY_ENV).value(env)
+                            .key(KEY_STARTUP).value(startupSequence)
+                            .key(KEY_CONFIGURATION).value(configuration)
+                            .endObject();
+                }
+            });
         } catch (JSONException jsonex) {
             throw new ActionException("Malformed startup sequence/config!", jsonex);
         }
@@ -3,7 +3,6 @@ package fi.nls.oskari.control.view;
 import fi.mml.portti.domain.permissions.Permissions;
 import fi.mml.portti.service.db.permissions.PermissionsService;
 import fi.nls.oskari.analysis.AnalysisHelper;
-import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.ActionDeniedException;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionParamsException;
@@ -171,7 +170,7 @@ public class PublishPermissionHelper {
             if (place.isOwnedBy(userUuid)) {
                 myPlaceService.updatePublisherName(categoryId, userUuid, publisherName); // make it public
                 // IMPORTANT! delete layer data from redis so transport will get updated layer data
-                JedisManager.del(WFSLayerConfiguration.KEY + layerId);
+                WFSLayerConfiguration.invalidate(layerId);
                 return true;
             }
         }
@@ -202,7 +201,7 @@ public class PublishPermissionHelper {
             // write publisher name for analysis
             analysisService.updatePublisherName(analysisId, user.getUuid(), user.getScreenname());
             // IMPORTANT! delete layer data from redis so transport will get updated layer data
-            JedisManager.del(WFSLayerConfiguration.KEY + layerId);
+            WFSLayerConfiguration.invalidate(layerId);
         } else {
             LOG.warn("Found analysis layer in selected that isn't publishable any more! Permissionkey:", permissionKey, "User:", user);
         }
@@ -219,7 +218,7 @@ public class PublishPermissionHelper {
         if (userLayer.isOwnedBy(user.getUuid())) {
             userLayerService.updatePublisherName(id, user.getUuid(), user.getScreenname());
             // IMPORTANT! delete layer data from redis so transport will get updated layer data
-            JedisManager.del(WFSLayerConfiguration.KEY + layerId);
+            WFSLayerConfiguration.invalidate(layerId);
             return true;
         } else {
             return false;
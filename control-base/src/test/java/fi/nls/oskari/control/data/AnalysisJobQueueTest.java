@@ -0,0 +1,85 @@
+package fi.nls.oskari.control.data;
+
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.control.ActionParamsException;
+import fi.nls.oskari.worker.Job;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AnalysisJobQueueTest {
+
+    private AnalysisJob createJob(final String user, final CountDownLatch started, final CountDownLatch release) {
+        return new AnalysisJob(user) {
+            protected JSONObject process() throws ActionException {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+                return new JSONObject();
+            }
+        };
+    }
+
+    /**
+     * Counts down the latch when a job has been handled completely
+     */
+    private AnalysisJobQueue createQueue(int maxQueueSize, int maxUserJobs, final CountDownLatch completed) {
+        return new AnalysisJobQueue(1, maxQueueSize, maxUserJobs) {
+            @Override
+            public void onJobSuccess(final Job job, final Object value) {
+                super.onJobSuccess(job, value);
+                completed.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void testUserJobLimit() throws Exception {
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(2);
+        final AnalysisJobQueue queue = createQueue(10, 1, completed);
+
+        final AnalysisJob job = createJob("user1", started, release);
+        queue.submit(job);
+        try {
+            queue.submit(createJob("user1", started, release));
+            fail("User should have only one job at a time");
+        } catch (ActionParamsException expected) {
+            // expected
+        }
+        // another user is not affected
+        queue.submit(createJob("user2", started, release));
+
+        release.countDown();
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals("User without jobs shouldn't be tracked", 0, queue.getJobCount("user1"));
+
+        // the limit is released when the job has finished
+        queue.submit(createJob("user1", started, release));
+        assertEquals(1, queue.getJobCount("user1"));
+        assertEquals(AnalysisJob.STATUS_DONE, job.getStatusJSON().getString(AnalysisJob.KEY_STATUS));
+    }
+
+    @Test(expected = ActionParamsException.class)
+    public void testQueueLimit() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AnalysisJobQueue queue = createQueue(1, 10, new CountDownLatch(3));
+        try {
+            // first is taken by the worker, second waits in the queue
+            queue.submit(createJob("user1", started, release));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            queue.submit(createJob("user2", started, release));
+            queue.submit(createJob("user3", started, release));
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -71,7 +71,10 @@ public class RoutingHandler extends ActionHandler {
 
         RouteResponse result = service.getRoute(routeparams);
 
-        ResponseHelper.writeResponse(params, result.toJSON());
+        // cached routes are written as is without parsing them
+        params.getResponse().setCharacterEncoding("UTF-8");
+        params.getResponse().setContentType("application/json;charset=UTF-8");
+        ResponseHelper.writeResponse(params, result.toJSONString());
 
     }
 }
@@ -7,13 +7,17 @@ import fi.nls.oskari.control.ActionHandler;
 import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.control.statistics.plugins.*;
 import fi.nls.oskari.domain.User;
+import fi.nls.oskari.util.JSONResponseGenerator;
 import fi.nls.oskari.util.ResponseHelper;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * This interface gives the data for one indicator to the frontend for showing it on the map and on the table.
@@ -27,7 +31,8 @@ import java.util.Map.Entry;
  */
 @OskariActionRoute("GetIndicatorData")
 public class GetIndicatorDataHandler extends ActionHandler {
-    private final static String CACHE_KEY_PREFIX = "oskari_get_indicator_data_handler:";
+    // values are cached in the binary format of IndicatorValueTable
+    private final static String CACHE_KEY_PREFIX = "oskari_get_indicator_data_handler_bin:";
     private final static String PARAM_PLUGIN_ID = "datasource"; // previously plugin_id
     private final static String PARAM_INDICATOR_ID = "indicator"; // previously indicator_id
     private final static String PARAM_LAYER_ID = "regionset"; // previously layer_id
@@ -45,53 +50,60 @@ public class GetIndicatorDataHandler extends ActionHandler {
         final String indicatorId = ap.getRequiredParam(PARAM_INDICATOR_ID);
         final long layerId = new Long(ap.getRequiredParam(PARAM_LAYER_ID));
         final String selectors = ap.getRequiredParam(PARAM_SELECTORS);
-        JSONObject response = getIndicatorDataJSON(ap.getUser(), pluginId, indicatorId, layerId, selectors);
-        ResponseHelper.writeResponse(ap, response);
+        final IndicatorValueTable values = getIndicatorData(ap.getUser(), pluginId, indicatorId, layerId, selectors);
+        // write the values directly from the table instead of building a JSONObject
+        try {
+            ResponseHelper.writeResponse(ap, new JSONResponseGenerator() {
+                public void generate(JSONWriter writer) throws JSONException {
+                    values.writeJSON(writer);
+                }
+            });
+        } catch (JSONException e) {
+            throw new ActionException("Couldn't write indicator data", e);
+        }
     }
 
     public JSONObject getIndicatorDataJSON(User user, long pluginId, String indicatorId,
             Long layerId, String selectorsStr)
             throws ActionException {
+        try {
+            return getIndicatorData(user, pluginId, indicatorId, layerId, selectorsStr).toJSON();
+        } catch (JSONException e) {
+            throw new ActionException("Something went wrong in serializing indicator data.", e);
+        }
+    }
+
+    public IndicatorValueTable getIndicatorData(User user, long pluginId, String indicatorId,
+            Long layerId, String selectorsStr)
+            throws ActionException {
         final String cacheKey = CACHE_KEY_PREFIX + pluginId + ":" + indicatorId + ":" + layerId + ":" + selectorsStr;
-        final String cachedData = JedisManager.get(cacheKey);
+        final byte[] binaryKey = cacheKey.getBytes(StandardCharsets.UTF_8);
         StatisticalDatasourcePlugin plugin = pluginManager.getPlugin(pluginId);
         if (plugin.canCache()) {
-            if (cachedData != null && !cachedData.isEmpty()) {
-                try {
-                    return new JSONObject(cachedData);
-                } catch (JSONException e) {
-                    // Failed serializing. Skipping the cache.
-                }
+            final IndicatorValueTable cached = IndicatorValueTable.fromBytes(JedisManager.get(binaryKey));
+            if (cached != null) {
+                return cached;
             }
         }
-        JSONObject response = new JSONObject();
+        IndicatorValueTable response = IndicatorValueTable.create(Collections.<String, IndicatorValue>emptyMap());
         try {
-
-            // TODO: Might be faster to store the indicator id to indicator map in a proper map.
-            //       Who should do this, though? We don't want to put this functionality into the plugins.
-            //       It should be in a common wrapper for the plugins.
-            for (StatisticalIndicator indicator : plugin.getIndicators(user)) {
-                if (indicator.getId().equals(indicatorId)) {
-                    // This is fast, because there are only 10 or so layers at most.
-                    for (StatisticalIndicatorLayer layer : indicator.getLayers()) {
-                        if (layer.getOskariLayerId() == layerId) {
-                            // Note: Layer version is handled already in the indicator metadata.
-                            // We found the correct indicator and the layer.
-                            JSONObject selectorJSON = new JSONObject(selectorsStr);
-                            StatisticalIndicatorSelectors selectors = new StatisticalIndicatorSelectors();
-                            @SuppressWarnings("unchecked")
-                            Iterator<String> keys = selectorJSON.keys();
-                            while (keys.hasNext()) {
-                                String key = keys.next();
-                                String value = selectorJSON.getString(key);
-                                StatisticalIndicatorSelector selector = new StatisticalIndicatorSelector(key, value);
-                                selectors.addSelector(selector);
-                            }
-                            Map<String, IndicatorValue> values = layer.getIndicatorValues(selectors);
-                            response = toJSON(values);
-                        }
-                    }
+            // The plugins parse the indicator list on each call (or build it for the user) so indexing it
+            // by id here wouldn't be reused. The scan is only done when the values aren't cached.
+            final StatisticalIndicatorLayer layer = findLayer(plugin.getIndicators(user), indicatorId, layerId);
+            if (layer != null) {
+                // Note: Layer version is handled already in the indicator metadata.
+                JSONObject selectorJSON = new JSONObject(selectorsStr);
+                StatisticalIndicatorSelectors selectors = new StatisticalIndicatorSelectors();
+                @SuppressWarnings("unchecked")
+                Iterator<String> keys = selectorJSON.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    String value = selectorJSON.getString(key);
+                    StatisticalIndicatorSelector selector = new StatisticalIndicatorSelector(key, value);
+                    selectors.addSelector(selector);
                 }
+                Map<String, IndicatorValue> values = layer.getIndicatorValues(selectors);
+                response = IndicatorValueTable.create(values);
             }
         } catch (JSONException e) {
             throw new ActionException("Something went wrong in serializing indicator data.", e);
@@ -100,16 +112,25 @@ public class GetIndicatorDataHandler extends ActionHandler {
         // Two layers are necessary, because deserialization and conversion to the internal data model
         // is a pretty heavy operation.
         if (plugin.canCache()) {
-            JedisManager.setex(cacheKey, JedisManager.EXPIRY_TIME_DAY, response.toString());
+            JedisManager.setex(binaryKey, JedisManager.EXPIRY_TIME_DAY, response.toBytes());
         }
         return response;
     }
 
-    private JSONObject toJSON(Map<String, IndicatorValue> values) throws JSONException {
-        JSONObject json = new JSONObject();
-        for (Entry<String, IndicatorValue> entry : values.entrySet()) {
-            entry.getValue().putToJSONObject(json, entry.getKey());
+    private static StatisticalIndicatorLayer findLayer(List<? extends StatisticalIndicator> indicators,
+                                                       String indicatorId, long layerId) {
+        for (StatisticalIndicator indicator : indicators) {
+            if (!indicator.getId().equals(indicatorId)) {
+                continue;
+            }
+            // This is fast, because there are only 10 or so layers at most.
+            for (StatisticalIndicatorLayer layer : indicator.getLayers()) {
+                if (layer.getOskariLayerId() == layerId) {
+                    return layer;
+                }
+            }
+            return null;
         }
-        return json;
+        return null;
     }
 }
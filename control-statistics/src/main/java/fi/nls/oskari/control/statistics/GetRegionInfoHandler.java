@@ -1,7 +1,6 @@
 package fi.nls.oskari.control.statistics;
 
 import fi.nls.oskari.annotation.OskariActionRoute;
-import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionHandler;
 import fi.nls.oskari.control.ActionParameters;
@@ -29,8 +28,6 @@ import java.util.List;
  */
 @OskariActionRoute("GetRegionInfo")
 public class GetRegionInfoHandler extends ActionHandler {
-    private final static String CACHE_KEY_PREFIX = "oskari_get_layer_info_handler:";
-
     private RegionSetService service;
     
     public void handleAction(ActionParameters ap) throws ActionException {
@@ -57,15 +54,7 @@ public class GetRegionInfoHandler extends ActionHandler {
     }
 
     public JSONObject requestRegionInfoJSON(String regionCode, long id, RegionSet regionset) throws ActionException {
-        final String cacheKey = CACHE_KEY_PREFIX + id + ":" + regionCode;
-        final String cachedData = JedisManager.get(cacheKey);
-        if (cachedData != null && !cachedData.isEmpty()) {
-            try {
-                return new JSONObject(cachedData);
-            } catch (JSONException e) {
-                // Failed serializing. Skipping the cache.
-            }
-        }
+        // regions are cached in memory by the service so no need for caching the response in Redis
         final JSONObject response = new JSONObject();
 
         try {
@@ -82,8 +71,6 @@ public class GetRegionInfoHandler extends ActionHandler {
         } catch (JSONException e) {
             throw new ActionException("Something went wrong serializing the region info response.", e);
         }
-
-        JedisManager.setex(cacheKey, JedisManager.EXPIRY_TIME_DAY, response.toString());
         return response;
     }
 
@@ -1,7 +1,6 @@
 package fi.nls.oskari.control.statistics;
 
 import fi.nls.oskari.annotation.OskariActionRoute;
-import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionHandler;
 import fi.nls.oskari.control.ActionParameters;
@@ -12,7 +11,6 @@ import fi.nls.oskari.service.OskariComponentManager;
 import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.ResponseHelper;
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 import static fi.nls.oskari.control.ActionConstants.*;
 
@@ -30,8 +28,6 @@ import java.util.List;
  */
 @OskariActionRoute("GetRegions")
 public class GetRegionsHandler extends ActionHandler {
-    private final static String CACHE_KEY_PREFIX = "oskari_get_layer_regions_handler:";
-
     private static final String KEY_REGIONS = "regions";
 
     private RegionSetService service;
@@ -70,15 +66,7 @@ public class GetRegionsHandler extends ActionHandler {
     }
 
     public JSONObject requestRegionInfoJSON(long id, RegionSet regionset) throws ActionException {
-        final String cacheKey = CACHE_KEY_PREFIX + id;
-        final String cachedData = JedisManager.get(cacheKey);
-        if (cachedData != null && !cachedData.isEmpty()) {
-            try {
-                return new JSONObject(cachedData);
-            } catch (JSONException e) {
-                // Failed serializing. Skipping the cache.
-            }
-        }
+        // regions are cached in memory by the service so no need for caching the response in Redis
         final JSONObject response = new JSONObject();
         final JSONArray regions = new JSONArray();
         JSONHelper.putValue(response, KEY_REGIONS, regions);
@@ -94,8 +82,6 @@ public class GetRegionsHandler extends ActionHandler {
         } catch (IOException e) {
             throw new ActionException("Something went wrong fetching the region info from geoserver.", e);
         }
-
-        JedisManager.setex(cacheKey, JedisManager.EXPIRY_TIME_DAY, response.toString());
         return response;
     }
 }
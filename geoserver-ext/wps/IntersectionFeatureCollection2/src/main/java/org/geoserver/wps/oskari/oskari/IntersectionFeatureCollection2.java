@@ -19,6 +19,10 @@ package org.geoserver.wps.oskari.oskari;
 
 import com.vividsolutions.jts.densify.Densifier;
 import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
@@ -78,7 +82,8 @@ public class IntersectionFeatureCollection2 implements GSProcess {
             @DescribeParameter(name = "second attributes to retain", collectionType = String.class, min = 0, description = "List of the second feature collection attributes to output") List<String> sndAttributes,
             @DescribeParameter(name = "intersectionMode", min = 0, description = "The operations to perform: set INTERSECTION if the geometry is the intersection, FIRST if the geometry is extracted by firstFeatures, SECOND if it is extracted by secondFeatures, SECOND_CONTAINS like SECOND but contains instead of intersect, SECOND_CLIP like SECOND but clip geometries (DEFAULT=INTERSECTION)") IntersectionMode intersectionMode,
             @DescribeParameter(name = "percentagesEnabled", min = 0, description = "Set it true to get the intersection percentage parameters, false  otherwise (DEFAULT=false)") Boolean percentagesEnabled,
-            @DescribeParameter(name = "areasEnabled", min = 0, description = "Set it true to get the area attributes , false  otherwise (DEFAULT=false)") Boolean areasEnabled) {
+            @DescribeParameter(name = "areasEnabled", min = 0, description = "Set it true to get the area attributes , false  otherwise (DEFAULT=false)") Boolean areasEnabled,
+            @DescribeParameter(name = "spatialIndexEnabled", min = 0, description = "Set it true to read the second feature collection once into an in-memory spatial index instead of querying it for each feature of the first collection (DEFAULT=false)") Boolean spatialIndexEnabled) {
         // assign defaults
         logger.fine("INTERSECTION FEATURE COLLECTION WPS STARTED");
 
@@ -91,6 +96,9 @@ public class IntersectionFeatureCollection2 implements GSProcess {
         if (intersectionMode == null) {
             intersectionMode = IntersectionMode.INTERSECTION;
         }
+        if (spatialIndexEnabled == null) {
+            spatialIndexEnabled = false;
+        }
 
         // basic geometry checks
         Class firstGeomType = firstFeatures.getSchema().getGeometryDescriptor().getType()
@@ -111,7 +119,7 @@ public class IntersectionFeatureCollection2 implements GSProcess {
         }
 
         return new IntersectedFeatureCollection(firstFeatures, firstAttributes, secondFeatures,
-                sndAttributes, intersectionMode, percentagesEnabled, areasEnabled);
+                sndAttributes, intersectionMode, percentagesEnabled, areasEnabled, spatialIndexEnabled);
     }
 
     /**
@@ -143,7 +151,7 @@ public class IntersectionFeatureCollection2 implements GSProcess {
             throw new IllegalArgumentException("CRS cannot be set to null");
         }
         double previousArea = 0.0;
-        CoordinateReferenceSystem targetCRS = CRS.parseWKT(ECKERT_IV_WKT);
+        CoordinateReferenceSystem targetCRS = getEckertIV();
         MathTransform firstTransform = CRS.findMathTransform(crs, targetCRS);
         GeometryFactory geomFactory = new GeometryFactory();
         int ngeom = geom.getNumGeometries();
@@ -237,10 +245,22 @@ public class IntersectionFeatureCollection2 implements GSProcess {
         }
     }
 
+    private static CoordinateReferenceSystem eckertIV;
+
+    /**
+     * Parsing the WKT is slow compared to the area computations so it's only done once
+     */
+    static synchronized CoordinateReferenceSystem getEckertIV() throws FactoryException {
+        if (eckertIV == null) {
+            eckertIV = CRS.parseWKT(ECKERT_IV_WKT);
+        }
+        return eckertIV;
+    }
+
     static Geometry reprojectAndDensify(Geometry first, CoordinateReferenceSystem sourceCRS,
                                         CoordinateReferenceSystem targetCRS) throws FactoryException, TransformException {
         if (targetCRS == null) {
-            targetCRS = CRS.parseWKT(ECKERT_IV_WKT);
+            targetCRS = getEckertIV();
         }
         MathTransform firstTransform = CRS.findMathTransform(sourceCRS, targetCRS);
         Geometry geometry = JTS.transform(densify(first, sourceCRS, 0.01d), firstTransform);
@@ -304,12 +324,17 @@ public class IntersectionFeatureCollection2 implements GSProcess {
         // added
         SimpleFeatureBuilder fb;
         AttributeDescriptor geomType = null;
+        // null if the second collection is queried for each feature
+        SecondFeatureIndex secondIndex = null;
 
         public IntersectedFeatureCollection(SimpleFeatureCollection delegate,
                                             List<String> firstAttributes, SimpleFeatureCollection features,
                                             List<String> sndAttributes, IntersectionMode intersectionMode,
-                                            boolean percentagesEnabled, boolean areasEnabled) {
+                                            boolean percentagesEnabled, boolean areasEnabled, boolean spatialIndexEnabled) {
             super(delegate);
+            if (spatialIndexEnabled) {
+                secondIndex = new SecondFeatureIndex(features);
+            }
             this.features = features;
             this.firstAttributes = firstAttributes;
             this.sndAttributes = sndAttributes;
@@ -402,7 +427,73 @@ public class IntersectionFeatureCollection2 implements GSProcess {
         public SimpleFeatureIterator features() {
             return new IntersectedFeatureIterator(delegate.features(), delegate, features,
                     delegate.getSchema(), features.getSchema(), firstAttributes, sndAttributes,
-                    intersectionMode, percentagesEnabled, areasEnabled, fb);
+                    intersectionMode, percentagesEnabled, areasEnabled, fb, secondIndex);
+        }
+    }
+
+    /**
+     * Second feature collection read once into a STR-tree. Built on first use and shared by
+     * all iterators of the result collection.
+     */
+    static class SecondFeatureIndex {
+        private final SimpleFeatureCollection features;
+        private STRtree index;
+
+        SecondFeatureIndex(SimpleFeatureCollection features) {
+            this.features = features;
+        }
+
+        private synchronized STRtree getIndex() {
+            if (index != null) {
+                return index;
+            }
+            final STRtree tree = new STRtree();
+            final SimpleFeatureIterator it = features.features();
+            try {
+                int order = 0;
+                while (it.hasNext()) {
+                    final SimpleFeature feature = it.next();
+                    final Geometry geom = (Geometry) feature.getDefaultGeometry();
+                    if (geom != null) {
+                        tree.insert(geom.getEnvelopeInternal(), new IndexedFeature(order, feature));
+                    }
+                    order++;
+                }
+            } finally {
+                it.close();
+            }
+            tree.build();
+            logger.fine("Indexed " + tree.size() + " features of the second collection");
+            index = tree;
+            return index;
+        }
+
+        /**
+         * @return features whose envelope intersects the envelope of the geometry, in the
+         * original order of the second collection
+         */
+        SimpleFeatureCollection query(Geometry geom) {
+            final List<IndexedFeature> candidates = getIndex().query(geom.getEnvelopeInternal());
+            Collections.sort(candidates);
+            final List<SimpleFeature> result = new ArrayList<SimpleFeature>(candidates.size());
+            for (IndexedFeature candidate : candidates) {
+                result.add(candidate.feature);
+            }
+            return new ListFeatureCollection(features.getSchema(), result);
+        }
+    }
+
+    static class IndexedFeature implements Comparable<IndexedFeature> {
+        final int order;
+        final SimpleFeature feature;
+
+        IndexedFeature(int order, SimpleFeature feature) {
+            this.order = order;
+            this.feature = feature;
+        }
+
+        public int compareTo(IndexedFeature other) {
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
         }
     }
 
@@ -449,13 +540,17 @@ public class IntersectionFeatureCollection2 implements GSProcess {
         IntersectionMode intersectionMode;
         int id = 0;
 
+        SecondFeatureIndex secondIndex;
+
+        PreparedGeometry currentPrepared;
+
         public IntersectedFeatureIterator(SimpleFeatureIterator delegate,
                                           SimpleFeatureCollection firstFeatures, SimpleFeatureCollection secondFeatures,
                                           SimpleFeatureType firstFeatureCollectionSchema,
                                           SimpleFeatureType secondFeatureCollectionSchema,
                                           List<String> retainAttributesFstPar, List<String> retainAttributesSndPar,
                                           IntersectionMode intersectionMode, boolean percentagesEnabled, boolean areasEnabled,
-                                          SimpleFeatureBuilder sfb) {
+                                          SimpleFeatureBuilder sfb, SecondFeatureIndex secondIndex) {
             this.retainAttributesFst = retainAttributesFstPar;
             this.retainAttributesSnd = retainAttributesSndPar;
             this.delegate = delegate;
@@ -464,6 +559,7 @@ public class IntersectionFeatureCollection2 implements GSProcess {
             this.percentagesEnabled = percentagesEnabled;
             this.areasEnabled = areasEnabled;
             this.intersectionMode = intersectionMode;
+            this.secondIndex = secondIndex;
 
             logger.fine("Creating schema");
             // create the geometry attribute descriptor for the result
@@ -517,6 +613,8 @@ public class IntersectionFeatureCollection2 implements GSProcess {
 
                             intersectedGeometries = filteredCollection(currentGeom,
                                     subFeatureCollection);
+                            // the same geometry is tested against all the candidates
+                            currentPrepared = PreparedGeometryFactory.prepare(currentGeom);
 
                             iterator = intersectedGeometries.features();
                         }
@@ -524,7 +622,7 @@ public class IntersectionFeatureCollection2 implements GSProcess {
                             while (iterator.hasNext()) {
                                 added = false;
                                 SimpleFeature second = iterator.next();
-                                if (currentGeom.intersects(
+                                if (currentPrepared.intersects(
                                         ((Geometry) second.getDefaultGeometry()))) {
                                     // compute geometry
                                     if (intersectionMode == IntersectionMode.INTERSECTION) {
@@ -542,7 +640,7 @@ public class IntersectionFeatureCollection2 implements GSProcess {
                                     } else if (intersectionMode == IntersectionMode.SECOND_CONTAINS) {
                                         // Only contains
                                         attribute = null;
-                                        if (currentGeom.contains(((Geometry) second.getDefaultGeometry())))
+                                        if (currentPrepared.contains(((Geometry) second.getDefaultGeometry())))
                                             attribute = (Geometry) second.getDefaultGeometry();
                                     } else if (intersectionMode == IntersectionMode.SECOND_CLIP) {
                                         attribute = (Geometry) currentGeom.intersection((Geometry) second.getDefaultGeometry());
@@ -653,6 +751,9 @@ public class IntersectionFeatureCollection2 implements GSProcess {
 
         private SimpleFeatureCollection filteredCollection(Geometry currentGeom,
                                                            SimpleFeatureCollection subFeatureCollection) {
+            if (secondIndex != null) {
+                return secondIndex.query(currentGeom);
+            }
             FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
             Filter intersectFilter = ff.intersects(ff.property(dataGeomName),
                     ff.literal(currentGeom));
@@ -0,0 +1,123 @@
+package org.geoserver.wps.oskari.oskari;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.ProcessException;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Processing collection that computes the output features of each delegate feature in parallel.
+ * The iterator reads a bounded number of features ahead of the consumer and returns the output
+ * in the order of the delegate features.
+ */
+public abstract class ParallelProcessingCollection extends SimpleProcessingCollection {
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    // features read ahead of the consumer
+    private static final int LOOKAHEAD = THREADS * 2;
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ParallelProcessingCollection");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    protected final SimpleFeatureCollection delegate;
+
+    public ParallelProcessingCollection(SimpleFeatureCollection delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Computes the output features for one delegate feature. Called concurrently from worker threads
+     * so implementations must not share mutable state between calls.
+     *
+     * @param feature delegate feature
+     * @param index running number of the feature in the delegate collection
+     * @return output features
+     */
+    protected abstract List<SimpleFeature> process(SimpleFeature feature, int index);
+
+    @Override
+    public SimpleFeatureIterator features() {
+        // build the schema before it's used by the workers
+        getSchema();
+        return new ParallelProcessingIterator(delegate.features());
+    }
+
+    class ParallelProcessingIterator implements SimpleFeatureIterator {
+        private final SimpleFeatureIterator delegateIt;
+        private final LinkedList<Future<List<SimpleFeature>>> pending = new LinkedList<Future<List<SimpleFeature>>>();
+        private Iterator<SimpleFeature> current = Collections.<SimpleFeature>emptyList().iterator();
+        private int index = 0;
+
+        ParallelProcessingIterator(SimpleFeatureIterator delegateIt) {
+            this.delegateIt = delegateIt;
+        }
+
+        private void readAhead() {
+            while (pending.size() < LOOKAHEAD && delegateIt.hasNext()) {
+                final SimpleFeature feature = delegateIt.next();
+                final int featureIndex = index++;
+                pending.add(EXECUTOR.submit(new Callable<List<SimpleFeature>>() {
+                    public List<SimpleFeature> call() {
+                        return process(feature, featureIndex);
+                    }
+                }));
+            }
+        }
+
+        private List<SimpleFeature> getResult(Future<List<SimpleFeature>> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new ProcessException(e.getCause());
+            }
+        }
+
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                readAhead();
+                if (pending.isEmpty()) {
+                    return false;
+                }
+                current = getResult(pending.removeFirst()).iterator();
+            }
+            return true;
+        }
+
+        public SimpleFeature next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException("hasNext() returned false!");
+            }
+            return current.next();
+        }
+
+        public void close() {
+            for (Future<List<SimpleFeature>> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+            delegateIt.close();
+        }
+    }
+}
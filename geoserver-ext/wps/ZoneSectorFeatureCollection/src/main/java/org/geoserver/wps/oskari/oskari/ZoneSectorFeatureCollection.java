@@ -39,7 +39,10 @@ import org.opengis.referencing.operation.MathTransform;
 
 import java.awt.geom.AffineTransform;
 import java.text.DecimalFormat;
-import java.util.NoSuchElementException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * ZoneSectors a feature collection using a certain distance
@@ -53,6 +56,9 @@ import java.util.NoSuchElementException;
  */
 @DescribeProcess(title = "zonesector", description = "Creates zones and sectors each feature in a collection by a fixed distance and zone count. Works in pure cartesian mode.")
 public class ZoneSectorFeatureCollection implements GSProcess {
+    private static final Logger logger = Logger
+            .getLogger("org.geoserver.wps.oskari.oskari.ZoneSectorFeatureCollection");
+
     @DescribeResult(description = "The zonesectored feature collection")
     public SimpleFeatureCollection execute(
             @DescribeParameter(name = "feature collection", description = "Feature collection") SimpleFeatureCollection features,
@@ -66,60 +72,56 @@ public class ZoneSectorFeatureCollection implements GSProcess {
 
         if(zone_count < 1 ) zone_count = 5;
         if(sector_count > 12 ) sector_count = 12;
+        if(sector_count < 1) return null;
 
-        Double min_distance = 0.0;
-        Double max_distance = 0.0;
-
-
-        ListFeatureCollection result = null;
+        SimpleFeatureCollection zones = new ZoneSectoredFeatureCollection(features, distance, zone_count, sector_count);
 
-        for (int i = 0; i < zone_count; i++) {
-            max_distance = max_distance + distance;
-            for (int k = 0; k < sector_count; k++) {
-                SimpleFeatureCollection zone = new ZoneSectoredFeatureCollection(features, zone_count, k, sector_count, min_distance, max_distance);
-                if (result == null) result = new ListFeatureCollection(zone.getSchema());
-                this.appendFeatureCollection(result, zone);
+        // Zones are computed feature by feature, the result is ordered by zone and sector
+        List<List<SimpleFeature>> groups = new ArrayList<List<SimpleFeature>>();
+        for (int i = 0; i < zone_count * sector_count; i++) {
+            groups.add(new ArrayList<SimpleFeature>());
+        }
+        SimpleFeatureIterator iterator = zones.features();
+        try {
+            int n = 0;
+            while (iterator.hasNext()) {
+                groups.get(n % groups.size()).add(iterator.next());
+                n++;
             }
-            min_distance = min_distance + distance;
+        }
+        finally {
+            iterator.close();
         }
 
-        return (SimpleFeatureCollection) result;
+        ListFeatureCollection result = new ListFeatureCollection(zones.getSchema());
+        for (List<SimpleFeature> group : groups) {
+            for (SimpleFeature feature : group) {
+                result.add(feature);
+            }
+        }
+        return result;
 
     }
 
     /**
-     * Wrapper that will trigger the zonesector computation as features are requested
+     * Wrapper that will trigger the zonesector computation as features are requested.
+     * Returns zone_count * sector_count features for each delegate feature, ordered by zone and sector.
      */
-    static class ZoneSectoredFeatureCollection extends SimpleProcessingCollection {
+    static class ZoneSectoredFeatureCollection extends ParallelProcessingCollection {
 
-        Double min_distance;
-        Double max_distance;
+        Double distance;
 
         int zone_count;
         int sector_count;
-        int sector;
         String attribute;
 
-        SimpleFeatureCollection delegate;
-
 
-        public ZoneSectoredFeatureCollection(SimpleFeatureCollection delegate, int zone_count, int sector, int sector_count,
-                                             Double min_distance,  Double max_distance) {
-            this.min_distance = min_distance;
-            this.max_distance = max_distance;
+        public ZoneSectoredFeatureCollection(SimpleFeatureCollection delegate, Double distance, int zone_count, int sector_count) {
+            super(delegate);
+            this.distance = distance;
             this.zone_count = zone_count;
             this.sector_count = sector_count;
-            this.sector = sector;
-            this.delegate = delegate;
             this.attribute = null;
-
-
-
-        }
-
-        @Override
-        public SimpleFeatureIterator features() {
-            return new ZoneSectoredFeatureIterator(delegate, this.zone_count, this.sector, this.sector_count, this.min_distance, this.max_distance, getSchema());
         }
 
         @Override
@@ -127,7 +129,7 @@ public class ZoneSectorFeatureCollection implements GSProcess {
             if(attribute == null) {
                 // in this case we just have to expand the original collection bounds
                 ReferencedEnvelope re = delegate.getBounds();
-                re.expandBy(max_distance);
+                re.expandBy(distance * zone_count);
                 return re;
             } else {
                 // unlucky case, we need to actually compute by hand...
@@ -169,125 +171,86 @@ public class ZoneSectorFeatureCollection implements GSProcess {
 
         @Override
         public int size() {
-            return delegate.size();
+            return delegate.size() * zone_count * sector_count;
         }
 
-    }
-
-    /**
-     * ZoneSectors each feature as we scroll over the collection
-     */
-    static class ZoneSectoredFeatureIterator implements SimpleFeatureIterator {
-        SimpleFeatureIterator delegate;
-
-        SimpleFeatureCollection collection;
-
-        Double min_distance;
-        Double max_distance;
-
-
-        int zone_count;
-        int sector_count;
-        int sector;
-
-        String attribute;
-
-        int count;
-
-        SimpleFeatureBuilder fb;
-
-        SimpleFeature next;
-
-        public ZoneSectoredFeatureIterator(SimpleFeatureCollection delegate, int zone_count, int sector, int sector_count,
-                                           Double min_distance, Double max_distance, SimpleFeatureType schema) {
-            this.delegate = delegate.features();
-            this.min_distance = min_distance;
-            this.max_distance = max_distance;
-            this.collection = delegate;
-            this.zone_count = zone_count;
-            this.sector_count = sector_count;
-            this.sector = sector;
-            this.attribute = null;
-            fb = new SimpleFeatureBuilder(schema);
-
-        }
-
-        public void close() {
-            delegate.close();
-        }
-
-        public boolean hasNext() {
-            while (next == null && delegate.hasNext()) {
-                SimpleFeature f = delegate.next();
-                for (Object value : f.getAttributes()) {
-                    if (value instanceof Geometry) {
-                        Double fDistance1 = min_distance;
-                        Double fDistance2 = max_distance;
-                        //Create sector
-                        double sectorside = ((Geometry) value).getLength() + (2.0d*fDistance2);
-
-                        Geometry gsector = getSectorGeometry(((Geometry) ((Geometry) value).getCentroid()), sectorside, sector, sector_count);
-
-                        if(fDistance1 != null &&  fDistance2 != null && fDistance1 == 0.0) {
-                            // Create buffer
-                            value = ((Geometry) value).buffer(fDistance2);
-                            if(gsector != null) value = ((Geometry) value).intersection(gsector);
-                        }
-                        else if(fDistance1 != null &&  fDistance2 != null && fDistance1 != 0.0) {
-                            // Create zone
-                            Geometry minbuffer = ((Geometry) value).buffer(fDistance1);
-                            Geometry maxbuffer = ((Geometry) value).buffer(fDistance2);
-                            value =  maxbuffer.difference(minbuffer);
-                            if(gsector != null) value = ((Geometry) value).intersection(gsector);
-                        }
-                        fb.add(value);  // Geometry
-                    }
-
+        /**
+         * ZoneSectors one feature. Each buffer is computed once and the zone is the difference
+         * to the buffer of the previous zone.
+         */
+        @Override
+        protected List<SimpleFeature> process(SimpleFeature f, int index) {
+            List<Geometry[][]> geometries = new ArrayList<Geometry[][]>();
+            for (Object value : f.getAttributes()) {
+                if (value instanceof Geometry) {
+                    geometries.add(getZoneSectors((Geometry) value));
                 }
-                //Format distance
-                double dkm = max_distance/1000.0d;
-                String skm = new DecimalFormat("#0.0").format(dkm);
-                String sunit = "km";
-                if(dkm < 1.0d) {
-                    sunit = "m";
-                    skm = new DecimalFormat("#0").format(max_distance);
+            }
+            // feature ids are numbered by the delegate feature within each zone and sector
+            SimpleFeatureBuilder fb = new SimpleFeatureBuilder(getSchema());
+            List<SimpleFeature> features = new ArrayList<SimpleFeature>(zone_count * sector_count);
+            for (int i = 0; i < zone_count; i++) {
+                double max_distance = distance * (i + 1);
+                for (int k = 0; k < sector_count; k++) {
+                    for (Geometry[][] zoneSectors : geometries) {
+                        fb.add(zoneSectors[i][k]);  // Geometry
+                    }
+                    fb.add(getSectorId(k, max_distance));   // Sector id
+                    features.add(fb.buildFeature("zones." + index));
+                    fb.reset();
                 }
+            }
+            return features;
+        }
 
-                String sector_id=Integer.toString(sector+1)+"_"+skm+sunit;
-                fb.add(sector_id);   // Sector id
-                next = fb.buildFeature("zones." + count);
-                count++;
-                fb.reset();
+        private Geometry[][] getZoneSectors(Geometry geom) {
+            Geometry[][] zoneSectors = new Geometry[zone_count][sector_count];
+            Geometry centroid = geom.getCentroid();
+            Geometry minbuffer = null;
+            for (int i = 0; i < zone_count; i++) {
+                double max_distance = distance * (i + 1);
+                // Create buffer
+                Geometry maxbuffer = geom.buffer(max_distance);
+                // Create zone
+                Geometry zone = minbuffer == null ? maxbuffer : maxbuffer.difference(minbuffer);
+                minbuffer = maxbuffer;
+
+                //Create sectors
+                double sectorside = geom.getLength() + (2.0d * max_distance);
+                Coordinate[] sectorCoords = getSectorBufferCoordinates(centroid, sectorside, sector_count);
+                for (int k = 0; k < sector_count; k++) {
+                    Geometry gsector = getSectorGeometry(sectorCoords, k);
+                    zoneSectors[i][k] = gsector != null ? zone.intersection(gsector) : zone;
+                }
             }
-            return next != null;
+            return zoneSectors;
         }
 
-        public SimpleFeature next() throws NoSuchElementException {
-            if (!hasNext()) {
-                throw new NoSuchElementException("hasNext() returned false!");
+        private String getSectorId(int sector, double max_distance) {
+            //Format distance
+            double dkm = max_distance/1000.0d;
+            String skm = new DecimalFormat("#0.0").format(dkm);
+            String sunit = "km";
+            if(dkm < 1.0d) {
+                sunit = "m";
+                skm = new DecimalFormat("#0").format(max_distance);
             }
-            SimpleFeature result = next;
-            next = null;
-            return result;
+
+            return Integer.toString(sector+1)+"_"+skm+sunit;
         }
 
         /**
-         *  Computes one sector based on sector number and total number of sectors (2-12)
+         *  Computes the points for the sectors around the feature
          *  - use buffer quadrantSegments for getting sector points
          *  - buffer 1st point is in the east - we want from the north
          * @param gfeature    {Geometry}  feature for the sector center point
          * @param distance    {double}  buffer/sector distance
-         * @param sector      {int} current sector # (1st index is 0)
          * @param sector_count {int} total number of sectors
-         * @return {Geometry}  sector geometry
+         * @return {Coordinate[]}  rotated buffer coordinates, center point as the last item or null if no sectors
          */
-        private Geometry getSectorGeometry(Geometry gfeature, double distance, int sector, int sector_count){
+        private Coordinate[] getSectorBufferCoordinates(Geometry gfeature, double distance, int sector_count) {
             try {
-                GeometryFactory geometryFactory = new GeometryFactory();
                 if (sector_count < 2) return null;
-                int startInd = 4 * sector;
-                int endInd = 4 * (sector+1);
-                int midleInd = (startInd + endInd) / 2 ;
                 Geometry sectorbuf = (gfeature).buffer(distance, sector_count);
                 Coordinate center = sectorbuf.getCentroid().getCoordinate();
                 // Rotate geometry - we want sectors clockwise from north
@@ -298,6 +261,32 @@ public class ZoneSectorFeatureCollection implements GSProcess {
 
                 sectorbuf = JTS.transform(sectorbuf, mathTransform);
                 Coordinate[] coords = sectorbuf.getCoordinates();
+                Coordinate[] result = new Coordinate[coords.length + 1];
+                System.arraycopy(coords, 0, result, 0, coords.length);
+                result[coords.length] = center;
+                return result;
+            }
+            catch (Exception e)
+            {
+                logger.log(Level.WARNING, "Sector computation failed", e);
+                return null;
+            }
+        }
+
+        /**
+         *  Computes one sector based on sector number and total number of sectors (2-12)
+         * @param coords    {Coordinate[]}  sector buffer coordinates from getSectorBufferCoordinates()
+         * @param sector      {int} current sector # (1st index is 0)
+         * @return {Geometry}  sector geometry
+         */
+        private Geometry getSectorGeometry(Coordinate[] coords, int sector){
+            try {
+                if (coords == null) return null;
+                GeometryFactory geometryFactory = new GeometryFactory();
+                int startInd = 4 * sector;
+                int endInd = 4 * (sector+1);
+                int midleInd = (startInd + endInd) / 2 ;
+                Coordinate center = coords[coords.length - 1];
                 Coordinate[] gsector = new Coordinate[5];
                 gsector[0] = center;
                 gsector[1] = coords[startInd];
@@ -311,25 +300,10 @@ public class ZoneSectorFeatureCollection implements GSProcess {
             }
             catch (Exception e)
             {
-                System.out.println("Sector computation failed" + e);
+                logger.log(Level.WARNING, "Sector computation failed", e);
                 return null;
             }
         }
-
-
-    }
-    private void appendFeatureCollection(ListFeatureCollection result, SimpleFeatureCollection zone)
-    {
-        SimpleFeatureIterator iterator=zone.features();
-        try {
-            while( iterator.hasNext()  ){
-                SimpleFeature feature = iterator.next();
-                result.add(feature);
-            }
-        }
-        finally {
-            iterator.close();
-        }
     }
 
 }
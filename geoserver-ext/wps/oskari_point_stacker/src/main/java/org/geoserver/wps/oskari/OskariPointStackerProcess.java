@@ -46,6 +46,8 @@ import org.opengis.referencing.operation.TransformException;
 import org.opengis.util.ProgressListener;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Oskari Rendering Transformation process which aggregates features into a set of
@@ -105,6 +107,17 @@ public class OskariPointStackerProcess implements GSProcess {
     
     // no process state is defined, since RenderingTransformation processes must be stateless
 
+    // points are reprojected and gridded in batches by a shared pool of worker threads
+    private static final int BATCH_SIZE = 4096;
+    private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "OskariPointStacker");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     @DescribeResult(name = "result", description = "Aggregated feature collection")
     public SimpleFeatureCollection execute(
 
@@ -153,9 +166,6 @@ public class OskariPointStackerProcess implements GSProcess {
 
         GeometryFactory factory = new GeometryFactory(new PackedCoordinateSequenceFactory());
 
-        double[] srcPt = new double[2];
-        double[] dstPt = new double[2];
-
         // Find maxima of the point stacks if needed.
         int maxCount = 0;
         int maxCountUnique = 0;
@@ -166,15 +176,21 @@ public class OskariPointStackerProcess implements GSProcess {
             }
         }
 
+        // transform back to src CRS, since RT rendering expects the output to be in the same CRS
+        double[] locations = new double[stackedPts.size() * 2];
+        int i = 0;
         for (StackedPoint sp : stackedPts) {
-            // create feature for stacked point
             Coordinate pt = getStackedPointLocation(preserveLocation, sp);
-            
-            // transform back to src CRS, since RT rendering expects the output to be in the same CRS
-            srcPt[0] = pt.x;
-            srcPt[1] = pt.y;
-            invTransform.transform(srcPt, 0, dstPt, 0, 1);
-            Coordinate psrc = new Coordinate(dstPt[0], dstPt[1]);
+            locations[i++] = pt.x;
+            locations[i++] = pt.y;
+        }
+        invTransform.transform(locations, 0, locations, 0, stackedPts.size());
+
+        i = 0;
+        for (StackedPoint sp : stackedPts) {
+            // create feature for stacked point
+            Coordinate psrc = new Coordinate(locations[i], locations[i + 1]);
+            i += 2;
 
             Geometry point = factory.createPoint(psrc);
             fb.add(point);
@@ -225,7 +241,9 @@ public class OskariPointStackerProcess implements GSProcess {
 
     /**
      * Computes the stacked points for the given data collection.
-     * All geometry types are handled - for non-point geometries, the centroid is used.
+     * Points are read in batches which are transformed and gridded by worker threads, each
+     * accumulating to a grid of its own. The grids are merged when all features have been read.
+     * If the workers are busy, the reading thread processes the batch itself.
      * 
      * @param data
      * @param cellSize
@@ -238,81 +256,74 @@ public class OskariPointStackerProcess implements GSProcess {
             MathTransform crsTransform, 
             double cellSize, double minX, double minY) throws TransformException {
         SimpleFeatureIterator featureIt = data.features();
-
-        Map<Coordinate, StackedPoint> stackedPts = new HashMap<Coordinate, StackedPoint>();
-
-        double[] srcPt = new double[2];
-        double[] dstPt = new double[2];
-
-        Coordinate indexPt = new Coordinate();
+        PointGridder gridder = new PointGridder(crsTransform, cellSize);
+        boolean finished = false;
         try {
+            long seq = 0;
+            PointBatch batch = new PointBatch(seq);
             while (featureIt.hasNext()) {
                 SimpleFeature feature = featureIt.next();
                 // get the point location from the geometry
                 Geometry geom = (Geometry) feature.getDefaultGeometry();
 
                 // Lines and polygons are not included
-                if (!(geom.getGeometryType().equals("Point"))&&!(geom.getGeometryType().equals("MultiPoint"))) {
+                if (geom == null || !(geom.getGeometryType().equals("Point"))&&!(geom.getGeometryType().equals("MultiPoint"))) {
                     continue;
                 }
 
                 Coordinate[] ps = getRepresentativePoints(geom);
 
                 for (int j=0; j<ps.length; j++) {
-                    Coordinate p = ps[j];
-                    // reproject data point to output CRS, if required
-                    srcPt[0] = p.x;
-                    srcPt[1] = p.y;
-                    crsTransform.transform(srcPt, 0, dstPt, 0, 1);
-                    Coordinate pout = new Coordinate(dstPt[0], dstPt[1]);
-
-                    indexPt.x = pout.x;
-                    indexPt.y = pout.y;
-                    gridIndex(indexPt, cellSize);
-
-                    StackedPoint stkPt = stackedPts.get(indexPt);
-                    if (stkPt == null) {
-
-                        double centreX = indexPt.x * cellSize + cellSize / 2;
-                        double centreY = indexPt.y * cellSize + cellSize / 2;
-
-                        stkPt = new StackedPoint(indexPt, new Coordinate(centreX, centreY));
-                        if (feature.getAttribute("name") != null) {
-                            stkPt.setName(String.valueOf(feature.getAttribute("name")));
-                        } else {
-                            stkPt.setName("");
-                        }
-                        if (feature.getAttribute("attention_text") != null) {
-                            stkPt.setAttention_text(String.valueOf(feature.getAttribute("attention_text")));
-                        } else {
-                            stkPt.setAttention_text("");
-                        }
-                        stkPt.setGeometryType(geom.getGeometryType());
-                        stkPt.setStroke_width(Integer.valueOf(String.valueOf(feature.getAttribute("stroke_width"))));
-                        stkPt.setStroke_color(String.valueOf(feature.getAttribute("stroke_color")));
-                        stkPt.setFill_color(String.valueOf(feature.getAttribute("fill_color")));
-                        stkPt.setDot_color(String.valueOf(feature.getAttribute("dot_color")));
-                        stkPt.setDot_size(Integer.valueOf(String.valueOf(feature.getAttribute("dot_size"))));
-                        stkPt.setDot_shape(String.valueOf(feature.getAttribute("dot_shape")));
-                        stkPt.setBorder_width(Integer.valueOf(String.valueOf(feature.getAttribute("border_width"))));
-                        stkPt.setBorder_color(String.valueOf(feature.getAttribute("border_color")));
-                        stkPt.setFill_pattern(Integer.valueOf(String.valueOf(feature.getAttribute("fill_pattern"))));
-                        stkPt.setStroke_linejoin(String.valueOf(feature.getAttribute("stroke_linejoin")));
-                        stkPt.setStroke_linecap(String.valueOf(feature.getAttribute("stroke_linecap")));
-                        stkPt.setStroke_dasharray(String.valueOf(feature.getAttribute("stroke_dasharray")));
-                        stkPt.setBorder_linejoin(String.valueOf(feature.getAttribute("border_linejoin")));
-                        stkPt.setBorder_dasharray(String.valueOf(feature.getAttribute("border_dasharray")));
-
-                        stackedPts.put(stkPt.getKey(), stkPt);
+                    if (batch.add(ps[j].x, ps[j].y, feature)) {
+                        gridder.submit(batch);
+                        seq += batch.size;
+                        batch = new PointBatch(seq);
                     }
-                    stkPt.add(pout);
                 }
             }
-
+            if (batch.size > 0) {
+                gridder.submit(batch);
+            }
+            Collection<StackedPoint> stackedPts = gridder.finish();
+            finished = true;
+            return stackedPts;
         } finally {
             featureIt.close();
+            if (!finished) {
+                gridder.abort();
+            }
+        }
+    }
+
+    /**
+     * Reprojects the points of the batch to output CRS with one transform call and adds them
+     * to the grid.
+     */
+    private static void accumulate(PointBatch batch, MathTransform crsTransform, double cellSize,
+                                   GridCellMap cells) throws TransformException {
+        double[] coords = batch.coords;
+        crsTransform.transform(coords, 0, coords, 0, batch.size);
+        for (int i = 0; i < batch.size; i++) {
+            double x = coords[2 * i];
+            double y = coords[2 * i + 1];
+            long ix = gridIndex(x, cellSize);
+            long iy = gridIndex(y, cellSize);
+
+            StackedPoint stkPt = cells.get(ix, iy);
+            if (stkPt == null) {
+
+                double centreX = ix * cellSize + cellSize / 2;
+                double centreY = iy * cellSize + cellSize / 2;
+
+                stkPt = new StackedPoint(ix, iy, new Coordinate(centreX, centreY), batch.firstSeq + i);
+                stkPt.setAttributes(batch.features[i]);
+                cells.put(stkPt);
+            } else {
+                // batches drained from the queue aren't always gridded in read order
+                stkPt.useEarlier(batch.firstSeq + i, batch.features[i]);
+            }
+            stkPt.add(x, y);
         }
-        return stackedPts.values();
     }
 
     /**
@@ -355,12 +366,13 @@ public class OskariPointStackerProcess implements GSProcess {
     }
 
     /**
-     * Computes the grid index for a point for the grid determined by the cellsize.
+     * Computes the grid index for an ordinate for the grid determined by the cellsize.
      * 
-     * @param griddedPt the point to grid, and also holds the output value
+     * @param ordinate the ordinate to grid
      * @param cellSize the grid cell size
+     * @return grid index
      */
-    private void gridIndex(Coordinate griddedPt, double cellSize) {
+    private static long gridIndex(double ordinate, double cellSize) {
         
         // TODO: is there any situation where this could result in too much loss of precision?  
         /**
@@ -373,11 +385,7 @@ public class OskariPointStackerProcess implements GSProcess {
          * The worst case tested is a map in degrees, zoomed out to show about twice the globe - works fine.
          */
         // Use longs to avoid possible overflow issues (e.g. for a very small cell size)
-        long ix = (long) ((griddedPt.x) / cellSize);
-        long iy = (long) ((griddedPt.y) / cellSize);
-        
-        griddedPt.x = ix;
-        griddedPt.y = iy;
+        return (long) (ordinate / cellSize);
     }
 
     private SimpleFeatureType createType(CoordinateReferenceSystem crs, boolean stretch) {
@@ -411,11 +419,229 @@ public class OskariPointStackerProcess implements GSProcess {
         return sfType;
     }
 
+    /**
+     * Points read from the features, x and y ordinates packed to one array so they can be
+     * transformed with one call.
+     */
+    private static class PointBatch {
+        final double[] coords = new double[BATCH_SIZE * 2];
+        final SimpleFeature[] features = new SimpleFeature[BATCH_SIZE];
+        // running number of the first point in the batch
+        final long firstSeq;
+        int size = 0;
+
+        PointBatch(long firstSeq) {
+            this.firstSeq = firstSeq;
+        }
+
+        /**
+         * @return true if the batch is full
+         */
+        boolean add(double x, double y, SimpleFeature feature) {
+            coords[2 * size] = x;
+            coords[2 * size + 1] = y;
+            features[size] = feature;
+            size++;
+            return size == BATCH_SIZE;
+        }
+    }
+
+    /**
+     * Distributes point batches to worker threads. Workers are started when the first full
+     * batch is submitted so small collections are handled by the calling thread only.
+     * When all batches have been submitted each started worker is sent an end of input batch
+     * after which it returns its grid.
+     */
+    private static class PointGridder {
+        // queued after the last batch, once for each worker
+        private static final PointBatch END_OF_INPUT = new PointBatch(-1);
+
+        private final MathTransform crsTransform;
+        private final double cellSize;
+        private final BlockingQueue<PointBatch> queue = new ArrayBlockingQueue<PointBatch>(THREADS * 2);
+        private final List<Worker> workers = new ArrayList<Worker>(THREADS);
+        private final GridCellMap callerCells = new GridCellMap();
+
+        PointGridder(MathTransform crsTransform, double cellSize) {
+            this.crsTransform = crsTransform;
+            this.cellSize = cellSize;
+        }
+
+        void submit(PointBatch batch) throws TransformException {
+            if (workers.isEmpty() && batch.size == BATCH_SIZE) {
+                for (int i = 0; i < THREADS; i++) {
+                    Worker worker = new Worker();
+                    worker.future = EXECUTOR.submit(worker);
+                    workers.add(worker);
+                }
+            }
+            if (workers.isEmpty() || !queue.offer(batch)) {
+                // workers are busy, process in the calling thread
+                accumulate(batch, crsTransform, cellSize, callerCells);
+            }
+        }
+
+        /**
+         * Waits for the workers to finish and merges their grids.
+         */
+        Collection<StackedPoint> finish() throws TransformException {
+            PointBatch batch;
+            while ((batch = queue.poll()) != null) {
+                accumulate(batch, crsTransform, cellSize, callerCells);
+            }
+            List<Worker> started = new ArrayList<Worker>(workers.size());
+            try {
+                for (Worker worker : workers) {
+                    if (worker.start()) {
+                        // didn't get a thread before all the batches were processed, it won't run now
+                        continue;
+                    }
+                    started.add(worker);
+                    queue.put(END_OF_INPUT);
+                }
+                for (Worker worker : started) {
+                    callerCells.merge(worker.future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof TransformException) {
+                    throw (TransformException) e.getCause();
+                }
+                throw new ProcessException(e.getCause());
+            }
+            return callerCells.values();
+        }
+
+        void abort() {
+            for (Worker worker : workers) {
+                if (!worker.start()) {
+                    worker.future.cancel(true);
+                }
+            }
+            queue.clear();
+        }
+
+        /**
+         * Grids batches from the queue until the end of input.
+         */
+        private class Worker implements Callable<GridCellMap> {
+            private final AtomicBoolean started = new AtomicBoolean(false);
+            private Future<GridCellMap> future;
+
+            /**
+             * Marks the worker started, by the worker thread itself or by the gridder to prevent
+             * a worker that hasn't been run yet from running at all.
+             * @return true if the worker wasn't started before
+             */
+            boolean start() {
+                return started.compareAndSet(false, true);
+            }
+
+            public GridCellMap call() throws Exception {
+                if (!start()) {
+                    return null;
+                }
+                GridCellMap cells = new GridCellMap();
+                PointBatch next;
+                while ((next = queue.take()) != END_OF_INPUT) {
+                    accumulate(next, crsTransform, cellSize, cells);
+                }
+                return cells;
+            }
+        }
+    }
+
+    /**
+     * Open addressing hash map of grid cells keyed by the grid indexes so no key objects
+     * need to be created for the points.
+     */
+    private static class GridCellMap {
+        private StackedPoint[] cells = new StackedPoint[64];
+        private int size = 0;
+
+        private static int hash(long ix, long iy) {
+            long h = ix * 0x9E3779B97F4A7C15L + iy;
+            h ^= (h >>> 32);
+            return (int) (h ^ (h >>> 16));
+        }
+
+        StackedPoint get(long ix, long iy) {
+            int mask = cells.length - 1;
+            int i = hash(ix, iy) & mask;
+            while (cells[i] != null) {
+                if (cells[i].ix == ix && cells[i].iy == iy) {
+                    return cells[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        /**
+         * Adds a cell that is not yet in the map
+         */
+        void put(StackedPoint cell) {
+            if ((size + 1) * 2 > cells.length) {
+                StackedPoint[] old = cells;
+                cells = new StackedPoint[old.length * 2];
+                for (int i = 0; i < old.length; i++) {
+                    if (old[i] != null) {
+                        insert(old[i]);
+                    }
+                }
+            }
+            insert(cell);
+            size++;
+        }
+
+        private void insert(StackedPoint cell) {
+            int mask = cells.length - 1;
+            int i = hash(cell.ix, cell.iy) & mask;
+            while (cells[i] != null) {
+                i = (i + 1) & mask;
+            }
+            cells[i] = cell;
+        }
+
+        void merge(GridCellMap other) {
+            for (StackedPoint cell : other.cells) {
+                if (cell == null) {
+                    continue;
+                }
+                StackedPoint existing = get(cell.ix, cell.iy);
+                if (existing == null) {
+                    put(cell);
+                } else {
+                    existing.merge(cell);
+                }
+            }
+        }
+
+        Collection<StackedPoint> values() {
+            List<StackedPoint> values = new ArrayList<StackedPoint>(size);
+            for (StackedPoint cell : cells) {
+                if (cell != null) {
+                    values.add(cell);
+                }
+            }
+            return values;
+        }
+    }
+
     private static class StackedPoint {
-        private Coordinate key;
+        private final long ix;
+        private final long iy;
+        // lowest running number of the points in the cell, attributes are taken from its feature
+        // so they come from the first point in read order
+        private long seq;
         private Coordinate centerPt;
         private Coordinate location = null;
         private int count = 0;
+        // first point, uniquePts is only created when there is another location in the cell
+        private double firstX;
+        private double firstY;
         private Set<Coordinate> uniquePts;
         private String name;
         private String attention_text;
@@ -441,16 +667,78 @@ public class OskariPointStackerProcess implements GSProcess {
          * so that it may be used as or influence the
          * location of the final display point
          * 
-         * @param key a key for the grid cell (using integer ordinates to avoid precision issues)
+         * @param ix grid index for x
+         * @param iy grid index for y
          * @param centerPt the center point of the grid cell 
+         * @param seq running number of the first point in the cell
          */
-        public StackedPoint(Coordinate key, Coordinate centerPt) {
-            this.key = new Coordinate(key);
+        public StackedPoint(long ix, long iy, Coordinate centerPt, long seq) {
+            this.ix = ix;
+            this.iy = iy;
             this.centerPt = centerPt;
+            this.seq = seq;
+        }
+
+        public void setAttributes(SimpleFeature feature) {
+            if (feature.getAttribute("name") != null) {
+                setName(String.valueOf(feature.getAttribute("name")));
+            } else {
+                setName("");
+            }
+            if (feature.getAttribute("attention_text") != null) {
+                setAttention_text(String.valueOf(feature.getAttribute("attention_text")));
+            } else {
+                setAttention_text("");
+            }
+            setGeometryType(((Geometry) feature.getDefaultGeometry()).getGeometryType());
+            setStroke_width(Integer.valueOf(String.valueOf(feature.getAttribute("stroke_width"))));
+            setStroke_color(String.valueOf(feature.getAttribute("stroke_color")));
+            setFill_color(String.valueOf(feature.getAttribute("fill_color")));
+            setDot_color(String.valueOf(feature.getAttribute("dot_color")));
+            setDot_size(Integer.valueOf(String.valueOf(feature.getAttribute("dot_size"))));
+            setDot_shape(String.valueOf(feature.getAttribute("dot_shape")));
+            setBorder_width(Integer.valueOf(String.valueOf(feature.getAttribute("border_width"))));
+            setBorder_color(String.valueOf(feature.getAttribute("border_color")));
+            setFill_pattern(Integer.valueOf(String.valueOf(feature.getAttribute("fill_pattern"))));
+            setStroke_linejoin(String.valueOf(feature.getAttribute("stroke_linejoin")));
+            setStroke_linecap(String.valueOf(feature.getAttribute("stroke_linecap")));
+            setStroke_dasharray(String.valueOf(feature.getAttribute("stroke_dasharray")));
+            setBorder_linejoin(String.valueOf(feature.getAttribute("border_linejoin")));
+            setBorder_dasharray(String.valueOf(feature.getAttribute("border_dasharray")));
+        }
+
+        /**
+         * Takes the attributes from the feature if the point was read before the point the
+         * attributes are currently from.
+         * @param pointSeq running number of the point
+         * @param feature feature of the point
+         */
+        public void useEarlier(long pointSeq, SimpleFeature feature) {
+            if (pointSeq < seq) {
+                seq = pointSeq;
+                setAttributes(feature);
+            }
         }
 
-        public Coordinate getKey() {
-            return key;
+        private void copyAttributes(StackedPoint other) {
+            seq = other.seq;
+            name = other.name;
+            attention_text = other.attention_text;
+            geometryType = other.geometryType;
+            stroke_width = other.stroke_width;
+            stroke_color = other.stroke_color;
+            fill_color = other.fill_color;
+            dot_color = other.dot_color;
+            dot_size = other.dot_size;
+            dot_shape = other.dot_shape;
+            border_width = other.border_width;
+            border_color = other.border_color;
+            fill_pattern = other.fill_pattern;
+            stroke_linejoin = other.stroke_linejoin;
+            stroke_linecap = other.stroke_linecap;
+            stroke_dasharray = other.stroke_dasharray;
+            border_linejoin = other.border_linejoin;
+            border_dasharray = other.border_dasharray;
         }
 
         public Coordinate getLocation() {
@@ -603,19 +891,52 @@ public class OskariPointStackerProcess implements GSProcess {
             this.name = name;
         }
 
-        public void add(Coordinate pt) {
+        public void add(double x, double y) {
             count++;
+            if (count == 1) {
+                firstX = x;
+                firstY = y;
+            } else {
+                addUnique(x, y);
+            }
+            pickNearestLocation(x, y);
+            //pickCenterLocation(pt);
+        }
+
+        private void addUnique(double x, double y) {
             /**
-             * Only create set if this is the second point seen
-             * (and assum the first pt is in location)
+             * Only create set if there is a second location in the cell
              */
             if (uniquePts == null) {
+                if (x == firstX && y == firstY) {
+                    return;
+                }
                 uniquePts = new HashSet<Coordinate>();
+                uniquePts.add(new Coordinate(firstX, firstY));
             }
-            uniquePts.add(pt);
+            uniquePts.add(new Coordinate(x, y));
+        }
 
-            pickNearestLocation(pt);
-            //pickCenterLocation(pt);
+        /**
+         * Merges a cell with the same grid index that was computed by another thread
+         * @param other
+         */
+        public void merge(StackedPoint other) {
+            if (other.seq < seq) {
+                copyAttributes(other);
+            }
+            count += other.count;
+            if (other.uniquePts == null) {
+                addUnique(other.firstX, other.firstY);
+            } else {
+                for (Coordinate pt : other.uniquePts) {
+                    addUnique(pt.x, pt.y);
+                }
+            }
+            if (location == null || (other.location != null
+                    && other.location.distance(centerPt) < location.distance(centerPt))) {
+                location = other.location;
+            }
         }
         
         /**
@@ -624,8 +945,8 @@ public class OskariPointStackerProcess implements GSProcess {
          * @return
          */
         public Coordinate getOriginalLocation() {
-            if(uniquePts != null && uniquePts.size() == 1) {
-                return uniquePts.iterator().next();
+            if(count > 0 && uniquePts == null) {
+                return new Coordinate(firstX, firstY);
             } else {
                 return null;
             }
@@ -639,14 +960,16 @@ public class OskariPointStackerProcess implements GSProcess {
          * 
          * @param pt
          */
-        private void pickNearestLocation(Coordinate pt) {
+        private void pickNearestLocation(double x, double y) {
             // strategy - pick most central point
             if (location == null) {
-                location = average(centerPt, pt);
+                location = average(centerPt, x, y);
                 return;
             }
-            if (pt.distance(centerPt) < location.distance(centerPt)) {
-                location = average(centerPt, pt);
+            double dx = x - centerPt.x;
+            double dy = y - centerPt.y;
+            if (Math.sqrt(dx * dx + dy * dy) < location.distance(centerPt)) {
+                location = average(centerPt, x, y);
             }
         }
         
@@ -679,10 +1002,10 @@ public class OskariPointStackerProcess implements GSProcess {
             }
         }
 
-        private static Coordinate average(Coordinate p1, Coordinate p2)
+        private static Coordinate average(Coordinate p1, double x2, double y2)
         {
-            double x = (p1.x + p2.x) / 2;
-            double y = (p1.y + p2.y) / 2;
+            double x = (p1.x + x2) / 2;
+            double y = (p1.y + y2) / 2;
             return new Coordinate(x, y);
         }
     }
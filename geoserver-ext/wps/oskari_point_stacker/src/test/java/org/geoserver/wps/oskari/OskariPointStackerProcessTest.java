@@ -0,0 +1,72 @@
+package org.geoserver.wps.oskari;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import static org.junit.Assert.assertEquals;
+
+public class OskariPointStackerProcessTest {
+
+    @Test
+    public void testAllPointsAreCounted() throws Exception {
+        // several batches of points so the worker threads are used
+        final int pointCount = 50000;
+        SimpleFeatureCollection data = createPoints(pointCount);
+        ReferencedEnvelope bbox = new ReferencedEnvelope(0, 100, 0, 100, DefaultGeographicCRS.WGS84);
+
+        SimpleFeatureCollection result = new OskariPointStackerProcess().execute(data, 10, false,
+                OskariPointStackerProcess.PreserveLocation.Never, bbox, 100, 100, null);
+
+        int count = 0;
+        int cells = 0;
+        SimpleFeatureIterator it = result.features();
+        try {
+            while (it.hasNext()) {
+                count += (Integer) it.next().getAttribute(OskariPointStackerProcess.ATTR_COUNT);
+                cells++;
+            }
+        } finally {
+            it.close();
+        }
+        assertEquals("Stacked point counts should add up to the input size", pointCount, count);
+        assertEquals("Should have a stacked point for each grid cell", 100, cells);
+    }
+
+    private SimpleFeatureCollection createPoints(int count) {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("points");
+        tb.setCRS(DefaultGeographicCRS.WGS84);
+        tb.add("geom", Point.class);
+        tb.add("stroke_width", Integer.class);
+        tb.add("dot_size", Integer.class);
+        tb.add("border_width", Integer.class);
+        tb.add("fill_pattern", Integer.class);
+        SimpleFeatureType type = tb.buildFeatureType();
+
+        ListFeatureCollection points = new ListFeatureCollection(type);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        GeometryFactory factory = new GeometryFactory();
+        for (int i = 0; i < count; i++) {
+            // spread the points evenly over the 10x10 grid
+            fb.add(factory.createPoint(new Coordinate(i % 100 + 0.5, (i / 100) % 100 + 0.5)));
+            fb.add(1);
+            fb.add(1);
+            fb.add(1);
+            fb.add(-1);
+            SimpleFeature feature = fb.buildFeature(null);
+            points.add(feature);
+        }
+        return points;
+    }
+}
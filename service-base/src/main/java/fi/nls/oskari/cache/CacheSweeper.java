@@ -0,0 +1,131 @@
+package fi.nls.oskari.cache;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+import redis.clients.jedis.ScanResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes cache entries of invalidated CacheTags generations in the background. Keys are walked
+ * with SCAN in small batches so the Redis server isn't blocked. Only one node sweeps at a time.
+ * The interval can be configured in oskari-ext.properties:
+ *  cache.sweep.interval.minutes=60
+ */
+public class CacheSweeper {
+
+    private static final Logger log = LogFactory.getLogger(CacheSweeper.class);
+
+    private static final String LOCK_KEY = "CacheSweeper_lock";
+    private static final int SCAN_COUNT = 500;
+
+    private static final Set<String> prefixes = new CopyOnWriteArraySet<String>();
+    private static ScheduledExecutorService executor;
+
+    private CacheSweeper() {}
+
+    /**
+     * Registers keys starting with the prefix for sweeping and starts the sweeper if it's not running.
+     *
+     * @param prefix common prefix of the tags, for example "WFSImage_"
+     */
+    public static synchronized void register(final String prefix) {
+        prefixes.add(prefix);
+        if (executor != null) {
+            return;
+        }
+        final int interval = PropertyUtil.getOptional("cache.sweep.interval.minutes", 60);
+        if (interval <= 0) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CacheSweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                // lock expires before the next run so a crashed node doesn't stop sweeping
+                if (!JedisManager.setnx(LOCK_KEY, "sweeping", Math.max(1, interval * 60 - 10))) {
+                    return;
+                }
+                for (String prefix : prefixes) {
+                    try {
+                        sweep(prefix);
+                    } catch (Exception e) {
+                        log.warn(e, "Sweeping", prefix, "failed");
+                    }
+                }
+            }
+        }, interval, interval, TimeUnit.MINUTES);
+    }
+
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Deletes keys with the prefix that belong to an older generation than the current one of their tag.
+     *
+     * @param prefix
+     * @return amount of deleted keys
+     */
+    public static long sweep(final String prefix) {
+        final Map<String, Long> generations = new HashMap<String, Long>();
+        long deleted = 0;
+        String cursor = JedisManager.SCAN_START;
+        do {
+            final ScanResult<String> result = JedisManager.scan(cursor, prefix + "*", SCAN_COUNT);
+            if (result == null) {
+                break;
+            }
+            final List<String> stale = new ArrayList<String>();
+            for (String key : result.getResult()) {
+                if (isStale(key, prefix, generations)) {
+                    stale.add(key);
+                }
+            }
+            if (!stale.isEmpty()) {
+                Long count = JedisManager.del(stale.toArray(new String[stale.size()]));
+                if (count != null) {
+                    deleted += count;
+                }
+            }
+            cursor = result.getStringCursor();
+        } while (!JedisManager.SCAN_START.equals(cursor));
+        log.info("Swept", deleted, "stale keys with prefix", prefix);
+        return deleted;
+    }
+
+    private static boolean isStale(final String key, final String prefix, final Map<String, Long> generations) {
+        final String tag = CacheTags.parseTag(key, prefix);
+        if (tag == null) {
+            return false;
+        }
+        final long generation = CacheTags.parseGeneration(key, tag);
+        if (generation < 0) {
+            return false;
+        }
+        Long current = generations.get(tag);
+        if (current == null) {
+            current = CacheTags.getGeneration(tag);
+            generations.put(tag, current);
+        }
+        return generation < current;
+    }
+}
@@ -0,0 +1,109 @@
+package fi.nls.oskari.cache;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.ConversionHelper;
+
+/**
+ * Invalidation of Redis cache entries by tag without walking the keyspace. Each tag has a
+ * generation counter that is embedded in the keys of the entries under the tag:
+ *
+ *   [tag]@[generation][suffix]
+ *
+ * Invalidating a tag sets the generation to the current time in milliseconds (or the previous
+ * generation + 1 if the clock is behind it) so the old entries are no longer referenced.
+ * They are removed when they expire or by CacheSweeper.
+ *
+ * The generation key expires so a tag that is no longer used doesn't leave keys behind.
+ * After it has expired the generation reads as 0 but the next invalidation still sets a
+ * generation newer than any used before, so entries that outlived the key aren't brought back.
+ */
+public class CacheTags {
+
+    private static final Logger log = LogFactory.getLogger(CacheTags.class);
+
+    public static final String GENERATION_KEY = "CacheGeneration_";
+    public static final char GENERATION_SEPARATOR = '@';
+
+    private CacheTags() {}
+
+    /**
+     * @param tag for example key prefix + layer id
+     * @param suffix rest of the key
+     * @return key for an entry under the current generation of the tag
+     */
+    public static String getKey(final String tag, final String suffix) {
+        return getKey(tag, getGeneration(tag), suffix);
+    }
+
+    static String getKey(final String tag, final long generation, final String suffix) {
+        return tag + GENERATION_SEPARATOR + generation + suffix;
+    }
+
+    /**
+     * @param tag
+     * @return current generation of the tag, 0 if the tag hasn't been invalidated
+     */
+    public static long getGeneration(final String tag) {
+        return ConversionHelper.getLong(JedisManager.get(GENERATION_KEY + tag), 0);
+    }
+
+    /**
+     * Invalidates all entries under the tag.
+     *
+     * @param tag
+     * @param expirySeconds expiry of the generation key
+     * @return new generation or null if Redis isn't available
+     */
+    public static Long invalidate(final String tag, final int expirySeconds) {
+        final long generation = nextGeneration(getGeneration(tag), System.currentTimeMillis());
+        if (JedisManager.setex(GENERATION_KEY + tag, expirySeconds, Long.toString(generation)) == null) {
+            log.warn("Couldn't invalidate cache tag", tag);
+            return null;
+        }
+        log.debug("Invalidated cache tag", tag, "generation is now", generation);
+        return generation;
+    }
+
+    /**
+     * @param current current generation of the tag
+     * @param now current time in milliseconds
+     * @return generation after invalidating the tag
+     */
+    static long nextGeneration(final long current, final long now) {
+        return Math.max(now, current + 1);
+    }
+
+    /**
+     * @param key key created with getKey()
+     * @param prefix the tag of the key starts with this
+     * @return tag of the key or null if the key wasn't created with getKey()
+     */
+    static String parseTag(final String key, final String prefix) {
+        if (!key.startsWith(prefix)) {
+            return null;
+        }
+        final int index = key.indexOf(GENERATION_SEPARATOR, prefix.length());
+        if (index == -1) {
+            return null;
+        }
+        return key.substring(0, index);
+    }
+
+    /**
+     * @param key key created with getKey()
+     * @param tag tag of the key
+     * @return generation of the key or -1 if the key wasn't created with getKey()
+     */
+    static long parseGeneration(final String key, final String tag) {
+        int start = tag.length() + 1;
+        int end = start;
+        while (end < key.length() && Character.isDigit(key.charAt(end))) {
+            end++;
+        }
+        if (end == start) {
+            return -1;
+        }
+        return ConversionHelper.getLong(key.substring(start, end), -1);
+    }
+}
@@ -5,9 +5,16 @@ import fi.nls.oskari.log.Logger;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Transaction;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -23,6 +30,11 @@ public class JedisManager {
 
     public static final int EXPIRY_TIME_DAY = 86400;
 
+    public static final String SCAN_START = ScanParams.SCAN_POINTER_START;
+    private static final int SCAN_COUNT = 1000;
+    private static final String SCRIPT_DEL_IF_EQUALS =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
     /**
      * Blocking construction of instances from other classes by making constructor private
      */
@@ -195,7 +207,93 @@ public class JedisManager {
     }
 
     /**
-     * Thread-safe KEYS
+     * Thread-safe SET with NX and EX options for Redis. The value is only set if the key doesn't exist
+     * so this can be used as a simple lock between nodes.
+     *
+     * @param key
+     * @param value
+     * @param seconds expiry time for the key
+     * @return true if the value was set, false if the key already existed or the operation failed
+     */
+    public static boolean setnx(String key, String value, int seconds) {
+        Jedis jedis = instance.getJedis();
+        if(jedis == null) return false;
+
+        try {
+            return "OK".equals(jedis.set(key, value, "NX", "EX", seconds));
+        } catch(JedisConnectionException e) {
+            log.error("Failed to set", key, "returning broken connection...");
+            pool.returnBrokenResource(jedis);
+            log.error("Broken connection closed");
+            return false;
+        } catch (Exception e) {
+            log.error("Setting", key, "to Redis failed:", e.getMessage());
+            return false;
+        } finally {
+            instance.returnJedis(jedis);
+        }
+    }
+
+    /**
+     * Thread-safe compare and delete for Redis. The key is deleted only if it still has the given value
+     * so a lock created with setnx() isn't released by anyone else than the owner.
+     *
+     * @param key
+     * @param value expected value of the key
+     * @return true if the key was deleted
+     */
+    public static boolean delIfEquals(String key, String value) {
+        Jedis jedis = instance.getJedis();
+        if(jedis == null) return false;
+
+        try {
+            final Object deleted = jedis.eval(SCRIPT_DEL_IF_EQUALS,
+                    Collections.singletonList(key), Collections.singletonList(value));
+            return Long.valueOf(1).equals(deleted);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to delete", key, "returning broken connection...");
+            pool.returnBrokenResource(jedis);
+            log.error("Broken connection closed");
+            return false;
+        } catch (Exception e) {
+            log.error("Deleting", key, "failed:", e.getMessage());
+            return false;
+        } finally {
+            instance.returnJedis(jedis);
+        }
+    }
+
+    /**
+     * Thread-safe SCAN. Returns one batch of keys matching the pattern, iteration is complete
+     * when the returned cursor is SCAN_START. Unlike KEYS this doesn't block the Redis server
+     * while the keyspace is walked.
+     *
+     * @param cursor SCAN_START or the cursor of the previous result
+     * @param pattern pattern for MATCH
+     * @param count hint for the amount of keys walked
+     * @return scan result or null if the scan failed
+     */
+    public static ScanResult<String> scan(String cursor, String pattern, int count) {
+        Jedis jedis = instance.getJedis();
+        if(jedis == null) return null;
+
+        try {
+            return jedis.scan(cursor, new ScanParams().match(pattern).count(count));
+        } catch(JedisConnectionException e) {
+            log.error("Failed to run SCAN", pattern + " returning broken connection...");
+            pool.returnBrokenResource(jedis);
+            log.error("Broken connection closed");
+            return null;
+        } catch (Exception e) {
+            log.error("Running SCAN", pattern + "on Redis failed:", e.getMessage());
+            return null;
+        } finally {
+            instance.returnJedis(jedis);
+        }
+    }
+
+    /**
+     * Thread-safe KEYS. Uses SCAN so the Redis server isn't blocked while the keyspace is walked.
      *
      * @param pattern
      * @return keys
@@ -205,7 +303,15 @@ public class JedisManager {
         if(jedis == null) return Collections.emptySet();
 
         try {
-            return jedis.keys(pattern + "*");
+            final Set<String> keys = new HashSet<String>();
+            final ScanParams params = new ScanParams().match(pattern + "*").count(SCAN_COUNT);
+            String cursor = SCAN_START;
+            do {
+                ScanResult<String> result = jedis.scan(cursor, params);
+                keys.addAll(result.getResult());
+                cursor = result.getStringCursor();
+            } while (!SCAN_START.equals(cursor));
+            return keys;
         } catch(JedisConnectionException e) {
             log.error("Failed to run KEYS", pattern + " returning broken connection...");
             pool.returnBrokenResource(jedis);
@@ -296,6 +402,72 @@ public class JedisManager {
         }
     }
 
+    /**
+     * Thread-safe byte[] HGETALL for Redis
+     *
+     * @param key
+     * @return map of fields and values, empty if the key doesn't exist
+     */
+    public static Map<byte[], byte[]> hgetAll(byte[] key) {
+        Jedis jedis = instance.getJedis();
+        if(jedis == null) return null;
+
+        try {
+            return jedis.hgetAll(key);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to hgetAll", key, "returning broken connection...");
+            pool.returnBrokenResource(jedis);
+            log.error("Broken connection closed");
+            return null;
+        } catch (Exception e) {
+            log.error("Getting HGETALL", key, "on Redis failed:", e.getMessage());
+            return null;
+        } finally {
+            instance.returnJedis(jedis);
+        }
+    }
+
+    /**
+     * Thread-safe partial update of a byte[] hash for Redis. Sets and removes the given fields,
+     * increments the counter field and refreshes the expiry in a single transaction.
+     *
+     * @param key
+     * @param fields fields to set, may be empty
+     * @param removed fields to remove, may be empty
+     * @param counter field to increment
+     * @param seconds expiry for the key
+     * @return counter value after the update or null if the update failed
+     */
+    public static Long hupdate(byte[] key, Map<byte[], byte[]> fields, List<byte[]> removed,
+                               byte[] counter, int seconds) {
+        Jedis jedis = instance.getJedis();
+        if(jedis == null) return null;
+
+        try {
+            Transaction transaction = jedis.multi();
+            if(!fields.isEmpty()) {
+                transaction.hmset(key, fields);
+            }
+            if(!removed.isEmpty()) {
+                transaction.hdel(key, removed.toArray(new byte[removed.size()][]));
+            }
+            Response<Long> value = transaction.hincrBy(key, counter, 1);
+            transaction.expire(key, seconds);
+            transaction.exec();
+            return value.get();
+        } catch(JedisConnectionException e) {
+            log.error("Failed to update hash", key, "returning broken connection...");
+            pool.returnBrokenResource(jedis);
+            log.error("Broken connection closed");
+            return null;
+        } catch (Exception e) {
+            log.error("Updating hash", key, "on Redis failed:", e.getMessage());
+            return null;
+        } finally {
+            instance.returnJedis(jedis);
+        }
+    }
+
     /**
      * Thread-safe Long DEL for Redis
      *
@@ -322,7 +494,9 @@ public class JedisManager {
     }
 
     /**
-     * Thread-safe Long DEL with key set
+     * Thread-safe Long DEL with key set. Keys are scanned and deleted in batches with SCAN
+     * so the Redis server isn't blocked while the keyspace is walked. Prefer CacheTags
+     * for invalidating cache entries on hot paths.
      *
      * @param key
      * @return long
@@ -332,11 +506,18 @@ public class JedisManager {
         if(jedis == null) return null;
 
         try {
-            Set<String> keys = jedis.keys(key + "*");
-            if(keys.size() > 0) {
-                return jedis.del(keys.toArray(new String[keys.size()]));
-            }
-            return 0L;
+            long count = 0;
+            final ScanParams params = new ScanParams().match(key + "*").count(SCAN_COUNT);
+            String cursor = SCAN_START;
+            do {
+                ScanResult<String> result = jedis.scan(cursor, params);
+                List<String> keys = result.getResult();
+                if(keys.size() > 0) {
+                    count += jedis.del(keys.toArray(new String[keys.size()]));
+                }
+                cursor = result.getStringCursor();
+            } while (!SCAN_START.equals(cursor));
+            return count;
         } catch(JedisConnectionException e) {
             log.error("Failed to del", key + "* returning broken connection...");
             pool.returnBrokenResource(jedis);
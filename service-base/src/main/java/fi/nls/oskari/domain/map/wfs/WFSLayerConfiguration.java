@@ -23,6 +23,8 @@ public class WFSLayerConfiguration {
             .getLogger(WFSLayerConfiguration.class);
 	public final static String KEY = "WFSLayer_";
     public final static String IMAGE_KEY = "WFSImage_";
+    // transport nodes listen to this channel to drop layer configurations they have cached in memory
+    public final static String LAYER_CHANNEL = "layerConfiguration";
 
     private static final double DEFAULT_TILE_BUFFER = 0.0d;
     private static final String KEY_DEFAULT = "default";
@@ -697,9 +699,20 @@ public class WFSLayerConfiguration {
 	}
 
 	public void destroy() {
-		JedisManager.del(KEY + this.layerId);
+		invalidate(this.layerId);
 	}
 
+    /**
+     * Removes the layer configuration from redis and notifies transport nodes so they
+     * stop using the configuration they have cached in memory.
+     *
+     * @param layerId
+     */
+    public static void invalidate(final String layerId) {
+        JedisManager.del(KEY + layerId);
+        JedisManager.publish(LAYER_CHANNEL, layerId);
+    }
+
     private String getLayerFriendlyName() {
         if(this.getNameLocales() == null) return "";
         final JSONObject loc = JSONHelper.createJSONObject(this.getNameLocales());
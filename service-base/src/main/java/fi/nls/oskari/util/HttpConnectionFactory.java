@@ -0,0 +1,19 @@
+package fi.nls.oskari.util;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Opens the HTTP connections used by IOHelper. The default implementation uses the JDK
+ * HttpURLConnection. A factory backed by another HTTP client (for example one with HTTP/2 support)
+ * can be configured with the property:
+ *
+ *  oskari.http.connectionFactory=[class name]
+ *
+ * @see IOHelper#setConnectionFactory(HttpConnectionFactory)
+ */
+public interface HttpConnectionFactory {
+
+    HttpURLConnection openConnection(URL url) throws IOException;
+}
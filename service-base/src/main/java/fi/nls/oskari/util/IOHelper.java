@@ -1,5 +1,7 @@
 package fi.nls.oskari.util;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.github.kevinsawicki.http.HttpRequest;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -16,6 +18,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 
 /*
@@ -31,6 +37,7 @@ public class IOHelper {
     public static final String HEADER_USERAGENT = "User-Agent";
     public static final String HEADER_REFERER = "Referer";
     public static final String HEADER_ACCEPT = "Accept";
+    public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
 
     public static final String DEFAULT_CHARSET = "UTF-8";
     public static final String CONTENTTYPE_FORM_URLENCODED = "application/x-www-form-urlencoded";
@@ -43,16 +50,57 @@ public class IOHelper {
     private static int CONNECTION_TIMEOUT_MS = 3000;
     private static int READ_TIMEOUT_MS = 60000;
     private static String MY_DOMAIN = "http://localhost:2373";
+    private static final String MSG_UNAUTHORIZED = "Unauthorized";
 
     private static boolean trustAllCerts = false;
     private static boolean trustAllHosts = false;
 
+    private static final String METRICS_PREFIX = "http.";
+    private static final MetricRegistry METRICS = new MetricRegistry();
+    // 0 = no limit
+    private static int MAX_REQUESTS_PER_HOST = 0;
+    private static final ConcurrentMap<String, Semaphore> HOST_LIMITS = new ConcurrentHashMap<String, Semaphore>();
+
+    private static HttpConnectionFactory connectionFactory = new HttpConnectionFactory() {
+        public HttpURLConnection openConnection(URL url) throws IOException {
+            return (HttpURLConnection) url.openConnection();
+        }
+    };
+
     static {
         CONNECTION_TIMEOUT_MS = PropertyUtil.getOptional("oskari.connection.timeout", CONNECTION_TIMEOUT_MS);
         READ_TIMEOUT_MS = PropertyUtil.getOptional("oskari.read.timeout", READ_TIMEOUT_MS);
         trustAllCerts = "true".equals(PropertyUtil.getOptional("oskari.trustAllCerts"));
         trustAllHosts = "true".equals(PropertyUtil.getOptional("oskari.trustAllHosts"));
         MY_DOMAIN = PropertyUtil.get("oskari.domain", MY_DOMAIN);
+        MAX_REQUESTS_PER_HOST = PropertyUtil.getOptional("oskari.http.host.max", MAX_REQUESTS_PER_HOST);
+        final String factory = PropertyUtil.getOptional("oskari.http.connectionFactory");
+        if (factory != null) {
+            try {
+                connectionFactory = (HttpConnectionFactory) Class.forName(factory).newInstance();
+            } catch (Exception e) {
+                log.error(e, "Couldn't create HTTP connection factory:", factory);
+            }
+        }
+    }
+
+    /**
+     * Replaces the engine used to open HTTP connections. Can also be configured with the property
+     * oskari.http.connectionFactory=[class implementing HttpConnectionFactory]
+     * @param factory
+     */
+    public static void setConnectionFactory(final HttpConnectionFactory factory) {
+        if (factory != null) {
+            connectionFactory = factory;
+        }
+    }
+
+    /**
+     * Timers and error counts per host for the requests made with getURL()
+     * @return
+     */
+    public static MetricRegistry getMetrics() {
+        return METRICS;
     }
 
     public static int getConnectionTimeoutMs() {
@@ -91,10 +139,34 @@ public class IOHelper {
      * @throws IOException
      */
     public static String readString(HttpURLConnection conn, final String charset) throws IOException {
-        if("gzip".equals(conn.getContentEncoding())) {
-            return readString(new GZIPInputStream(conn.getInputStream()), charset);
+        return readString(getInputStream(conn), charset);
+    }
+
+    /**
+     * Returns the response stream of the connection, decompressing it if the response is gzip encoded.
+     * The stream should be read to the end and closed so the connection can be reused.
+     * @param conn
+     * @return
+     * @throws IOException
+     */
+    public static InputStream getInputStream(HttpURLConnection conn) throws IOException {
+        final InputStream in = conn.getInputStream();
+        if("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+            return new GZIPInputStream(in);
         }
-        return readString(conn.getInputStream(), charset);
+        return in;
+    }
+
+    /**
+     * Returns a reader for the response of the connection using given charset
+     * @see #getInputStream(java.net.HttpURLConnection)
+     * @param conn
+     * @param charset
+     * @return
+     * @throws IOException
+     */
+    public static Reader getReader(HttpURLConnection conn, final String charset) throws IOException {
+        return new InputStreamReader(getInputStream(conn), charset == null ? DEFAULT_CHARSET : charset);
     }
 
     /**
@@ -109,27 +181,26 @@ public class IOHelper {
         /*
          * To convert the InputStream to String we use the Reader.read(char[]
          * buffer) method. We iterate until the Reader return -1 which means
-         * there's no more data to read. We use the StringWriter class to
-         * produce the string.
+         * there's no more data to read.
          */
 
         if (is == null) {
             return "";
         }
 
-        final Writer writer = new StringWriter();
-        final char[] buffer = new char[1024];
+        final StringBuilder builder = new StringBuilder(8192);
+        final char[] buffer = new char[8192];
         try {
-            final Reader reader = new BufferedReader(new InputStreamReader(is,
-                    charset == null ? DEFAULT_CHARSET : charset ));
+            final Reader reader = new InputStreamReader(is,
+                    charset == null ? DEFAULT_CHARSET : charset );
             int n;
             while ((n = reader.read(buffer)) != -1) {
-                writer.write(buffer, 0, n);
+                builder.append(buffer, 0, n);
             }
         } finally {
             is.close();
         }
-        return writer.toString();
+        return builder.toString();
     }
 
     /**
@@ -139,10 +210,7 @@ public class IOHelper {
      * @throws IOException
      */
     public static byte[] readBytes(HttpURLConnection conn) throws IOException {
-        if("gzip".equals(conn.getContentEncoding())) {
-            return readBytes(new GZIPInputStream(conn.getInputStream()));
-        }
-        return readBytes(conn.getInputStream());
+        return readBytes(getInputStream(conn));
     }
     /**
      * Reads the given input stream and returns its contents as a byte array.
@@ -210,7 +278,7 @@ public class IOHelper {
             throws IOException {
         log.debug("Opening connection to", pUrl);
         final URL url = new URL(pUrl);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        HttpURLConnection conn = connectionFactory.openConnection(url);
         conn.setConnectTimeout(CONNECTION_TIMEOUT_MS);
         conn.setReadTimeout(READ_TIMEOUT_MS);
         if(trustAllCerts) trustAllCerts(conn);
@@ -381,11 +449,87 @@ public class IOHelper {
                                 final Map<String, String> headers, final String charset) throws IOException {
         try {
             writeHeaders(con, headers);
-            return IOHelper.readString(con.getInputStream(), charset);
+            acceptGzip(con);
+            return readResponse(con, charset);
+        } catch (IOException e) {
+            if (MSG_UNAUTHORIZED.equals(e.getMessage())) {
+                // callers check the message
+                throw e;
+            }
+            throw new IOException(e);
         } catch (Exception e) {
             throw new IOException(e);
         }
     }
+
+    /**
+     * Asks for a gzip encoded response unless the caller has set the encoding. Responses are decoded by
+     * getInputStream()/readString()/readBytes().
+     */
+    private static void acceptGzip(final HttpURLConnection con) {
+        try {
+            if (con.getRequestProperty(HEADER_ACCEPT_ENCODING) == null) {
+                con.setRequestProperty(HEADER_ACCEPT_ENCODING, "gzip");
+            }
+        } catch (IllegalStateException ignored) {
+            // already connected
+        }
+    }
+
+    /**
+     * Reads the response as String while holding a request slot for the host (oskari.http.host.max)
+     * and records the request time and errors for the host.
+     */
+    private static String readResponse(final HttpURLConnection con, final String charset) throws IOException {
+        final String host = con.getURL().getHost();
+        final Semaphore limit = getHostLimit(host);
+        try {
+            if (limit != null && !limit.tryAcquire(CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Too many concurrent requests to " + host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a request to " + host);
+        }
+        final Timer.Context timer = METRICS.timer(METRICS_PREFIX + host).time();
+        try {
+            if (con.getResponseCode() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+                throw new IOException(MSG_UNAUTHORIZED);
+            }
+            return readString(con, charset);
+        } catch (IOException e) {
+            METRICS.meter(METRICS_PREFIX + host + ".errors").mark();
+            // read the error response so the connection can be reused
+            final InputStream error = con.getErrorStream();
+            if (error != null) {
+                try {
+                    readBytes(error);
+                } catch (IOException ignored) {
+                }
+            }
+            throw e;
+        } finally {
+            timer.stop();
+            if (limit != null) {
+                limit.release();
+            }
+        }
+    }
+
+    private static Semaphore getHostLimit(final String host) {
+        if (MAX_REQUESTS_PER_HOST <= 0) {
+            return null;
+        }
+        Semaphore limit = HOST_LIMITS.get(host);
+        if (limit == null) {
+            final Semaphore newLimit = new Semaphore(MAX_REQUESTS_PER_HOST);
+            limit = HOST_LIMITS.putIfAbsent(host, newLimit);
+            if (limit == null) {
+                limit = newLimit;
+            }
+        }
+        return limit;
+    }
     /**
      * Calls given URL and returns the response as String
      * @param pUrl
@@ -428,11 +572,7 @@ public class IOHelper {
     public static String getURL(final String pUrl,final String userName, final String password,
                                 final Map<String, String> headers, final String charset) throws IOException {
         final HttpURLConnection con = getConnection(pUrl, userName, password);
-        final int responseCode = con.getResponseCode();
-        // Unauthorized
-        if (responseCode == 401) {
-            throw new IOException("Unauthorized");
-        }
+        // 401 Unauthorized is thrown as IOException("Unauthorized")
         return getURL(con, headers, charset);
     }
 
@@ -408,6 +408,55 @@ public class JSONHelper {
         return true;
     }
 
+    /**
+     * Returns a deep copy of the given object without writing it to a String and parsing it back.
+     * @param json object to copy
+     * @return copy or null if json was null
+     */
+    public static JSONObject copy(final JSONObject json) {
+        if(json == null) {
+            return null;
+        }
+        final JSONObject copy = new JSONObject();
+        final Iterator keys = json.keys();
+        try {
+            while (keys.hasNext()) {
+                final String key = (String) keys.next();
+                copy.put(key, copyValue(json.opt(key)));
+            }
+        } catch (JSONException e) {
+            log.warn(e, "Error copying object:", json);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a deep copy of the given array without writing it to a String and parsing it back.
+     * @param json array to copy
+     * @return copy or null if json was null
+     */
+    public static JSONArray copy(final JSONArray json) {
+        if(json == null) {
+            return null;
+        }
+        final JSONArray copy = new JSONArray();
+        for (int i = 0; i < json.length(); i++) {
+            copy.put(copyValue(json.opt(i)));
+        }
+        return copy;
+    }
+
+    private static Object copyValue(final Object value) {
+        if (value instanceof JSONObject) {
+            return copy((JSONObject) value);
+        }
+        if (value instanceof JSONArray) {
+            return copy((JSONArray) value);
+        }
+        // strings, numbers, booleans and JSONObject.NULL are immutable
+        return value;
+    }
+
     /**
      * Overrides values in base data and returns a new object as the merged result.
      * @param baseData
@@ -419,7 +468,7 @@ public class JSONHelper {
             return merge(new JSONObject(), overrides);
         }
         // copy existing values so we don't leak mutable references
-        final JSONObject result = createJSONObject(baseData.toString());
+        final JSONObject result = copy(baseData);
         // TODO: maybe do the same for overrides?
 
         if(overrides == null || overrides.length() == 0) {
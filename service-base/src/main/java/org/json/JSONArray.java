@@ -855,7 +855,10 @@ public class JSONArray {
      */
     public String toString() {
         try {
-            return '[' + join(",") + ']';
+            // nested values are written to the same buffer
+            final StringBuilderWriter writer = new StringBuilderWriter(16 + length() * 16);
+            write(writer);
+            return writer.toString();
         } catch (Exception e) {
             return null;
         }
@@ -941,14 +944,7 @@ public class JSONArray {
                 if (b) {
                     writer.write(',');
                 }
-                Object v = this.myArrayList.get(i);
-                if (v instanceof JSONObject) {
-                    ((JSONObject)v).write(writer);
-                } else if (v instanceof JSONArray) {
-                    ((JSONArray)v).write(writer);
-                } else {
-                    writer.write(JSONObject.valueToString(v));
-                }
+                JSONObject.writeValue(writer, this.myArrayList.get(i));
                 b = true;
             }
             writer.write(']');
@@ -0,0 +1,340 @@
+package org.json;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact insertion ordered map used for storing the properties of a JSONObject.
+ * Entries are kept in insertion order in parallel arrays and looked up through an
+ * open addressing (linear probing) index table so no entry objects are allocated
+ * per property. Null keys are not supported.
+ * Serialized as the key/value pairs in insertion order.
+ */
+final class JSONMap extends AbstractMap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int FREE = -1;
+    private static final int DELETED = -2;
+    private static final int MIN_CAPACITY = 8;
+
+    // slot -> position in the entry arrays, FREE or DELETED
+    private transient int[] index;
+    // entries in insertion order, removed entries have a null key
+    private transient Object[] keys;
+    private transient Object[] values;
+    private transient int[] hashes;
+    // positions used in the entry arrays including removed entries
+    private transient int used;
+    private transient int size;
+    private transient int modCount;
+
+    private transient Set entrySet;
+    private transient Set keySet;
+
+    JSONMap() {
+        init(MIN_CAPACITY);
+    }
+
+    private void init(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        // index is kept at most half full
+        index = new int[capacity * 2];
+        Arrays.fill(index, FREE);
+        used = 0;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < used; i++) {
+            if (keys[i] != null) {
+                out.writeObject(keys[i]);
+                out.writeObject(values[i]);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        init(MIN_CAPACITY);
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            final Object key = in.readObject();
+            put(key, in.readObject());
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return slot of the key in the index or -1 if not found
+     */
+    private int findSlot(Object key) {
+        final int h = hash(key);
+        final int mask = index.length - 1;
+        for (int slot = h & mask; ; slot = (slot + 1) & mask) {
+            final int pos = index[slot];
+            if (pos == FREE) {
+                return -1;
+            }
+            if (pos >= 0 && hashes[pos] == h && key.equals(keys[pos])) {
+                return slot;
+            }
+        }
+    }
+
+    private int findPosition(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        final int slot = findSlot(key);
+        return slot < 0 ? -1 : index[slot];
+    }
+
+    private void addToIndex(int h, int pos) {
+        final int mask = index.length - 1;
+        int slot = h & mask;
+        while (index[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = pos;
+    }
+
+    private void grow() {
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        final Object[] oldKeys = keys;
+        final Object[] oldValues = values;
+        final int[] oldHashes = hashes;
+        final int oldUsed = used;
+        init(capacity);
+        // compacts removed entries away
+        for (int i = 0; i < oldUsed; i++) {
+            if (oldKeys[i] != null) {
+                keys[used] = oldKeys[i];
+                values[used] = oldValues[i];
+                hashes[used] = oldHashes[i];
+                addToIndex(hashes[used], used);
+                used++;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(Object key) {
+        return findPosition(key) >= 0;
+    }
+
+    public Object get(Object key) {
+        final int pos = findPosition(key);
+        return pos < 0 ? null : values[pos];
+    }
+
+    public Object put(Object key, Object value) {
+        if (key == null) {
+            throw new NullPointerException("Null key.");
+        }
+        final int pos = findPosition(key);
+        if (pos >= 0) {
+            final Object old = values[pos];
+            values[pos] = value;
+            return old;
+        }
+        if (used == keys.length) {
+            grow();
+        }
+        final int h = hash(key);
+        keys[used] = key;
+        values[used] = value;
+        hashes[used] = h;
+        addToIndex(h, used);
+        used++;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    public Object remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+        final int slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+        final int pos = index[slot];
+        final Object old = values[pos];
+        index[slot] = DELETED;
+        keys[pos] = null;
+        values[pos] = null;
+        size--;
+        modCount++;
+        return old;
+    }
+
+    public void clear() {
+        init(MIN_CAPACITY);
+        size = 0;
+        modCount++;
+    }
+
+    public Set keySet() {
+        if (keySet == null) {
+            keySet = new AbstractSet() {
+                public Iterator iterator() {
+                    return new PositionIterator() {
+                        Object value(int pos) {
+                            return keys[pos];
+                        }
+                    };
+                }
+
+                public int size() {
+                    return size;
+                }
+
+                public boolean contains(Object o) {
+                    return containsKey(o);
+                }
+
+                public boolean remove(Object o) {
+                    final int count = size;
+                    JSONMap.this.remove(o);
+                    return size != count;
+                }
+
+                public void clear() {
+                    JSONMap.this.clear();
+                }
+            };
+        }
+        return keySet;
+    }
+
+    public Set entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet() {
+                public Iterator iterator() {
+                    return new PositionIterator() {
+                        Object value(int pos) {
+                            return new Entry(pos);
+                        }
+                    };
+                }
+
+                public int size() {
+                    return size;
+                }
+
+                public void clear() {
+                    JSONMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Iterates the live entry positions in insertion order
+     */
+    private abstract class PositionIterator implements Iterator {
+        private int next = 0;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        abstract Object value(int pos);
+
+        public boolean hasNext() {
+            while (next < used && keys[next] == null) {
+                next++;
+            }
+            return next < used;
+        }
+
+        public Object next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return value(last);
+        }
+
+        public void remove() {
+            if (last < 0 || keys[last] == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            // removing only marks the entry, positions stay the same
+            JSONMap.this.remove(keys[last]);
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+
+    private class Entry implements Map.Entry {
+        private final int pos;
+        private final Object key;
+
+        Entry(int pos) {
+            this.pos = pos;
+            this.key = keys[pos];
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return keys[pos] == key ? values[pos] : get(key);
+        }
+
+        public Object setValue(Object value) {
+            return put(key, value);
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            final Map.Entry e = (Map.Entry) o;
+            final Object value = getValue();
+            return key.equals(e.getKey()) &&
+                    (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        public int hashCode() {
+            final Object value = getValue();
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+}
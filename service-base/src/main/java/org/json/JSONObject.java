@@ -31,6 +31,8 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A JSONObject is an unordered collection of name/value pairs. Its
@@ -139,12 +141,17 @@ public class JSONObject implements Serializable {
      */
     public static final Object NULL = new Null();
 
+    // quoted forms of keys, keys are mostly the same few names over and over
+    private static final int QUOTED_KEYS_MAX = 4096;
+    private static final int QUOTED_KEY_MAX_LENGTH = 64;
+    private static final ConcurrentMap<String, String> QUOTED_KEYS = new ConcurrentHashMap<String, String>();
+
 
     /**
      * Construct an empty JSONObject.
      */
     public JSONObject() {
-        this.map = new HashMap();
+        this.map = new JSONMap();
     }
 
 
@@ -232,7 +239,7 @@ public class JSONObject implements Serializable {
      *  the JSONObject.
      */
     public JSONObject(Map map) {
-        this.map = (map == null) ? new HashMap() : map;
+        this.map = (map == null) ? new JSONMap() : map;
     }
 
 
@@ -245,7 +252,7 @@ public class JSONObject implements Serializable {
      * @param includeSuperClass - Tell whether to include the super class properties.
      */
     public JSONObject(Map map, boolean includeSuperClass) {
-        this.map = new HashMap();
+        this.map = new JSONMap();
         if (map != null) {
             Iterator i = map.entrySet().iterator();
             while (i.hasNext()) {
@@ -486,19 +493,12 @@ public class JSONObject implements Serializable {
         if (Double.isInfinite(d) || Double.isNaN(d)) {
             return "null";
         }
-
-// Shave off trailing zeros and decimal point, if possible.
-
-        String s = Double.toString(d);
-        if (s.indexOf('.') > 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
-            while (s.endsWith("0")) {
-                s = s.substring(0, s.length() - 1);
-            }
-            if (s.endsWith(".")) {
-                s = s.substring(0, s.length() - 1);
-            }
+        // whole numbers that Double.toString() doesn't write in exponent notation (-0.0 is written as "-0")
+        final long l = (long) d;
+        if (l == d && l > -10000000L && l < 10000000L && (l != 0 || 1 / d > 0)) {
+            return Long.toString(l);
         }
-        return s;
+        return trimZeros(Double.toString(d));
     }
 
 
@@ -755,18 +755,29 @@ public class JSONObject implements Serializable {
         if (n == null) {
             throw new JSONException("Null pointer");
         }
+        if (n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte) {
+            return n.toString();
+        }
         testValidity(n);
+        if (n instanceof Double) {
+            return doubleToString(n.doubleValue());
+        }
+        return trimZeros(n.toString());
+    }
 
-// Shave off trailing zeros and decimal point, if possible.
-
-        String s = n.toString();
+    /**
+     * Shave off trailing zeros and decimal point, if possible.
+     */
+    private static String trimZeros(String s) {
         if (s.indexOf('.') > 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
-            while (s.endsWith("0")) {
-                s = s.substring(0, s.length() - 1);
+            int end = s.length();
+            while (s.charAt(end - 1) == '0') {
+                end--;
             }
-            if (s.endsWith(".")) {
-                s = s.substring(0, s.length() - 1);
+            if (s.charAt(end - 1) == '.') {
+                end--;
             }
+            return end == s.length() ? s : s.substring(0, end);
         }
         return s;
     }
@@ -1128,12 +1139,15 @@ public class JSONObject implements Serializable {
         if (string == null || string.length() == 0) {
             return "\"\"";
         }
+        if (!needsEscaping(string)) {
+            return new StringBuilder(string.length() + 2).append('"').append(string).append('"').toString();
+        }
 
         char         b;
         char         c = 0;
         int          i;
         int          len = string.length();
-        StringBuffer sb = new StringBuffer(len + 4);
+        StringBuilder sb = new StringBuilder(len + 8);
         String       t;
 
         sb.append('"');
@@ -1181,6 +1195,99 @@ public class JSONObject implements Serializable {
         return sb.toString();
     }
 
+    private static boolean needsEscaping(String string) {
+        for (int i = 0, len = string.length(); i < len; i++) {
+            final char c = string.charAt(i);
+            if (c < ' ' || c == '"' || c == '\\' || c == '/' || (c >= '\u0080' && c < '\u00a0') ||
+                    (c >= '\u2000' && c < '\u2100')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the quoted key, caching the quoted forms of short keys.
+     */
+    static String quoteKey(String key) {
+        String quoted = QUOTED_KEYS.get(key);
+        if (quoted == null) {
+            quoted = quote(key);
+            if (key.length() <= QUOTED_KEY_MAX_LENGTH && QUOTED_KEYS.size() < QUOTED_KEYS_MAX) {
+                QUOTED_KEYS.put(key, quoted);
+            }
+        }
+        return quoted;
+    }
+
+    /**
+     * Writes the string in double quotes with backslash sequences in all the
+     * right places without creating an intermediate String.
+     * @see #quote(String)
+     * @param string A String
+     * @param writer writer to write to
+     * @throws IOException
+     */
+    public static void quote(String string, Writer writer) throws IOException {
+        if (string == null || string.length() == 0) {
+            writer.write("\"\"");
+            return;
+        }
+
+        char         b;
+        char         c = 0;
+        int          len = string.length();
+        // write unescaped runs of chars at once
+        int          start = 0;
+        String       t;
+
+        writer.write('"');
+        for (int i = 0; i < len; i += 1) {
+            b = c;
+            c = string.charAt(i);
+            String escaped = null;
+            switch (c) {
+            case '\\':
+            case '"':
+                escaped = c == '"' ? "\\\"" : "\\\\";
+                break;
+            case '/':
+                if (b == '<') {
+                    escaped = "\\/";
+                }
+                break;
+            case '\b':
+                escaped = "\\b";
+                break;
+            case '\t':
+                escaped = "\\t";
+                break;
+            case '\n':
+                escaped = "\\n";
+                break;
+            case '\f':
+                escaped = "\\f";
+                break;
+            case '\r':
+                escaped = "\\r";
+                break;
+            default:
+                if (c < ' ' || (c >= '\u0080' && c < '\u00a0') ||
+                               (c >= '\u2000' && c < '\u2100')) {
+                    t = "000" + Integer.toHexString(c);
+                    escaped = "\\u" + t.substring(t.length() - 4);
+                }
+            }
+            if (escaped != null) {
+                writer.write(string, start, i - start);
+                writer.write(escaped);
+                start = i + 1;
+            }
+        }
+        writer.write(string, start, len - start);
+        writer.write('"');
+    }
+
     /**
      * Remove a name and its value, if present.
      * @param key The name to be removed.
@@ -1322,20 +1429,10 @@ public class JSONObject implements Serializable {
      */
     public String toString() {
         try {
-            Iterator     keys = keys();
-            StringBuffer sb = new StringBuffer("{");
-
-            while (keys.hasNext()) {
-                if (sb.length() > 1) {
-                    sb.append(',');
-                }
-                Object o = keys.next();
-                sb.append(quote(o.toString()));
-                sb.append(':');
-                sb.append(valueToString(this.map.get(o)));
-            }
-            sb.append('}');
-            return sb.toString();
+            // nested values are written to the same buffer
+            final StringBuilderWriter writer = new StringBuilderWriter(16 + length() * 16);
+            write(writer);
+            return writer.toString();
         } catch (Exception e) {
             return null;
         }
@@ -1547,16 +1644,9 @@ public class JSONObject implements Serializable {
                     writer.write(',');
                 }
                 Object k = keys.next();
-                writer.write(quote(k.toString()));
+                writer.write(quoteKey(k.toString()));
                 writer.write(':');
-                Object v = this.map.get(k);
-                if (v instanceof JSONObject) {
-                    ((JSONObject)v).write(writer);
-                } else if (v instanceof JSONArray) {
-                    ((JSONArray)v).write(writer);
-                } else {
-                    writer.write(valueToString(v));
-                }
+                writeValue(writer, this.map.get(k));
                 b = true;
             }
             writer.write('}');
@@ -1565,4 +1655,33 @@ public class JSONObject implements Serializable {
             throw new JSONException(e);
         }
      }
-}
\ No newline at end of file
+
+    /**
+     * Writes the value as JSON text to a writer. Same as writing the result of
+     * valueToString(Object) but nested objects, arrays and strings are written
+     * straight to the writer.
+     *
+     * @throws JSONException If the value is or contains an invalid number.
+     */
+    static void writeValue(Writer writer, Object value) throws JSONException, IOException {
+        if (value == null || value.equals(null)) {
+            writer.write("null");
+        } else if (value instanceof JSONString) {
+            writer.write(valueToString(value));
+        } else if (value instanceof JSONObject) {
+            ((JSONObject) value).write(writer);
+        } else if (value instanceof JSONArray) {
+            ((JSONArray) value).write(writer);
+        } else if (value instanceof String) {
+            quote((String) value, writer);
+        } else if (value instanceof Map) {
+            new JSONObject((Map) value).write(writer);
+        } else if (value instanceof Collection) {
+            new JSONArray((Collection) value).write(writer);
+        } else if (value.getClass().isArray()) {
+            new JSONArray(value).write(writer);
+        } else {
+            writer.write(valueToString(value));
+        }
+    }
+}
@@ -111,22 +111,38 @@ public class JSONWriter {
         if (s == null) {
             throw new JSONException("Null pointer");
         }
-        if (this.mode == 'o' || this.mode == 'a') {
+        this.beginValue();
+        try {
+            this.writer.write(s);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        this.endValue();
+        return this;
+    }
+
+    /**
+     * Writes the comma before a value if needed.
+     * @throws JSONException If the value is out of sequence.
+     */
+    private void beginValue() throws JSONException {
+        if (this.mode != 'o' && this.mode != 'a') {
+            throw new JSONException("Value out of sequence.");
+        }
+        if (this.comma && this.mode == 'a') {
             try {
-                if (this.comma && this.mode == 'a') {
-                    this.writer.write(',');
-                }
-                this.writer.write(s);
+                this.writer.write(',');
             } catch (IOException e) {
                 throw new JSONException(e);
             }
-            if (this.mode == 'o') {
-                this.mode = 'k';
-            }
-            this.comma = true;
-            return this;
         }
-        throw new JSONException("Value out of sequence.");
+    }
+
+    private void endValue() {
+        if (this.mode == 'o') {
+            this.mode = 'k';
+        }
+        this.comma = true;
     }
 
     /**
@@ -208,7 +224,7 @@ public class JSONWriter {
                 if (this.comma) {
                     this.writer.write(',');
                 }
-                this.writer.write(JSONObject.quote(s));
+                JSONObject.quote(s, this.writer);
                 this.writer.write(':');
                 this.comma = false;
                 this.mode = 'o';
@@ -318,6 +334,17 @@ public class JSONWriter {
      * @throws JSONException If the value is out of sequence.
      */
     public JSONWriter value(Object o) throws JSONException {
+        if (o instanceof JSONObject || o instanceof JSONArray) {
+            // written straight to the writer instead of creating a String first
+            this.beginValue();
+            if (o instanceof JSONObject) {
+                ((JSONObject) o).write(this.writer);
+            } else {
+                ((JSONArray) o).write(this.writer);
+            }
+            this.endValue();
+            return this;
+        }
         return this.append(JSONObject.valueToString(o));
     }
 }
@@ -0,0 +1,47 @@
+package org.json;
+
+import java.io.Writer;
+
+/**
+ * Unsynchronized Writer collecting the output to a StringBuilder. Used for producing
+ * the JSON text of nested objects with one buffer.
+ */
+final class StringBuilderWriter extends Writer {
+
+    private final StringBuilder builder;
+
+    StringBuilderWriter(int capacity) {
+        this.builder = new StringBuilder(capacity);
+    }
+
+    public void write(int c) {
+        builder.append((char) c);
+    }
+
+    public void write(char[] chars, int offset, int length) {
+        builder.append(chars, offset, length);
+    }
+
+    public void write(String str) {
+        builder.append(str);
+    }
+
+    public void write(String str, int offset, int length) {
+        builder.append(str, offset, offset + length);
+    }
+
+    public Writer append(CharSequence csq) {
+        builder.append(csq);
+        return this;
+    }
+
+    public void flush() {
+    }
+
+    public void close() {
+    }
+
+    public String toString() {
+        return builder.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package fi.nls.oskari.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CacheTagsTest {
+
+    @Test
+    public void testKey() {
+        assertEquals("WFSImage_12@3_default_EPSG:3067", CacheTags.getKey("WFSImage_12", 3, "_default_EPSG:3067"));
+    }
+
+    @Test
+    public void testParse() {
+        final String key = CacheTags.getKey("WFSImage_12", 3, "_default_EPSG:3067_1.0-2.0-3.0-4.0_5");
+        final String tag = CacheTags.parseTag(key, "WFSImage_");
+        assertEquals("WFSImage_12", tag);
+        assertEquals(3, CacheTags.parseGeneration(key, tag));
+
+        // layer 1 isn't a prefix of layer 12
+        assertEquals("WFSImage_1", CacheTags.parseTag(CacheTags.getKey("WFSImage_1", 0, "_x"), "WFSImage_"));
+    }
+
+    @Test
+    public void testParseUntagged() {
+        assertNull(CacheTags.parseTag("WFSImage_12_default_EPSG:3067", "WFSImage_"));
+        assertNull(CacheTags.parseTag("Session_abc", "WFSImage_"));
+        assertEquals(-1, CacheTags.parseGeneration("WFSImage_12@default", "WFSImage_12"));
+    }
+
+    @Test
+    public void testGenerationAfterExpiry() {
+        final long first = CacheTags.nextGeneration(0, 1000);
+        final long second = CacheTags.nextGeneration(first, 2000);
+        assertTrue("Invalidating should create a newer generation", second > first);
+
+        // generation key has expired and reads as 0, entries of the second generation may still exist
+        final long third = CacheTags.nextGeneration(0, 2000 + JedisManager.EXPIRY_TIME_DAY * 1000L);
+        assertTrue("Generation after expiry should be newer than any before it", third > second);
+    }
+
+    @Test
+    public void testGenerationWithClockBehind() {
+        assertEquals(5001, CacheTags.nextGeneration(5000, 4000));
+    }
+}
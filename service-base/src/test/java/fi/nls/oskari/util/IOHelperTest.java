@@ -1,11 +1,21 @@
 package fi.nls.oskari.util;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Created with IntelliJ IDEA.
@@ -42,4 +52,56 @@ public class IOHelperTest {
         params.put("t3", "&&&");
         assertEquals("Problematic params should return expected encoded URL", baseUrl + "test=testing&t2=3&t3=%26%26%26", IOHelper.constructUrl(baseUrl, params));
     }
+
+    @Test
+    public void testGzipResponse() throws Exception {
+        final String body = "äö response";
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                final boolean gzip = "gzip".equals(exchange.getRequestHeaders().getFirst(IOHelper.HEADER_ACCEPT_ENCODING));
+                if (gzip) {
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                }
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = gzip ? new GZIPOutputStream(exchange.getResponseBody()) : exchange.getResponseBody();
+                out.write(body.getBytes("UTF-8"));
+                out.close();
+            }
+        });
+        server.start();
+        try {
+            final String url = "http://localhost:" + server.getAddress().getPort() + "/test";
+            assertEquals("Response should be decompressed", body, IOHelper.getURL(url));
+            assertTrue("Request should be timed",
+                    IOHelper.getMetrics().timer("http.localhost").getCount() > 0);
+
+            // streaming API decompresses the response as well
+            HttpURLConnection con = IOHelper.getConnection(url);
+            con.setRequestProperty(IOHelper.HEADER_ACCEPT_ENCODING, "gzip");
+            assertEquals(body, IOHelper.readString(IOHelper.getInputStream(con), "UTF-8"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testUnauthorized() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(401, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            IOHelper.getURL("http://localhost:" + server.getAddress().getPort() + "/test", "user", "pass");
+            fail("401 should throw IOException");
+        } catch (IOException e) {
+            assertEquals("Callers check the message of the thrown exception", "Unauthorized", e.getMessage());
+        } finally {
+            server.stop(0);
+        }
+    }
 }
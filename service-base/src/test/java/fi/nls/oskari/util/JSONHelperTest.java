@@ -1,5 +1,6 @@
 package fi.nls.oskari.util;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Test;
 
@@ -183,4 +184,20 @@ public class JSONHelperTest {
         assertTrue("Result should have key 'test'", JSONHelper.getStringFromJSON(result, "test", "").equals("jee"));
         assertTrue("Result should have key 'moi'", JSONHelper.getStringFromJSON(result, "moi", "").equals("moi"));
     }
+
+    @Test
+    public void testCopy() throws Exception {
+        JSONObject nested = JSONHelper.createJSONObject("key", "value");
+        JSONObject base = JSONHelper.createJSONObject("nested", nested);
+        base.put("list", new JSONArray().put(nested).put(1.5).put(JSONObject.NULL));
+
+        JSONObject copy = JSONHelper.copy(base);
+        assertTrue("Copy should be equal to original", JSONHelper.isEqual(base, copy));
+        assertEquals("Copy should serialize the same way", base.toString(), copy.toString());
+
+        nested.put("key", "modified");
+        assertEquals("Copy should not share nested objects", "value", copy.getJSONObject("nested").getString("key"));
+        assertEquals("Copy should not share nested arrays", "value", copy.getJSONArray("list").getJSONObject(0).getString("key"));
+        assertNull(JSONHelper.copy((JSONObject) null));
+    }
 }
@@ -0,0 +1,140 @@
+package org.json;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JSONObjectTest {
+
+    private List<String> getKeys(JSONObject json) {
+        List<String> keys = new ArrayList<String>();
+        Iterator it = json.keys();
+        while (it.hasNext()) {
+            keys.add((String) it.next());
+        }
+        return keys;
+    }
+
+    @Test
+    public void testKeysInInsertionOrder() throws Exception {
+        JSONObject json = new JSONObject();
+        for (int i = 100; i > 0; i--) {
+            json.put("key" + i, i);
+        }
+        json.put("key50", "replaced");
+        json.remove("key99");
+        json.remove("missing");
+
+        assertEquals(99, json.length());
+        List<String> keys = getKeys(json);
+        assertEquals("key100", keys.get(0));
+        assertEquals("key98", keys.get(1));
+        assertEquals("key1", keys.get(98));
+        assertEquals("replaced", json.getString("key50"));
+        assertFalse(json.has("key99"));
+        assertEquals(1, json.getInt("key1"));
+
+        // removed keys can be added again and are added last
+        json.put("key99", 99);
+        keys = getKeys(json);
+        assertEquals("key99", keys.get(99));
+    }
+
+    @Test
+    public void testRemoveWithIterator() throws Exception {
+        JSONObject json = new JSONObject();
+        for (int i = 0; i < 20; i++) {
+            json.put("key" + i, i);
+        }
+        Iterator it = json.keys();
+        while (it.hasNext()) {
+            String key = (String) it.next();
+            if (json.getInt(key) % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(10, json.length());
+        assertEquals("key1", getKeys(json).get(0));
+        for (int i = 20; i < 40; i++) {
+            json.put("key" + i, i);
+        }
+        assertEquals(30, json.length());
+        assertEquals(39, json.getInt("key39"));
+        assertFalse(json.has("key0"));
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        assertEquals("5", JSONObject.numberToString(5.0));
+        assertEquals("-5", JSONObject.numberToString(-5.0));
+        assertEquals("0", JSONObject.numberToString(0.0));
+        assertEquals("-0", JSONObject.numberToString(-0.0));
+        assertEquals("1.5", JSONObject.numberToString(1.5));
+        assertEquals("1.0E7", JSONObject.numberToString(1.0E7));
+        assertEquals("9999999", JSONObject.numberToString(9999999.0));
+        assertEquals("1.0E-4", JSONObject.numberToString(0.0001));
+        assertEquals("1.25", JSONObject.numberToString(1.25f));
+        assertEquals("123456789012", JSONObject.numberToString(123456789012L));
+        assertEquals("null", JSONObject.doubleToString(Double.NaN));
+    }
+
+    @Test
+    public void testToString() throws Exception {
+        JSONObject json = new JSONObject();
+        json.put("text", "</b> \"quoted\" \\ \t\u0001");
+        json.put("plain", "value");
+        json.put("array", new JSONArray().put(new JSONObject().put("a", 1)).put(2.5).put(JSONObject.NULL));
+        assertEquals("{\"text\":\"<\\/b> \\\"quoted\\\" \\\\ \\t\\u0001\",\"plain\":\"value\"," +
+                "\"array\":[{\"a\":1},2.5,null]}", json.toString());
+        // parsing keeps the order as well
+        assertEquals(json.toString(), new JSONObject(json.toString()).toString());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        JSONObject json = new JSONObject();
+        for (int i = 20; i > 0; i--) {
+            json.put("key" + i, i);
+        }
+        json.remove("key10");
+        json.put("nested", new JSONObject().put("a", "b"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(json);
+        out.close();
+        JSONObject copy = (JSONObject) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertEquals(json.toString(), copy.toString());
+        assertEquals(getKeys(json), getKeys(copy));
+        assertFalse(copy.has("key10"));
+        // deserialized map is usable
+        copy.put("key10", 10);
+        assertEquals(10, copy.getInt("key10"));
+        assertEquals("b", copy.getJSONObject("nested").getString("a"));
+    }
+
+    @Test
+    public void testWriterNestedValues() throws Exception {
+        StringWriter out = new StringWriter();
+        new JSONWriter(out).object()
+                .key("obj").value(new JSONObject().put("a", 1))
+                .key("arr").array()
+                    .value(new JSONArray().put("x"))
+                    .value(new JSONObject())
+                    .value(2)
+                .endArray()
+                .key("text").value("b")
+                .endObject();
+        assertEquals("{\"obj\":{\"a\":1},\"arr\":[[\"x\"],{},2],\"text\":\"b\"}", out.toString());
+    }
+}
@@ -0,0 +1,20 @@
+package fi.nls.oskari.util;
+
+import org.json.JSONException;
+import org.json.JSONWriter;
+
+/**
+ * Writes a JSON response incrementally so large responses don't need to be built in memory first.
+ *
+ * @see ResponseHelper#writeResponse(fi.nls.oskari.control.ActionParameters, JSONResponseGenerator)
+ */
+public interface JSONResponseGenerator {
+
+    /**
+     * Write the response with the given writer. The writer writes directly to the response stream.
+     *
+     * @param writer
+     * @throws JSONException
+     */
+    void generate(JSONWriter writer) throws JSONException;
+}
@@ -1,19 +1,38 @@
 package fi.nls.oskari.util;
 
 import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Convenience methods for writing a response.
  */
 public class ResponseHelper {
 
+    private static final Logger log = LogFactory.getLogger(ResponseHelper.class);
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_VARY = "Vary";
+    private static final String ENCODING_GZIP = "gzip";
+
     /**
-     * Writes out the given response
+     * Writes out the given response. JSON responses are written straight to the response stream
+     * and gzip compressed if the client accepts it (disable with oskari.response.gzip=false).
      *
      * @param params   reference to params to get the writer
      * @param response response to write
@@ -21,13 +40,77 @@ public class ResponseHelper {
     public static final void writeResponse(ActionParameters params, final Object response) {
         try {
             if(response instanceof JSONObject || response instanceof JSONArray) {
-                params.getResponse().setCharacterEncoding("UTF-8");
-                params.getResponse().setContentType("application/json;charset=UTF-8");
+                final Writer writer = getJSONWriter(params);
+                if(response instanceof JSONObject) {
+                    ((JSONObject) response).write(writer);
+                } else {
+                    ((JSONArray) response).write(writer);
+                }
+                finish(writer);
+                return;
             }
             params.getResponse().getWriter().print(response);
         } catch (IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
+        } catch (JSONException e) {
+            log.error(e, "Error writing JSON response");
+        }
+    }
+
+    /**
+     * Writes out a JSON response generated incrementally by the given generator.
+     *
+     * @param params    reference to params to get the writer
+     * @param generator writes the response
+     * @throws JSONException if the generator fails
+     */
+    public static final void writeResponse(ActionParameters params, final JSONResponseGenerator generator)
+            throws JSONException {
+        try {
+            final Writer writer = getJSONWriter(params);
+            generator.generate(new JSONWriter(writer));
+            finish(writer);
+        } catch (IOException e) {
+            log.error(e, "Error writing JSON response");
+        }
+    }
+
+    /**
+     * Sets up the response for JSON and returns a writer for it
+     */
+    private static Writer getJSONWriter(ActionParameters params) throws IOException {
+        final HttpServletResponse response = params.getResponse();
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType("application/json;charset=UTF-8");
+        if (!acceptsGzip(params.getRequest(), response)) {
+            return response.getWriter();
+        }
+        final OutputStream out;
+        try {
+            out = response.getOutputStream();
+        } catch (IllegalStateException e) {
+            // writer has been used already
+            return response.getWriter();
+        }
+        response.setHeader(HEADER_CONTENT_ENCODING, ENCODING_GZIP);
+        response.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+        return new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(out, BUFFER_SIZE), "UTF-8"), BUFFER_SIZE);
+    }
+
+    private static boolean acceptsGzip(final HttpServletRequest request, final HttpServletResponse response) {
+        if (!PropertyUtil.getOptional("oskari.response.gzip", true) || request == null ||
+                response.containsHeader(HEADER_CONTENT_ENCODING)) {
+            return false;
+        }
+        final String accepted = request.getHeader(HEADER_ACCEPT_ENCODING);
+        return accepted != null && accepted.contains(ENCODING_GZIP);
+    }
+
+    private static void finish(final Writer writer) throws IOException {
+        if (writer instanceof BufferedWriter) {
+            // gzipped: write the gzip trailer
+            writer.close();
         }
     }
 
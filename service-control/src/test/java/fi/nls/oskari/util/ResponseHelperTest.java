@@ -0,0 +1,82 @@
+package fi.nls.oskari.util;
+
+import fi.nls.oskari.control.ActionParameters;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class ResponseHelperTest {
+
+    private ActionParameters createParams(final String acceptEncoding, final HttpServletResponse response) {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+        final ActionParameters params = new ActionParameters();
+        params.setRequest(request);
+        params.setResponse(response);
+        return params;
+    }
+
+    private JSONObject createJSON() throws JSONException {
+        final JSONObject json = new JSONObject();
+        json.put("name", "Tiles </script> \u0085 \"quoted\"\n");
+        json.put("values", new JSONArray().put(1).put(2.5).put(true).put(JSONObject.NULL));
+        return json;
+    }
+
+    @Test
+    public void testPlainResponse() throws Exception {
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        final StringWriter out = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(out));
+
+        final JSONObject json = createJSON();
+        ResponseHelper.writeResponse(createParams(null, response), json);
+        assertEquals(json.toString(), out.toString());
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    public void testGzipResponse() throws Exception {
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            public void write(int b) throws IOException {
+                bytes.write(b);
+            }
+            public boolean isReady() {
+                return true;
+            }
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        });
+
+        ResponseHelper.writeResponse(createParams("gzip, deflate", response), new JSONResponseGenerator() {
+            public void generate(JSONWriter writer) throws JSONException {
+                writer.object().key("layers").array();
+                for (int i = 0; i < 3; i++) {
+                    writer.value(new JSONObject().put("id", i));
+                }
+                writer.endArray().endObject();
+            }
+        });
+        verify(response).setHeader("Content-Encoding", "gzip");
+        final String result = IOHelper.readString(new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals("{\"layers\":[{\"id\":0},{\"id\":1},{\"id\":2}]}", result);
+    }
+}
@@ -5,6 +5,7 @@ import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
@@ -12,6 +13,10 @@ import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 
 import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Simple MyBatis Dao for saving CSW metadata for maplayers
@@ -36,6 +41,59 @@ public class OskariLayerMetadataDao {
         return new SqlSessionFactoryBuilder().build(configuration);
     }
 
+    /**
+     * Returns all saved metadata mapped by metadata id
+     * @return
+     */
+    public Map<String, OskariLayerMetadataDto> findAll() {
+        final Map<String, OskariLayerMetadataDto> result = new HashMap<>();
+        final SqlSession session = factory.openSession();
+        try {
+            final OskariLayerMetadataDto.Mapper mapper = session.getMapper(OskariLayerMetadataDto.Mapper.class);
+            final List<OskariLayerMetadataDto> list = mapper.findAll();
+            for(OskariLayerMetadataDto dto : list) {
+                result.put(dto.metadataId, dto);
+            }
+        } catch (Exception e) {
+            log.error(e, "Error loading metadata");
+        } finally {
+            session.close();
+        }
+        return result;
+    }
+
+    /**
+     * Saves given metadata in a single batch. Dtos with an id are updated, others are inserted.
+     * @param list metadata to save
+     * @return false if the batch was rolled back
+     */
+    public boolean saveMetadata(Collection<OskariLayerMetadataDto> list) {
+        if(list == null || list.isEmpty()) {
+            return true;
+        }
+        final SqlSession session = factory.openSession(ExecutorType.BATCH);
+        try {
+            final OskariLayerMetadataDto.Mapper mapper = session.getMapper(OskariLayerMetadataDto.Mapper.class);
+            for(OskariLayerMetadataDto dto : list) {
+                if(dto.id == null) {
+                    mapper.insert(dto);
+                }
+                else {
+                    mapper.update(dto);
+                }
+            }
+            session.flushStatements();
+            session.commit();
+            return true;
+        } catch (Exception e) {
+            session.rollback();
+            log.error(e, "Error saving metadata");
+            return false;
+        } finally {
+            session.close();
+        }
+    }
+
     public void saveMetadata(OskariLayerMetadataDto dto) {
         final SqlSession session = factory.openSession();
         try {
@@ -5,6 +5,7 @@ import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
 import java.util.Calendar;
+import java.util.List;
 
 /**
  * A data transfer object for interacting with the ``oskari_maplayer_metadata`` database table.
@@ -15,6 +16,9 @@ public class OskariLayerMetadataDto {
         @Select("SELECT id, metadataid, wkt, json, ts FROM oskari_maplayer_metadata where metadataid=#{metadataId}")
         public OskariLayerMetadataDto find(final String metadataId);
 
+        @Select("SELECT id, metadataid, wkt, json, ts FROM oskari_maplayer_metadata")
+        public List<OskariLayerMetadataDto> findAll();
+
         @Insert("INSERT INTO oskari_maplayer_metadata (metadataid, wkt, json, ts) VALUES (#{metadataId}, #{wkt}, #{json}, NOW())")
         public void insert(final OskariLayerMetadataDto metadata);
 
@@ -49,4 +53,20 @@ public class OskariLayerMetadataDto {
 
     public String json;
 
+    /**
+     * Checks if the content of this dto differs from the given one. Timestamps and ids are ignored.
+     * @param other previously saved metadata
+     * @return true if wkt or json differs
+     */
+    public boolean isModified(final OskariLayerMetadataDto other) {
+        if(other == null) {
+            return true;
+        }
+        return !equals(wkt, other.wkt) || !equals(json, other.json);
+    }
+
+    private static boolean equals(final String first, final String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
 }
@@ -18,6 +18,9 @@ import java.util.*;
 /**
  * Helper class for parsing search results for MetadataCatalogue:
  * Created by TMIKKOLAINEN on 2.9.2014.
+ *
+ * Note! XPath and XPathExpression are not thread-safe so an instance must not be shared between threads.
+ * Use getInstance() to get a parser with precompiled expressions that is reused by the calling thread.
  */
 public class CSWISORecordParser {
 
@@ -33,6 +36,23 @@ public class CSWISORecordParser {
         }
     }
 
+    // compiling the expressions is expensive so keep one parser per thread instead of one per record
+    private static final ThreadLocal<CSWISORecordParser> THREAD_PARSER = new ThreadLocal<CSWISORecordParser>();
+
+    /**
+     * Returns a parser instance bound to the calling thread. The XPath expressions are compiled once per thread.
+     * @return parser for current thread
+     * @throws XPathExpressionException if expressions can't be compiled
+     */
+    public static CSWISORecordParser getInstance() throws XPathExpressionException {
+        CSWISORecordParser parser = THREAD_PARSER.get();
+        if (parser == null) {
+            parser = new CSWISORecordParser();
+            THREAD_PARSER.set(parser);
+        }
+        return parser;
+    }
+
     private static SimpleDateFormat dateTimeFormat() {
         // 2011-02-23T14:32:09
         return new SimpleDateFormat("yyyy-MM-dd'T'kk:mm:ss", Locale.US);
@@ -116,6 +136,8 @@ public class CSWISORecordParser {
     private XPathExpression XPATH_METADATA_RESPONSIBLE_PARTIES = null;
     private XPathExpression XPATH_METADATA_DATE = null;
     private XPathExpression XPATH_METADATA_REFERENCESYSTEM = null;
+    // compiled localized value paths keyed by the locale id referenced in the document (like "#FI")
+    private final Map<String, XPathExpression> localizedValuePaths = new HashMap<String, XPathExpression>();
 
     public CSWISORecordParser() throws XPathExpressionException {
         xpath.setNamespaceContext(new CSWISORecordNamespaceContext());
@@ -341,8 +363,7 @@ public class CSWISORecordParser {
         String value;
         XPathExpression pathToLocalizedValue = null;
         if (locales != null && locales.containsKey(locale.getISO3Language())) {
-            pathToLocalizedValue = xpath.compile(
-                    "../gmd:PT_FreeText/gmd:textGroup/gmd:LocalisedCharacterString[@locale='#" + locales.get(locale.getISO3Language()) + "']");
+            pathToLocalizedValue = getLocalizedValuePath(locales.get(locale.getISO3Language()));
         }
 
         nodeList = (NodeList) XPATH_DI_SI.evaluate(elem, XPathConstants.NODESET);
@@ -410,6 +431,16 @@ public class CSWISORecordParser {
         return record;
     }
 
+    private XPathExpression getLocalizedValuePath(final String localeId) throws XPathExpressionException {
+        XPathExpression path = localizedValuePaths.get(localeId);
+        if (path == null) {
+            path = xpath.compile(
+                    "../gmd:PT_FreeText/gmd:textGroup/gmd:LocalisedCharacterString[@locale='#" + localeId + "']");
+            localizedValuePaths.put(localeId, path);
+        }
+        return path;
+    }
+
     private void parseIdentifications(NodeList nodeList, List<CSWIsoRecord.Identification> identifications, MathTransform transform, XPathExpression pathToLocalizedValue) throws XPathExpressionException, ParseException, TransformException {
         CSWIsoRecord.Identification identification;
         Node node;
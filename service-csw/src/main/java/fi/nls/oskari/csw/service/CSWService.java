@@ -159,7 +159,7 @@ public class CSWService {
     }
 
     private CSWIsoRecord mapIsoRecordElementToObject(Node el, Locale locale) throws XPathExpressionException, TransformException, ParseException {
-        CSWISORecordParser parser = new CSWISORecordParser();
+        CSWISORecordParser parser = CSWISORecordParser.getInstance();
         CSWIsoRecord ret;
         ret = parser.parse(el, locale, transform);
         return ret;
@@ -16,9 +16,17 @@ import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.worker.ScheduledJob;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Scheduled job for retrieving coverage data for maplayers having metadataids.
@@ -29,6 +37,11 @@ public class CSWCoverageUpdateService extends ScheduledJob {
 
     final OskariLayerService layerService = new OskariLayerServiceIbatisImpl();
     final private static String PROPERTY_BASE_URL = "service.metadata.url";
+    // all requests go to the same CSW service so the pool size is also the concurrency limit for the host
+    final private static String PROPERTY_THREADS = "service.metadata.update.threads";
+    final private static int DEFAULT_THREADS = 4;
+    // metadata is written to the database in batches of this size
+    final private static int BATCH_SIZE = 100;
 
     @Override
     public void execute(Map<String, Object> params) {
@@ -56,25 +69,74 @@ public class CSWCoverageUpdateService extends ScheduledJob {
             log.error("Couldn't get datasource - quitting!");
             return;
         }
+        final long start = System.currentTimeMillis();
         final OskariLayerMetadataDao dao = new OskariLayerMetadataDao(dataSource);
-        for (String metadataId : metadataIdSet) {
-            final CSWIsoRecord csw = getMetadata(cswService, metadataId);
-            final Geometry geom = getGeometry(csw);
-            if(geom == null) {
-                // no geometry on metadata, move to next
-                log.info("Couldn't get geometry for", metadataId);
+        final Map<String, OskariLayerMetadataDto> saved = dao.findAll();
+
+        final int threads = Math.max(1, PropertyUtil.getOptional(PROPERTY_THREADS, DEFAULT_THREADS));
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final Map<String, Future<OskariLayerMetadataDto>> results = new LinkedHashMap<>();
+        for (final String metadataId : metadataIdSet) {
+            results.put(metadataId, executor.submit(new Callable<OskariLayerMetadataDto>() {
+                public OskariLayerMetadataDto call() {
+                    return getMetadataDto(cswService, metadataId);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        final List<OskariLayerMetadataDto> modified = new ArrayList<>();
+        int unchanged = 0;
+        int failed = 0;
+        int updated = 0;
+        int notSaved = 0;
+        for (Map.Entry<String, Future<OskariLayerMetadataDto>> entry : results.entrySet()) {
+            final OskariLayerMetadataDto dto = getResult(entry.getKey(), entry.getValue());
+            if(dto == null) {
+                failed++;
                 continue;
             }
-            final OskariLayerMetadataDto dto = new OskariLayerMetadataDto();
-            dto.metadataId  = metadataId;
-            // NOTE! wkt is WGS:84
-            dto.wkt = geom.getEnvelope().toText();
-            dto.json = csw.toJSON().toString();
-            dao.saveMetadata(dto);
+            final OskariLayerMetadataDto previous = saved.get(dto.metadataId);
+            if(!dto.isModified(previous)) {
+                unchanged++;
+                continue;
+            }
+            if(previous != null) {
+                dto.id = previous.id;
+            }
+            modified.add(dto);
+            if(modified.size() >= BATCH_SIZE) {
+                if(save(dao, modified)) {
+                    updated += modified.size();
+                } else {
+                    notSaved += modified.size();
+                }
+                modified.clear();
+            }
+        }
+        if(save(dao, modified)) {
+            updated += modified.size();
+        } else {
+            notSaved += modified.size();
         }
+        log.info("CSW coverage update took", System.currentTimeMillis() - start, "ms for", metadataIdSet.size(),
+                "metadata ids. Unchanged:", unchanged, "- Failed or without geometry:", failed,
+                "- Updated:", updated, "- Failed to save:", notSaved);
         log.info("Done with the CSW coverage update service call");
     }
 
+    private boolean save(final OskariLayerMetadataDao dao, final List<OskariLayerMetadataDto> batch) {
+        if(dao.saveMetadata(batch)) {
+            return true;
+        }
+        final List<String> ids = new ArrayList<>(batch.size());
+        for (OskariLayerMetadataDto dto : batch) {
+            ids.add(dto.metadataId);
+        }
+        log.warn("Saving a batch of", batch.size(), "metadata failed. Metadata ids:", ids);
+        return false;
+    }
+
     private DataSource getDatasource() {
         try {
             return DatasourceHelper.getInstance().getDataSource();
@@ -102,6 +164,38 @@ public class CSWCoverageUpdateService extends ScheduledJob {
     }
 
 
+    private OskariLayerMetadataDto getResult(final String metadataId, final Future<OskariLayerMetadataDto> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting metadata for", metadataId);
+        } catch (ExecutionException e) {
+            log.error(e.getCause(), "Error processing metadata for id:", metadataId);
+        }
+        return null;
+    }
+
+    /**
+     * Fetches the metadata and maps it to a dto for saving.
+     * @return dto or null if metadata couldn't be fetched or it has no geometry
+     */
+    private OskariLayerMetadataDto getMetadataDto(final CSWService cswService, final String metadataId) {
+        final CSWIsoRecord csw = getMetadata(cswService, metadataId);
+        final Geometry geom = getGeometry(csw);
+        if(geom == null) {
+            // no geometry on metadata, move to next
+            log.info("Couldn't get geometry for", metadataId);
+            return null;
+        }
+        final OskariLayerMetadataDto dto = new OskariLayerMetadataDto();
+        dto.metadataId  = metadataId;
+        // NOTE! wkt is WGS:84
+        dto.wkt = geom.getEnvelope().toText();
+        dto.json = csw.toJSON().toString();
+        return dto;
+    }
+
     private CSWIsoRecord getMetadata(final CSWService cswService, final String metadataId) {
         final String language = PropertyUtil.getDefaultLanguage();
         try {
@@ -16,7 +16,9 @@ import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.PropertyUtil;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import java.util.*;
 
@@ -85,50 +87,110 @@ public class OskariLayerWorker {
     public static JSONObject getListOfMapLayers(final List<OskariLayer> layers, final User user,
                                                 final String lang, final boolean isPublished, final boolean isSecure) {
 
-        final String permissionType = getPermissionType(isPublished);
+        final LayerListContext context = new LayerListContext(user, lang, isPublished, isSecure);
+        final JSONArray layersList = new JSONArray();
         long start = System.currentTimeMillis();
-        final List<String> resources = permissionsService.getResourcesWithGrantedPermissions(
-                Permissions.RESOURCE_TYPE_MAP_LAYER, user, permissionType);
-        log.debug("View permissions loaded in", System.currentTimeMillis() - start, "ms");
-
-        start = System.currentTimeMillis();
-        final Set<String> permissionsList = permissionsService.getPublishPermissions();
-        log.debug("Publish permissions loaded in", System.currentTimeMillis() - start, "ms");
-
-        start = System.currentTimeMillis();
-        final Set<String> downloadPermissionsList = permissionsService.getDownloadPermissions();
-        log.debug("Download permissions loaded in", System.currentTimeMillis() - start, "ms");
-
-        start = System.currentTimeMillis();
-        final Set<String> editAccessList = permissionsService.getEditPermissions();
-        log.debug("Edit permissions loaded in", System.currentTimeMillis() - start, "ms");
-
-        final Set<String> additionalPermissions = permissionsService.getAdditionalPermissions();
-    	log.debug("Loading dynamic permissions ", additionalPermissions);
-        final Map<String, List<String>> dynamicPermissions = new HashMap<String, List<String>>();
-        for (String permissionId : additionalPermissions) {
-            final List<String> permissions = permissionsService
-                    .getResourcesWithGrantedPermissions(
-                            Permissions.RESOURCE_TYPE_MAP_LAYER, user,
-                            permissionId);
-            dynamicPermissions.put(permissionId,permissions);
-            log.debug("Got " + permissions.size() + " permissions of type " + permissionId);
+        for (OskariLayer layer : layers) {
+            final JSONObject layerJson = context.getJSON(layer);
+            if (layerJson != null) {
+                layersList.put(layerJson);
+            }
         }
+        log.debug("Created JSON in", System.currentTimeMillis() - start, "ms");
+        log.debug("Returning", layersList.length(), "/", layers.size(),"layers");
 
-        final JSONArray layersList = new JSONArray();
-        start = System.currentTimeMillis();
+        final JSONObject result = new JSONObject();
+        JSONHelper.putValue(result, KEY_LAYERS, layersList);
+        return result;
+    }
+
+    /**
+     * Writes the same JSON as getListOfAllMapLayers() with geometries transformed to the given crs.
+     * The JSON of each layer is written as soon as it's created so the whole list is never kept in memory.
+     *
+     * @param writer   writer for the response
+     * @param user     User
+     * @param lang     Language
+     * @param crs      map projection
+     * @param isSecure true to modify urls for easier proxy forwarding/false to keep as is
+     */
+    public static void writeListOfAllMapLayers(final JSONWriter writer, final User user, final String lang,
+                                               final String crs, final boolean isSecure) throws JSONException {
+        final List<OskariLayer> layers = mapLayerService.findAll(crs);
+        final LayerListContext context = new LayerListContext(user, lang, false, isSecure);
+        writer.object().key(KEY_LAYERS).array();
         for (OskariLayer layer : layers) {
+            final JSONObject layerJson = context.getJSON(layer);
+            if (layerJson != null) {
+                transformWKTGeom(layerJson, crs);
+                writer.value(layerJson);
+            }
+        }
+        writer.endArray().endObject();
+    }
+
+    /**
+     * Permissions of the user loaded once for creating the JSON of multiple layers
+     */
+    private static class LayerListContext {
+        private final User user;
+        private final String lang;
+        private final boolean isSecure;
+        private final List<String> resources;
+        private final Set<String> permissionsList;
+        private final Set<String> downloadPermissionsList;
+        private final Set<String> editAccessList;
+        private final Map<String, List<String>> dynamicPermissions = new HashMap<String, List<String>>();
+
+        LayerListContext(final User user, final String lang, final boolean isPublished, final boolean isSecure) {
+            this.user = user;
+            this.lang = lang;
+            this.isSecure = isSecure;
+
+            final String permissionType = getPermissionType(isPublished);
+            long start = System.currentTimeMillis();
+            resources = permissionsService.getResourcesWithGrantedPermissions(
+                    Permissions.RESOURCE_TYPE_MAP_LAYER, user, permissionType);
+            log.debug("View permissions loaded in", System.currentTimeMillis() - start, "ms");
+
+            start = System.currentTimeMillis();
+            permissionsList = permissionsService.getPublishPermissions();
+            log.debug("Publish permissions loaded in", System.currentTimeMillis() - start, "ms");
+
+            start = System.currentTimeMillis();
+            downloadPermissionsList = permissionsService.getDownloadPermissions();
+            log.debug("Download permissions loaded in", System.currentTimeMillis() - start, "ms");
+
+            start = System.currentTimeMillis();
+            editAccessList = permissionsService.getEditPermissions();
+            log.debug("Edit permissions loaded in", System.currentTimeMillis() - start, "ms");
+
+            final Set<String> additionalPermissions = permissionsService.getAdditionalPermissions();
+            log.debug("Loading dynamic permissions ", additionalPermissions);
+            for (String permissionId : additionalPermissions) {
+                final List<String> permissions = permissionsService
+                        .getResourcesWithGrantedPermissions(
+                                Permissions.RESOURCE_TYPE_MAP_LAYER, user,
+                                permissionId);
+                dynamicPermissions.put(permissionId,permissions);
+                log.debug("Got " + permissions.size() + " permissions of type " + permissionId);
+            }
+        }
+
+        /**
+         * @param layer
+         * @return JSON for the layer or null if the user has no permission to it or it couldn't be created
+         */
+        JSONObject getJSON(final OskariLayer layer) {
             final String permissionKey = layer.getType()+ "+" + layer.getUrl() + "+" + layer.getName();
             if (layer.getParentId() == -1 && !resources.contains(permissionKey)) {
                 // not permitted if resource NOT found in permissions!
                 // sublayers can pass through since their parentId != -1
-                continue;
+                return null;
             }
             try {
                 final JSONObject layerJson = FORMATTER.getJSON(layer, lang, isSecure);
-                //log.debug("Generated JSON");
                 if (layerJson != null) {
-                    //log.debug("Generating permissions JSON");
                     JSONObject permissions = getPermissions(user, permissionKey, permissionsList, downloadPermissionsList, editAccessList, dynamicPermissions);
                     JSONHelper.putValue(layerJson, "permissions", permissions);
                     if(permissions.optBoolean("edit")) {
@@ -138,21 +200,14 @@ public class OskariLayerWorker {
                     else {
                         FORMATTER.removeAdminInfo(layerJson);
                     }
-
-                    //log.debug("Adding layer to list");
-                    layersList.put(layerJson);
                 }
+                return layerJson;
             }
             catch(Exception ex) {
                 log.error(ex);
             }
+            return null;
         }
-        log.debug("Created JSON in", System.currentTimeMillis() - start, "ms");
-        log.debug("Returning", layersList.length(), "/", layers.size(),"layers");
-
-        final JSONObject result = new JSONObject();
-        JSONHelper.putValue(result, KEY_LAYERS, layersList);
-        return result;
     }
 
     /**
@@ -14,6 +14,11 @@ import fi.nls.oskari.util.PropertyUtil;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +31,7 @@ public class AnalysisDataService {
 
     private static final String NUMERIC_FIELD_TYPE = "numeric";
     private static final String STRING_FIELD_TYPE = "string";
+    private static final int WFST_CHUNK_SIZE = 64 * 1024;
 
     private static final Logger log = LogFactory
             .getLogger(AnalysisDataService.class);
@@ -82,12 +88,24 @@ public class AnalysisDataService {
             // list and the payload
             // and remove the fields parameter from call
             List<String> fields = new ArrayList<String>();
-            final String wfst = transformationService.wpsFeatureCollectionToWfst(featureset, analysis.getUuid(),
-                    analysis.getId(), fields, analysislayer.getFieldtypeMap(), geometryProperty, params.getResponsePrefix());
-            log.debug("Produced WFS-T:\n" + wfst);
-
-            final String response = IOHelper.httpRequestAction(wfsURL, wfst,
-                    wpsUser, wpsUserPass, null, null, "application/xml");
+            // WFS-T is written directly to the connection while the featureset is being read
+            final HttpURLConnection conn = IOHelper.getConnection(wfsURL, wpsUser, wpsUserPass);
+            IOHelper.setContentType(conn, "application/xml");
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setChunkedStreamingMode(WFST_CHUNK_SIZE);
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(conn.getOutputStream(), IOHelper.DEFAULT_CHARSET));
+            try {
+                transformationService.wpsFeatureCollectionToWfst(new StringReader(featureset), writer, analysis.getUuid(),
+                        analysis.getId(), fields, analysislayer.getFieldtypeMap(), geometryProperty, params.getResponsePrefix());
+            } finally {
+                IOHelper.close(writer);
+            }
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                log.warn("Posting WFS-T failed with HTTP status", conn.getResponseCode(), "for analysis", analysis.getId());
+                return null;
+            }
+            final String response = IOHelper.readString(conn);
             log.debug("Posted WFS-T, got", response);
 
             // If exceptions, return null
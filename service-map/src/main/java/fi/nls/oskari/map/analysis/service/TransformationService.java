@@ -12,14 +12,21 @@ import org.xml.sax.InputSource;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
 
 public class TransformationService {
@@ -38,130 +45,262 @@ public class TransformationService {
     private static final String WFSTINSERTSTART = "   <wfs:Insert>\n"
             + "       <feature:analysis_data xmlns:feature=\"http://www.oskari.org\">\n";
 
+    // not namespace aware so harmonized element names don't need matching namespace declarations
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
     private static final String WFSTINSERTEND = "       </feature:analysis_data>\n"
             + "   </wfs:Insert>\n";
 
 
+    /**
+     * Converts a WPS FeatureCollection response to a WFS-T insert payload.
+     * @see #wpsFeatureCollectionToWfst(Reader, Writer, String, long, List, Map, String, String)
+     */
     public String wpsFeatureCollectionToWfst(final  String wps , String uuid, long analysis_id,
             List<String> fields, Map<String,String> fieldTypes, String geometryProperty, String ns_prefix)
             throws ServiceException {
+        final StringWriter out = new StringWriter();
+        wpsFeatureCollectionToWfst(new StringReader(wps), out, uuid, analysis_id, fields, fieldTypes, geometryProperty, ns_prefix);
+        return out.toString();
+    }
 
-        final Document wpsDoc = createDoc(wps);
-        StringBuilder sb = new StringBuilder(WFSTTEMPLATESTART);
-        List<String> cols = new ArrayList<String>();
-        List<String> geomcols = new ArrayList<String>();
-        geomcols.add(ns_prefix+":" + geometryProperty);
-        geomcols.add(ns_prefix+":geometry");  //  default geometry
-
-        String geomcol = "";
-        Boolean members_case = false;
-        int ncount = 0;
-        int tcount = 0;
-
-        // iterate through wpsDoc's gml:featureMember elements or gml:featureMembers
-        // NodeList featureMembers =
-        // wpsDoc.getDocumentElement().getChildNodes();
-        NodeList featureMembers = wpsDoc
-                .getElementsByTagName("gml:featureMember");
-        if (featureMembers.getLength() == 0) {
-            featureMembers = wpsDoc
-                    .getElementsByTagName("gml:featureMembers");
-            if (featureMembers.getLength() > 0) members_case = true;
-        }
-        if(members_case){
-            // select features as featureMembers
-            featureMembers = wpsDoc.getElementsByTagName( featureMembers.item(0).getFirstChild().getNodeName());
-        }
-        for (int i = 0; i < featureMembers.getLength(); i++) {
-            // we're only interested in featureMembers... or features
-            if (!"gml:featureMember".equals(featureMembers.item(i)
-                    .getNodeName()) &&  !members_case ) {
-                continue;
-            }
+    /**
+     * Reads the WPS FeatureCollection as a stream and writes a WFS-T insert for each feature to the
+     * given writer as soon as the feature has been read. Only one feature is kept in memory at a time.
+     *
+     * The geometry is written as feature:geometry, max 8 first text and numeric properties (excluding
+     * hidden fields) are written as feature:t# and feature:n#.
+     * @param wps WPS FeatureCollection (gml:featureMember or gml:featureMembers)
+     * @param out writer for the WFS-T payload
+     * @param fields column mapping like "t1=name" is added here for each mapped property
+     */
+    public void wpsFeatureCollectionToWfst(final Reader wps, final Writer out, String uuid, long analysis_id,
+            List<String> fields, Map<String,String> fieldTypes, String geometryProperty, String ns_prefix)
+            throws ServiceException {
 
-            NodeList meh = featureMembers.item(i).getChildNodes();
-            NodeList features = null;
-            if (members_case) {
-                // gml:featureMembers case - all features under one element
-                features = meh;
-            } else {
-                // get features, i.e. all child elements in feature namespace
-                // we trust that featureMember only has one feature...
-                // find the child feature...
-                for (int j = 0; j < meh.getLength(); j++) {
-                    if (meh.item(j).getNodeName().indexOf(ns_prefix + ":") == 0) {
-                        features = meh.item(j).getChildNodes();
-                        break;
+        final FeatureMapping mapping = new FeatureMapping(fields, fieldTypes, geometryProperty, ns_prefix);
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(wps);
+            out.write(WFSTTEMPLATESTART);
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                final String name = getName(reader);
+                if ("gml:featureMember".equals(name)) {
+                    // we trust that featureMember only has one feature in feature namespace
+                    while (nextChildElement(reader)) {
+                        if (getName(reader).startsWith(ns_prefix + ":")) {
+                            writeFeature(reader, out, mapping, uuid, analysis_id);
+                        } else {
+                            skipElement(reader);
+                        }
+                    }
+                } else if ("gml:featureMembers".equals(name)) {
+                    // all features under one element
+                    while (nextChildElement(reader)) {
+                        writeFeature(reader, out, mapping, uuid, analysis_id);
                     }
                 }
             }
-            Node geometry = null;
-            List<String> textFeatures = new ArrayList<String>();
-            List<Double> numericFeatures = new ArrayList<Double>();
-            if ( ncount == 0) {
-                ncount = 1;
-                tcount = 1;
+            out.write(WFSTTEMPLATEEND);
+            out.flush();
+        } catch (XMLStreamException ex) {
+            throw new ServiceException("Unable to parse WPS FeatureCollection", ex);
+        } catch (IOException ex) {
+            throw new ServiceException("Unable to write WFS-T payload", ex);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                }
             }
-            for (int j = 0; j < features.getLength(); j++) {
-                Node feature = features.item(j);
-
-                // it's a feature, check if it's geometry
-                if (geomcols.contains(feature.getNodeName())) {
-                    // geometry, store aside for now
-                    geomcol = feature.getNodeName();
-                    geometry = feature;
-                } else if (feature.getNodeName().indexOf(ns_prefix+":") == 0) {
+        }
+    }
+
+    /**
+     * Reads the feature the reader is positioned at and writes a wfs:Insert element for it.
+     */
+    private void writeFeature(XMLStreamReader reader, Writer out, FeatureMapping mapping, String uuid, long analysis_id)
+            throws XMLStreamException, IOException {
+        String geometry = null;
+        List<String> textFeatures = new ArrayList<String>();
+        List<Double> numericFeatures = new ArrayList<Double>();
+
+        while (nextChildElement(reader)) {
+            final String name = getName(reader);
+            if (mapping.geomcols.contains(name)) {
+                // geometry, store aside for now
+                final StringWriter sw = new StringWriter();
+                copyElement(reader, sw, "feature:geometry");
+                geometry = sw.toString();
+            } else if (name.startsWith(mapping.ns_prefix + ":")
                     // only parse 8 first text ( numeric results invalid behavior later use only text)
                     //TODO: fix management of Date dateTime types later
-                    // (excluding geometry)
-                    if (textFeatures.size() < 8 && numericFeatures.size() < 8 && this.isHiddenField(feature) == false) {
-                        // get node value
-                        String strVal = feature.getTextContent();
-                        Double dblVal = null;
-                        String col = this.stripNamespace(feature.getNodeName());
-                        dblVal = this.getFieldAsNumeric(col, strVal, fieldTypes);
-
-                        if (null != dblVal) {
-                            numericFeatures.add(dblVal);
-                            if (!cols.contains(col)) {
-                                String colmap = "n" + Integer.toString(ncount)
-                                        + "=" + col;
-                                cols.add(col);
-                                fields.add(colmap);
-                                ncount++;
-                            }
-                        } else {
-                            textFeatures.add(strVal);
-                            if (!cols.contains(col)) {
-                                String colmap = "t" + Integer.toString(tcount)
-                                        + "=" + col;
-                                cols.add(col);
-                                fields.add(colmap);
-                                tcount++;
-                            }
-                        }
-                    }
+                    && textFeatures.size() < 8 && numericFeatures.size() < 8 && !isHiddenField(name)) {
+                final String strVal = getTextContent(reader);
+                final String col = stripNamespace(name);
+                final Double dblVal = getFieldAsNumeric(col, strVal, mapping.fieldTypes);
+                if (null != dblVal) {
+                    numericFeatures.add(dblVal);
+                    mapping.addColumn(col, true);
+                } else {
+                    textFeatures.add(strVal);
+                    mapping.addColumn(col, false);
                 }
+            } else {
+                skipElement(reader);
+            }
+        }
+        buildWfsInsertElement(out, geometry, textFeatures, numericFeatures, uuid, analysis_id);
+    }
 
+    /**
+     * Moves the reader to the next child element of the current element.
+     * @return false when the end of the current element was reached instead
+     */
+    private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
             }
-            buildWfsInsertElement(sb, geometry, geomcol, textFeatures, numericFeatures, uuid, analysis_id);
         }
-        sb.append(WFSTTEMPLATEEND);
-        return sb.toString();
+        return false;
     }
 
-    private static String nodeToString(Node node) throws ServiceException {
-        try {
-            StringWriter sw = new StringWriter();
-            Transformer t = TransformerFactory.newInstance().newTransformer();
-            t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-            t.setOutputProperty(OutputKeys.INDENT, "yes");
-            t.transform(new DOMSource(node), new StreamResult(sw));
-            return sw.toString();
-        } catch (Exception ex) {
-            throw new ServiceException("Unable to write XML node to string");
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Like DOM getTextContent(): text of the current element and all its descendants.
+     */
+    private static String getTextContent(XMLStreamReader reader) throws XMLStreamException {
+        final StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    text.append(reader.getText());
+                    break;
+                default:
+                    break;
+            }
         }
+        return text.toString();
     }
+
+    /**
+     * Writes the element the reader is positioned at with its content to the writer.
+     * @param rootName name for the written root element
+     */
+    private static void copyElement(XMLStreamReader reader, Writer out, String rootName)
+            throws XMLStreamException, IOException {
+        final Deque<String> names = new ArrayDeque<String>();
+        writeStartElement(reader, out, rootName);
+        names.push(rootName);
+        while (!names.isEmpty() && reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    final String name = getName(reader);
+                    writeStartElement(reader, out, name);
+                    names.push(name);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    out.write("</");
+                    out.write(names.pop());
+                    out.write('>');
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    writeEscaped(out, reader.getText());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void writeStartElement(XMLStreamReader reader, Writer out, String name) throws IOException {
+        out.write('<');
+        out.write(name);
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            out.write(' ');
+            out.write(getName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)));
+            out.write("=\"");
+            writeEscaped(out, reader.getAttributeValue(i));
+            out.write('"');
+        }
+        out.write('>');
+    }
+
+    private static String getName(XMLStreamReader reader) {
+        return getName(reader.getPrefix(), reader.getLocalName());
+    }
+
+    /**
+     * Parser is not namespace aware so the local name is usually the prefixed name, but handle both.
+     */
+    private static String getName(String prefix, String localName) {
+        if (prefix == null || prefix.isEmpty()) {
+            return localName;
+        }
+        return prefix + ":" + localName;
+    }
+
+    private static void writeEscaped(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '>':
+                    out.write("&gt;");
+                    break;
+                case '&':
+                    out.write("&amp;");
+                    break;
+                case '"':
+                    out.write("&quot;");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+    }
+
     private Document createDoc(final String content) throws ServiceException {
         try {
             final DocumentBuilderFactory dbf = DocumentBuilderFactory
@@ -184,9 +323,9 @@ public class TransformationService {
         return splitted[0];
     }
 
-    private boolean isHiddenField(Node feature)
+    private boolean isHiddenField(String name)
     {
-        String[] acol = feature.getNodeName().split(":");
+        String[] acol = name.split(":");
         if (acol.length > 1) return HIDDEN_FIELDS.contains(acol[1]);
 
         return false;
@@ -402,32 +541,69 @@ public class TransformationService {
             return null;
         }
     }
-    public void buildWfsInsertElement(StringBuilder sb, Node geometry, String geomcol, List<String> textFeatures, List<Double> numericFeatures, String uuid, long analysis_id ) throws ServiceException
+    private void buildWfsInsertElement(Writer out, String geometry, List<String> textFeatures, List<Double> numericFeatures, String uuid, long analysis_id ) throws IOException
     {
-    // build wfs:Insert element
-    sb.append(WFSTINSERTSTART);
-    // add geometry node
-    sb.append(nodeToString(geometry).replace(geomcol,
-                                             "feature:geometry"));
-    // add text feature nodes (1-based)
-    for (int j = 0; j < textFeatures.size(); j++) {
-        sb
-                .append("         <feature:t" + (j + 1) + ">"
-                        + textFeatures.get(j) + "</feature:t" + (j + 1)
-                        + ">\n");
-    }
-    // add numeric feature nodes (1-based)
-    for (int j = 0; j < numericFeatures.size(); j++) {
-        sb.append("         <feature:n" + (j + 1) + ">"
-                + numericFeatures.get(j) + "</feature:n" + (j + 1)
-                + ">\n");
-    }
+        // build wfs:Insert element
+        out.write(WFSTINSERTSTART);
+        // add geometry node
+        if (geometry != null) {
+            out.write(geometry);
+            out.write('\n');
+        }
+        // add text feature nodes (1-based)
+        for (int j = 0; j < textFeatures.size(); j++) {
+            out.write("         <feature:t" + (j + 1) + ">");
+            writeEscaped(out, textFeatures.get(j));
+            out.write("</feature:t" + (j + 1) + ">\n");
+        }
+        // add numeric feature nodes (1-based)
+        for (int j = 0; j < numericFeatures.size(); j++) {
+            out.write("         <feature:n" + (j + 1) + ">"
+                    + numericFeatures.get(j) + "</feature:n" + (j + 1)
+                    + ">\n");
+        }
+
+        out.write("         <feature:analysis_id>"
+                + Long.toString(analysis_id) + "</feature:analysis_id>\n");
 
-    sb.append("         <feature:analysis_id>"
-            + Long.toString(analysis_id) + "</feature:analysis_id>\n");
+        out.write("         <feature:uuid>");
+        writeEscaped(out, uuid);
+        out.write("</feature:uuid>\n");
 
-    sb.append("         <feature:uuid>" + uuid + "</feature:uuid>\n");
+        out.write(WFSTINSERTEND);
+    }
 
-    sb.append(WFSTINSERTEND);
+    /**
+     * Column mapping of WPS properties, shared by all features of the collection.
+     */
+    private static class FeatureMapping {
+        final List<String> fields;
+        final Map<String, String> fieldTypes;
+        final String ns_prefix;
+        final Set<String> geomcols = new HashSet<String>();
+        final Set<String> cols = new HashSet<String>();
+        int ncount = 1;
+        int tcount = 1;
+
+        FeatureMapping(List<String> fields, Map<String, String> fieldTypes, String geometryProperty, String ns_prefix) {
+            this.fields = fields;
+            this.fieldTypes = fieldTypes;
+            this.ns_prefix = ns_prefix;
+            geomcols.add(ns_prefix + ":" + geometryProperty);
+            geomcols.add(ns_prefix + ":geometry");  //  default geometry
+        }
+
+        void addColumn(String col, boolean numeric) {
+            if (!cols.add(col)) {
+                return;
+            }
+            if (numeric) {
+                fields.add("n" + Integer.toString(ncount) + "=" + col);
+                ncount++;
+            } else {
+                fields.add("t" + Integer.toString(tcount) + "=" + col);
+                tcount++;
+            }
+        }
     }
 }
@@ -17,4 +17,10 @@ public interface OskariLayerService extends BaseService<OskariLayer> {
     public List<OskariLayer> find(final List<String> idList, final String crs);
     public List<OskariLayer> findAll(final String crs);
     public List<OskariLayer> findByUrlAndName(final String url, final String name);
+
+    /**
+     * Updates only the capabilities and tile matrix set id of the layer
+     * @param layer
+     */
+    public void updateCapabilities(final OskariLayer layer);
 }
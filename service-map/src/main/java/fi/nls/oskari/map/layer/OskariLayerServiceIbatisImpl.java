@@ -349,6 +349,14 @@ public class OskariLayerServiceIbatisImpl implements OskariLayerService {
         }
     }
 
+    public void updateCapabilities(final OskariLayer layer) {
+        try {
+            getSqlMapClient().update(getNameSpace() + ".updateCapabilities", layer);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to update capabilities", e);
+        }
+    }
+
     public synchronized int insert(final OskariLayer layer) {
         SqlMapClient client = null;
         try {
@@ -5,7 +5,6 @@ import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.map.geometry.ProjectionHelper;
 import fi.nls.oskari.util.JSONHelper;
-import fi.nls.oskari.wmts.domain.TileMatrixLimits;
 import fi.nls.oskari.wmts.domain.WMTSCapabilities;
 import fi.nls.oskari.wmts.domain.WMTSCapabilitiesLayer;
 import org.geotools.referencing.CRS;
@@ -100,14 +99,11 @@ public class LayerJSONFormatterWMTS extends LayerJSONFormatter {
      */
     public static List<JSONObject> createTileMatrixArray(final WMTSCapabilities wmts, final WMTSCapabilitiesLayer layer) {
         final List<JSONObject> tileMatrix = new ArrayList<>();
-        Map<String, Set<TileMatrixLimits>> links = layer.getLinks();
-        if (links.size() > 0 ) {
-            //Loop matrixSet links
-            for (Map.Entry<String, Set<TileMatrixLimits>> entry : links.entrySet()) {
-                String crs = wmts.getMatrixCRS(entry.getKey());
-                if(crs != null){
-                    tileMatrix.add(JSONHelper.createJSONObject(ProjectionHelper.shortSyntaxEpsg(crs), entry.getKey()));
-                }
+        //Loop matrixSet links
+        for (String matrixSetId : layer.getLinks().keySet()) {
+            String crs = wmts.getMatrixCRS(matrixSetId);
+            if(crs != null){
+                tileMatrix.add(JSONHelper.createJSONObject(ProjectionHelper.shortSyntaxEpsg(crs), matrixSetId));
             }
         }
         return tileMatrix;
@@ -126,11 +122,10 @@ public class LayerJSONFormatterWMTS extends LayerJSONFormatter {
 
         Set<String>  crss = new HashSet<String>();
 
-        Map<String, Set<TileMatrixLimits>> links = layer.getLinks();
-        if (links.size() > 0 ) {
+        if (layer.getLinks().size() > 0 ) {
             //Loop matrixSet links
-            for (Map.Entry<String, Set<TileMatrixLimits>> entry : links.entrySet()) {
-                String crs = wmts.getMatrixCRS(entry.getKey());
+            for (String matrixSetId : layer.getLinks().keySet()) {
+                String crs = wmts.getMatrixCRS(matrixSetId);
                 crss.add(ProjectionHelper.shortSyntaxEpsg(crs));
             }
             return crss;
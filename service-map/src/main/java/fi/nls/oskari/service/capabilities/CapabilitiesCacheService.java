@@ -1,5 +1,7 @@
 package fi.nls.oskari.service.capabilities;
 
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -11,6 +13,10 @@ import fi.nls.oskari.util.PropertyUtil;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -29,6 +35,14 @@ public abstract class CapabilitiesCacheService extends OskariComponent {
     private static final String PROP_TIMEOUT = "capabilities.timeout";
     private static final int TIMEOUT_SECONDS = PropertyUtil.getOptional(PROP_TIMEOUT, 30);
     private static final int TIMEOUT_MS = TIMEOUT_SECONDS * 1000;
+    // the encoding declaration is expected to be found in the beginning of the document
+    private static final int XML_DECLARATION_MAX_LENGTH = 512;
+
+    // parsed capabilities by type and hash of the capabilities data
+    private static final Cache<Object> PARSED_CACHE = CacheManager.getCache(CapabilitiesCacheService.class.getName() + ".parsed");
+    static {
+        PARSED_CACHE.setLimit(100);
+    }
 
     public abstract OskariLayerCapabilities find(final String url, final String layertype, final String version);
     public abstract OskariLayerCapabilities save(final OskariLayerCapabilities capabilities);
@@ -77,7 +91,7 @@ public abstract class CapabilitiesCacheService extends OskariComponent {
                 }
             }
             // get xml from service
-            final String xml = loadCapabilitiesFromService(layer, encoding, loadFromService);
+            final String xml = loadCapabilitiesFromService(layer, encoding);
             cap.setData(xml);
             // save before returning
             save(cap);
@@ -96,28 +110,132 @@ public abstract class CapabilitiesCacheService extends OskariComponent {
         }
     }
 
-    public static String loadCapabilitiesFromService(OskariLayer layer, String encoding) throws IOException {
-        return loadCapabilitiesFromService(layer, encoding, false);
+    /**
+     * Refreshes the saved capabilities of the service the layer is using. The request is made conditional
+     * with the ETag/Last-Modified of the saved capabilities and the response is only saved as
+     * new data if its hash differs from the saved one.
+     * @param layer layer with the service url, type, version and credentials
+     * @return true if the capabilities have changed and layers using them should be updated
+     * @throws ServiceException if the capabilities couldn't be loaded
+     */
+    public boolean refreshCapabilities(final OskariLayer layer) throws ServiceException {
+        final OskariLayerCapabilities saved = find(layer);
+        final boolean hasData = saved != null && saved.getData() != null && !saved.getData().trim().isEmpty();
+        final OskariLayerCapabilities cap = hasData ? saved : createTemplate(layer);
+        try {
+            final HttpURLConnection conn = getConnection(layer);
+            if (hasData && saved.getEtag() != null) {
+                conn.setRequestProperty("If-None-Match", saved.getEtag());
+            }
+            if (hasData && saved.getLastModified() != null) {
+                conn.setRequestProperty("If-Modified-Since", saved.getLastModified());
+            }
+            if (conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                LOG.debug("Capabilities not modified:", cap.getUrl());
+                return false;
+            }
+            final String xml = readCapabilities(conn, null);
+            final String hash = getHash(xml);
+            final boolean changed = !hasData || !hash.equals(saved.getDataHash());
+            cap.setEtag(conn.getHeaderField("ETag"));
+            cap.setLastModified(conn.getHeaderField("Last-Modified"));
+            cap.setData(xml);
+            cap.setDataHash(hash);
+            // only updates the validators if the data hasn't changed
+            save(cap);
+            return changed;
+        } catch (IOException e) {
+            throw new ServiceException("Error refreshing capabilities from URL:" + layer.getUrl(), e);
+        }
     }
 
-    private static String loadCapabilitiesFromService(OskariLayer layer, String encoding, final boolean norecursion) throws IOException {
+    public static String loadCapabilitiesFromService(OskariLayer layer, String encoding) throws IOException {
+        return readCapabilities(getConnection(layer), encoding);
+    }
 
+    private static HttpURLConnection getConnection(OskariLayer layer) throws IOException {
         final String url = contructCapabilitiesUrl(layer);
-        if(encoding == null) {
-            encoding = IOHelper.DEFAULT_CHARSET;
-        }
         final HttpURLConnection conn = IOHelper.getConnection(url, layer.getUsername(), layer.getPassword());
         conn.setReadTimeout(TIMEOUT_MS);
-        final String response = IOHelper.readString(conn, encoding);
-        final String charset = getEncodingFromXml(response);
+        conn.setRequestProperty(IOHelper.HEADER_ACCEPT_ENCODING, "gzip");
+        return conn;
+    }
 
-        //if encoding differs from that of the xml, we always have to re-read from service.
-        if (charset != null && !encoding.equalsIgnoreCase(charset))  {
-            return loadCapabilitiesFromService(layer, charset, true);
-        } else if(norecursion || charset == null || encoding.equalsIgnoreCase(charset)) {
-            return response;
+    /**
+     * Reads the response once and decodes it with the encoding declared in the xml
+     * @param conn
+     * @param encoding used if the xml doesn't declare an encoding, defaults to IOHelper.DEFAULT_CHARSET
+     * @return capabilities xml
+     */
+    private static String readCapabilities(HttpURLConnection conn, String encoding) throws IOException {
+        final byte[] bytes = IOHelper.readBytes(conn);
+        final String declaration = new String(bytes, 0, Math.min(bytes.length, XML_DECLARATION_MAX_LENGTH), StandardCharsets.ISO_8859_1);
+        String charset = getEncodingFromXml(declaration);
+        if (!isSupported(charset)) {
+            charset = encoding == null ? IOHelper.DEFAULT_CHARSET : encoding;
+        }
+        return new String(bytes, charset);
+    }
+
+    private static boolean isSupported(final String charset) {
+        try {
+            return charset != null && Charset.isSupported(charset);
+        } catch (IllegalArgumentException e) {
+            // illegal charset name
+            return false;
+        }
+    }
+
+    /**
+     * Returns parsed capabilities cached in memory. Parsed objects are cached by the hash of the
+     * capabilities data so a changed document is parsed again.
+     * @param capabilities
+     * @param type class of the parsed object
+     * @return parsed capabilities or null if not cached
+     */
+    public static <T> T getParsed(final OskariLayerCapabilities capabilities, final Class<T> type) {
+        final Object parsed = PARSED_CACHE.get(getParsedCacheKey(capabilities, type));
+        return type.isInstance(parsed) ? type.cast(parsed) : null;
+    }
+
+    /**
+     * Caches parsed capabilities in memory. The parsed object is shared so it shouldn't be modified.
+     * @param capabilities
+     * @param type class used to get the parsed object with getParsed()
+     * @param parsed
+     */
+    public static <T> void putParsed(final OskariLayerCapabilities capabilities, final Class<T> type, final T parsed) {
+        if (parsed != null) {
+            PARSED_CACHE.put(getParsedCacheKey(capabilities, type), parsed);
+        }
+    }
+
+    private static String getParsedCacheKey(final OskariLayerCapabilities capabilities, final Class type) {
+        String hash = capabilities.getDataHash();
+        if (hash == null) {
+            hash = getHash(capabilities.getData());
+        }
+        return type.getName() + "_" + hash;
+    }
+
+    /**
+     * @param data
+     * @return SHA-256 of the data as hex or empty string for null
+     */
+    public static String getHash(final String data) {
+        if (data == null) {
+            return "";
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(data.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
-        return loadCapabilitiesFromService(layer, charset, true);
     }
 
     public static OskariLayerCapabilities createTemplate(OskariLayer layer) {
@@ -163,7 +281,11 @@ public abstract class CapabilitiesCacheService extends OskariComponent {
         int encodeAttributeStart = processingSplit[0].indexOf(ENCODE_ATTRIBUTE);
         if (encodeAttributeStart > 0) {
             encodeAttributeStart = encodeAttributeStart + ENCODE_ATTRIBUTE.length();
-            return processingSplit[0].substring(encodeAttributeStart, processingSplit[0].indexOf('"', encodeAttributeStart));
+            final int encodeAttributeEnd = processingSplit[0].indexOf('"', encodeAttributeStart);
+            if (encodeAttributeEnd < 0) {
+                return null;
+            }
+            return processingSplit[0].substring(encodeAttributeStart, encodeAttributeEnd);
         }
 
         return null;
@@ -80,6 +80,9 @@ public class CapabilitiesCacheServiceMybatisImpl extends CapabilitiesCacheServic
         try {
             final CapabilitiesMapper mapper = session.getMapper(CapabilitiesMapper.class);
 
+            if (capabilities.getDataHash() == null) {
+                capabilities.setDataHash(getHash(capabilities.getData()));
+            }
             OskariLayerCapabilities db = mapper.find(capabilities.getUrl().toLowerCase(), capabilities.getLayertype().toLowerCase(), capabilities.getVersion());
 
             if (db != null) {
@@ -89,7 +92,12 @@ public class CapabilitiesCacheServiceMybatisImpl extends CapabilitiesCacheServic
                     return db;
                 }
                 capabilities.setId(db.getId());
-                mapper.updateData(capabilities);
+                if (capabilities.getDataHash().equals(db.getDataHash())) {
+                    // data is unchanged, don't rewrite it
+                    mapper.updateValidators(capabilities);
+                } else {
+                    mapper.updateData(capabilities);
+                }
             } else {
                 mapper.insert(capabilities);
             }
@@ -10,19 +10,30 @@ import org.apache.ibatis.annotations.Update;
  */
 public interface CapabilitiesMapper {
 
-    @Select("SELECT id, layertype, url, data, created, updated, version" +
+    @Select("SELECT id, layertype, url, data, created, updated, version," +
+            " etag, last_modified AS lastModified, data_hash AS dataHash" +
             " FROM oskari_capabilities_cache" +
             " WHERE url = #{url} AND layertype = #{type} AND" +
             " (version = #{version} OR version is null)" +
             " ORDER BY version ASC LIMIT 1")
     OskariLayerCapabilities find(@Param("url") final String url, @Param("type")final String type, @Param("version") final String version);
 
-    @Insert("INSERT INTO oskari_capabilities_cache(layertype, url, data, version) VALUES (lower(#{layertype}), lower(#{url}), #{data}, #{version})")
+    @Insert("INSERT INTO oskari_capabilities_cache(layertype, url, data, version, etag, last_modified, data_hash)" +
+            " VALUES (lower(#{layertype}), lower(#{url}), #{data}, #{version}, #{etag}, #{lastModified}, #{dataHash})")
     void insert(OskariLayerCapabilities capabilities);
 
     @Update("UPDATE oskari_capabilities_cache SET " +
             "   data = #{data}," +
+            "   etag = #{etag}," +
+            "   last_modified = #{lastModified}," +
+            "   data_hash = #{dataHash}," +
             "   updated = current_timestamp" +
             "   WHERE id = #{id}")
     void updateData(OskariLayerCapabilities capabilities);
+
+    @Update("UPDATE oskari_capabilities_cache SET " +
+            "   etag = #{etag}," +
+            "   last_modified = #{lastModified}" +
+            "   WHERE id = #{id}")
+    void updateValidators(OskariLayerCapabilities capabilities);
 }
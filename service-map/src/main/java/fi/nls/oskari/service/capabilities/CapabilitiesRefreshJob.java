@@ -0,0 +1,161 @@
+package fi.nls.oskari.service.capabilities;
+
+import fi.mml.map.mapwindow.service.wms.WebMapService;
+import fi.mml.map.mapwindow.service.wms.WebMapServiceFactory;
+import fi.nls.oskari.annotation.Oskari;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.layer.OskariLayerService;
+import fi.nls.oskari.map.layer.OskariLayerServiceIbatisImpl;
+import fi.nls.oskari.map.layer.formatters.LayerJSONFormatterWMS;
+import fi.nls.oskari.map.layer.formatters.LayerJSONFormatterWMTS;
+import fi.nls.oskari.service.OskariComponentManager;
+import fi.nls.oskari.util.PropertyUtil;
+import fi.nls.oskari.wmts.WMTSCapabilitiesParser;
+import fi.nls.oskari.wmts.domain.WMTSCapabilities;
+import fi.nls.oskari.wmts.domain.WMTSCapabilitiesLayer;
+import fi.nls.oskari.worker.ScheduledJob;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Scheduled job for refreshing the saved capabilities of WMS and WMTS services and the capabilities
+ * of the layers using them. Services are requested concurrently with conditional requests and
+ * layers are only updated when the capabilities of the service have changed.
+ *
+ * Schedule with a property in oskari-ext.properties:
+ *  oskari.scheduler.job.CapabilitiesRefresh.cronLine=0 0 3 * * ?
+ *  # concurrent capabilities requests (defaults to 8)
+ *  capabilities.refresh.threads=8
+ */
+@Oskari("CapabilitiesRefresh")
+public class CapabilitiesRefreshJob extends ScheduledJob {
+    private static final Logger LOG = LogFactory.getLogger(CapabilitiesRefreshJob.class);
+
+    private static final String PROPERTY_THREADS = "capabilities.refresh.threads";
+    private static final int DEFAULT_THREADS = 8;
+
+    private final OskariLayerService layerService = new OskariLayerServiceIbatisImpl();
+
+    @Override
+    public void execute(Map<String, Object> params) {
+        final CapabilitiesCacheService capabilitiesService = OskariComponentManager.getComponentOfType(CapabilitiesCacheService.class);
+        final Map<String, List<OskariLayer>> services = getLayersByService();
+        if (services.isEmpty()) {
+            LOG.info("No WMS/WMTS layers - quitting!");
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        final int threads = Math.max(1, PropertyUtil.getOptional(PROPERTY_THREADS, DEFAULT_THREADS));
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final Map<String, Future<Boolean>> results = new LinkedHashMap<>();
+        for (final List<OskariLayer> layers : services.values()) {
+            final OskariLayer layer = layers.get(0);
+            results.put(layer.getUrl(), executor.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    if (!capabilitiesService.refreshCapabilities(layer)) {
+                        return false;
+                    }
+                    updateLayers(capabilitiesService.find(layer), layers);
+                    return true;
+                }
+            }));
+        }
+        executor.shutdown();
+
+        int changed = 0;
+        int failed = 0;
+        for (Map.Entry<String, Future<Boolean>> entry : results.entrySet()) {
+            final Boolean result = getResult(entry.getKey(), entry.getValue());
+            if (result == null) {
+                failed++;
+            } else if (result) {
+                changed++;
+            }
+        }
+        LOG.info("Capabilities refresh took", System.currentTimeMillis() - start, "ms for", services.size(),
+                "services. Changed:", changed, "- Failed:", failed,
+                "- Unchanged:", services.size() - changed - failed);
+    }
+
+    /**
+     * Groups the WMS and WMTS layers by the service they use
+     * @return layers by service
+     */
+    private Map<String, List<OskariLayer>> getLayersByService() {
+        final Map<String, List<OskariLayer>> services = new LinkedHashMap<>();
+        for (OskariLayer layer : layerService.findAll()) {
+            if (!OskariLayer.TYPE_WMS.equals(layer.getType()) && !OskariLayer.TYPE_WMTS.equals(layer.getType())) {
+                continue;
+            }
+            final String key = layer.getType() + "|" + layer.getVersion() + "|" +
+                    layer.getSimplifiedUrl(true) + "|" + layer.getUsername();
+            List<OskariLayer> layers = services.get(key);
+            if (layers == null) {
+                layers = new ArrayList<>();
+                services.put(key, layers);
+            }
+            layers.add(layer);
+        }
+        return services;
+    }
+
+    /**
+     * Updates the capabilities of the layers using the service
+     * @param capabilities changed capabilities of the service
+     * @param layers layers using the service
+     */
+    private void updateLayers(final OskariLayerCapabilities capabilities, final List<OskariLayer> layers) throws Exception {
+        final String xml = capabilities.getData();
+        if (OskariLayer.TYPE_WMTS.equals(capabilities.getLayertype())) {
+            final WMTSCapabilities caps = new WMTSCapabilitiesParser().parseCapabilities(xml);
+            for (OskariLayer layer : layers) {
+                final WMTSCapabilitiesLayer capsLayer = caps.getLayer(layer.getName());
+                if (capsLayer == null) {
+                    LOG.info("Layer", layer.getName(), "not found in capabilities of", layer.getUrl());
+                    continue;
+                }
+                final JSONObject json = LayerJSONFormatterWMTS.createCapabilitiesJSON(caps, capsLayer);
+                layer.setCapabilities(json);
+                final String matrixSetId = LayerJSONFormatterWMTS.getTileMatrixSetId(json, layer.getSrs_name());
+                if (matrixSetId != null) {
+                    layer.setTileMatrixSetId(matrixSetId);
+                }
+                layerService.updateCapabilities(layer);
+            }
+            return;
+        }
+        for (OskariLayer layer : layers) {
+            final WebMapService wms = WebMapServiceFactory.createFromXML(layer.getName(), xml);
+            if (wms == null) {
+                LOG.info("Couldn't parse capabilities for layer", layer.getName(), "from", layer.getUrl());
+                continue;
+            }
+            layer.setCapabilities(LayerJSONFormatterWMS.createCapabilitiesJSON(wms));
+            layerService.updateCapabilities(layer);
+            WebMapServiceFactory.flushCache(layer.getId());
+        }
+    }
+
+    private Boolean getResult(final String url, final Future<Boolean> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while refreshing capabilities for", url);
+        } catch (ExecutionException e) {
+            LOG.warn("Error refreshing capabilities for:", url, "-", e.getCause().getMessage());
+        }
+        return null;
+    }
+}
@@ -13,6 +13,11 @@ public class OskariLayerCapabilities {
     private String data;
     private Date created;
     private Date updated;
+    // HTTP validators from the capabilities response
+    private String etag;
+    private String lastModified;
+    // hash of data
+    private String dataHash;
 
     public long getId() {
         return id;
@@ -50,8 +55,13 @@ public class OskariLayerCapabilities {
         return data;
     }
 
+    /**
+     * Also clears the hash of the previous data. Set the hash after the data if it's known.
+     * @param data
+     */
     public void setData(String data) {
         this.data = data;
+        this.dataHash = null;
     }
 
     public Date getCreated() {
@@ -69,4 +79,28 @@ public class OskariLayerCapabilities {
     public void setUpdated(Date updated) {
         this.updated = updated;
     }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getDataHash() {
+        return dataHash;
+    }
+
+    public void setDataHash(String dataHash) {
+        this.dataHash = dataHash;
+    }
 }
@@ -88,8 +88,12 @@ public class GetGtWMSCapabilities {
                 capabilities = service.getCapabilities(rurl, "wmslayer", user, pwd, version, true);
                 capabilitiesXML = capabilities.getData();
             }
-            String encoding = CapabilitiesCacheService.getEncodingFromXml(capabilitiesXML);
-            WMSCapabilities caps = createCapabilities(capabilitiesXML, encoding);
+            WMSCapabilities caps = CapabilitiesCacheService.getParsed(capabilities, WMSCapabilities.class);
+            if (caps == null) {
+                String encoding = CapabilitiesCacheService.getEncodingFromXml(capabilitiesXML);
+                caps = createCapabilities(capabilitiesXML, encoding);
+                CapabilitiesCacheService.putParsed(capabilities, WMSCapabilities.class, caps);
+            }
             // caps to json
             return parseLayer(caps.getLayer(), rurl, caps, capabilitiesXML, currentCrs);
         } catch (Exception ex) {
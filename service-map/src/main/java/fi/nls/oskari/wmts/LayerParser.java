@@ -1,111 +1,142 @@
 package fi.nls.oskari.wmts;
 
-import fi.nls.oskari.log.LogFactory;
-import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.ConversionHelper;
-import fi.nls.oskari.util.XmlHelper;
 import fi.nls.oskari.wms.WMSStyle;
 import fi.nls.oskari.wmts.domain.ResourceUrl;
-import fi.nls.oskari.wmts.domain.TileMatrixLimits;
+import fi.nls.oskari.wmts.domain.TileMatrixSetLink;
 import fi.nls.oskari.wmts.domain.WMTSCapabilitiesLayer;
-import org.apache.axiom.om.OMElement;
 
-import java.util.*;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static fi.nls.oskari.wmts.WMTSCapabilitiesParser.nextChild;
+import static fi.nls.oskari.wmts.WMTSCapabilitiesParser.readText;
+import static fi.nls.oskari.wmts.WMTSCapabilitiesParser.skipElement;
 
 /**
- * NOTE!!! Initial scripblings for WMTS capabilities parsing. Not used anywhere and might change without notice!!
+ * Parses a Layer element of WMTS capabilities.
  */
 public class LayerParser {
 
-    private Logger log = LogFactory.getLogger(LayerParser.class);
-
-
-    public static WMTSCapabilitiesLayer parse(final OMElement capabilitiesLayer) throws Exception {
-        if(capabilitiesLayer == null) {
-            return null;
-        }
-        WMTSCapabilitiesLayer result = new WMTSCapabilitiesLayer();
-        result.setId(XmlHelper.getChildValue(capabilitiesLayer, "Identifier"));
-        result.setTitle(XmlHelper.getChildValue(capabilitiesLayer, "Title"));
-
-        // setup styles
-        Iterator<OMElement> styleIterator = capabilitiesLayer.getChildrenWithLocalName("Style");
-        while(styleIterator.hasNext()) {
-            OMElement styleElem = styleIterator.next();
-
-            WMSStyle style = new WMSStyle();
-            final String id = XmlHelper.getChildValue(styleElem, "Identifier");
-            style.setTitle(id);
-            style.setName(id);
-            if(ConversionHelper.getBoolean(XmlHelper.getAttributeValue(styleElem, "isDefault"), false)) {
-                result.setDefaultStyle(id);
+    /**
+     * @param reader positioned on the Layer start element, left on its end element
+     * @return parsed layer
+     */
+    public static WMTSCapabilitiesLayer parse(final XMLStreamReader reader) throws XMLStreamException {
+        final WMTSCapabilitiesLayer result = new WMTSCapabilitiesLayer();
+        while (nextChild(reader)) {
+            final String name = reader.getLocalName();
+            if ("Identifier".equals(name)) {
+                result.setId(readText(reader));
+            } else if ("Title".equals(name)) {
+                final String title = readText(reader);
+                // use the first one if there are titles in multiple languages
+                if (result.getTitle() == null) {
+                    result.setTitle(title);
+                }
+            } else if ("Style".equals(name)) {
+                parseStyle(reader, result);
+            } else if ("Format".equals(name)) {
+                result.addFormat(readText(reader));
+            } else if ("InfoFormat".equals(name)) {
+                result.addInfoFormat(readText(reader));
+            } else if ("ResourceURL".equals(name)) {
+                /*
+                <ResourceURL format="image/jpeg" resourceType="tile"
+                template="http://karttamoottori.maanmittauslaitos.fi/maasto/wmts/1.0.0/ortokuva_vaaravari/default/{TileMatrixSet}/{TileMatrix}/{TileRow}/{TileCol}.jpg" />
+                */
+                final ResourceUrl url = new ResourceUrl();
+                url.setFormat(reader.getAttributeValue(null, "format"));
+                url.setType(reader.getAttributeValue(null, "resourceType"));
+                url.setTemplate(reader.getAttributeValue(null, "template"));
+                result.addResourceUrl(url);
+                skipElement(reader);
+            } else if ("TileMatrixSetLink".equals(name)) {
+                final TileMatrixSetLink link = parseLink(reader);
+                if (link.getTileMatrixSet() != null) {
+                    result.addLink(link);
+                }
+            } else {
+                skipElement(reader);
             }
-            result.addStyle(style);
         }
+        return result;
+    }
 
-        // setup formats
-        Iterator<OMElement> formatIterator = capabilitiesLayer.getChildrenWithLocalName("Format");
-        while(formatIterator.hasNext()) {
-            OMElement elem = formatIterator.next();
-            result.addFormat(elem.getText());
-        }
-        // setup infoformats
-        Iterator<OMElement> infoFormatIterator = capabilitiesLayer.getChildrenWithLocalName("InfoFormat");
-        while(infoFormatIterator.hasNext()) {
-            OMElement elem = infoFormatIterator.next();
-            result.addInfoFormat(elem.getText());
+    private static void parseStyle(final XMLStreamReader reader, final WMTSCapabilitiesLayer layer)
+            throws XMLStreamException {
+        final boolean isDefault = ConversionHelper.getBoolean(reader.getAttributeValue(null, "isDefault"), false);
+        String id = null;
+        while (nextChild(reader)) {
+            if ("Identifier".equals(reader.getLocalName())) {
+                id = readText(reader);
+            } else {
+                skipElement(reader);
+            }
         }
-
-        // setup resource urls
-/*
-        <ResourceURL format="image/jpeg" resourceType="tile"
-        template="http://karttamoottori.maanmittauslaitos.fi/maasto/wmts/1.0.0/ortokuva_vaaravari/default/{TileMatrixSet}/{TileMatrix}/{TileRow}/{TileCol}.jpg" />
-*/
-        Iterator<OMElement> urlIterator = capabilitiesLayer.getChildrenWithLocalName("ResourceURL");
-        while(urlIterator.hasNext()) {
-            OMElement elem = urlIterator.next();
-            Map<String, String> attrs = XmlHelper.getAttributesAsMap(elem);
-            ResourceUrl url = new ResourceUrl();
-            url.setFormat(attrs.get("format"));
-            url.setType(attrs.get("resourceType"));
-            url.setTemplate(attrs.get("template"));
-            result.addResourceUrl(url);
+        final WMSStyle style = new WMSStyle();
+        style.setTitle(id);
+        style.setName(id);
+        if (isDefault) {
+            layer.setDefaultStyle(id);
         }
-
-        // setup matrix link and limits
-        Map<String, Set<TileMatrixLimits>> links = parseLinks(capabilitiesLayer);
-        result.setLinks(links);
-        return result;
+        layer.addStyle(style);
     }
 
-    private static Map<String, Set<TileMatrixLimits>> parseLinks(final OMElement capabilitiesLayer) throws Exception {
-        Iterator<OMElement> matrixLinkIterator = capabilitiesLayer.getChildrenWithLocalName("TileMatrixSetLink");
-        Map<String, Set<TileMatrixLimits>> links = new HashMap<String, Set<TileMatrixLimits>>();
-        while(matrixLinkIterator.hasNext()) {
-            OMElement elem = matrixLinkIterator.next();
-            final String name = XmlHelper.getChildValue(elem, "TileMatrixSet");
-            final OMElement setLimitsElem = XmlHelper.getChild(elem, "TileMatrixSetLimits");
-            final Set<TileMatrixLimits> limits = parseLimits(setLimitsElem);
-            links.put(name, limits);
+    private static TileMatrixSetLink parseLink(final XMLStreamReader reader) throws XMLStreamException {
+        String matrixSet = null;
+        final List<String> matrices = new ArrayList<>();
+        int[] limits = new int[0];
+        while (nextChild(reader)) {
+            final String name = reader.getLocalName();
+            if ("TileMatrixSet".equals(name)) {
+                matrixSet = readText(reader);
+            } else if ("TileMatrixSetLimits".equals(name)) {
+                while (nextChild(reader)) {
+                    if (!"TileMatrixLimits".equals(reader.getLocalName())) {
+                        skipElement(reader);
+                        continue;
+                    }
+                    final int index = matrices.size() * 4;
+                    if (index == limits.length) {
+                        limits = Arrays.copyOf(limits, Math.max(64, limits.length * 2));
+                    }
+                    matrices.add(parseLimits(reader, limits, index));
+                }
+            } else {
+                skipElement(reader);
+            }
         }
-        return links;
+        return new TileMatrixSetLink(matrixSet, matrices.toArray(new String[matrices.size()]),
+                Arrays.copyOf(limits, matrices.size() * 4));
     }
-    private static Set<TileMatrixLimits> parseLimits(final OMElement elem) throws Exception {
-        final Set<TileMatrixLimits> limits = new HashSet<TileMatrixLimits>();
-        if(elem == null) {
-            return limits;
-        }
-        Iterator<OMElement> limitsIterator = elem.getChildrenWithLocalName("TileMatrixLimits");
-        while(limitsIterator.hasNext()) {
-            final OMElement limitElem = limitsIterator.next();
-            final TileMatrixLimits limit = new TileMatrixLimits();
-            limit.setTileMatrix(XmlHelper.getChildValue(limitElem, "TileMatrix"));
-            limit.setMinTileRow(ConversionHelper.getInt(XmlHelper.getChildValue(limitElem, "MinTileRow"), limit.getMinTileRow()));
-            limit.setMaxTileRow(ConversionHelper.getInt(XmlHelper.getChildValue(limitElem, "MaxTileRow"), limit.getMaxTileRow()));
-            limit.setMinTileCol(ConversionHelper.getInt(XmlHelper.getChildValue(limitElem, "MinTileCol"), limit.getMinTileCol()));
-            limit.setMaxTileCol(ConversionHelper.getInt(XmlHelper.getChildValue(limitElem, "MaxTileCol"), limit.getMaxTileCol()));
-            limits.add(limit);
+
+    /**
+     * Reads a TileMatrixLimits element to limits array starting from index
+     * @return id of the tile matrix
+     */
+    private static String parseLimits(final XMLStreamReader reader, final int[] limits, final int index)
+            throws XMLStreamException {
+        String matrix = null;
+        while (nextChild(reader)) {
+            final String name = reader.getLocalName();
+            if ("TileMatrix".equals(name)) {
+                matrix = readText(reader);
+            } else if ("MinTileRow".equals(name)) {
+                limits[index] = ConversionHelper.getInt(readText(reader), 0);
+            } else if ("MaxTileRow".equals(name)) {
+                limits[index + 1] = ConversionHelper.getInt(readText(reader), 0);
+            } else if ("MinTileCol".equals(name)) {
+                limits[index + 2] = ConversionHelper.getInt(readText(reader), 0);
+            } else if ("MaxTileCol".equals(name)) {
+                limits[index + 3] = ConversionHelper.getInt(readText(reader), 0);
+            } else {
+                skipElement(reader);
+            }
         }
-        return limits;
+        return matrix;
     }
 }
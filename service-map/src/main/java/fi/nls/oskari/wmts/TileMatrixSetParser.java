@@ -3,46 +3,96 @@ package fi.nls.oskari.wmts;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.ConversionHelper;
-import fi.nls.oskari.util.XmlHelper;
 import fi.nls.oskari.wmts.domain.TileMatrix;
 import fi.nls.oskari.wmts.domain.TileMatrixSet;
-import org.apache.axiom.om.OMElement;
 
-import java.util.Iterator;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static fi.nls.oskari.wmts.WMTSCapabilitiesParser.nextChild;
+import static fi.nls.oskari.wmts.WMTSCapabilitiesParser.readText;
+import static fi.nls.oskari.wmts.WMTSCapabilitiesParser.skipElement;
 
 /**
- * NOTE!!! Initial scripblings for WMTS capabilities parsing. Not used anywhere and might change without notice!!
+ * Parses a TileMatrixSet element of WMTS capabilities.
  */
 public class TileMatrixSetParser {
 
-    private Logger log = LogFactory.getLogger(TileMatrixSetParser.class);
+    private static final Logger log = LogFactory.getLogger(TileMatrixSetParser.class);
 
-    public static TileMatrixSet parse(final OMElement tileMatrixSet) throws Exception {
-        if(tileMatrixSet == null) {
-            return null;
+    /**
+     * @param reader positioned on the TileMatrixSet start element, left on its end element
+     * @return parsed matrix set
+     */
+    public static TileMatrixSet parse(final XMLStreamReader reader) throws XMLStreamException {
+        String id = null;
+        String crs = null;
+        final List<TileMatrix> matrices = new ArrayList<>();
+        final Set<String> matrixIds = new HashSet<>();
+        while (nextChild(reader)) {
+            final String name = reader.getLocalName();
+            if ("Identifier".equals(name)) {
+                id = readText(reader);
+            } else if ("SupportedCRS".equals(name)) {
+                crs = readText(reader);
+            } else if ("TileMatrix".equals(name)) {
+                final TileMatrix matrix = parseMatrix(reader);
+                if (matrix.getId() == null || !matrixIds.add(matrix.getId())) {
+                    log.warn("TileMatrix already exists or id missing!!!", matrix.getId());
+                } else {
+                    matrices.add(matrix);
+                }
+            } else {
+                skipElement(reader);
+            }
         }
-        TileMatrixSet result = new TileMatrixSet();
-        result.setId(XmlHelper.getChildValue(tileMatrixSet, "Identifier"));
-        result.setCrs(XmlHelper.getChildValue(tileMatrixSet, "SupportedCRS"));
-        Iterator<OMElement> matrixIterator = tileMatrixSet.getChildrenWithLocalName("TileMatrix");
-        while(matrixIterator.hasNext()) {
-            OMElement matrixElem = matrixIterator.next();
-            TileMatrix matrix = new TileMatrix();
-            matrix.setId(XmlHelper.getChildValue(matrixElem, "Identifier"));
-            matrix.setScaleDenominator(ConversionHelper.getDouble(
-                    XmlHelper.getChildValue(matrixElem, "ScaleDenominator"), matrix.getScaleDenominator()));
-            matrix.setTopLeftCorner(XmlHelper.getChildValue(matrixElem, "TopLeftCorner"));
-            matrix.setTileWidth(ConversionHelper.getInt(
-                    XmlHelper.getChildValue(matrixElem, "TileWidth"), matrix.getTileWidth()));
-            matrix.setTileHeight(ConversionHelper.getInt(
-                    XmlHelper.getChildValue(matrixElem, "TileHeight"), matrix.getTileHeight()));
-            matrix.setMatrixWidth(ConversionHelper.getInt(
-                    XmlHelper.getChildValue(matrixElem, "MatrixWidth"), matrix.getMatrixWidth()));
-            matrix.setMatrixHeight(ConversionHelper.getInt(
-                    XmlHelper.getChildValue(matrixElem, "MatrixHeight"), matrix.getMatrixHeight()));
-            result.addTileMatrix(matrix);
+        return new TileMatrixSet(id, crs, matrices);
+    }
+
+    private static TileMatrix parseMatrix(final XMLStreamReader reader) throws XMLStreamException {
+        String id = null;
+        double scaleDenominator = 0;
+        double[] topLeftCorner = {-1, -1};
+        int tileWidth = TileMatrix.DEFAULT_TILE_SIZE;
+        int tileHeight = TileMatrix.DEFAULT_TILE_SIZE;
+        int matrixWidth = 0;
+        int matrixHeight = 0;
+        while (nextChild(reader)) {
+            final String name = reader.getLocalName();
+            if ("Identifier".equals(name)) {
+                id = readText(reader);
+            } else if ("ScaleDenominator".equals(name)) {
+                scaleDenominator = ConversionHelper.getDouble(readText(reader), scaleDenominator);
+            } else if ("TopLeftCorner".equals(name)) {
+                topLeftCorner = parseCorner(readText(reader), topLeftCorner);
+            } else if ("TileWidth".equals(name)) {
+                tileWidth = ConversionHelper.getInt(readText(reader), tileWidth);
+            } else if ("TileHeight".equals(name)) {
+                tileHeight = ConversionHelper.getInt(readText(reader), tileHeight);
+            } else if ("MatrixWidth".equals(name)) {
+                matrixWidth = ConversionHelper.getInt(readText(reader), matrixWidth);
+            } else if ("MatrixHeight".equals(name)) {
+                matrixHeight = ConversionHelper.getInt(readText(reader), matrixHeight);
+            } else {
+                skipElement(reader);
+            }
         }
+        return new TileMatrix(id, scaleDenominator, topLeftCorner[0], topLeftCorner[1],
+                tileWidth, tileHeight, matrixWidth, matrixHeight);
+    }
 
-        return result;
+    private static double[] parseCorner(final String value, final double[] defaultValue) {
+        final String[] split = value.split("\\s+");
+        if (split.length != 2) {
+            return defaultValue;
+        }
+        return new double[] {
+                ConversionHelper.getDouble(split[0], -1),
+                ConversionHelper.getDouble(split[1], -1)
+        };
     }
 }
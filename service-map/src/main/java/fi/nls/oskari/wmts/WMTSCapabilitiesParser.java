@@ -2,53 +2,86 @@ package fi.nls.oskari.wmts;
 
 import fi.nls.oskari.map.geometry.ProjectionHelper;
 import fi.nls.oskari.util.JSONHelper;
-import fi.nls.oskari.util.XmlHelper;
-import fi.nls.oskari.wmts.domain.TileMatrixLimits;
 import fi.nls.oskari.wmts.domain.TileMatrixSet;
+import fi.nls.oskari.wmts.domain.TileMatrixSetLink;
 import fi.nls.oskari.wmts.domain.WMTSCapabilities;
 import fi.nls.oskari.wmts.domain.WMTSCapabilitiesLayer;
-import org.apache.axiom.om.OMElement;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
-import java.util.Iterator;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Initial parsing for WMTS capabilities in a way that admin-layerselector can interpret it.
+ *
+ * Capabilities are read with a StAX pull parser so the document is never held in memory as a tree.
+ * Only the layers and tile matrix sets under Contents are parsed, everything else is skipped.
  */
 public class WMTSCapabilitiesParser {
     private static final String KEY_LAYERS_WITH_REMARKS = "layersWithRemarks";
 
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private static XMLInputFactory createFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        // capabilities documents don't need DTDs and resolving them is a security risk
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
     public WMTSCapabilities parseCapabilities(final String xml)
             throws Exception {
         if (xml == null) {
             return null;
         }
         final WMTSCapabilities caps = new WMTSCapabilities();
-
-        // parse string to axiom object
-        final OMElement doc = XmlHelper.parseXML(xml);
-        final OMElement contents = XmlHelper.getChild(doc, "Contents");
-
-        // parse layers
-        final Iterator<OMElement> layerIterator = contents.getChildrenWithLocalName("Layer");
-        while (layerIterator.hasNext()) {
-            caps.addLayer(LayerParser.parse(layerIterator.next()));
-        }
-        // parse tilematrixsets
-        final Iterator<OMElement> matrixIterator = contents.getChildrenWithLocalName("TileMatrixSet");
-        while (matrixIterator.hasNext()) {
-            caps.addTileMatrixSet(TileMatrixSetParser.parse(matrixIterator.next()));
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(new StringReader(xml));
+        try {
+            // move to root element
+            reader.nextTag();
+            while (nextChild(reader)) {
+                if ("Contents".equals(reader.getLocalName())) {
+                    parseContents(reader, caps);
+                } else {
+                    skipElement(reader);
+                }
+            }
+        } finally {
+            reader.close();
         }
         return caps;
     }
 
+    private void parseContents(final XMLStreamReader reader, final WMTSCapabilities caps)
+            throws XMLStreamException {
+        while (nextChild(reader)) {
+            final String name = reader.getLocalName();
+            if ("Layer".equals(name)) {
+                caps.addLayer(LayerParser.parse(reader));
+            } else if ("TileMatrixSet".equals(name)) {
+                caps.addTileMatrixSet(TileMatrixSetParser.parse(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
     public JSONObject parseCapabilitiesToJSON(final String xml, final String url, String currentCrs)
             throws Exception {
+        return parseCapabilitiesToJSON(parseCapabilities(xml), url, currentCrs);
+    }
 
-        final WMTSCapabilities caps = parseCapabilities(xml);
+    public JSONObject parseCapabilitiesToJSON(final WMTSCapabilities caps, final String url, String currentCrs) {
 
         // start building result
         final JSONObject result = new JSONObject();
@@ -56,32 +89,69 @@ public class WMTSCapabilitiesParser {
         final JSONArray layersNode = new JSONArray();
         JSONHelper.putValue(result, "layers", layersNode);
         for (WMTSCapabilitiesLayer layer : caps.getLayers()) {
-            final Map<String, Set<TileMatrixLimits>> links = layer.getLinks();
-            JSONObject layerJson = layer.getAsJSON();
-            final String matrixsetid = getMatrixSetId(caps, links, currentCrs);
+            final String matrixsetid = getMatrixSetId(caps, layer.getLinks(), currentCrs);
             if(matrixsetid == null ){
-                JSONHelper.putValue(layerJson, "title", layer.getTitle() + "  *");
-                result.put(KEY_LAYERS_WITH_REMARKS,"true");
-            }
-            else {
-                JSONHelper.putValue(layerJson, "tileMatrixSetId", matrixsetid);
+                JSONHelper.putValue(result, KEY_LAYERS_WITH_REMARKS, "true");
             }
-            if (!layerJson.has("url")) {
-                JSONHelper.putValue(layerJson, "url", url);
-            }
-            layersNode.put(layerJson);
-
+            layersNode.put(getLayerJSON(layer, matrixsetid, url));
         }
 
         final JSONObject matrixNode = new JSONObject();
         JSONHelper.putValue(result, "matrixSets", matrixNode);
         for (TileMatrixSet matrix : caps.getTileMatrixSets()) {
-            JSONHelper.putValue(matrixNode, matrix.getId(), matrix.getAsJSON());
+            // written as the pre-rendered JSON of the matrix set
+            JSONHelper.putValue(matrixNode, matrix.getId(), matrix);
         }
 
         return result;
     }
 
+    /**
+     * Writes the same keys as parseCapabilitiesToJSON() to an object the writer is currently in.
+     * Layers are written one by one so the JSON for the whole capabilities is never kept in memory.
+     * @param writer writer positioned inside an object
+     * @param caps
+     * @param url
+     * @param currentCrs
+     * @throws JSONException
+     */
+    public void writeCapabilitiesJSON(final JSONWriter writer, final WMTSCapabilities caps, final String url, String currentCrs)
+            throws JSONException {
+        boolean hasRemarks = false;
+        writer.key("layers").array();
+        for (WMTSCapabilitiesLayer layer : caps.getLayers()) {
+            final String matrixsetid = getMatrixSetId(caps, layer.getLinks(), currentCrs);
+            if(matrixsetid == null ){
+                hasRemarks = true;
+            }
+            writer.value(getLayerJSON(layer, matrixsetid, url));
+        }
+        writer.endArray();
+        if(hasRemarks) {
+            writer.key(KEY_LAYERS_WITH_REMARKS).value("true");
+        }
+
+        writer.key("matrixSets").object();
+        for (TileMatrixSet matrix : caps.getTileMatrixSets()) {
+            writer.key(matrix.getId()).value(matrix);
+        }
+        writer.endObject();
+    }
+
+    private JSONObject getLayerJSON(final WMTSCapabilitiesLayer layer, final String matrixsetid, final String url) {
+        final JSONObject layerJson = layer.getAsJSON();
+        if(matrixsetid == null ){
+            JSONHelper.putValue(layerJson, "title", layer.getTitle() + "  *");
+        }
+        else {
+            JSONHelper.putValue(layerJson, "tileMatrixSetId", matrixsetid);
+        }
+        if (!layerJson.has("url")) {
+            JSONHelper.putValue(layerJson, "url", url);
+        }
+        return layerJson;
+    }
+
     /**
      * Get tile matrix set id of current crs
      * @param caps
@@ -89,7 +159,7 @@ public class WMTSCapabilitiesParser {
      * @param currentCrs
      * @return
      */
-    public String getMatrixSetId(final WMTSCapabilities caps, Map<String, Set<TileMatrixLimits>> links, String currentCrs) {
+    public String getMatrixSetId(final WMTSCapabilities caps, Map<String, TileMatrixSetLink> links, String currentCrs) {
 
         for (String link : links.keySet()) {
              if(ProjectionHelper.shortSyntaxEpsg(caps.getMatrixCRS(link)).equals(currentCrs)){
@@ -99,4 +169,58 @@ public class WMTSCapabilitiesParser {
         return null;
     }
 
+    /**
+     * Moves the reader to the next child element of the current element.
+     * @param reader positioned on a start element or on the end of a previous child
+     * @return true if positioned on a child start element, false when the parent element ended
+     */
+    static boolean nextChild(final XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips the current element with all its children.
+     * @param reader positioned on a start element, left on the matching end element
+     */
+    static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Reads the trimmed text content of the current element. Unlike XMLStreamReader.getElementText()
+     * this doesn't fail on child elements, their content is ignored.
+     * @param reader positioned on a start element, left on the matching end element
+     * @return text content
+     */
+    static String readText(final XMLStreamReader reader) throws XMLStreamException {
+        final StringBuilder text = new StringBuilder();
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                text.append(reader.getText());
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                skipElement(reader);
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        return text.toString().trim();
+    }
 }
@@ -1,6 +1,5 @@
 package fi.nls.oskari.wmts.domain;
 
-import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.JSONHelper;
 import org.json.JSONObject;
 
@@ -13,83 +12,57 @@ import org.json.JSONObject;
  */
 public class TileMatrix {
 
-    private String id;
-    private double scaleDenominator;
-    private double[] topLeftCorner = {-1, -1};
-    private int tileWidth = 256;
-    private int tileHeight = 256;
-    private int matrixWidth;
-    private int matrixHeight;
+    public static final int DEFAULT_TILE_SIZE = 256;
 
-    public String getId() {
-        return id;
-    }
+    private final String id;
+    private final double scaleDenominator;
+    private final double topLeftX;
+    private final double topLeftY;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int matrixWidth;
+    private final int matrixHeight;
 
-    public void setId(String id) {
+    public TileMatrix(String id, double scaleDenominator, double topLeftX, double topLeftY,
+                      int tileWidth, int tileHeight, int matrixWidth, int matrixHeight) {
         this.id = id;
-    }
-
-    public double getScaleDenominator() {
-        return scaleDenominator;
-    }
-
-    public void setScaleDenominator(double scaleDenominator) {
         this.scaleDenominator = scaleDenominator;
+        this.topLeftX = topLeftX;
+        this.topLeftY = topLeftY;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.matrixWidth = matrixWidth;
+        this.matrixHeight = matrixHeight;
     }
 
-    public double[] getTopLeftCorner() {
-        return topLeftCorner;
+    public String getId() {
+        return id;
     }
 
-    public void setTopLeftCorner(double first, double second) {
-        topLeftCorner[0] = first;
-        topLeftCorner[1] = second;
+    public double getScaleDenominator() {
+        return scaleDenominator;
     }
 
-    public void setTopLeftCorner(String topLeftCorner) {
-        if(topLeftCorner == null) {
-            return;
-        }
-        final String[] split = topLeftCorner.split("\\s+");
-        if(split.length != 2) {
-            return;
-        }
-        setTopLeftCorner(ConversionHelper.getDouble(split[0], -1),
-                ConversionHelper.getDouble(split[1], -1));
+    public double[] getTopLeftCorner() {
+        return new double[] {topLeftX, topLeftY};
     }
 
     public int getTileWidth() {
         return tileWidth;
     }
 
-    public void setTileWidth(int tileWidth) {
-        this.tileWidth = tileWidth;
-    }
-
     public int getTileHeight() {
         return tileHeight;
     }
 
-    public void setTileHeight(int tileHeight) {
-        this.tileHeight = tileHeight;
-    }
-
     public int getMatrixWidth() {
         return matrixWidth;
     }
 
-    public void setMatrixWidth(int matrixWidth) {
-        this.matrixWidth = matrixWidth;
-    }
-
     public int getMatrixHeight() {
         return matrixHeight;
     }
 
-    public void setMatrixHeight(int matrixHeight) {
-        this.matrixHeight = matrixHeight;
-    }
-
     public JSONObject getAsJSON() {
         /*
         {
@@ -111,8 +84,8 @@ public class TileMatrix {
         JSONHelper.putValue(obj, "scaleDenominator", getScaleDenominator());
 
         JSONObject topLeft = new JSONObject();
-        JSONHelper.putValue(topLeft, "lon", getTopLeftCorner()[0]);
-        JSONHelper.putValue(topLeft, "lat", getTopLeftCorner()[1]);
+        JSONHelper.putValue(topLeft, "lon", topLeftX);
+        JSONHelper.putValue(topLeft, "lat", topLeftY);
         JSONHelper.putValue(obj, "topLeftCorner", topLeft);
 
         JSONHelper.putValue(obj, "tileWidth", getTileWidth());
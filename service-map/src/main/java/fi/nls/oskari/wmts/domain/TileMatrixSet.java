@@ -1,76 +1,87 @@
 package fi.nls.oskari.wmts.domain;
 
-import fi.nls.oskari.log.LogFactory;
-import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.JSONHelper;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONString;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * Created with IntelliJ IDEA.
- * User: SMAKINEN
- * Date: 6.6.2014
- * Time: 14:00
- * To change this template use File | Settings | File Templates.
+ * Immutable TileMatrixSet of WMTS capabilities. Tile matrices are kept in document order.
+ *
+ * The JSON presentation is rendered once and shared as a JSONString so the same matrix set can be
+ * written for any number of layers/responses without building the JSON again.
  */
-public class TileMatrixSet {
+public class TileMatrixSet implements JSONString {
 
-    private static final Logger log = LogFactory.getLogger(TileMatrixSet.class);
+    private final String id;
+    private final String crs;
+    private final TileMatrix[] matrices;
+    private volatile String json;
 
-    private String id;
-    private String crs;
-    private Map<String, TileMatrix> tileMatrixMap = new HashMap<String, TileMatrix>();
+    public TileMatrixSet(String id, String crs, List<TileMatrix> matrices) {
+        this.id = id;
+        this.crs = crs;
+        this.matrices = matrices.toArray(new TileMatrix[matrices.size()]);
+    }
 
     public String getId() {
         return id;
     }
 
-    public void setId(String id) {
-        this.id = id;
-    }
-
     public String getCrs() {
         return crs;
     }
 
-    public void setCrs(String crs) {
-        this.crs = crs;
+    public List<TileMatrix> getTileMatrices() {
+        return Collections.unmodifiableList(Arrays.asList(matrices));
     }
 
-    public void addTileMatrix(final TileMatrix matrix) {
-        if(matrix == null) {
-            return;
-        }
-        if(matrix.getId() == null || tileMatrixMap.get(matrix.getId()) != null) {
-            log.warn("TileMatrix already exists or id missing!!!", matrix);
+    /**
+     * @param matrixId
+     * @return tile matrix with the id or null if not found
+     */
+    public TileMatrix getTileMatrix(final String matrixId) {
+        for(TileMatrix matrix : matrices) {
+            if(matrix.getId().equals(matrixId)) {
+                return matrix;
+            }
         }
-        else {
-            tileMatrixMap.put(matrix.getId(), matrix);
-        }
-    }
-
-    public Map<String, TileMatrix> getTileMatrixMap() {
-        return tileMatrixMap;
-    }
-
-    public void setTileMatrixMap(Map<String, TileMatrix> tileMatrixMap) {
-        this.tileMatrixMap = tileMatrixMap;
+        return null;
     }
 
+    /**
+     * @return new JSONObject presentation of the matrix set that can be modified by the caller
+     */
     public JSONObject getAsJSON() {
         final JSONObject obj = new JSONObject();
         JSONHelper.putValue(obj, "identifier", getId());
         JSONHelper.putValue(obj, "projection", getCrs());
 
         final JSONArray matrixIds = new JSONArray();
-        for(TileMatrix matrix : getTileMatrixMap().values()) {
+        for(TileMatrix matrix : matrices) {
             matrixIds.put(matrix.getAsJSON());
         }
         JSONHelper.putValue(obj, "matrixIds", matrixIds);
 
         return obj;
     }
+
+    /**
+     * Pre-rendered JSON for the matrix set. A TileMatrixSet can be put as a value to a JSONObject
+     * and it will be written out as this fragment.
+     * @return JSON presentation of the matrix set as String
+     */
+    public String toJSONString() {
+        String value = json;
+        if(value == null) {
+            // rendered at most a few times concurrently, the result is always the same
+            value = getAsJSON().toString();
+            json = value;
+        }
+        return value;
+    }
 }
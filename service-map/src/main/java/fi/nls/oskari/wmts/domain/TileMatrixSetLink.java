@@ -0,0 +1,85 @@
+package fi.nls.oskari.wmts.domain;
+
+import java.util.Arrays;
+
+/**
+ * Immutable link from a WMTS layer to a TileMatrixSet with the optional TileMatrixLimits for the layer.
+ * Limits are stored in a single int array (minTileRow, maxTileRow, minTileCol, maxTileCol per tile matrix)
+ * instead of an object per limit as large services can list thousands of them.
+ */
+public class TileMatrixSetLink {
+
+    private static final int FIELDS = 4;
+    private static final String[] NO_MATRICES = new String[0];
+    private static final int[] NO_LIMITS = new int[0];
+
+    private final String tileMatrixSet;
+    private final String[] tileMatrices;
+    private final int[] limits;
+
+    public TileMatrixSetLink(String tileMatrixSet) {
+        this(tileMatrixSet, NO_MATRICES, NO_LIMITS);
+    }
+
+    /**
+     * @param tileMatrixSet matrix set id
+     * @param tileMatrices tile matrix ids for the limits
+     * @param limits minTileRow, maxTileRow, minTileCol, maxTileCol for each tile matrix
+     */
+    public TileMatrixSetLink(String tileMatrixSet, String[] tileMatrices, int[] limits) {
+        if(limits.length != tileMatrices.length * FIELDS) {
+            throw new IllegalArgumentException("Expected " + FIELDS + " limits per tile matrix");
+        }
+        this.tileMatrixSet = tileMatrixSet;
+        this.tileMatrices = tileMatrices;
+        this.limits = limits;
+    }
+
+    public String getTileMatrixSet() {
+        return tileMatrixSet;
+    }
+
+    /**
+     * @return number of tile matrices having limits
+     */
+    public int getLimitsCount() {
+        return tileMatrices.length;
+    }
+
+    /**
+     * @param tileMatrix
+     * @return index for the other getters or -1 if there are no limits for the tile matrix
+     */
+    public int indexOf(final String tileMatrix) {
+        for(int i = 0; i < tileMatrices.length; ++i) {
+            if(tileMatrix.equals(tileMatrices[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getTileMatrix(int index) {
+        return tileMatrices[index];
+    }
+
+    public int getMinTileRow(int index) {
+        return limits[index * FIELDS];
+    }
+
+    public int getMaxTileRow(int index) {
+        return limits[index * FIELDS + 1];
+    }
+
+    public int getMinTileCol(int index) {
+        return limits[index * FIELDS + 2];
+    }
+
+    public int getMaxTileCol(int index) {
+        return limits[index * FIELDS + 3];
+    }
+
+    public String toString() {
+        return tileMatrixSet + Arrays.toString(tileMatrices);
+    }
+}
@@ -1,46 +1,52 @@
 package fi.nls.oskari.wmts.domain;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Created by SMAKINEN on 28.9.2015.
  */
 public class WMTSCapabilities {
 
-    final Set<TileMatrixSet> tileMatrixSets = new HashSet<>();
-    final Set<WMTSCapabilitiesLayer> layers = new HashSet<>();
+    // by id in document order
+    final Map<String, TileMatrixSet> tileMatrixSets = new LinkedHashMap<>();
+    final Map<String, WMTSCapabilitiesLayer> layers = new LinkedHashMap<>();
 
     public void addLayer(WMTSCapabilitiesLayer layer) {
-        layers.add(layer);
+        // first one wins on duplicate ids
+        if(!layers.containsKey(layer.getId())) {
+            layers.put(layer.getId(), layer);
+        }
     }
     public void addTileMatrixSet(TileMatrixSet set) {
-        tileMatrixSets.add(set);
+        if(!tileMatrixSets.containsKey(set.getId())) {
+            tileMatrixSets.put(set.getId(), set);
+        }
     }
 
-    public Set<TileMatrixSet> getTileMatrixSets() {
-        return tileMatrixSets;
+    public Collection<TileMatrixSet> getTileMatrixSets() {
+        return Collections.unmodifiableCollection(tileMatrixSets.values());
     }
 
-    public Set<WMTSCapabilitiesLayer> getLayers() {
-        return layers;
+    public Collection<WMTSCapabilitiesLayer> getLayers() {
+        return Collections.unmodifiableCollection(layers.values());
+    }
+
+    public TileMatrixSet getTileMatrixSet(final String id) {
+        return tileMatrixSets.get(id);
     }
 
     public String getMatrixCRS(final String id) {
-        for(TileMatrixSet matrix : tileMatrixSets) {
-            if(matrix.getId().equals(id)) {
-                return matrix.getCrs();
-            }
+        final TileMatrixSet matrix = tileMatrixSets.get(id);
+        if(matrix != null) {
+            return matrix.getCrs();
         }
         return "CRS N/A";
     }
 
     public WMTSCapabilitiesLayer getLayer(final String name) {
-        for(WMTSCapabilitiesLayer layer : layers) {
-            if(layer.getId().equals(name)) {
-                return layer;
-            }
-        }
-        return null;
+        return layers.get(name);
     }
 }
@@ -26,7 +26,7 @@ public class WMTSCapabilitiesLayer {
     private Set<String> infoFormats = new HashSet<String>();
     private List<ResourceUrl> resourceUrls = new ArrayList<>();
 
-    private Map<String, Set<TileMatrixLimits>> links = new HashMap<String, Set<TileMatrixLimits>>();
+    private Map<String, TileMatrixSetLink> links = new LinkedHashMap<>();
 
     private Set<String> keywords = new HashSet<String>();
 
@@ -117,15 +117,18 @@ public class WMTSCapabilitiesLayer {
         this.keywords = keywords;
     }
 
-    public Map<String, Set<TileMatrixLimits>> getLinks() {
+    /**
+     * @return links to tile matrix sets by matrix set id in document order
+     */
+    public Map<String, TileMatrixSetLink> getLinks() {
         return links;
     }
-    public Set<TileMatrixLimits> getLimits(final String tileMatrixSet) {
+    public TileMatrixSetLink getLimits(final String tileMatrixSet) {
         return links.get(tileMatrixSet);
     }
 
-    public void setLinks(Map<String, Set<TileMatrixLimits>> links) {
-        this.links = links;
+    public void addLink(TileMatrixSetLink link) {
+        links.put(link.getTileMatrixSet(), link);
     }
 
     public JSONObject getAsJSON() {
@@ -163,7 +166,7 @@ public class WMTSCapabilitiesLayer {
             // TODO: setup limits
             // limits are not used for now so skipping
             /*
-            for(TileMatrixLimits l : getLimits(matrixSet)) {
+            for(int i = 0; i < getLimits(matrixSet).getLimitsCount(); ++i) {
 
             }
             */
@@ -0,0 +1,80 @@
+package fi.nls.oskari.map.analysis.service;
+
+import fi.nls.test.util.ResourceHelper;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TransformationServiceTest {
+
+    private final TransformationService service = new TransformationService();
+    private final String wpsInput = ResourceHelper.readStringResource("TransformationServiceTest-input-wps.xml", this);
+
+    private Map<String, String> getFieldTypes() {
+        Map<String, String> types = new HashMap<>();
+        types.put("asukkaat", "numeric");
+        types.put("nimi", "string");
+        return types;
+    }
+
+    private Document parse(String xml) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        return dbf.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+
+    @Test
+    public void testFeatureMembers() throws Exception {
+        List<String> fields = new ArrayList<>();
+        String wfst = service.wpsFeatureCollectionToWfst(wpsInput, "uuid-1", 42L, fields, getFieldTypes(), "the_geom", "feature");
+
+        assertEquals(Arrays.asList("t1=nimi", "n1=asukkaat", "t2=tyyppi"), fields);
+
+        // special characters must be escaped for the payload to be valid XML
+        Document doc = parse(wfst);
+        NodeList inserts = doc.getElementsByTagNameNS("http://www.opengis.net/wfs", "Insert");
+        assertEquals(2, inserts.getLength());
+
+        NodeList t1 = doc.getElementsByTagNameNS("http://www.oskari.org", "t1");
+        assertEquals("Kallio & Sörnäinen", t1.item(0).getTextContent());
+        assertEquals("Vallila", t1.item(1).getTextContent());
+        NodeList n1 = doc.getElementsByTagNameNS("http://www.oskari.org", "n1");
+        assertEquals("1250.0", n1.item(0).getTextContent());
+        assertEquals("830.5", n1.item(1).getTextContent());
+
+        assertEquals("Hidden fields should be skipped", 0,
+                doc.getElementsByTagNameNS("http://www.oskari.org", "t4").getLength());
+        assertEquals("42", doc.getElementsByTagNameNS("http://www.oskari.org", "analysis_id").item(0).getTextContent());
+
+        NodeList geometries = doc.getElementsByTagNameNS("http://www.oskari.org", "geometry");
+        assertEquals(2, geometries.getLength());
+        assertEquals(1, doc.getElementsByTagNameNS("http://www.opengis.net/gml", "Polygon").getLength());
+        assertEquals("385500.0 6671500.0",
+                doc.getElementsByTagNameNS("http://www.opengis.net/gml", "pos").item(0).getTextContent());
+    }
+
+    @Test
+    public void testFeatureMembersElement() throws Exception {
+        String wps = "<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs\" xmlns:gml=\"http://www.opengis.net/gml\">"
+                + "<gml:featureMembers>"
+                + "<feature:union><feature:geometry><gml:Point><gml:pos>1 2</gml:pos></gml:Point></feature:geometry><feature:nimi>a</feature:nimi></feature:union>"
+                + "<feature:union><feature:nimi>b</feature:nimi><feature:geometry><gml:Point><gml:pos>3 4</gml:pos></gml:Point></feature:geometry></feature:union>"
+                + "</gml:featureMembers></wfs:FeatureCollection>";
+        List<String> fields = new ArrayList<>();
+        // feature prefix is not declared in the WPS response after element names have been harmonized
+        String wfst = service.wpsFeatureCollectionToWfst(wps, "uuid-1", 1L, fields, getFieldTypes(), "the_geom", "feature");
+
+        assertEquals(Collections.singletonList("t1=nimi"), fields);
+        Document doc = parse(wfst);
+        assertEquals(2, doc.getElementsByTagNameNS("http://www.opengis.net/wfs", "Insert").getLength());
+        assertEquals("3 4", doc.getElementsByTagNameNS("http://www.opengis.net/gml", "pos").item(1).getTextContent());
+        assertEquals("b", doc.getElementsByTagNameNS("http://www.oskari.org", "t1").item(1).getTextContent());
+    }
+}
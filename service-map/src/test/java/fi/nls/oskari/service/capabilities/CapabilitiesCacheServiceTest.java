@@ -0,0 +1,115 @@
+package fi.nls.oskari.service.capabilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import fi.nls.oskari.domain.map.OskariLayer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CapabilitiesCacheServiceTest {
+
+    private HttpServer server;
+    private volatile String body;
+    private volatile String etag;
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final CapabilitiesCacheService service = new CapabilitiesCacheService() {
+        private OskariLayerCapabilities saved;
+
+        public OskariLayerCapabilities find(String url, String layertype, String version) {
+            return saved;
+        }
+
+        public OskariLayerCapabilities save(OskariLayerCapabilities capabilities) {
+            saved = capabilities;
+            return capabilities;
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                final byte[] bytes = body.getBytes("ISO-8859-1");
+                exchange.getResponseHeaders().add("ETag", etag);
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private OskariLayer getLayer() {
+        OskariLayer layer = new OskariLayer();
+        layer.setType(OskariLayer.TYPE_WMS);
+        layer.setVersion("1.3.0");
+        layer.setUrl("http://localhost:" + server.getAddress().getPort() + "/wms");
+        return layer;
+    }
+
+    @Test
+    public void testRefreshCapabilities() throws Exception {
+        body = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><WMS_Capabilities>\u00e4</WMS_Capabilities>";
+        etag = "\"1\"";
+        final OskariLayer layer = getLayer();
+
+        assertTrue("New capabilities should be changed", service.refreshCapabilities(layer));
+        OskariLayerCapabilities saved = service.find(layer);
+        assertEquals("Response should be decoded with the declared encoding", body, saved.getData());
+        assertEquals(etag, saved.getEtag());
+        assertEquals(CapabilitiesCacheService.getHash(body), saved.getDataHash());
+
+        assertFalse("Not modified response", service.refreshCapabilities(layer));
+        assertEquals(1, notModified.get());
+
+        // same content with a new etag
+        etag = "\"2\"";
+        assertFalse("Same content shouldn't be changed", service.refreshCapabilities(layer));
+        assertEquals("Validators should be updated", etag, service.find(layer).getEtag());
+
+        body = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><WMS_Capabilities/>";
+        etag = "\"3\"";
+        assertTrue("Changed content", service.refreshCapabilities(layer));
+        assertEquals(body, service.find(layer).getData());
+    }
+
+    @Test
+    public void testParsedCache() {
+        OskariLayerCapabilities caps = new OskariLayerCapabilities();
+        caps.setData("<xml/>");
+        assertNull(CapabilitiesCacheService.getParsed(caps, String.class));
+        CapabilitiesCacheService.putParsed(caps, String.class, "parsed");
+        assertEquals("parsed", CapabilitiesCacheService.getParsed(caps, String.class));
+
+        OskariLayerCapabilities changed = new OskariLayerCapabilities();
+        changed.setData("<xml></xml>");
+        assertNull("Changed data shouldn't use cached value", CapabilitiesCacheService.getParsed(changed, String.class));
+        assertNull("Getting the cached value shouldn't modify capabilities", caps.getDataHash());
+
+        caps.setDataHash(CapabilitiesCacheService.getHash(caps.getData()));
+        caps.setData("<xml></xml>");
+        assertNull("Hash of previous data shouldn't be used", CapabilitiesCacheService.getParsed(caps, String.class));
+    }
+}
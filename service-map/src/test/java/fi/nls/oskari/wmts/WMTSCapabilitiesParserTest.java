@@ -3,11 +3,20 @@ package fi.nls.oskari.wmts;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.wmts.domain.TileMatrix;
+import fi.nls.oskari.wmts.domain.TileMatrixSet;
+import fi.nls.oskari.wmts.domain.TileMatrixSetLink;
+import fi.nls.oskari.wmts.domain.WMTSCapabilities;
+import fi.nls.oskari.wmts.domain.WMTSCapabilitiesLayer;
 import fi.nls.test.util.ResourceHelper;
+import org.json.JSONArray;
 import org.json.JSONObject;
-import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.*;
+
+import static org.junit.Assert.*;
+
 /**
  * Created with IntelliJ IDEA.
  * User: SMAKINEN
@@ -15,7 +24,6 @@ import org.junit.Test;
  * Time: 16:47
  * To change this template use File | Settings | File Templates.
  */
-@Ignore
 public class WMTSCapabilitiesParserTest {
     private static final Logger log = LogFactory.getLogger(WMTSCapabilitiesParserTest.class);
 
@@ -31,13 +39,125 @@ public class WMTSCapabilitiesParserTest {
         WMTSCapabilitiesParser parser = new WMTSCapabilitiesParser();
         log.debug(parser.parseCapabilitiesToJSON(capabilitiesInput_Spain, "http://oskari.testing.fi", "EPSG:4326"));
     }
+
     @Test
     public void testParseCapabilitiesToJSON() throws Exception {
         WMTSCapabilitiesParser parser = new WMTSCapabilitiesParser();
 
         final JSONObject parsed = parser.parseCapabilitiesToJSON(capabilitiesInput_NLS, "http://oskari.testing.fi", "EPSG:3067");
         final JSONObject expected = JSONHelper.createJSONObject(expectedJSON_NLS);
-        // comparing doesn't work since the JSONArrays are in different order
-        //assertTrue("Parsed capabilities XML should match expected", JSONHelper.isEqual(expected, parsed));
+        assertTrue("Parsed capabilities XML should match expected",
+                JSONHelper.isEqual(sortLists(expected), sortLists(written(parsed))));
+    }
+
+    @Test
+    public void testParseMatrixSetsToJSON() throws Exception {
+        WMTSCapabilitiesParser parser = new WMTSCapabilitiesParser();
+        // the layers in these files are in an older format (a layer for each matrix set) so only compare matrix sets
+        // and layer names
+        assertMatrixSetsAndLayers(JSONHelper.createJSONObject(expectedJSON_tampere),
+                parser.parseCapabilitiesToJSON(capabilitiesInput_Tampere, "http://oskari.testing.fi", "EPSG:3067"));
+        assertMatrixSetsAndLayers(JSONHelper.createJSONObject(expectedJSON_Spain),
+                parser.parseCapabilitiesToJSON(capabilitiesInput_Spain, "http://oskari.testing.fi", "EPSG:4326"));
+    }
+
+    @Test
+    public void testParseTileMatrixSet() throws Exception {
+        final WMTSCapabilities caps = new WMTSCapabilitiesParser().parseCapabilities(capabilitiesInput_NLS);
+        assertEquals("Should have 1 matrix set", 1, caps.getTileMatrixSets().size());
+
+        final TileMatrixSet set = caps.getTileMatrixSet("ETRS-TM35FIN");
+        assertEquals("urn:ogc:def:crs:EPSG:6.3:3067", set.getCrs());
+        final List<TileMatrix> matrices = set.getTileMatrices();
+        assertEquals("Should have 15 tile matrices", 15, matrices.size());
+        assertEquals("Matrices should be in document order", "0", matrices.get(0).getId());
+        assertEquals("14", matrices.get(14).getId());
+
+        final TileMatrix matrix = set.getTileMatrix("0");
+        assertEquals(29257142.857142858, matrix.getScaleDenominator(), 0.0001);
+        assertEquals(-548576, matrix.getTopLeftCorner()[0], 0.0001);
+        assertEquals(8388608, matrix.getTopLeftCorner()[1], 0.0001);
+        assertEquals(256, matrix.getTileWidth());
+        assertEquals(1, matrix.getMatrixHeight());
+    }
+
+    @Test
+    public void testMatrixSetJSON() throws Exception {
+        final WMTSCapabilities caps = new WMTSCapabilitiesParser().parseCapabilities(capabilitiesInput_NLS);
+        final TileMatrixSet set = caps.getTileMatrixSet("ETRS-TM35FIN");
+        assertEquals("Pre-rendered JSON should match the JSONObject", set.getAsJSON().toString(), set.toJSONString());
+
+        final JSONObject result = new WMTSCapabilitiesParser().parseCapabilitiesToJSON(caps, "http://oskari.testing.fi", "EPSG:3067");
+        assertEquals("Matrix set should be written as JSON", 15,
+                written(result).getJSONObject("matrixSets").getJSONObject("ETRS-TM35FIN").getJSONArray("matrixIds").length());
+    }
+
+    @Test
+    public void testParseLayerLimits() throws Exception {
+        final WMTSCapabilities caps = new WMTSCapabilitiesParser().parseCapabilities(capabilitiesInput_Tampere);
+        final WMTSCapabilitiesLayer layer = caps.getLayer("tampere:tampere_kaavat_tm35");
+        assertNotNull("Layer should be found", layer);
+        assertEquals("Should have default style", "raster", layer.getDefaultStyle());
+
+        final TileMatrixSetLink link = layer.getLimits("JHS");
+        assertEquals("Should have limits for 16 tile matrices", 16, link.getLimitsCount());
+        final int index = link.indexOf("JHS:14");
+        assertEquals(7419, link.getMinTileRow(index));
+        assertEquals(7663, link.getMaxTileRow(index));
+        assertEquals(2078, link.getMinTileCol(index));
+        assertEquals(2265, link.getMaxTileCol(index));
+        assertEquals(-1, link.indexOf("unknown"));
+        assertNull(layer.getLimits("unknown"));
+    }
+
+    private void assertMatrixSetsAndLayers(final JSONObject expected, final JSONObject parsed) throws Exception {
+        final JSONObject actual = sortLists(written(parsed));
+        sortLists(expected);
+        assertTrue("Parsed matrix sets should match expected",
+                JSONHelper.isEqual(expected.getJSONObject("matrixSets"), actual.getJSONObject("matrixSets")));
+        assertEquals("Parsed layers should match expected",
+                getLayerNames(expected), getLayerNames(actual));
+    }
+
+    /**
+     * Matrix sets are TileMatrixSet objects in the parsed result, parse the written JSON for comparing
+     */
+    private JSONObject written(final JSONObject parsed) {
+        return JSONHelper.createJSONObject(parsed.toString());
+    }
+
+    /**
+     * The expected results were written in HashMap order, sort layers and tile matrices for comparing.
+     */
+    private JSONObject sortLists(final JSONObject json) throws Exception {
+        json.put("layers", sortBy(json.getJSONArray("layers"), "layerName"));
+        final JSONObject matrixSets = json.getJSONObject("matrixSets");
+        for (String id : JSONObject.getNames(matrixSets)) {
+            final JSONObject matrixSet = matrixSets.getJSONObject(id);
+            matrixSet.put("matrixIds", sortBy(matrixSet.getJSONArray("matrixIds"), "identifier"));
+        }
+        return json;
+    }
+
+    private JSONArray sortBy(final JSONArray list, final String key) {
+        final List<JSONObject> items = new ArrayList<JSONObject>();
+        for (int i = 0; i < list.length(); ++i) {
+            items.add(list.optJSONObject(i));
+        }
+        Collections.sort(items, new Comparator<JSONObject>() {
+            public int compare(JSONObject o1, JSONObject o2) {
+                return o1.optString(key).compareTo(o2.optString(key));
+            }
+        });
+        return new JSONArray(items);
+    }
+
+    private Set<String> getLayerNames(final JSONObject json) {
+        final Set<String> names = new TreeSet<String>();
+        final JSONArray layers = json.optJSONArray("layers");
+        for (int i = 0; i < layers.length(); ++i) {
+            names.add(layers.optJSONObject(i).optString("layerName"));
+        }
+        return names;
     }
 }
@@ -2,6 +2,7 @@ package fi.nls.oskari.routing;
 
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.JSONHelper;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -21,8 +22,13 @@ public class RouteResponse {
     private JSONObject plan;
     private boolean success;
     private String errorMessage;
+    // serialized response, set for responses read from cache
+    private String json;
 
     public JSONObject toJSON() {
+        if(this.json != null) {
+            return JSONHelper.createJSONObject(this.json);
+        }
         JSONObject json = new JSONObject();
         try{
             if(success){
@@ -40,6 +46,20 @@ public class RouteResponse {
         return json;
     }
 
+    /**
+     * @return the response as JSON string, cached responses are returned as is
+     */
+    public String toJSONString() {
+        if(json == null) {
+            json = toJSON().toString();
+        }
+        return json;
+    }
+
+    void setJSONString(String json) {
+        this.json = json;
+    }
+
 
     public JSONObject getRequestParameters() {
         return requestParameters;
@@ -1,6 +1,7 @@
 package fi.nls.oskari.routing;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.domain.geo.Point;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -13,6 +14,8 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -38,6 +41,14 @@ public class RoutingServiceOpenTripPlannerImpl implements RoutingService {
     private static final String PROPERTY_USER = "routing.user";
     private static final String PROPERTY_PASSWORD = "routing.password";
 
+    private static final String CACHE_KEY_PREFIX = "oskari_routing:";
+    // successful route responses are cached in Redis, 0 disables the cache
+    private static final int CACHE_EXPIRY_SECONDS = PropertyUtil.getOptional("routing.cache.expiry", 600);
+    // from/to points are snapped to a grid of this size (in routing.srs units) for the cache key
+    private static final double CACHE_SNAP = PropertyUtil.getOptional("routing.cache.snap", 0.0005d);
+    // departure/arrival times are rounded to this many minutes for the cache key
+    private static final int CACHE_TIME_BUCKET_MINUTES = PropertyUtil.getOptional("routing.cache.timebucket", 5);
+
     ObjectMapper mapper = new ObjectMapper();
 
     @Override
@@ -69,45 +80,84 @@ public class RoutingServiceOpenTripPlannerImpl implements RoutingService {
         final String requestUrl = IOHelper.constructUrl(PropertyUtil.get("routing.url"), requestParams);
         RouteResponse result = new RouteResponse();
 
+        final String cacheKey = getCacheKey(params, newFrom, newTo);
+        if (CACHE_EXPIRY_SECONDS > 0) {
+            final String cached = JedisManager.get(cacheKey);
+            if (cached != null) {
+                LOGGER.debug("Route from cache:", cacheKey);
+                result.setSuccess(true);
+                result.setJSONString(cached);
+                return result;
+            }
+        }
+
+        InputStream in = null;
         try {
             LOGGER.debug(requestUrl);
-            final Map<String, String> headers = new HashMap<String,String>();
-            headers.put("Accecpt", "application/json");
-            String routeJson = null;
-            final String username = PropertyUtil.getOptional(PROPERTY_USER);
+            String username = PropertyUtil.getOptional(PROPERTY_USER);
             final String password = PropertyUtil.getOptional(PROPERTY_PASSWORD);
-            if(username != null && !username.isEmpty() && password != null && !password.isEmpty()) {
-                routeJson = IOHelper.getURL(requestUrl, username, password, headers, "UTF-8");
-            } else {
-                routeJson = IOHelper.getURL(requestUrl,headers, "UTF-8");
+            if(password == null || password.isEmpty()) {
+                username = null;
             }
+            final HttpURLConnection conn = IOHelper.getConnection(requestUrl, username, password);
+            IOHelper.writeHeader(conn, "Accept", "application/json");
+            // map the response straight from the stream
+            in = conn.getInputStream();
+            Route route = mapper.readValue(in, Route.class);
 
-            Route route = mapper.readValue(routeJson,Route.class);
-
-            if(!isErrorMessage(routeJson)){
+            if(!route.getAdditionalProperties().containsKey(PARAM_ERROR)){
                 result.setRequestParameters(parser.generateRequestParameters(route, params));
                 result.setPlan(parser.generatePlan(route, params));
                 result.setSuccess(true);
+                if (CACHE_EXPIRY_SECONDS > 0) {
+                    JedisManager.setex(cacheKey, CACHE_EXPIRY_SECONDS, result.toJSONString());
+                }
             } else {
                 result.setSuccess(false);
-                try {
-                    JSONObject error = new JSONObject(routeJson);
-                    if(error.has(PARAM_ERROR_MESSAGE)) {
-                        result.setErrorMessage(error.getString(PARAM_ERROR_MESSAGE));
-                    } else {
-                        result.setErrorMessage("ERROR");
-                    }
-                } catch (JSONException ex){
-                    LOGGER.warn("Cannot set error message to route response", ex);
+                final Object message = route.getAdditionalProperties().get(PARAM_ERROR_MESSAGE);
+                if(message != null) {
+                    result.setErrorMessage(message.toString());
+                } else {
+                    result.setErrorMessage("ERROR");
                 }
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            IOHelper.close(in);
         }
 
         return result;
     }
 
+    /**
+     * Routes are cached by from/to points snapped to a grid, a time bucket and the route options
+     * so repeated requests of common routes don't need to call the route service.
+     * @param params route params
+     * @param from from point in routing.srs
+     * @param to to point in routing.srs
+     * @return cache key
+     */
+    static String getCacheKey(RouteParams params, Point from, Point to) {
+        final long time = params.getDate() != null ? params.getDate().getTime() : System.currentTimeMillis();
+        final StringBuilder key = new StringBuilder(CACHE_KEY_PREFIX);
+        key.append(snap(from.getLon())).append(',').append(snap(from.getLat()))
+                .append(';').append(snap(to.getLon())).append(',').append(snap(to.getLat()))
+                .append(';').append(time / (CACHE_TIME_BUCKET_MINUTES * 60000L))
+                .append(';').append(params.getIsArriveBy())
+                .append(';').append(params.getMode())
+                .append(';').append(params.getMaxWalkDistance())
+                .append(';').append(params.getIsWheelChair())
+                .append(';').append(params.getIsShowIntermediateStops())
+                .append(';').append(params.getLang())
+                .append(';').append(params.getSrs());
+        return key.toString();
+    }
+
+    private static long snap(double ordinate) {
+        return Math.round(ordinate / CACHE_SNAP);
+    }
+
     /**
      * Check at if route repsonse contains error
      * @param response route response
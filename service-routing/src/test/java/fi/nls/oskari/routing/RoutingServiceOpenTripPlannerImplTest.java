@@ -2,6 +2,7 @@ package fi.nls.oskari.routing;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.nls.oskari.domain.geo.Point;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.routing.pojo.Route;
@@ -12,6 +13,11 @@ import org.json.JSONObject;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 
+import java.text.SimpleDateFormat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
 public class RoutingServiceOpenTripPlannerImplTest {
     private static final Logger LOGGER = LogFactory.getLogger(RoutingServiceOpenTripPlannerImplTest.class);
     private static final RoutingServiceOpenTripPlannerImpl ROUTING_SERVICE = new RoutingServiceOpenTripPlannerImpl();
@@ -67,6 +73,26 @@ public class RoutingServiceOpenTripPlannerImplTest {
 
     }
 
+    @org.junit.Test
+    public void testCacheKey() throws Exception {
+        RouteParams routeparams = new RouteParams();
+        routeparams.setSrs(MAP_SRS);
+        routeparams.setMode("TRANSIT,WALK");
+        routeparams.setDate(new SimpleDateFormat("yyyyMMddHH:mm").parse("2015070109:31"));
+
+        final Point from = new Point(24.87957, 60.22293);
+        final Point to = new Point(25.02376, 60.25821);
+        final String key = RoutingServiceOpenTripPlannerImpl.getCacheKey(routeparams, from, to);
+
+        // nearby points and times share the key
+        routeparams.setDate(new SimpleDateFormat("yyyyMMddHH:mm").parse("2015070109:32"));
+        assertEquals(key, RoutingServiceOpenTripPlannerImpl.getCacheKey(routeparams,
+                new Point(24.87961, 60.22290), to));
+
+        routeparams.setMode("WALK");
+        assertNotEquals(key, RoutingServiceOpenTripPlannerImpl.getCacheKey(routeparams, from, to));
+    }
+
     @org.junit.Test
     public void testParseRouteThatIsNok() throws Exception {
 
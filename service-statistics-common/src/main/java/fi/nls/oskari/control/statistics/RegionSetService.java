@@ -8,7 +8,13 @@ import fi.nls.oskari.util.IOHelper;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * Created by SMAKINEN on 27.4.2016.
@@ -16,10 +22,63 @@ import java.util.List;
 public abstract class RegionSetService extends OskariComponent {
     private final static String CACHE_KEY_PREFIX = "oskari_get_layer_info_handler:";
 
+    // regions rarely change so they are kept in memory instead of requesting them from the WFS-service every time
+    private static final long REGIONS_CACHE_TIME_MS = 24L * 60 * 60 * 1000;
+    private final ConcurrentMap<Long, CachedRegions> regionsCache = new ConcurrentHashMap<>();
+
     public abstract List<RegionSet> getRegionSets();
     public abstract RegionSet getRegionSet(long id);
 
-    public List<RegionCodeNamePair> getRegions(RegionSet regionset) throws IOException {
+    /**
+     * Returns the regions of given regionset. The regions are loaded once and cached in memory.
+     * Concurrent requests for the same regionset wait for a single load.
+     * @param regionset
+     * @return unmodifiable list of regions
+     * @throws IOException if regions couldn't be loaded
+     */
+    public List<RegionCodeNamePair> getRegions(final RegionSet regionset) throws IOException {
+        final Long id = regionset.getId();
+        CachedRegions cached = regionsCache.get(id);
+        if (cached == null || cached.isExpired()) {
+            final CachedRegions loader = new CachedRegions(regionset);
+            final boolean added = cached == null ?
+                    regionsCache.putIfAbsent(id, loader) == null :
+                    regionsCache.replace(id, cached, loader);
+            if (added) {
+                loader.task.run();
+                cached = loader;
+            } else {
+                // another thread is loading the regions
+                cached = regionsCache.get(id);
+                if (cached == null) {
+                    // the other load failed and was removed
+                    loader.task.run();
+                    cached = loader;
+                }
+            }
+        }
+        try {
+            return cached.task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading regions", e);
+        } catch (ExecutionException e) {
+            // don't cache failures
+            regionsCache.remove(id, cached);
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Requests the regions from the WFS-service of the regionset
+     * @param regionset
+     * @return regions
+     * @throws IOException
+     */
+    protected List<RegionCodeNamePair> loadRegions(RegionSet regionset) throws IOException {
         final String propId = regionset.getIdProperty();
         final String propName = regionset.getNameProperty();
 
@@ -30,4 +89,21 @@ public abstract class RegionSetService extends OskariComponent {
         final HttpURLConnection connection = IOHelper.getConnection(url);
         return WfsXmlParser.parse(connection.getInputStream(), propId, propName);
     }
+
+    private class CachedRegions {
+        private final long created = System.currentTimeMillis();
+        private final FutureTask<List<RegionCodeNamePair>> task;
+
+        CachedRegions(final RegionSet regionset) {
+            task = new FutureTask<>(new Callable<List<RegionCodeNamePair>>() {
+                public List<RegionCodeNamePair> call() throws IOException {
+                    return Collections.unmodifiableList(loadRegions(regionset));
+                }
+            });
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - created > REGIONS_CACHE_TIME_MS;
+        }
+    }
 }
@@ -0,0 +1,287 @@
+package fi.nls.oskari.control.statistics.plugins;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact, typed storage for the indicator values of a single indicator/regionset/selectors combination.
+ * Region codes are kept in one array and the values in a primitive column matching the value type so
+ * the table can be cached without keeping an IndicatorValue object and a boxed number for each region.
+ *
+ * The table can be serialized to a compact binary form for Redis and written out as JSON without
+ * building an intermediate JSONObject:
+ * {
+ *   "regionCode": value,
+ *   ...
+ * }
+ */
+public class IndicatorValueTable {
+
+    // bump if the binary format changes so old cached data is ignored
+    private static final byte FORMAT_VERSION = 1;
+
+    private final IndicatorValueType type;
+    private final String[] regions;
+    private final double[] floatValues;
+    private final long[] integerValues;
+
+    private IndicatorValueTable(IndicatorValueType type, String[] regions, double[] floatValues, long[] integerValues) {
+        this.type = type;
+        this.regions = regions;
+        this.floatValues = floatValues;
+        this.integerValues = integerValues;
+    }
+
+    /**
+     * Creates a table from indicator values. Null values are skipped like they would be when put to a JSONObject.
+     * Mixed integer/float values are stored as floats.
+     * @param values region code to value mapping
+     * @return table
+     */
+    public static IndicatorValueTable create(Map<String, IndicatorValue> values) {
+        final IndicatorValueType type = resolveType(values);
+        final int size = countValues(values);
+        final String[] regions = new String[size];
+        final double[] floats = type == IndicatorValueType.FLOAT ? new double[size] : null;
+        final long[] integers = type == IndicatorValueType.FLOAT ? null : new long[size];
+        int i = 0;
+        for (Map.Entry<String, IndicatorValue> entry : values.entrySet()) {
+            final IndicatorValue value = entry.getValue();
+            if (isEmpty(value)) {
+                continue;
+            }
+            regions[i] = entry.getKey();
+            if (value instanceof IndicatorValueFloat) {
+                floats[i] = ((IndicatorValueFloat) value).getDouble();
+            } else if (value instanceof IndicatorValueInteger) {
+                if (floats != null) {
+                    floats[i] = ((IndicatorValueInteger) value).getLong();
+                } else {
+                    integers[i] = ((IndicatorValueInteger) value).getLong();
+                }
+            } else if (value instanceof IndicatorValueBoolean) {
+                integers[i] = ((IndicatorValueBoolean) value).getBoolean() ? 1 : 0;
+            }
+            i++;
+        }
+        return new IndicatorValueTable(type, regions, floats, integers);
+    }
+
+    private static IndicatorValueType resolveType(Map<String, IndicatorValue> values) {
+        IndicatorValueType type = null;
+        for (IndicatorValue value : values.values()) {
+            if (isEmpty(value)) {
+                continue;
+            }
+            final IndicatorValueType valueType = getType(value);
+            if (type == null) {
+                type = valueType;
+            } else if (type != valueType) {
+                if (valueType == IndicatorValueType.BOOLEAN || type == IndicatorValueType.BOOLEAN) {
+                    throw new APIException("Booleans can't be mixed with numbers in indicator values");
+                }
+                type = IndicatorValueType.FLOAT;
+            }
+        }
+        return type == null ? IndicatorValueType.FLOAT : type;
+    }
+
+    private static IndicatorValueType getType(IndicatorValue value) {
+        if (value instanceof IndicatorValueFloat) {
+            return IndicatorValueType.FLOAT;
+        }
+        if (value instanceof IndicatorValueInteger) {
+            return IndicatorValueType.INTEGER;
+        }
+        if (value instanceof IndicatorValueBoolean) {
+            return IndicatorValueType.BOOLEAN;
+        }
+        throw new APIException("Unsupported indicator value: " + value.getClass().getName());
+    }
+
+    private static int countValues(Map<String, IndicatorValue> values) {
+        int count = 0;
+        for (IndicatorValue value : values.values()) {
+            if (!isEmpty(value)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isEmpty(IndicatorValue value) {
+        if (value == null) {
+            return true;
+        }
+        if (value instanceof IndicatorValueFloat) {
+            return ((IndicatorValueFloat) value).getDouble() == null;
+        }
+        if (value instanceof IndicatorValueInteger) {
+            return ((IndicatorValueInteger) value).getLong() == null;
+        }
+        return false;
+    }
+
+    public IndicatorValueType getType() {
+        return type;
+    }
+
+    public int size() {
+        return regions.length;
+    }
+
+    public String getRegion(int index) {
+        return regions[index];
+    }
+
+    public double getDouble(int index) {
+        if (floatValues != null) {
+            return floatValues[index];
+        }
+        return integerValues[index];
+    }
+
+    public long getLong(int index) {
+        if (integerValues != null) {
+            return integerValues[index];
+        }
+        return (long) floatValues[index];
+    }
+
+    public boolean getBoolean(int index) {
+        return getLong(index) != 0;
+    }
+
+    /**
+     * @return the values as IndicatorValue objects mapped by region code
+     */
+    public Map<String, IndicatorValue> toMap() {
+        final Map<String, IndicatorValue> values = new HashMap<>(regions.length * 2);
+        for (int i = 0; i < regions.length; i++) {
+            values.put(regions[i], getValue(i));
+        }
+        return values;
+    }
+
+    private IndicatorValue getValue(int index) {
+        switch (type) {
+            case INTEGER:
+                return new IndicatorValueInteger(integerValues[index]);
+            case BOOLEAN:
+                return new IndicatorValueBoolean(integerValues[index] != 0);
+            default:
+                return new IndicatorValueFloat(floatValues[index]);
+        }
+    }
+
+    public JSONObject toJSON() throws JSONException {
+        final JSONObject json = new JSONObject();
+        for (int i = 0; i < regions.length; i++) {
+            getValue(i).putToJSONObject(json, regions[i]);
+        }
+        return json;
+    }
+
+    /**
+     * Writes the table as a JSON object without building a JSONObject.
+     * @param writer target
+     * @throws IOException
+     */
+    public void writeJSON(Writer writer) throws IOException {
+        try {
+            writeJSON(new JSONWriter(writer));
+        } catch (JSONException e) {
+            throw new IOException("Couldn't write indicator values", e);
+        }
+    }
+
+    /**
+     * Writes the table as a JSON object without building a JSONObject.
+     * @param writer target
+     * @throws JSONException
+     */
+    public void writeJSON(JSONWriter writer) throws JSONException {
+        writer.object();
+        for (int i = 0; i < regions.length; i++) {
+            writer.key(regions[i]);
+            switch (type) {
+                case INTEGER:
+                    writer.value(integerValues[i]);
+                    break;
+                case BOOLEAN:
+                    writer.value(integerValues[i] != 0);
+                    break;
+                default:
+                    writer.value(floatValues[i]);
+            }
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Serializes the table to a compact binary form
+     * @return bytes
+     */
+    public byte[] toBytes() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + regions.length * 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(type.ordinal());
+            out.writeInt(regions.length);
+            for (int i = 0; i < regions.length; i++) {
+                out.writeUTF(regions[i]);
+                if (floatValues != null) {
+                    out.writeDouble(floatValues[i]);
+                } else {
+                    out.writeLong(integerValues[i]);
+                }
+            }
+        } catch (IOException e) {
+            // doesn't happen with ByteArrayOutputStream
+            throw new IllegalStateException("Couldn't serialize indicator values", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a table serialized with toBytes()
+     * @param data bytes
+     * @return table or null if the data is not in the expected format
+     */
+    public static IndicatorValueTable fromBytes(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != FORMAT_VERSION) {
+                return null;
+            }
+            final IndicatorValueType type = IndicatorValueType.values()[in.readByte()];
+            final int size = in.readInt();
+            final String[] regions = new String[size];
+            final double[] floats = type == IndicatorValueType.FLOAT ? new double[size] : null;
+            final long[] integers = type == IndicatorValueType.FLOAT ? null : new long[size];
+            for (int i = 0; i < size; i++) {
+                regions[i] = in.readUTF();
+                if (floats != null) {
+                    floats[i] = in.readDouble();
+                } else {
+                    integers[i] = in.readLong();
+                }
+            }
+            return new IndicatorValueTable(type, regions, floats, integers);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package fi.nls.oskari.control.statistics.plugins;
+
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Redis backed cache for remote API responses of statistical datasource plugins.
+ *
+ * The data is kept in Redis longer than it's considered fresh. When the data gets stale it is still
+ * returned to the caller while a refresh is done in the background. A lock key in Redis makes sure
+ * only one node in the cluster refreshes the data at a time. The lock holds a random token so it's
+ * only released by its owner even if it has expired and been taken by another node meanwhile.
+ */
+public class IndicatorsCache {
+    private static final Logger LOG = LogFactory.getLogger(IndicatorsCache.class);
+
+    private static final String SUFFIX_FRESH = ":fresh";
+    private static final String SUFFIX_LOCK = ":refreshing";
+    // stale data is served for a week if the remote API is not available
+    private static final int KEEP_STALE_SECONDS = JedisManager.EXPIRY_TIME_DAY * 7;
+    private static final int LOCK_SECONDS = 60 * 10;
+
+    // single thread so background refreshes don't flood the remote APIs
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "StatisticsIndicatorsRefresh");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // keys with a background refresh queued on this node
+    private static final Set<String> PENDING = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final String key;
+    private final int freshSeconds;
+
+    public IndicatorsCache(String key) {
+        this(key, JedisManager.EXPIRY_TIME_DAY);
+    }
+
+    /**
+     * @param key Redis key for the data
+     * @param freshSeconds how long the data is considered fresh
+     */
+    public IndicatorsCache(String key, int freshSeconds) {
+        this.key = key;
+        this.freshSeconds = freshSeconds;
+    }
+
+    /**
+     * @return cached data, possibly stale, or null if nothing is cached
+     */
+    public String get() {
+        return JedisManager.get(key);
+    }
+
+    public boolean isStale() {
+        return JedisManager.get(key + SUFFIX_FRESH) == null;
+    }
+
+    public void put(String data) {
+        if (data == null) {
+            return;
+        }
+        JedisManager.setex(key, Math.max(KEEP_STALE_SECONDS, freshSeconds), data);
+        JedisManager.setex(key + SUFFIX_FRESH, freshSeconds, Long.toString(System.currentTimeMillis()));
+    }
+
+    /**
+     * Runs the refresh task if no other node or thread is currently refreshing the data.
+     * @param task task that fetches the data and calls put()
+     * @return true if the task was run
+     */
+    public boolean refresh(Runnable task) {
+        final String lockKey = key + SUFFIX_LOCK;
+        final String token = UUID.randomUUID().toString();
+        if (!JedisManager.setnx(lockKey, token, LOCK_SECONDS)) {
+            LOG.debug("Refresh already in progress for", key);
+            return false;
+        }
+        try {
+            task.run();
+            return true;
+        } finally {
+            JedisManager.delIfEquals(lockKey, token);
+        }
+    }
+
+    /**
+     * Schedules a refresh in the background if the cached data is stale.
+     * @param task task that fetches the data and calls put()
+     */
+    public void refreshIfStale(final Runnable task) {
+        if (!isStale() || !PENDING.add(key)) {
+            return;
+        }
+        REFRESH_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                try {
+                    // another node might have refreshed the data while this was queued
+                    if (isStale()) {
+                        refresh(task);
+                    }
+                } catch (Exception e) {
+                    LOG.warn(e, "Refreshing stale data failed for", key);
+                } finally {
+                    PENDING.remove(key);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,15 @@
+package fi.nls.oskari.control.statistics.plugins;
+
+/**
+ * Datasource plugins that cache data from a remote API can implement this to let the
+ * scheduled refresh job update the cached data before it expires. This way users are served
+ * the previously cached data instead of waiting for the remote API.
+ */
+public interface RefreshableStatisticalDatasourcePlugin extends StatisticalDatasourcePlugin {
+    /**
+     * Fetches the indicator list from the remote API and updates the cache.
+     * Called by a scheduled job so this can take a while.
+     * @return false if the refresh was skipped because the data is already being refreshed
+     */
+    public boolean refreshIndicators();
+}
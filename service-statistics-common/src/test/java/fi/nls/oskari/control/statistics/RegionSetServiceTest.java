@@ -0,0 +1,67 @@
+package fi.nls.oskari.control.statistics;
+
+import fi.nls.oskari.control.statistics.db.RegionSet;
+import fi.nls.oskari.control.statistics.xml.RegionCodeNamePair;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RegionSetServiceTest {
+
+    private static class CountingRegionSetService extends RegionSetService {
+        int loads = 0;
+        boolean fail = false;
+
+        public List<RegionSet> getRegionSets() {
+            return Collections.emptyList();
+        }
+
+        public RegionSet getRegionSet(long id) {
+            return null;
+        }
+
+        protected List<RegionCodeNamePair> loadRegions(RegionSet regionset) throws IOException {
+            loads++;
+            if (fail) {
+                throw new IOException("Service not available");
+            }
+            return Collections.singletonList(new RegionCodeNamePair("005", "Alajärvi"));
+        }
+    }
+
+    private RegionSet createRegionSet(long id) {
+        RegionSet set = new RegionSet();
+        set.setOskariLayerId(id);
+        return set;
+    }
+
+    @Test
+    public void testRegionsAreLoadedOnce() throws IOException {
+        CountingRegionSetService service = new CountingRegionSetService();
+        assertEquals("Alajärvi", service.getRegions(createRegionSet(9)).get(0).getName());
+        assertEquals("Alajärvi", service.getRegions(createRegionSet(9)).get(0).getName());
+        assertEquals(1, service.loads);
+
+        service.getRegions(createRegionSet(11));
+        assertEquals("Each regionset is loaded separately", 2, service.loads);
+    }
+
+    @Test
+    public void testFailuresAreNotCached() throws IOException {
+        CountingRegionSetService service = new CountingRegionSetService();
+        service.fail = true;
+        try {
+            service.getRegions(createRegionSet(9));
+            fail("Should have thrown IOException");
+        } catch (IOException expected) {
+            // expected
+        }
+        service.fail = false;
+        assertEquals(1, service.getRegions(createRegionSet(9)).size());
+        assertEquals(2, service.loads);
+    }
+}
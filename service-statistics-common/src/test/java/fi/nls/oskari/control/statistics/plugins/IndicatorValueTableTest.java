@@ -0,0 +1,92 @@
+package fi.nls.oskari.control.statistics.plugins;
+
+import fi.nls.oskari.util.JSONHelper;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IndicatorValueTableTest {
+
+    @Test
+    public void testFloatValues() throws Exception {
+        Map<String, IndicatorValue> values = new HashMap<>();
+        values.put("091", new IndicatorValueFloat(6.5));
+        values.put("049", new IndicatorValueFloat(3.0));
+        values.put("005", new IndicatorValueFloat(null));
+
+        IndicatorValueTable table = IndicatorValueTable.create(values);
+        assertEquals(IndicatorValueType.FLOAT, table.getType());
+        assertEquals("Null values should be skipped", 2, table.size());
+
+        JSONObject expected = new JSONObject();
+        expected.put("091", 6.5);
+        expected.put("049", 3.0);
+        assertTrue(JSONHelper.isEqual(expected, table.toJSON()));
+
+        StringWriter writer = new StringWriter();
+        table.writeJSON(writer);
+        JSONObject written = new JSONObject(writer.toString());
+        assertEquals(6.5, written.getDouble("091"), 0);
+        assertEquals("Trailing zeros should be removed like in JSONObject", 3, written.get("049"));
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        Map<String, IndicatorValue> values = new HashMap<>();
+        values.put("kunta:091", new IndicatorValueInteger(12345678901L));
+        values.put("kunta:049", new IndicatorValueInteger(-1L));
+
+        IndicatorValueTable table = IndicatorValueTable.create(values);
+        IndicatorValueTable copy = IndicatorValueTable.fromBytes(table.toBytes());
+        assertNotNull(copy);
+        assertEquals(IndicatorValueType.INTEGER, copy.getType());
+        assertEquals(table.toJSON().toString(), copy.toJSON().toString());
+        assertEquals(12345678901L, ((IndicatorValueInteger) copy.toMap().get("kunta:091")).getLong().longValue());
+    }
+
+    @Test
+    public void testMixedNumbersAreFloats() throws Exception {
+        Map<String, IndicatorValue> values = new HashMap<>();
+        values.put("1", new IndicatorValueInteger(2L));
+        values.put("2", new IndicatorValueFloat(2.5));
+
+        IndicatorValueTable table = IndicatorValueTable.create(values);
+        assertEquals(IndicatorValueType.FLOAT, table.getType());
+        assertEquals(2.0, table.getDouble(indexOf(table, "1")), 0);
+    }
+
+    @Test
+    public void testBooleanRoundTrip() throws Exception {
+        Map<String, IndicatorValue> values = new HashMap<>();
+        values.put("1", new IndicatorValueBoolean(true));
+        values.put("2", new IndicatorValueBoolean(false));
+
+        IndicatorValueTable copy = IndicatorValueTable.fromBytes(IndicatorValueTable.create(values).toBytes());
+        StringWriter writer = new StringWriter();
+        copy.writeJSON(writer);
+        JSONObject written = new JSONObject(writer.toString());
+        assertTrue(written.getBoolean("1"));
+        assertFalse(written.getBoolean("2"));
+    }
+
+    @Test
+    public void testInvalidBytes() {
+        assertNull(IndicatorValueTable.fromBytes(null));
+        assertNull(IndicatorValueTable.fromBytes(new byte[0]));
+        assertNull(IndicatorValueTable.fromBytes("{\"091\":1}".getBytes()));
+    }
+
+    private int indexOf(IndicatorValueTable table, String region) {
+        for (int i = 0; i < table.size(); i++) {
+            if (region.equals(table.getRegion(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
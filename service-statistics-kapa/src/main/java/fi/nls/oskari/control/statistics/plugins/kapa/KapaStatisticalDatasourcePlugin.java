@@ -1,6 +1,7 @@
 package fi.nls.oskari.control.statistics.plugins.kapa;
 
-import fi.nls.oskari.control.statistics.plugins.StatisticalDatasourcePlugin;
+import fi.nls.oskari.control.statistics.plugins.IndicatorsCache;
+import fi.nls.oskari.control.statistics.plugins.RefreshableStatisticalDatasourcePlugin;
 import fi.nls.oskari.control.statistics.plugins.StatisticalIndicator;
 import fi.nls.oskari.control.statistics.plugins.db.DatasourceLayer;
 import fi.nls.oskari.control.statistics.plugins.db.StatisticalDatasource;
@@ -15,9 +16,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class KapaStatisticalDatasourcePlugin implements StatisticalDatasourcePlugin {
+public class KapaStatisticalDatasourcePlugin implements RefreshableStatisticalDatasourcePlugin {
     private final static Logger LOG = LogFactory.getLogger(KapaStatisticalDatasourcePlugin.class);
+    private final static String CACHE_KEY = "oskari_kapa_get_indicators:";
     private KapaIndicatorsParser indicatorsParser;
+    private IndicatorsCache cache;
 
     /**
      * Maps the KaPa layer identifiers to Oskari layers.
@@ -30,15 +33,42 @@ public class KapaStatisticalDatasourcePlugin implements StatisticalDatasourcePlu
 
     @Override
     public List<? extends StatisticalIndicator> getIndicators(User user) {
+        String jsonResponse = cache.get();
+        if (jsonResponse == null) {
+            // nothing cached yet, we need to wait for the remote API
+            jsonResponse = fetchIndicators();
+        } else {
+            // serve cached data and update it in the background if needed
+            cache.refreshIfStale(getRefreshTask());
+        }
+        List<KapaIndicator> indicators = indicatorsParser.parse(jsonResponse, layerMappings);
+        return indicators;
+    }
+
+    @Override
+    public boolean refreshIndicators() {
+        return cache.refresh(getRefreshTask());
+    }
+
+    private Runnable getRefreshTask() {
+        return new Runnable() {
+            public void run() {
+                fetchIndicators();
+            }
+        };
+    }
+
+    private String fetchIndicators() {
         // Getting the general information of all the indicator layers.
         KapaRequest request = new KapaRequest();
         String jsonResponse = request.getIndicators();
-        List<KapaIndicator> indicators = indicatorsParser.parse(jsonResponse, layerMappings);
-        return indicators;
+        cache.put(jsonResponse);
+        return jsonResponse;
     }
 
     @Override
     public void init(StatisticalDatasource source) {
+        cache = new IndicatorsCache(CACHE_KEY + source.getId());
         // Fetching the layer mapping from the database.
 
         final List<DatasourceLayer> layerRows = source.getLayers();
@@ -8,6 +8,7 @@ import java.util.Map.Entry;
 
 import org.json.JSONException;
 
+import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.statistics.plugins.APIException;
 import fi.nls.oskari.control.statistics.plugins.IndicatorValue;
 import fi.nls.oskari.control.statistics.plugins.StatisticalIndicatorSelector;
@@ -23,6 +24,7 @@ import fi.nls.oskari.control.statistics.plugins.sotka.requests.SotkaRequest;
  * APIs / plugins might give all the information in the same response, or divide and key the responses differently.
  */
 public class SotkaIndicatorValuesFetcher {
+    private final static String CACHE_KEY_PREFIX = "oskari_sotka_indicator_values:";
     private SotkaIndicatorDataParser parser;
     private SotkaRegionParser regionParser;
     private SotkaConfig config;
@@ -68,10 +70,15 @@ public class SotkaIndicatorValuesFetcher {
             String[] yearsArray = years.toArray(new String[years.size()]);
             request.setYears(yearsArray);
             request.setIndicator(indicator);
-            String jsonResponse = request.getData();
-            Map<Integer, IndicatorValue> result = parser.parse(jsonResponse);
-            // FIXME: Cache this result, key by plugin, selectors and indicator id.
-            return result;
+            // The same response is used for every region category so cache it instead of requesting it again
+            // for each layer. Keyed by the request url as it includes the indicator and the selectors.
+            final String cacheKey = CACHE_KEY_PREFIX + request.getUrl();
+            String jsonResponse = JedisManager.get(cacheKey);
+            if (jsonResponse == null) {
+                jsonResponse = request.getData();
+                JedisManager.setex(cacheKey, JedisManager.EXPIRY_TIME_DAY, jsonResponse);
+            }
+            return parser.parse(jsonResponse);
             
         } catch (JSONException e) {
             e.printStackTrace();
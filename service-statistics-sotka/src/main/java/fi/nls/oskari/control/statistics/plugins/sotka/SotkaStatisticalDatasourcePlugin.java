@@ -1,8 +1,8 @@
 package fi.nls.oskari.control.statistics.plugins.sotka;
 
-import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.statistics.plugins.APIException;
-import fi.nls.oskari.control.statistics.plugins.StatisticalDatasourcePlugin;
+import fi.nls.oskari.control.statistics.plugins.IndicatorsCache;
+import fi.nls.oskari.control.statistics.plugins.RefreshableStatisticalDatasourcePlugin;
 import fi.nls.oskari.control.statistics.plugins.StatisticalIndicator;
 import fi.nls.oskari.control.statistics.plugins.db.DatasourceLayer;
 import fi.nls.oskari.control.statistics.plugins.db.StatisticalDatasource;
@@ -18,11 +18,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class SotkaStatisticalDatasourcePlugin implements StatisticalDatasourcePlugin {
+public class SotkaStatisticalDatasourcePlugin implements RefreshableStatisticalDatasourcePlugin {
     private final static Logger LOG = LogFactory.getLogger(SotkaStatisticalDatasourcePlugin.class);
 
     private SotkaIndicatorsParser indicatorsParser = null;
     private SotkaConfig config = new SotkaConfig();
+    private IndicatorsCache cache;
 
     private final static String CACHE_KEY = "oskari_sotka_get_indicators:";
 
@@ -38,20 +39,18 @@ public class SotkaStatisticalDatasourcePlugin implements StatisticalDatasourcePl
     @Override
     public List<? extends StatisticalIndicator> getIndicators(User user) {
         try {
-            final String cachedData = JedisManager.get(CACHE_KEY + getBaseURL());
+            final String cachedData = cache.get();
 
             if (cachedData != null) {
+                // serve cached data and update it in the background if needed
+                cache.refreshIfStale(getRefreshTask());
                 return indicatorsParser.parse(cachedData, layerMappings);
             }
             
             // First getting general information of all the indicator layers.
             // Note that some mandatory information about the layers is not given here,
             // for example the year range, but must be requested separately for each indicator.
-            SotkaRequest request = SotkaRequest.getInstance(Indicators.NAME);
-            request.setBaseURL(getBaseURL());
-            String jsonResponse = request.getData();
-
-            JedisManager.setex(CACHE_KEY, JedisManager.EXPIRY_TIME_DAY, jsonResponse);
+            String jsonResponse = fetchIndicators();
             // We will later need to add the year range information to the preliminary information using separate requests.
             return indicatorsParser.parse(jsonResponse, layerMappings);
         } catch (APIException e) {
@@ -61,6 +60,27 @@ public class SotkaStatisticalDatasourcePlugin implements StatisticalDatasourcePl
         }
     }
 
+    @Override
+    public boolean refreshIndicators() {
+        return cache.refresh(getRefreshTask());
+    }
+
+    private Runnable getRefreshTask() {
+        return new Runnable() {
+            public void run() {
+                fetchIndicators();
+            }
+        };
+    }
+
+    private String fetchIndicators() {
+        SotkaRequest request = SotkaRequest.getInstance(Indicators.NAME);
+        request.setBaseURL(getBaseURL());
+        String jsonResponse = request.getData();
+        cache.put(jsonResponse);
+        return jsonResponse;
+    }
+
     private void setupConfig(JSONObject obj) {
         if (obj == null) {
             return;
@@ -76,6 +96,7 @@ public class SotkaStatisticalDatasourcePlugin implements StatisticalDatasourcePl
     public void init(StatisticalDatasource source) {
         setupConfig(source.getConfigJSON());
         indicatorsParser.setConfig(config);
+        cache = new IndicatorsCache(CACHE_KEY + getBaseURL());
         final List<DatasourceLayer> layerRows = source.getLayers();
         layerMappings = new HashMap<>();
 
@@ -0,0 +1,44 @@
+package fi.nls.oskari.control.statistics.plugins;
+
+import fi.nls.oskari.annotation.Oskari;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.worker.ScheduledJob;
+
+import java.util.Map;
+
+/**
+ * Scheduled job for refreshing the cached indicator lists of statistical datasource plugins
+ * before they expire so users don't have to wait for the remote APIs. Plugins implementing
+ * RefreshableStatisticalDatasourcePlugin are refreshed. Only one node in a cluster refreshes a
+ * plugin at a time, others skip it.
+ *
+ * Schedule with a property in oskari-ext.properties:
+ *  oskari.scheduler.job.StatisticalIndicatorsRefresh.cronLine=0 0 4 * * ?
+ */
+@Oskari("StatisticalIndicatorsRefresh")
+public class StatisticalIndicatorsRefreshJob extends ScheduledJob {
+    private static final Logger LOG = LogFactory.getLogger(StatisticalIndicatorsRefreshJob.class);
+
+    @Override
+    public void execute(Map<String, Object> params) {
+        final StatisticalDatasourcePluginManager manager = StatisticalDatasourcePluginManager.getInstance();
+        for (Map.Entry<Long, StatisticalDatasourcePlugin> entry : manager.getPlugins().entrySet()) {
+            if (!(entry.getValue() instanceof RefreshableStatisticalDatasourcePlugin)) {
+                continue;
+            }
+            final long start = System.currentTimeMillis();
+            try {
+                if (!((RefreshableStatisticalDatasourcePlugin) entry.getValue()).refreshIndicators()) {
+                    LOG.info("Skipped refreshing indicators for datasource", entry.getKey(),
+                            "- refresh lock is held by another node or Redis is not available");
+                    continue;
+                }
+                LOG.info("Refreshed indicators for datasource", entry.getKey(), "in",
+                        System.currentTimeMillis() - start, "ms");
+            } catch (Exception e) {
+                LOG.error(e, "Error refreshing indicators for datasource", entry.getKey());
+            }
+        }
+    }
+}
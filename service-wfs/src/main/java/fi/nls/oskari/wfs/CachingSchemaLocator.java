@@ -3,6 +3,7 @@ package fi.nls.oskari.wfs;
 import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.wfs.util.HttpHelper;
 import fi.nls.oskari.wfs.util.XMLHelper;
 import org.eclipse.xsd.XSDSchema;
@@ -11,12 +12,23 @@ import org.geotools.xml.Schemas;
 
 import java.io.BufferedInputStream;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
- * XSD Schema loader with caching for Geotools' XML parser
+ * XSD Schema loader with caching for Geotools' XML parser.
+ *
+ * Schemas are loaded on first use: from the Redis hash shared by the nodes if another node has already
+ * fetched the schema, otherwise from the schema location. Concurrent requests for the same schema wait for
+ * a single load. Parsed schemas are kept in memory in an LRU cache bounded by the total length of
+ * the serialized schemas (a fixed estimate is used for schemas that can't be serialized):
+ *
+ *     wfs.schema.cache.maxChars=20000000
  */
 public class CachingSchemaLocator implements XSDSchemaLocator {
 
@@ -26,7 +38,14 @@ public class CachingSchemaLocator implements XSDSchemaLocator {
 
     private static final long ERROR_REPORT_QUIET_PERIOD_MS = 30 * 60 * 1000;
 
-	private static Map<String, XSDSchema> cache = new ConcurrentHashMap<String, XSDSchema>();
+    private static final long MAX_WEIGHT = PropertyUtil.getOptional("wfs.schema.cache.maxChars", 20000000);
+    // weight of a schema that couldn't be serialized
+    private static final long UNKNOWN_WEIGHT = 100000;
+
+    // access ordered, guarded by itself
+	private static final LinkedHashMap<String, CachedSchema> cache = new LinkedHashMap<String, CachedSchema>(64, 0.75f, true);
+    private static long cacheWeight = 0;
+    private static final ConcurrentMap<String, FutureTask<CachedSchema>> loading = new ConcurrentHashMap<String, FutureTask<CachedSchema>>();
     private static Map<String, Long> errorTracker = new ConcurrentHashMap<String, Long>();
 	private String username;
 	private String password;
@@ -40,38 +59,59 @@ public class CachingSchemaLocator implements XSDSchemaLocator {
 	public CachingSchemaLocator(String username, String password) {
 		this.username = username;
 		this.password = password;
-		if(cache.size() == 0) {
-			init();
-		}
-	}
-	
-	/**
-	 * Init cache from jedis
-	 */
-	public static void init() {
-		log.debug("Init schemas");
-		Set<String> schemas = JedisManager.hkeys(cacheHashKey);
-		Iterator<String> it = schemas.iterator();
-		while(it.hasNext()) {
-			String field = (String)it.next();
-			String str = JedisManager.hget(cacheHashKey, field);
-			XSDSchema xsd = XMLHelper.StringToXSDSchema(str);
-			cache.put(field, xsd);
-		}
 	}
 
     /**
      * Flush cache map and redis
      */
     public static void flushAll() {
-        cache.clear();
+        synchronized (cache) {
+            cache.clear();
+            cacheWeight = 0;
+        }
+        loading.clear();
         errorTracker.clear();
         JedisManager.del(cacheHashKey);
     }
 
 	public static long getCacheSize() {
-		return cache.size();
+        synchronized (cache) {
+            return cache.size();
+        }
 	}
+
+    /**
+     * @return total length of the cached schemas in serialized form
+     */
+    public static long getCacheWeight() {
+        synchronized (cache) {
+            return cacheWeight;
+        }
+    }
+
+    private static XSDSchema getCached(String url) {
+        synchronized (cache) {
+            CachedSchema cached = cache.get(url);
+            return cached == null ? null : cached.schema;
+        }
+    }
+
+    private static void putCached(String url, CachedSchema schema) {
+        synchronized (cache) {
+            CachedSchema previous = cache.put(url, schema);
+            if (previous != null) {
+                cacheWeight -= previous.weight;
+            }
+            cacheWeight += schema.weight;
+            // evict least recently used, but always keep the latest one
+            Iterator<CachedSchema> it = cache.values().iterator();
+            while (cacheWeight > MAX_WEIGHT && cache.size() > 1) {
+                CachedSchema eldest = it.next();
+                it.remove();
+                cacheWeight -= eldest.weight;
+            }
+        }
+    }
 	
 	/**
 	 * Loads schema from given location and caches it
@@ -90,22 +130,82 @@ public class CachingSchemaLocator implements XSDSchemaLocator {
     		String rawSchemaLocationURI, 
     		String resolvedSchemaLocationURI) {
 		
-		String url = rawSchemaLocationURI;
+		final String url = rawSchemaLocationURI;
 		if (url == null) {
 			return null;
 		}
 		
-		XSDSchema foundSchema = cache.get(url);
+		XSDSchema foundSchema = getCached(url);
 		if (foundSchema != null) {
 			return foundSchema;
 		}
-		
+
+        FutureTask<CachedSchema> task = new FutureTask<CachedSchema>(new Callable<CachedSchema>() {
+            public CachedSchema call() {
+                return load(url);
+            }
+        });
+        FutureTask<CachedSchema> running = loading.putIfAbsent(url, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                loading.remove(url, task);
+            }
+        }
+        try {
+            CachedSchema loaded = running.get();
+            return loaded == null ? null : loaded.schema;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            log.error(e.getCause(), "Failed to load Schema '" + url + "'");
+            return null;
+        }
+	}
+
+    /**
+     * Loads the schema from redis or the schema location and adds it to the cache
+     * @param url
+     * @return schema or null if it couldn't be loaded
+     */
+    private CachedSchema load(String url) {
+        // another thread might have finished loading just before this one started
+        XSDSchema foundSchema = getCached(url);
+        if (foundSchema != null) {
+            return new CachedSchema(foundSchema, 0);
+        }
+
+        String str = JedisManager.hget(cacheHashKey, url);
+        if (str != null) {
+            log.debug("Parsing cached schema", url);
+            foundSchema = XMLHelper.StringToXSDSchema(str);
+        }
+        if (foundSchema == null) {
+            foundSchema = fetch(url);
+            if (foundSchema == null) {
+                return null;
+            }
+            log.debug("Caching schema", url);
+            str = XMLHelper.XSDSchemaToString(foundSchema);
+            if (str != null) {
+                JedisManager.hset(cacheHashKey, url, str);
+            }
+        }
+        CachedSchema cached = new CachedSchema(foundSchema, str == null ? UNKNOWN_WEIGHT : str.length());
+        putCached(url, cached);
+        return cached;
+    }
+
+    private XSDSchema fetch(String url) {
 		try {
 			if (url.toLowerCase().startsWith("https")) {
 				BufferedInputStream response = HttpHelper.getRequestStream(url, "application/xml", username, password);
-				foundSchema = XMLHelper.InputStreamToXSDSchema(response);
+				return XMLHelper.InputStreamToXSDSchema(response);
 			} else {			
-				foundSchema = Schemas.parse(url);
+				return Schemas.parse(url);
 			}
 		} catch (Exception e) {
             final Long lastError = errorTracker.get(url);
@@ -119,16 +219,17 @@ public class CachingSchemaLocator implements XSDSchemaLocator {
                 log.debug("Failed to locate Schema '" + url + "' - Error message:", e.getMessage());
             }
 		}
-	    
-		if (foundSchema != null) {
-			log.debug("Caching schema", url);
-
-			JedisManager.hset(cacheHashKey, url, XMLHelper.XSDSchemaToString(foundSchema));
-			cache.put(url, foundSchema);
-		}
-
-		return foundSchema;
-	}
+        return null;
+    }
 
+    private static class CachedSchema {
+        private final XSDSchema schema;
+        // length of the serialized schema
+        private final long weight;
 
-}
\ No newline at end of file
+        CachedSchema(XSDSchema schema, long weight) {
+            this.schema = schema;
+            this.weight = weight;
+        }
+    }
+}
@@ -14,6 +14,12 @@ import org.geowebcache.grid.OutsideCoverageException;
 import org.geowebcache.layer.TileLayer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public abstract class ChangeSetEntryTransaction implements
 		IChangeSetEntryTransaction {
@@ -22,7 +28,7 @@ public abstract class ChangeSetEntryTransaction implements
 	protected int retryCount;
 	protected long retryWaitMs;
 
-	boolean isCancelled = false;
+	volatile boolean isCancelled = false;
 
 	protected WorkingSet ws;
 
@@ -30,12 +36,18 @@ public abstract class ChangeSetEntryTransaction implements
 
 	protected ChangeSetEntry cse;
 	protected long tilesTotal = 0L;
-	protected long tilesProcessed = 0L;
+	protected volatile long tilesProcessed = 0L;
 
 	protected long tilesCallbackInterval = 0L;
 	protected int percentCompleteReported = -1;
 	private StatusChangeCallBack callback;
 
+	// tiles are retrieved in parallel if set
+	protected ExecutorService executor;
+	protected IBreedingCheckpoint checkpoint;
+	protected volatile long startedAt = 0L;
+	protected volatile long tilesAtStart = 0L;
+
 	public ChangeSetEntryTransaction(XMLConfiguration config, WorkingSet ws,
 			ChangeSet cs, ChangeSetEntry cse, int retryCount, long retryWaitMs,
 			StatusChangeCallBack callback) {
@@ -101,136 +113,232 @@ public abstract class ChangeSetEntryTransaction implements
 			String gridSubsetName = cs.getGridSubsetName();
 			GridSubset gridSubset = tileLayer.getGridSubset(gridSubsetName);
 
-			double srcResolution = cse.getResolution();
-			BoundingBox srcBounds = cse.getSrcBounds();
 			long[] srcRectangle = cse.getSrcRectangle();
-			BoundingBox reqBounds = cs.getReqBounds();
+			int zoom = cs.getZoomStart() + cse.getIndex();
+
+			String entryKey = getEntryKey();
+			long startRow = srcRectangle[1];
+			if (checkpoint != null) {
+				if (checkpoint.isFinished(entryKey)) {
+					setTilesLoaded(checkpoint.getTilesLoaded(entryKey));
+					cse.setPercentComplete(getPercentComplete());
+					pendingStatus = ChangeSetEntry.Status.FINISHED;
+					return;
+				}
+				long nextRow = checkpoint.getNextRow(entryKey);
+				if (nextRow > startRow) {
+					startRow = nextRow;
+					setTilesLoaded(checkpoint.getTilesLoaded(entryKey));
+				}
+			}
 
-			int zoomStart = cs.getZoomStart();
-			int srcIdx = cse.getIndex();
-			int[] canvasSize = new int[2];
-			int[] canvOfs = new int[4];
+			tilesAtStart = tilesProcessed;
+			startedAt = System.currentTimeMillis();
 
-			double[] boundOfs = new double[4];
+			for (long gridy = startRow; gridy <= srcRectangle[3]; gridy++) {
 
-			boundOfs[0] = srcBounds.getMinX() - reqBounds.getMinX();
-			boundOfs[1] = srcBounds.getMinY() - reqBounds.getMinY();
-			boundOfs[2] = reqBounds.getMaxX() - srcBounds.getMaxX();
-			boundOfs[3] = reqBounds.getMaxY() - srcBounds.getMaxY();
+				if (isCancelled())
+					break;
 
-			canvasSize[0] = (int) Math.round(reqBounds.getWidth()
-					/ srcResolution);
-			canvasSize[1] = (int) Math.round(reqBounds.getHeight()
-					/ srcResolution);
+				if (executor != null) {
+					processRowParallel(gridSubset, tileLayer, zoom, gridy,
+							srcRectangle);
+				} else {
+					processRow(gridSubset, tileLayer, zoom, gridy,
+							srcRectangle);
+				}
 
-			for (int i = 0; i < 4; i++) {
-				canvOfs[i] = (int) Math.round(boundOfs[i] / srcResolution);
+				if (checkpoint != null && !isCancelled()) {
+					checkpoint.saveRow(entryKey, gridy + 1, tilesProcessed);
+				}
 			}
 
-			long starty = srcRectangle[1];
-			for (long gridy = starty; gridy <= srcRectangle[3]; gridy++) {
+			if (isCancelled())
+				pendingStatus = ChangeSetEntry.Status.CANCELLED;
+			else {
+				pendingStatus = ChangeSetEntry.Status.FINISHED;
+				if (checkpoint != null) {
+					checkpoint.saveFinished(entryKey, tilesProcessed);
+				}
+			}
 
-				if (isCancelled())
-					break;
+		} finally {
+			cse.setStatus(pendingStatus);
+			if (callback != null) {
+				synchronized (callback) {
+					callback.noteChange(ws, cs, cse, this);
+				}
+			}
 
-				int tileHeight = gridSubset.getTileHeight();
+		}
+	}
 
-				if (!(canvOfs[3] > 0)) {
-					if (gridy == srcRectangle[3]) {
-						tileHeight = tileHeight + canvOfs[3];
-					}
-				}
+	protected void processRow(GridSubset gridSubset, TileLayer tileLayer,
+			int zoom, long gridy, long[] srcRectangle)
+			throws OutsideCoverageException, GeoWebCacheException,
+			IOException {
 
-				if (gridy == srcRectangle[1] && canvOfs[1] < 0) {
-					tileHeight += canvOfs[1];
-				}
+		for (long gridx = srcRectangle[0]; gridx <= srcRectangle[2]; gridx++) {
+			if (isCancelled())
+				break;
+
+			long[] gridLoc = { gridx, gridy, zoom };
+			processTile(gridSubset, tileLayer, zoom, gridLoc);
+		}
+	}
+
+	/**
+	 * Retrieves the tiles of a row with the executor and waits for them to
+	 * finish. Rows are completed one at a time so the saved progress is
+	 * always a full row.
+	 */
+	protected void processRowParallel(final GridSubset gridSubset,
+			final TileLayer tileLayer, final int zoom, long gridy,
+			long[] srcRectangle) throws OutsideCoverageException,
+			GeoWebCacheException, IOException {
 
-				long startx = srcRectangle[0];
-				for (long gridx = startx; gridx <= srcRectangle[2]; gridx++) {
-					if (isCancelled())
-						break;
-
-					long[] gridLoc = { gridx, gridy, srcIdx + zoomStart };
-					BoundingBox gridLocBounds = null;
-					gridLocBounds = gridSubset.boundsFromIndex(gridLoc);
-
-					try {
-
-						for (int rc = 0; rc < retryCount; rc++) {
-
-							try {
-								retrieveTile(ws, cs, cse, gridSubset, zoomStart
-										+ srcIdx, gridLocBounds, gridLoc,
-										tileLayer);
-								break;
-							} catch (IOException ioex) {
-								if (callback != null) {
-									callback.noteException(ws, cs, cse, this,
-											ioex);
-								}
-
-							} catch (GeoWebCacheException gex) {
-								if (callback != null) {
-									callback.noteException(ws, cs, cse, this,
-											gex);
-								}
-							}
-
-							try {
-								Thread.sleep(retryWaitMs);
-							} catch (InterruptedException e) {
-								throw new IOException(
-										"retry sleep failed after IOException. Quitting at retry #"
-												+ rc + " of " + retryCount);
-							}
-						}
-					} catch (RequestFilterException e) {
-						if (callback != null) {
-							callback.noteException(ws, cs, cse, this, e);
-						}
-						continue;
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (long gridx = srcRectangle[0]; gridx <= srcRectangle[2]; gridx++) {
+			final long[] gridLoc = { gridx, gridy, zoom };
+			futures.add(executor.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					if (!isCancelled()) {
+						processTile(gridSubset, tileLayer, zoom, gridLoc);
 					}
+					return null;
+				}
+			}));
+		}
 
-					int pc = getPercentComplete();
-					cse.setPercentComplete(pc);
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			setCancelled(true);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof GeoWebCacheException) {
+				throw (GeoWebCacheException) cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			for (Future<Void> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
 
-					if (pc != percentCompleteReported) {
-						percentCompleteReported = pc;
+	protected void processTile(GridSubset gridSubset, TileLayer tileLayer,
+			int zoom, long[] gridLoc) throws OutsideCoverageException,
+			GeoWebCacheException, IOException {
 
-					}
+		BoundingBox gridLocBounds = gridSubset.boundsFromIndex(gridLoc);
 
-					if (tilesCallbackInterval == 0
-							|| tilesProcessed % tilesCallbackInterval == 0) {
+		try {
 
-						if (callback != null) {
-							synchronized (callback) {
-								callback.noteChange(ws, cs, cse, this);
-							}
+			for (int rc = 0; rc < retryCount; rc++) {
 
-							if (ws.getStatus().equals(Status.CANCELLED)) {
-								setCancelled(true);
-								break;
-							}
-						}
-					}
+				try {
+					retrieveTile(ws, cs, cse, gridSubset, zoom, gridLocBounds,
+							gridLoc, tileLayer);
+					break;
+				} catch (IOException ioex) {
+					noteException(ioex);
+				} catch (GeoWebCacheException gex) {
+					noteException(gex);
+				}
 
+				try {
+					Thread.sleep(retryWaitMs);
+				} catch (InterruptedException e) {
+					throw new IOException(
+							"retry sleep failed after IOException. Quitting at retry #"
+									+ rc + " of " + retryCount);
 				}
 			}
+		} catch (RequestFilterException e) {
+			noteException(e);
+			return;
+		}
 
-			if (isCancelled())
-				pendingStatus = ChangeSetEntry.Status.CANCELLED;
-			else
-				pendingStatus = ChangeSetEntry.Status.FINISHED;
+		cse.setPercentComplete(getPercentComplete());
+
+		long processed = tilesProcessed;
+		if (tilesCallbackInterval == 0
+				|| processed % tilesCallbackInterval == 0) {
 
-		} finally {
-			cse.setStatus(pendingStatus);
 			if (callback != null) {
 				synchronized (callback) {
 					callback.noteChange(ws, cs, cse, this);
 				}
+
+				if (ws.getStatus().equals(Status.CANCELLED)) {
+					setCancelled(true);
+				}
+			}
+		}
+	}
+
+	private void noteException(Exception x) {
+		if (callback != null) {
+			synchronized (callback) {
+				callback.noteException(ws, cs, cse, this, x);
 			}
+		}
+	}
+
+	/**
+	 * Counts a retrieved tile. Called by retrieveTile implementations, possibly
+	 * from several threads.
+	 * 
+	 * @return tiles loaded
+	 */
+	protected synchronized long countTile() {
+		return ++tilesProcessed;
+	}
+
+	/**
+	 * Key for the saved progress of the entry
+	 */
+	public String getEntryKey() {
+		long[] srcRectangle = cse.getSrcRectangle();
+		return cs.getLayerName() + "/" + cs.getGridSubsetName() + "/"
+				+ cs.getIdentifier() + "/" + (cs.getZoomStart() + cse.getIndex())
+				+ "/" + srcRectangle[0] + "," + srcRectangle[1] + ","
+				+ srcRectangle[2] + "," + srcRectangle[3];
+	}
+
+	public double getTilesPerSecond() {
+		long elapsed = System.currentTimeMillis() - startedAt;
+		if (startedAt == 0L || elapsed <= 0L) {
+			return 0.0;
+		}
+		return (tilesProcessed - tilesAtStart) * 1000.0 / elapsed;
+	}
 
+	public long getEstimatedSecondsRemaining() {
+		double rate = getTilesPerSecond();
+		if (rate <= 0.0) {
+			return -1L;
 		}
+		return (long) Math.ceil(Math.max(0L, tilesTotal - tilesProcessed)
+				/ rate);
+	}
+
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public void setCheckpoint(IBreedingCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
 	}
 
 	abstract protected void retrieveTile(WorkingSet ws, ChangeSet cs,
@@ -245,7 +353,7 @@ public abstract class ChangeSetEntryTransaction implements
 	}
 
 	
-	public void setTilesLoaded(long tilesLoaded) {
+	public synchronized void setTilesLoaded(long tilesLoaded) {
 		this.tilesProcessed = tilesLoaded;
 	}
 
@@ -0,0 +1,93 @@
+package fi.nls.oskari.printout.breeding.breeder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Breeding progress stored in a properties file. The file is rewritten
+ * whenever progress is saved and replaced with a rename so a crash leaves
+ * either the previous or the new progress.
+ */
+public class FileBreedingCheckpoint implements IBreedingCheckpoint {
+
+	private static final String FINISHED = "finished";
+
+	private final File file;
+	private final Properties progress = new Properties();
+
+	public FileBreedingCheckpoint(File file) throws IOException {
+		this.file = file;
+		if (file.exists()) {
+			InputStream in = new FileInputStream(file);
+			try {
+				progress.load(in);
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	public synchronized long getNextRow(String entryKey) {
+		String[] value = getValue(entryKey);
+		if (value == null || FINISHED.equals(value[0])) {
+			return -1;
+		}
+		return Long.parseLong(value[0]);
+	}
+
+	public synchronized long getTilesLoaded(String entryKey) {
+		String[] value = getValue(entryKey);
+		if (value == null) {
+			return 0;
+		}
+		return Long.parseLong(value[1]);
+	}
+
+	public synchronized boolean isFinished(String entryKey) {
+		String[] value = getValue(entryKey);
+		return value != null && FINISHED.equals(value[0]);
+	}
+
+	public synchronized void saveRow(String entryKey, long nextRow,
+			long tilesLoaded) throws IOException {
+		progress.setProperty(entryKey, nextRow + "," + tilesLoaded);
+		store();
+	}
+
+	public synchronized void saveFinished(String entryKey, long tilesLoaded)
+			throws IOException {
+		progress.setProperty(entryKey, FINISHED + "," + tilesLoaded);
+		store();
+	}
+
+	private String[] getValue(String entryKey) {
+		String value = progress.getProperty(entryKey);
+		if (value == null) {
+			return null;
+		}
+		return value.split(",");
+	}
+
+	private void store() throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			progress.store(out, "breeding progress");
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file)) {
+			// rename doesn't replace an existing file on all platforms
+			if (!file.delete() || !tmp.renameTo(file)) {
+				throw new IOException("Failed to save breeding progress to "
+						+ file);
+			}
+		}
+	}
+
+}
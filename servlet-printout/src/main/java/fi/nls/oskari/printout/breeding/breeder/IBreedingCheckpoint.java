@@ -0,0 +1,29 @@
+package fi.nls.oskari.printout.breeding.breeder;
+
+import java.io.IOException;
+
+/**
+ * Persists the progress of change set entries so an interrupted breeding run
+ * can be resumed. Progress is saved per row of tiles.
+ */
+public interface IBreedingCheckpoint {
+
+	/**
+	 * @return next tile row to process or -1 if there is no saved progress
+	 */
+	public long getNextRow(String entryKey);
+
+	/**
+	 * @return tiles loaded when the progress was saved
+	 */
+	public long getTilesLoaded(String entryKey);
+
+	public boolean isFinished(String entryKey);
+
+	public void saveRow(String entryKey, long nextRow, long tilesLoaded)
+			throws IOException;
+
+	public void saveFinished(String entryKey, long tilesLoaded)
+			throws IOException;
+
+}
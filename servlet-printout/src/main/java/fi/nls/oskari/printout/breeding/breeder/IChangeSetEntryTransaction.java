@@ -13,6 +13,13 @@ public interface IChangeSetEntryTransaction {
 
 	public long getTilesTotal();
 
+	public double getTilesPerSecond();
+
+	/**
+	 * @return estimated seconds until the entry is finished or -1 if not known
+	 */
+	public long getEstimatedSecondsRemaining();
+
 	public boolean isCancelled();
 
 	public void process() throws OutsideCoverageException,
@@ -36,12 +36,16 @@ public interface IWorkingSetTileBreeder {
 
 	public StatusChangeCallBack getCallback();
 
+	public IBreedingCheckpoint getCheckpoint();
+
 	public XMLConfiguration getConfig();
 
 	public GridSetBroker getGridSetBroker();
 
 	public long getMaxCount();
 
+	public int getParallelism();
+
 	public Geometry getMaxExtent();
 
 	public int getRetryCount();
@@ -58,6 +62,12 @@ public interface IWorkingSetTileBreeder {
 
 	public void setCallback(StatusChangeCallBack callback);
 
+	/**
+	 * Progress of change set entries is saved to and resumed from the
+	 * checkpoint if set
+	 */
+	public void setCheckpoint(IBreedingCheckpoint checkpoint);
+
 	public void setConfig(XMLConfiguration config);
 
 	public void setGridSetBroker(GridSetBroker gridSetBroker);
@@ -66,10 +76,17 @@ public interface IWorkingSetTileBreeder {
 
 	public void setMaxExtent(Geometry maxExtent);
 
+	/**
+	 * Amount of tiles retrieved concurrently
+	 */
+	public void setParallelism(int parallelism);
+
 	public void setRetryCount(int retryCount);
 
 	public void setRetryWaitMs(long retryWaitMs);
 
 	public void setUseCache(boolean useCache);
 
+	public void shutdown();
+
 }
\ No newline at end of file
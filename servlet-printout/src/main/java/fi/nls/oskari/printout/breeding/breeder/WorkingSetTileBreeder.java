@@ -7,6 +7,10 @@ import fi.nls.oskari.printout.breeding.ChangeSet;
 import org.geowebcache.config.XMLConfiguration;
 import org.geowebcache.grid.GridSetBroker;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 public abstract class WorkingSetTileBreeder implements IWorkingSetTileBreeder {
 
 	protected boolean useCache = true;
@@ -24,6 +28,55 @@ public abstract class WorkingSetTileBreeder implements IWorkingSetTileBreeder {
 	protected GridSetBroker gridSetBroker;
 	protected XMLConfiguration config;
 
+	/* tiles retrieved concurrently, 1 retrieves tiles in the calling thread */
+	protected int parallelism = 1;
+	protected IBreedingCheckpoint checkpoint;
+	private ExecutorService executor;
+
+	/**
+	 * Sets up parallel retrieval and saved progress for the transaction
+	 */
+	protected <T extends ChangeSetEntryTransaction> T configure(T csex) {
+		csex.setExecutor(getExecutor());
+		csex.setCheckpoint(checkpoint);
+		return csex;
+	}
+
+	protected synchronized ExecutorService getExecutor() {
+		if (parallelism <= 1) {
+			return null;
+		}
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(parallelism,
+					new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "TileBreeder");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		return executor;
+	}
+
+	/**
+	 * Stops the threads used for parallel retrieval
+	 */
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	public IBreedingCheckpoint getCheckpoint() {
+		return checkpoint;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
 	public StatusChangeCallBack getCallback() {
 		return callback;
 	}
@@ -60,6 +113,17 @@ public abstract class WorkingSetTileBreeder implements IWorkingSetTileBreeder {
 
 	}
 
+	public void setCheckpoint(IBreedingCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	public synchronized void setParallelism(int parallelism) {
+		if (parallelism != this.parallelism) {
+			shutdown();
+		}
+		this.parallelism = parallelism;
+	}
+
 	public void setCallback(StatusChangeCallBack callback) {
 		this.callback = callback;
 	}
@@ -64,7 +64,7 @@ public class GeoWebCacheWorkingSetTileBreeder extends WorkingSetTileBreeder {
 				return;
 			}
 
-			tilesProcessed++;
+			countTile();
 
 			Map<String, String> parameters = new HashMap<String, String>();
 
@@ -107,7 +107,7 @@ public class GeoWebCacheWorkingSetTileBreeder extends WorkingSetTileBreeder {
 		ChangeSetEntryTransaction csex = new GeoWebCacheChangeSetEntryTransaction(
 				config, ws, cs, cse, retryCount, retryWaitMs, callback);
 
-		return csex;
+		return configure(csex);
 	}
 
 	public StorageBroker getStorageBroker() {
@@ -121,7 +121,7 @@ public class GeoWebCacheWorkingSetTileBreeder extends WorkingSetTileBreeder {
 		GeoWebCacheChangeSetEntryTransaction csex = new GeoWebCacheChangeSetEntryTransaction(
 				config, ws, cs, cse, retryCount, retryWaitMs, callback);
 
-		csex.process();
+		configure(csex).process();
 	}
 
 	public void setStorageBroker(StorageBroker storageBroker) {
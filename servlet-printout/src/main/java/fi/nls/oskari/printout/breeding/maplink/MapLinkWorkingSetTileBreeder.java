@@ -62,6 +62,7 @@ public class MapLinkWorkingSetTileBreeder extends WorkingSetTileBreeder
 
 			tileProcessor.processTile(e, p, tw, th, fullParameters,
 					cse.getLayerName(), gridLoc);
+			countTile();
 
 		}
 
@@ -87,7 +88,7 @@ public class MapLinkWorkingSetTileBreeder extends WorkingSetTileBreeder
 				config, ws, cs, cse, mapLinkRetryCount, mapLinkRetryWaitMs,
 				callback);
 
-		return csex;
+		return configure(csex);
 	}
 
 	public MapLinkTileProcessor getTileProcessor() {
@@ -103,7 +104,7 @@ public class MapLinkWorkingSetTileBreeder extends WorkingSetTileBreeder
 				config, ws, cs, cse, mapLinkRetryCount, mapLinkRetryWaitMs,
 				callback);
 
-		csex.process();
+		configure(csex).process();
 	}
 
 	public void setTileProcessor(MapLinkTileProcessor tileProcessor) {
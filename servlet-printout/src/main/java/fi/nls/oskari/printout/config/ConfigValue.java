@@ -74,6 +74,36 @@ public enum ConfigValue {
 
     REDIS_BLOB_CACHE("redis.blobcache"),
 
+    /* */
+    LAYER_TILES_MAX_CONNECTIONS_PER_HOST("layer.tiles.maxconnections.perhost"),
+
+    /* */
+    LAYER_TILES_DECODE_THREADS("layer.tiles.decode.threads"),
+
+    /* */
+    PRINT_JOBS_WORKERS("print.jobs.workers"),
+
+    /* */
+    PRINT_JOBS_QUEUE_MAX("print.jobs.queue.max"),
+
+    /* */
+    PRINT_JOBS_CLIENT_MAX("print.jobs.client.max"),
+
+    /* */
+    PRINT_JOBS_TIMEOUT_SECONDS("print.jobs.timeout.seconds"),
+
+    /* */
+    PRINT_JOBS_KEEP_SECONDS("print.jobs.keep.seconds"),
+
+    /* */
+    PRINT_CACHE_SHARED("print.cache.shared"),
+
+    /* megabytes of layer images kept in memory by concurrent PDF prints */
+    PRINT_PDF_MEMORY_MAX_MB("print.pdf.memory.max.mb"),
+
+    /* directory for PDF scratch files, defaults to java.io.tmpdir */
+    PRINT_PDF_SCRATCH_DIR("print.pdf.scratch.dir"),
+
     /* temp fix to 'support' ditching useless minor scale resolution maps */
     MAPLINK_ZOOM_OFFSET("maplink.zoom.offset")
 
@@ -0,0 +1,106 @@
+package fi.nls.oskari.printout.jobs;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Printout rendered in the background by PrintJobQueue. The id is a hash of the
+ * request so identical requests share the job.
+ */
+public class PrintJob {
+
+    public enum Status {
+        queued, running, done, error
+    }
+
+    private final String id;
+    private final String client;
+    private final String contentType;
+    private final FutureTask<byte[]> task;
+    private volatile Status status = Status.queued;
+    private volatile long finishedAt;
+
+    PrintJob(final String id, final String client, final String contentType,
+            final PrintRenderer renderer) {
+        this.id = id;
+        this.client = client;
+        this.contentType = contentType;
+        this.task = new FutureTask<byte[]>(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                status = Status.running;
+                StreamingOutput output = renderer.render();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                output.write(bytes);
+                return bytes.toByteArray();
+            }
+        });
+    }
+
+    /**
+     * Job for an output that has already been rendered
+     */
+    static PrintJob done(final String id, final String contentType,
+            final byte[] result) {
+        PrintJob job = new PrintJob(id, null, contentType, new PrintRenderer() {
+            public StreamingOutput render() {
+                return new StreamingOutput() {
+                    public void write(OutputStream out) throws IOException {
+                        out.write(result);
+                    }
+                };
+            }
+        });
+        job.task.run();
+        job.finished(Status.done);
+        return job;
+    }
+
+    FutureTask<byte[]> getTask() {
+        return task;
+    }
+
+    void finished(Status status) {
+        this.status = status;
+        this.finishedAt = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    String getClient() {
+        return client;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    long getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Waits for the rendered output.
+     */
+    public byte[] getResult(long timeoutSeconds) throws InterruptedException,
+            ExecutionException, TimeoutException {
+        return task.get(timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    public String getStatusJSON() {
+        return "{ \"jobId\" : \"" + id + "\", \"status\" : \"" + status
+                + "\" }";
+    }
+}
@@ -0,0 +1,321 @@
+package fi.nls.oskari.printout.jobs;
+
+import fi.nls.oskari.printout.caching.jedis.JedisCache;
+import fi.nls.oskari.printout.config.ConfigValue;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders printouts with a bounded amount of workers so traffic spikes don't tie
+ * up all the servlet threads. Identical requests are rendered once: they share
+ * the job while it's in progress and the output is cached in the blob cache
+ * afterwards.
+ * 
+ * Configuration (defaults):
+ * print.jobs.workers=4
+ * print.jobs.queue.max=20
+ * print.jobs.client.max=2
+ * print.jobs.timeout.seconds=120
+ * print.jobs.keep.seconds=120
+ * print.cache.shared=false
+ * 
+ * The cookie of the request is part of the job id unless print.cache.shared is
+ * true, so outputs with layers that require login are not shared.
+ */
+public class PrintJobQueue {
+    private static Log log = LogFactory.getLog(PrintJobQueue.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String CACHE_KEY_PREFIX = "printout:";
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private static PrintJobQueue instance;
+
+    private final ThreadPoolExecutor executor;
+    private final int maxClientJobs;
+    private final long timeoutSeconds;
+    private final long keepMillis;
+    private final boolean sharedCache;
+    private final boolean useCache;
+
+    // jobs in progress and recently finished jobs by id
+    private final ConcurrentMap<String, PrintJob> jobs = new ConcurrentHashMap<String, PrintJob>();
+    // queued and running jobs by client
+    private final ConcurrentMap<String, AtomicInteger> clientJobs = new ConcurrentHashMap<String, AtomicInteger>();
+
+    public static synchronized PrintJobQueue getInstance(Properties props) {
+        if (instance == null) {
+            instance = new PrintJobQueue(props);
+        }
+        return instance;
+    }
+
+    /**
+     * Stops the shared queue, called when the webapp is stopped
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    public PrintJobQueue(Properties props) {
+        int workers = ConfigValue.PRINT_JOBS_WORKERS.getConfigProperty(props,
+                4);
+        int maxQueue = ConfigValue.PRINT_JOBS_QUEUE_MAX.getConfigProperty(
+                props, 20);
+        maxClientJobs = ConfigValue.PRINT_JOBS_CLIENT_MAX.getConfigProperty(
+                props, 2);
+        timeoutSeconds = ConfigValue.PRINT_JOBS_TIMEOUT_SECONDS
+                .getConfigProperty(props, 120);
+        keepMillis = ConfigValue.PRINT_JOBS_KEEP_SECONDS.getConfigProperty(
+                props, 120) * 1000L;
+        sharedCache = "true".equals(ConfigValue.PRINT_CACHE_SHARED
+                .getConfigProperty(props, "false"));
+        useCache = "true".equals(ConfigValue.REDIS_BLOB_CACHE
+                .getConfigProperty(props, "true"));
+
+        executor = new ThreadPoolExecutor(workers, workers, 60,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(maxQueue),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "PrintJob-"
+                                + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Stops the workers, jobs in progress are interrupted
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public long getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    /**
+     * @param contentType
+     *            output type
+     * @param request
+     *            normalized request
+     * @param cookie
+     *            cookie of the request
+     * @return job id for the request
+     */
+    public String getJobId(String contentType, String request, String cookie) {
+        StringBuilder key = new StringBuilder(contentType).append('\n')
+                .append(request);
+        if (!sharedCache && cookie != null) {
+            key.append('\n').append(cookie);
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(key.toString().getBytes(UTF8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the job for given id. If the same output is being rendered or
+     * is cached, the existing job is returned. Otherwise the job is queued.
+     * 
+     * @throws WebApplicationException
+     *             if the queue is full or the client has too many jobs
+     */
+    public PrintJob submit(final String id, final String client,
+            final String contentType, final PrintRenderer renderer) {
+        removeExpired();
+
+        PrintJob job = getJob(id, contentType);
+        if (job != null && job.getStatus() != PrintJob.Status.error) {
+            return job;
+        }
+
+        final AtomicInteger count = reserveClientJob(client);
+        if (count == null) {
+            throw new WebApplicationException(Response
+                    .status(SC_TOO_MANY_REQUESTS)
+                    .entity("Too many print requests").build());
+        }
+
+        final PrintJob newJob = new PrintJob(id, client, contentType, renderer);
+        if (job != null) {
+            // previous attempt failed
+            jobs.remove(id, job);
+        }
+        job = jobs.putIfAbsent(id, newJob);
+        if (job != null) {
+            count.decrementAndGet();
+            return job;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    process(newJob, count);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id, newJob);
+            count.decrementAndGet();
+            throw new WebApplicationException(Response
+                    .status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity("Print queue is full").build());
+        }
+        log.info("Queued print job " + id + " for " + client);
+        return newJob;
+    }
+
+    private void process(final PrintJob job, final AtomicInteger count) {
+        try {
+            job.getTask().run();
+            byte[] result = job.getResult(0);
+            job.finished(PrintJob.Status.done);
+            putToCache(job.getId(), result);
+        } catch (Exception e) {
+            log.warn("Print job failed " + job.getId() + " " + e);
+            job.finished(PrintJob.Status.error);
+        } finally {
+            count.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return job in progress, recently finished job or a finished job for
+     *         cached output, null if not found
+     */
+    public PrintJob getJob(final String id, final String contentType) {
+        PrintJob job = jobs.get(id);
+        if (job != null) {
+            return job;
+        }
+        byte[] cached = getFromCache(id);
+        if (cached == null) {
+            return null;
+        }
+        String type = contentType;
+        if (type == null) {
+            type = isPDF(cached) ? "application/pdf" : "image/png";
+        }
+        job = PrintJob.done(id, type, cached);
+        PrintJob existing = jobs.putIfAbsent(id, job);
+        return existing != null ? existing : job;
+    }
+
+    private static boolean isPDF(byte[] bytes) {
+        return bytes.length > 4 && bytes[0] == '%' && bytes[1] == 'P'
+                && bytes[2] == 'D' && bytes[3] == 'F';
+    }
+
+    /**
+     * Counts a job for the client.
+     * 
+     * @return the counter of the client or null if the client has too many
+     *         jobs
+     */
+    private AtomicInteger reserveClientJob(final String client) {
+        while (true) {
+            final AtomicInteger count = getClientCount(client);
+            final int current = count.get();
+            if (current < 0) {
+                // removed by removeExpired(), use a new counter
+                clientJobs.remove(client, count);
+                continue;
+            }
+            if (current >= maxClientJobs) {
+                return null;
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                return count;
+            }
+        }
+    }
+
+    private AtomicInteger getClientCount(final String client) {
+        AtomicInteger count = clientJobs.get(client);
+        if (count == null) {
+            final AtomicInteger newCount = new AtomicInteger();
+            count = clientJobs.putIfAbsent(client, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        return count;
+    }
+
+    private void removeExpired() {
+        final long expired = System.currentTimeMillis() - keepMillis;
+        Iterator<PrintJob> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            PrintJob job = it.next();
+            if (job.getFinishedAt() != 0 && job.getFinishedAt() < expired) {
+                it.remove();
+            }
+        }
+        for (Map.Entry<String, AtomicInteger> entry : clientJobs.entrySet()) {
+            // counter is marked removed only at zero so a job can't be
+            // counted to it after this
+            final AtomicInteger count = entry.getValue();
+            if (count.compareAndSet(0, -1)) {
+                clientJobs.remove(entry.getKey(), count);
+            }
+        }
+    }
+
+    private byte[] getFromCache(String id) {
+        if (!useCache) {
+            return null;
+        }
+        try {
+            return JedisCache.getBlobCache().getFromCache(
+                    (CACHE_KEY_PREFIX + id).getBytes(UTF8));
+        } catch (Exception e) {
+            log.warn("Unable to read printout from cache " + e);
+            return null;
+        }
+    }
+
+    private void putToCache(String id, byte[] result) {
+        if (!useCache) {
+            return;
+        }
+        try {
+            JedisCache.getBlobCache().putToCache(
+                    (CACHE_KEY_PREFIX + id).getBytes(UTF8), result);
+        } catch (Exception e) {
+            log.warn("Unable to cache printout " + e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package fi.nls.oskari.printout.jobs;
+
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Renders the printout for a PrintJob.
+ */
+public interface PrintRenderer {
+
+    StreamingOutput render() throws Exception;
+}
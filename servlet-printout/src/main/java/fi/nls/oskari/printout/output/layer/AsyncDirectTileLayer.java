@@ -6,6 +6,7 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
 import org.geotools.data.Base64;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.FeatureIterator;
@@ -25,12 +26,14 @@ import java.net.URL;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 
  * This class Loads layer tiles using async http client. Draws tiles to a layer
- * specific canvas and finally anchors canvas to resulting image.
+ * specific canvas and finally anchors canvas to resulting image. Tiles are
+ * decoded in the AsyncLayerProcessor decoding thread pool.
  * 
  */
 public class AsyncDirectTileLayer extends DirectTileLayer {
@@ -70,6 +73,12 @@ public class AsyncDirectTileLayer extends DirectTileLayer {
     protected Map<String, String> xClientInfo;
     private boolean useCache;
 
+    // layer canvas, tiles are drawn here as they are decoded
+    private BufferedImage bi;
+    private Graphics2D g;
+    // set when the canvas has been drawn to the map, guarded by g
+    private boolean finished;
+
     public AsyncDirectTileLayer(LayerDefinition ld,
             AsyncLayerProcessor asyncProc, DefaultFeatureCollection fc,
             AffineTransform transform, Map<String, String> xClientInfo,
@@ -82,36 +91,46 @@ public class AsyncDirectTileLayer extends DirectTileLayer {
 
     }
 
-    public void draw(final Graphics2D g2d, final MapContent mapContent,
-            final MapViewport mapViewport) {
-
+    /**
+     * Starts loading the tiles to the layer canvas without waiting for them.
+     * MapProducer calls this for all layers before the map is painted so the
+     * layers are loaded in parallel.
+     * 
+     * @param rect
+     *            screen area
+     */
+    public synchronized void prefetch(final Rectangle rect) {
+        if (bi != null) {
+            return;
+        }
         latch = new CountDownLatch(fc.size());
 
-        Rectangle rect = mapViewport.getScreenArea();
-
-        BufferedImage bi = new BufferedImage(rect.width, rect.height,
+        bi = new BufferedImage(rect.width, rect.height,
                 BufferedImage.TYPE_4BYTE_ABGR);
-        Graphics2D g = (Graphics2D) bi.getGraphics();
+        g = (Graphics2D) bi.getGraphics();
 
+        FeatureIterator<SimpleFeature> iterator = fc.features();
         try {
 
-            try {
-                FeatureIterator<SimpleFeature> iterator = fc.features();
-                try {
+            for (; iterator.hasNext();) {
+                final SimpleFeature f = iterator.next();
 
-                    for (; iterator.hasNext();) {
-                        final SimpleFeature f = iterator.next();
+                processTileFeature(g, f);
+            }
 
-                        processTileFeature(g, f, mapContent, mapViewport);
-                    }
+        } finally {
+            iterator.close();
 
-                } finally {
-                    iterator.close();
+        }
+    }
 
-                }
-            } finally {
-                latch.await(timeoutInSeconds, TimeUnit.SECONDS);
-            }
+    public void draw(final Graphics2D g2d, final MapContent mapContent,
+            final MapViewport mapViewport) {
+
+        prefetch(mapViewport.getScreenArea());
+
+        try {
+            latch.await(timeoutInSeconds, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
 
         } finally {
@@ -120,24 +139,55 @@ public class AsyncDirectTileLayer extends DirectTileLayer {
             int rule = AlphaComposite.SRC_OVER;
             g2d.setComposite(AlphaComposite.getInstance(rule, alpha));
 
-            g2d.drawImage(bi, 0, 0, null);
-            g.dispose();
+            // tiles arriving after timeout are dropped
+            synchronized (g) {
+                g2d.drawImage(bi, 0, 0, null);
+                finished = true;
+                g.dispose();
+            }
             bi.flush();
 
         }
 
     }
 
+    /**
+     * Tiles are decoded and scaled in parallel, only drawing to the layer
+     * canvas is serialized. Tiles decoded after the layer has been drawn to
+     * the map are dropped since the canvas has been disposed.
+     */
+    @Override
+    public void drawImage(Graphics2D g2d, BufferedImage imageBuf, int x, int y,
+            int w, int h, boolean doScale) throws IOException {
+        BufferedImage tile = doScale ? doScaleWithFilters(imageBuf, w, h)
+                : imageBuf;
+        synchronized (g2d) {
+            if (finished) {
+                return;
+            }
+            g2d.drawImage(tile, x, y, null);
+        }
+    }
+
+    @Override
+    protected void drawErrorTile(Graphics2D g2d, int x, int y) {
+        synchronized (g2d) {
+            if (finished) {
+                return;
+            }
+            super.drawErrorTile(g2d, x, y);
+        }
+    }
+
     public void drawBlobFeature(byte[] blob, final SimpleFeature f,
-            final Graphics2D g2d, final MapContent mapContent,
-            final MapViewport mapViewport) throws IOException {
+            final Graphics2D g2d) throws IOException {
 
         ByteArrayInputStream bis = new ByteArrayInputStream(blob);
         BufferedImage imageBuf;
         imageBuf = ImageIO.read(bis);
 
         if (imageBuf != null) {
-            drawImageFeature(g2d, mapContent, f, imageBuf);
+            drawImageFeature(g2d, null, f, imageBuf);
         } else {
             throw new IOException("CACHED BLOB FAILURE");
         }
@@ -147,8 +197,7 @@ public class AsyncDirectTileLayer extends DirectTileLayer {
     }
 
     public void drawFeature(final SimpleFeature f, final String urlStr,
-            final Graphics2D g2d, final MapContent mapContent,
-            final MapViewport mapViewport, final boolean isCacheable)
+            final Graphics2D g2d, final boolean isCacheable)
             throws MalformedURLException {
 
         final URL url = new URL(urlStr);
@@ -185,42 +234,56 @@ public class AsyncDirectTileLayer extends DirectTileLayer {
                 boolean inSuccessStatusRange = ((response.getStatusLine()
                         .getStatusCode() / 200) == 1);
 
-                try {
-
-                    if (inSuccessStatusRange) {
-                        BufferedImage imageBuf = ImageIO.read(response
-                                .getEntity().getContent());
+                if (!inSuccessStatusRange) {
+                    log.warn("Failure "
+                            + response.getStatusLine().getStatusCode()
+                            + "/" + url.toExternalForm());
+                    latch.countDown();
+                    return;
+                }
 
-                        if (imageBuf != null) {
-                            drawImageFeature(g2d, mapContent, f, imageBuf);
+                final byte[] content;
+                try {
+                    content = EntityUtils.toByteArray(response.getEntity());
+                } catch (IOException e) {
+                    log.warn(e);
+                    latch.countDown();
+                    return;
+                }
 
-                            if (isCacheable) {
-                                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                                ImageIO.write(imageBuf, "png", bos);
-                                JedisCache.getBlobCache().putToCache(
-                                        urlStr.getBytes(), bos.toByteArray());
+                decode(new Runnable() {
+                    public void run() {
+                        try {
+                            BufferedImage imageBuf = ImageIO
+                                    .read(new ByteArrayInputStream(content));
+
+                            if (imageBuf != null) {
+                                drawImageFeature(g2d, null, f, imageBuf);
+
+                                if (isCacheable) {
+                                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                                    ImageIO.write(imageBuf, "png", bos);
+                                    JedisCache.getBlobCache().putToCache(
+                                            urlStr.getBytes(),
+                                            bos.toByteArray());
+                                }
+
+                                imageBuf.flush();
+                            } else {
+                                log.warn("Unable to read with ImageIO "
+                                        + url.toExternalForm());
                             }
+                        } catch (IllegalStateException e) {
 
-                            imageBuf.flush();
-                        } else {
-                            log.warn("Unable to read with ImageIO "
-                                    + url.toExternalForm());
-                        }
+                            log.warn(e);
+                        } catch (IOException e) {
 
-                    } else {
-                        log.warn("Failure "
-                                + response.getStatusLine().getStatusCode()
-                                + "/" + url.toExternalForm());
+                            log.warn(e);
+                        } finally {
+                            latch.countDown();
+                        }
                     }
-                } catch (IllegalStateException e) {
-
-                    log.warn(e);
-                } catch (IOException e) {
-
-                    log.warn(e);
-                } finally {
-                    latch.countDown();
-                }
+                });
 
             }
 
@@ -234,59 +297,74 @@ public class AsyncDirectTileLayer extends DirectTileLayer {
         asyncProc.execute(request, drawFuture);
     }
 
-    private void processTileFeature(Graphics2D g, SimpleFeature f,
-            final MapContent mapContent, final MapViewport mapViewport) {
+    /**
+     * Runs the task in the decoding thread pool. The task must count down the
+     * latch.
+     */
+    private void decode(Runnable task) {
+        try {
+            asyncProc.decode(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("Tile decoding rejected " + e);
+            latch.countDown();
+        }
+    }
+
+    private void processTileFeature(final Graphics2D g, final SimpleFeature f) {
         final String url = (String) f.getProperty("url").getValue();
 
         final Boolean isCacheable = (Boolean) f.getProperty("cacheable")
                 .getValue() && useCache;
 
-        byte[] blob = null;
-
-        if (isCacheable) {
-            blob = JedisCache.getBlobCache().getFromCache(url.getBytes());
-        }
-
-        if (blob != null) {
-
-            try {
-                drawBlobFeature(blob, f, g, mapContent, mapViewport);
-                latch.countDown();
-            } catch (IOException io) {
-                try {
-                    drawFeature(f, url, g, mapContent, mapViewport, isCacheable);
-                } catch (MalformedURLException e) {
-                    log.warn("Draw Feature failed " + e);
+        if (SupportedDataUrlFormat.JPEG_Base64.match(url)
+                || SupportedDataUrlFormat.PNG_Base64.match(url)) {
+
+            decode(new Runnable() {
+                public void run() {
+                    try {
+                        byte[] blob = SupportedDataUrlFormat.JPEG_Base64
+                                .match(url) ? SupportedDataUrlFormat.JPEG_Base64
+                                .parse(url) : SupportedDataUrlFormat.PNG_Base64
+                                .parse(url);
+                        drawBlobFeature(blob, f, g);
+                    } catch (IOException e) {
+                        log.warn("Draw Base64 Feature failed " + e + "\n"
+                                + url);
+                    } finally {
+                        latch.countDown();
+                    }
                 }
-            }
-
-        } else if (SupportedDataUrlFormat.JPEG_Base64.match(url)) {
-
-            blob = SupportedDataUrlFormat.JPEG_Base64.parse(url);
-
-            try {
-                drawBlobFeature(blob, f, g, mapContent, mapViewport);
-                latch.countDown();
-            } catch (IOException e) {
-                log.warn("Draw Base64 JPEG Feature failed " + e + "\n" + url);
-            }
+            });
 
-        } else if (SupportedDataUrlFormat.PNG_Base64.match(url)) {
+        } else if (isCacheable) {
 
-            blob = SupportedDataUrlFormat.PNG_Base64.parse(url);
-            try {
-                drawBlobFeature(blob, f, g, mapContent, mapViewport);
-                latch.countDown();
-            } catch (IOException e) {
-                log.warn("Draw Base64 PNG Feature failed " + e + "\n" + url);
-            }
+            decode(new Runnable() {
+                public void run() {
+                    byte[] blob = JedisCache.getBlobCache().getFromCache(
+                            url.getBytes());
+                    try {
+                        if (blob == null) {
+                            throw new IOException("NOT CACHED");
+                        }
+                        drawBlobFeature(blob, f, g);
+                        latch.countDown();
+                    } catch (IOException io) {
+                        try {
+                            drawFeature(f, url, g, isCacheable);
+                        } catch (MalformedURLException e) {
+                            log.warn("Draw Feature failed " + e);
+                            latch.countDown();
+                        }
+                    }
+                }
+            });
 
         } else {
             try {
-                drawFeature(f, url, g, mapContent, mapViewport, isCacheable);
+                drawFeature(f, url, g, isCacheable);
             } catch (MalformedURLException e) {
                 log.warn("Draw Feature failed " + e);
-
+                latch.countDown();
             }
         }
 
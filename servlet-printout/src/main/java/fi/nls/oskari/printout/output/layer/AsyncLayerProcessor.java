@@ -1,5 +1,6 @@
 package fi.nls.oskari.printout.output.layer;
 
+import fi.nls.oskari.printout.config.ConfigValue;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpResponse;
@@ -20,21 +21,37 @@ import org.apache.http.nio.reactor.IOReactorException;
 import org.apache.http.params.CoreConnectionPNames;
 
 import java.net.ProxySelector;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * This class is used to process map tile requests.
  * 
  * Async http client is used to hopefully serve client with improved response
- * times.
+ * times. Tiles are decoded with a separate thread pool so the IO threads are
+ * only used for the transfer.
  * 
- * Note : performance has not been optimized or measured atm.
+ * Connections per host and decoding threads can be configured with
+ * layer.tiles.maxconnections.perhost and layer.tiles.decode.threads.
  * 
  */
 public class AsyncLayerProcessor {
     protected static Log log = LogFactory.getLog(AsyncLayerProcessor.class);
     HttpAsyncClient httpclient;
+    ExecutorService decodeExecutor;
 
     public AsyncLayerProcessor() throws IOReactorException {
+        this(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    public AsyncLayerProcessor(Properties props) throws IOReactorException {
+        this(ConfigValue.LAYER_TILES_MAX_CONNECTIONS_PER_HOST.getConfigProperty(props, 4),
+                ConfigValue.LAYER_TILES_DECODE_THREADS.getConfigProperty(props,
+                        Runtime.getRuntime().availableProcessors()));
+    }
+
+    public AsyncLayerProcessor(int maxConnectionsPerHost, int decodeThreads) throws IOReactorException {
 
         SchemeRegistry schemeRegistry = new SchemeRegistry();
         schemeRegistry.register(new Scheme("http", 80, PlainSocketFactory
@@ -50,7 +67,7 @@ public class AsyncLayerProcessor {
         PoolingClientAsyncConnectionManager cm = new PoolingClientAsyncConnectionManager(
                 ioreactor);
         cm.setMaxTotal(10000);
-        cm.setDefaultMaxPerRoute(4);
+        cm.setDefaultMaxPerRoute(maxConnectionsPerHost);
 
         DefaultHttpAsyncClient asyncHttpclient = new DefaultHttpAsyncClient(cm);
 
@@ -67,15 +84,25 @@ public class AsyncLayerProcessor {
                 .setIntParameter(CoreConnectionPNames.SOCKET_BUFFER_SIZE,
                         8 * 1024)
                 .setBooleanParameter(CoreConnectionPNames.TCP_NODELAY, true);
+
+        decodeExecutor = Executors.newFixedThreadPool(Math.max(1, decodeThreads));
     }
 
     public void execute(HttpUriRequest arg0, FutureCallback<HttpResponse> arg1) {
         httpclient.execute(arg0, arg1);
     }
 
+    /**
+     * Runs a tile decoding task in the decoding thread pool
+     */
+    public void decode(Runnable task) {
+        decodeExecutor.execute(task);
+    }
+
     public void shutdown() throws InterruptedException {
         httpclient.shutdown();
         httpclient = null;
+        decodeExecutor.shutdown();
     }
 
     public void start() {
@@ -41,7 +41,7 @@ public abstract class DirectTileLayer extends DirectLayer {
         this.transform = transform;
     }
 
-    private BufferedImage doScaleWithFilters(BufferedImage image, int width,
+    protected BufferedImage doScaleWithFilters(BufferedImage image, int width,
             int height) throws IOException {
 
         final ResampleOp resampleOp = new ResampleOp(width, height);
@@ -68,6 +68,14 @@ public abstract class DirectTileLayer extends DirectLayer {
 
     }
 
+    /**
+     * Marks the place of a tile that couldn't be drawn
+     */
+    protected void drawErrorTile(Graphics2D g2d, int x, int y) {
+        g2d.setColor(Color.BLACK);
+        g2d.drawRoundRect(x, y, 256, 256, 24, 24);
+    }
+
     public void drawImageFeature(Graphics2D g2d, MapContent mapContent,
             SimpleFeature f, BufferedImage imageBuf) {
 
@@ -113,17 +121,11 @@ public abstract class DirectTileLayer extends DirectLayer {
 
             }
         } catch (com.sun.media.jai.codecimpl.util.ImagingException iox) {
-            g2d.setColor(Color.BLACK);
-            g2d.drawRoundRect((int) dstPts[0], (int) dstPts[1], 256, 256, 24,
-                    24);
+            drawErrorTile(g2d, (int) dstPts[0], (int) dstPts[1]);
         } catch (MalformedURLException e1) {
-            g2d.setColor(Color.BLACK);
-            g2d.drawRoundRect((int) dstPts[0], (int) dstPts[1], 256, 256, 24,
-                    24);
+            drawErrorTile(g2d, (int) dstPts[0], (int) dstPts[1]);
         } catch (IOException e1) {
-            g2d.setColor(Color.BLACK);
-            g2d.drawRoundRect((int) dstPts[0], (int) dstPts[1], 256, 256, 24,
-                    24);
+            drawErrorTile(g2d, (int) dstPts[0], (int) dstPts[1]);
         }
     }
 
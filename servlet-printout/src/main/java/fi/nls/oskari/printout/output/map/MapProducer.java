@@ -771,6 +771,17 @@ public class MapProducer {
                     asyncProc);
             buildLayerTiles(mapLayers, layers, env, zoom);
 
+            /*
+             * start loading the tiles of all layers at once, each layer is
+             * drawn to its own buffer and composited in order when the map is
+             * painted
+             */
+            for (DirectTileLayer layer : mapLayers) {
+                if (layer instanceof AsyncDirectTileLayer) {
+                    ((AsyncDirectTileLayer) layer).prefetch(rect);
+                }
+            }
+
             image = buildMapImage(width, height, bounds, imageType, crop,
                     transform);
 
@@ -786,6 +797,10 @@ public class MapProducer {
 
     }
 
+    public Properties getProps() {
+        return props;
+    }
+
     public MapLinkWorkingSetProcessor getProcessor() {
         return processor;
     }
@@ -11,6 +11,12 @@ import org.apache.jempbox.xmp.XMPSchemaBasic;
 import org.apache.jempbox.xmp.XMPSchemaDublinCore;
 import org.apache.jempbox.xmp.XMPSchemaPDF;
 import org.apache.jempbox.xmp.pdfa.XMPSchemaPDFAId;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.RandomAccessFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -19,6 +25,8 @@ import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
 import org.apache.pdfbox.pdmodel.graphics.color.PDOutputIntent;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDPixelMap;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.TransformException;
 
@@ -30,6 +38,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.GregorianCalendar;
 import java.util.List;
 
@@ -307,6 +316,13 @@ public class PDFProducer {
 
 	final private PageCounter pageCounter;
 
+	/* document layer images are encoded to before pages are created */
+	private PDDocument targetDoc;
+	private final List<PDXObjectImage> ximages = new ArrayList<PDXObjectImage>();
+	/* stream data of the document is kept in this file instead of memory */
+	private File scratchFile;
+	private RandomAccessFile scratch;
+
 	public PDFProducer(Page page) throws IOException {
 		this.page = page;
 		this.opts = new Options();
@@ -323,6 +339,80 @@ public class PDFProducer {
 		this.pageCounter = new PageCounter();
 	}
 
+	/**
+	 * Opens the document for layer images.
+	 * 
+	 * @param scratchDir
+	 *            if not null, encoded images and other streams of the document
+	 *            are stored in a temporary file in this directory instead of
+	 *            memory
+	 */
+	public void openDocument(File scratchDir) throws IOException {
+		if (targetDoc != null) {
+			throw new IOException("Document is already open");
+		}
+		if (scratchDir != null) {
+			scratchFile = File.createTempFile("printout", ".pdf.tmp",
+					scratchDir);
+			scratch = new RandomAccessFile(scratchFile, "rw");
+		}
+		targetDoc = createDoc();
+	}
+
+	/**
+	 * Encodes the image of a map layer to the document. The image is not
+	 * referenced after this so it can be released by the caller.
+	 */
+	public void addLayerImage(BufferedImage image) throws IOException {
+		if (targetDoc == null) {
+			openDocument(null);
+		}
+		ximages.add(new PDPixelMap(targetDoc, image));
+	}
+
+	/**
+	 * Creates the pages with the layer images added so far and writes the
+	 * document. The document is closed afterwards.
+	 */
+	public void writeLayeredPDF(OutputStream outputStream, Envelope env,
+			Point centre) throws Exception {
+		if (targetDoc == null) {
+			openDocument(null);
+		}
+		try {
+			createLayeredPDFPages(targetDoc, ximages, env, centre);
+			createMetadata(targetDoc);
+			createIcc(targetDoc);
+			shaveTemplatePages(targetDoc);
+
+			targetDoc.save(outputStream);
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Closes the document and removes the scratch file
+	 */
+	public void close() throws IOException {
+		ximages.clear();
+		try {
+			if (targetDoc != null) {
+				targetDoc.close();
+			}
+		} finally {
+			targetDoc = null;
+			if (scratch != null) {
+				scratch.close();
+				scratch = null;
+			}
+			if (scratchFile != null) {
+				scratchFile.delete();
+				scratchFile = null;
+			}
+		}
+	}
+
 	protected PDDocument createDoc() throws IOException {
 		if (opts.getPageTemplate() != null) {
 
@@ -335,7 +425,8 @@ public class PDFProducer {
 
 			URL url = getClass().getResource(opts.getPageTemplate());
 
-			PDDocument doc = PDDocument.load(url);
+			PDDocument doc = scratch != null ? PDDocument.load(url, scratch)
+					: PDDocument.load(url);
 
 			if (doc.isEncrypted()) {
 				throw new IOException(
@@ -344,27 +435,48 @@ public class PDFProducer {
 
 			return doc;
 
+		} else if (scratch != null) {
+			return createScratchDoc();
 		} else {
 			return new PDDocument();
 		}
 	}
 
+	/**
+	 * Creates an empty document with the trailer, catalog and page tree like
+	 * new PDDocument() does, but keeps the streams in the scratch file.
+	 */
+	private PDDocument createScratchDoc() throws IOException {
+		COSDocument document = new COSDocument(scratch);
+		COSDictionary trailer = new COSDictionary();
+		document.setTrailer(trailer);
+
+		COSDictionary catalog = new COSDictionary();
+		trailer.setItem(COSName.ROOT, catalog);
+		catalog.setItem(COSName.TYPE, COSName.CATALOG);
+		catalog.setItem(COSName.VERSION, COSName.getPDFName("1.4"));
+
+		COSDictionary pages = new COSDictionary();
+		catalog.setItem(COSName.PAGES, pages);
+		pages.setItem(COSName.TYPE, COSName.PAGES);
+		pages.setItem(COSName.KIDS, new COSArray());
+		pages.setItem(COSName.COUNT, COSInteger.ZERO);
+
+		return new PDDocument(document);
+	}
+
 	public void createLayeredPDFFromImages(List<BufferedImage> images,
 			OutputStream outputStream, Envelope env, Point centre)
 			throws Exception {
 
-		PDDocument targetDoc = createDoc();
-
 		try {
-			createLayeredPDFPages(targetDoc, images, env, centre);
-			createMetadata(targetDoc);
-			createIcc(targetDoc);
-			shaveTemplatePages(targetDoc);
-
-			targetDoc.save(outputStream);
+			for (BufferedImage image : images) {
+				addLayerImage(image);
+			}
+			writeLayeredPDF(outputStream, env, centre);
 		} finally {
-			targetDoc.close();
-
+			/* writeLayeredPDF closes the document, this covers the failures */
+			close();
 		}
 	}
 
@@ -398,9 +510,14 @@ public class PDFProducer {
 	 */
 	public void createLayeredPDFFromImages(List<BufferedImage> images,
 			String outputFile, Envelope env, Point centre) throws Exception {
-		PDDocument targetDoc = createDoc();
+		if (targetDoc == null) {
+			openDocument(null);
+		}
 		try {
-			createLayeredPDFPages(targetDoc, images, env, centre);
+			for (BufferedImage image : images) {
+				addLayerImage(image);
+			}
+			createLayeredPDFPages(targetDoc, ximages, env, centre);
 			createMetadata(targetDoc);
 			createIcc(targetDoc);
 
@@ -410,14 +527,14 @@ public class PDFProducer {
 			targetDoc.save(targetFile.getAbsolutePath());
 
 		} finally {
-			targetDoc.close();
+			close();
 
 		}
 
 	}
 
 	void createLayeredPDFPages(PDDocument targetDoc,
-			List<BufferedImage> images, Envelope env, Point centre)
+			List<PDXObjectImage> images, Envelope env, Point centre)
 			throws IOException, TransformException {
 
 		InputStream fontStream = getClass().getResourceAsStream(
@@ -455,7 +572,7 @@ public class PDFProducer {
 	}
 
 	void createLayeredPDFPagesWithTemplate(PDDocument targetDoc,
-			List<BufferedImage> images, int width, int height, Envelope env,
+			List<PDXObjectImage> images, int width, int height, Envelope env,
 			Point centre, String templateResource) throws IOException,
 			TransformException {
 
@@ -45,43 +45,22 @@ import java.util.List;
 public class PDFLayeredImagesPage extends PDFAbstractPage implements PDFPage {
 
     private CoordinateReferenceSystem crs;
-    private List<BufferedImage> images;
+    private List<PDXObjectImage> ximages;
     private Envelope env;
     private Point centre;
 
     public PDFLayeredImagesPage(Page page, Options opts, PDFont font,
             CoordinateReferenceSystem coordinateReferenceSystem,
-            List<BufferedImage> images, Envelope env, Point centre)
+            List<PDXObjectImage> ximages, Envelope env, Point centre)
             throws IOException {
         super(page, opts, font);
         this.crs = coordinateReferenceSystem;
-        this.images = images;
+        this.ximages = ximages;
 
         this.env = env;
         this.centre = centre;
     }
 
-    /**
-     * PDXObjectImage must be created before optional content groups are created
-     * 
-     * @param targetDoc
-     * @param ximages
-     * @param images
-     * @throws IOException
-     */
-    protected void createMapLayersImages(PDDocument targetDoc,
-            List<PDXObjectImage> ximages, List<BufferedImage> images)
-            throws IOException {
-
-        for (BufferedImage image : images) {
-
-            PDXObjectImage ximage = new PDPixelMap(targetDoc, image);
-
-            ximages.add(ximage);
-        }
-
-    }
-
     /**
      * Let's create overlayers for each map layer
      * 
@@ -155,11 +134,10 @@ public class PDFLayeredImagesPage extends PDFAbstractPage implements PDFPage {
         PDPropertyList props = new PDPropertyList();
         resources.setProperties(props);
 
-        List<PDXObjectImage> ximages = new ArrayList<PDXObjectImage>(
-                images.size());
-
-        /* these MUST be created before optional overlay content */
-        createMapLayersImages(targetDoc, ximages, images);
+        /*
+         * layer images have been encoded with PDFProducer.addLayerImage as
+         * they MUST be created before optional overlay content
+         */
 
         PDPageContentStream contentStream = page.createContentStreamTo(
                 targetDoc, targetPage, opts.getPageTemplate() != null);
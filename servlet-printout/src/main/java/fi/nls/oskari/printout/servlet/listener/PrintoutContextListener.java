@@ -0,0 +1,21 @@
+package fi.nls.oskari.printout.servlet.listener;
+
+import fi.nls.oskari.printout.jobs.PrintJobQueue;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Stops the print job workers when the webapp is stopped.
+ */
+public class PrintoutContextListener implements ServletContextListener {
+
+	public void contextInitialized(ServletContextEvent sce) {
+
+	}
+
+	public void contextDestroyed(ServletContextEvent sce) {
+		PrintJobQueue.shutdownInstance();
+	}
+
+}
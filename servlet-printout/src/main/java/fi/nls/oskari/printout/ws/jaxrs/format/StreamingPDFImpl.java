@@ -2,6 +2,7 @@ package fi.nls.oskari.printout.ws.jaxrs.format;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Point;
+import fi.nls.oskari.printout.config.ConfigValue;
 import fi.nls.oskari.printout.imaging.ScaleOps;
 import fi.nls.oskari.printout.input.layers.LayerDefinition;
 import fi.nls.oskari.printout.input.maplink.MapLink;
@@ -22,16 +23,23 @@ import javax.ws.rs.core.StreamingOutput;
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLStreamException;
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Outputs (and creates) PDF document as a result from JAX-RS request.
  * 
+ * Each layer image is encoded to the PDF document as soon as it has been
+ * rendered. If the layer images of concurrent prints would exceed
+ * print.pdf.memory.max.mb the document is kept in a scratch file instead of
+ * memory.
  */
 public class StreamingPDFImpl implements StreamingOutput {
 	private static Log log = LogFactory.getLog(StreamingPDFImpl.class);
@@ -40,7 +48,11 @@ public class StreamingPDFImpl implements StreamingOutput {
 	final PDFProducer.Options pageOptions;
 	final ScaleOps scaleOps = new ScaleOps();
 
-	final ArrayList<BufferedImage> images = new ArrayList<BufferedImage>();
+	/* bytes of layer images kept in memory by all prints */
+	private static final AtomicLong inMemoryBytes = new AtomicLong();
+
+	final PDFProducer pdf;
+	private long reservedBytes = 0L;
 
 	final PDFProducer.Page page;
 	final private Envelope env;
@@ -73,6 +85,62 @@ public class StreamingPDFImpl implements StreamingOutput {
 		env = producer.getProcessor().getEnvFromPointZoomAndExtent(centre,
 				mapLink.getZoom(), width, height);
 
+		pdf = new PDFProducer(page, pageOptions, producer.getCrs());
+	}
+
+	/**
+	 * Opens the PDF document in memory if the layer images fit in the memory
+	 * budget, otherwise in a scratch file
+	 */
+	protected void openDocument() throws IOException {
+		/* layer images are scaled to twice the page size, 4 bytes per pixel */
+		long estimate = (long) mapLink.getMapLinkLayers().size() * width * 2
+				* height * 2 * 4;
+
+		File scratchDir = reserveMemory(producer.getProps(), estimate);
+		if (scratchDir == null) {
+			reservedBytes = estimate;
+		}
+		pdf.openDocument(scratchDir);
+	}
+
+	/**
+	 * Reserves memory for the layer images of a print from the budget shared
+	 * by all prints
+	 * 
+	 * @return null if the memory was reserved, otherwise the directory for the
+	 *         scratch file of the document
+	 */
+	static File reserveMemory(Properties props, long estimate) {
+		long budget = ConfigValue.PRINT_PDF_MEMORY_MAX_MB.getConfigProperty(
+				props, 256) * 1024L * 1024L;
+
+		if (inMemoryBytes.addAndGet(estimate) <= budget) {
+			return null;
+		}
+		inMemoryBytes.addAndGet(-estimate);
+
+		String dir = ConfigValue.PRINT_PDF_SCRATCH_DIR.getConfigProperty(props,
+				System.getProperty("java.io.tmpdir"));
+		log.info("PDF memory budget exceeded, using scratch file in " + dir);
+		return new File(dir);
+	}
+
+	protected void addImage(BufferedImage image) throws IOException {
+		try {
+			pdf.addLayerImage(image);
+		} finally {
+			image.flush();
+		}
+	}
+
+	/**
+	 * Closes the document and releases the memory reserved for it
+	 */
+	protected void release() throws IOException {
+		inMemoryBytes.addAndGet(-reservedBytes);
+		reservedBytes = 0L;
+		pdf.close();
 	}
 
 	/**
@@ -93,8 +161,10 @@ public class StreamingPDFImpl implements StreamingOutput {
 			FactoryConfigurationError, RequestFilterException,
 			TransformException, InterruptedException, URISyntaxException {
 
-		AsyncLayerProcessor asyncProc = new AsyncLayerProcessor();
+		openDocument();
+		AsyncLayerProcessor asyncProc = new AsyncLayerProcessor(producer.getProps());
 		asyncProc.start();
+		boolean ok = false;
 		try {
 
 			for (LayerDefinition ldef : mapLink.getMapLinkLayers()) {
@@ -118,14 +188,17 @@ public class StreamingPDFImpl implements StreamingOutput {
 					BufferedImage scaledImage = scaleOps.doScaleWithFilters(
 							image, width * 2, height * 2);
 
-					images.add(scaledImage);
-
 					image.flush();
+					addImage(scaledImage);
 				}
 
 			}
+			ok = true;
 		} finally {
 			asyncProc.shutdown();
+			if (!ok) {
+				release();
+			}
 		}
 
 	}
@@ -236,8 +309,10 @@ public class StreamingPDFImpl implements StreamingOutput {
 		log.info("BBOXReq " + envReq);
 		log.info("-----------");
 
-		AsyncLayerProcessor asyncProc = new AsyncLayerProcessor();
+		openDocument();
+		AsyncLayerProcessor asyncProc = new AsyncLayerProcessor(producer.getProps());
 		asyncProc.start();
+		boolean ok = false;
 		try {
 
 			for (LayerDefinition ldef : mapLink.getMapLinkLayers()) {
@@ -260,14 +335,17 @@ public class StreamingPDFImpl implements StreamingOutput {
 					BufferedImage scaledImage = scaleOps.doScaleWithFilters(
 							image, width * 2, height * 2);
 
-					images.add(scaledImage);
-
 					image.flush();
+					addImage(scaledImage);
 				}
 
 			}
+			ok = true;
 		} finally {
 			asyncProc.shutdown();
+			if (!ok) {
+				release();
+			}
 		}
 
 	}
@@ -279,27 +357,24 @@ public class StreamingPDFImpl implements StreamingOutput {
 	public void write(OutputStream outputStream) throws IOException,
 			WebApplicationException {
 
-		PDFProducer pdf = new PDFProducer(page, pageOptions, producer.getCrs());
-
 		try {
 			/*
 			 * int width = mapLink.getWidth(); int height = mapLink.getHeight();
 			 */
 
-			pdf.createLayeredPDFFromImages(images, outputStream, env, centre);
+			pdf.writeLayeredPDF(outputStream, env, centre);
 
 		} catch (COSVisitorException e) {
 
 			throw new IOException(e);
 		} catch (TransformException e) {
 			throw new IOException(e);
+		} catch (IOException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new IOException(e);
-		}
-
-		for (BufferedImage image : images) {
-			image.flush();
-
+		} finally {
+			release();
 		}
 	}
 
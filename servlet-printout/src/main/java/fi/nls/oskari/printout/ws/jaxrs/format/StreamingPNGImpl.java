@@ -88,7 +88,7 @@ public class StreamingPNGImpl implements StreamingOutput {
 		Envelope env = producer.getProcessor().getEnvFromPointZoomAndExtent(
 				centre, zoom, width, height);
 
-		AsyncLayerProcessor asyncProc = new AsyncLayerProcessor();
+		AsyncLayerProcessor asyncProc = new AsyncLayerProcessor(producer.getProps());
 		asyncProc.start();
 		try {
 
@@ -1,24 +1,33 @@
 package fi.nls.oskari.printout.ws.jaxrs.resource;
 
 import fi.nls.oskari.printout.config.ConfigValue;
+import fi.nls.oskari.printout.jobs.PrintJob;
+import fi.nls.oskari.printout.jobs.PrintJobQueue;
+import fi.nls.oskari.printout.jobs.PrintRenderer;
 import fi.nls.oskari.printout.ws.jaxrs.format.StreamingJSONImpl;
-import fi.nls.oskari.printout.ws.jaxrs.format.StreamingPDFImpl;
 import fi.nls.oskari.printout.ws.jaxrs.map.SharedMapProducerResource;
 import fi.nls.oskari.printout.ws.jaxrs.map.WebServiceMapProducerResource;
 import org.geowebcache.GeoWebCacheException;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.NoSuchAuthorityCodeException;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 
@@ -27,6 +36,10 @@ import java.util.Properties;
  * 
  * API paths are combined based on @Path annotations from below.
  * 
+ * Printouts are rendered by PrintJobQueue. With async=true the render methods
+ * return the job status as JSON and the output can be fetched from
+ * service/jobs/{id}/result when the job is done.
+ * 
  * see. https://jersey.java.net/documentation/latest/user-guide.html
  * https://jersey.java.net/documentation/1.7/user-guide.html
  * 
@@ -51,6 +64,14 @@ public class MapResource {
     @HeaderParam("Cookie")
     private String Cookie;
 
+    @Context
+    private HttpServletRequest request;
+
+    private static final String PARAM_ASYNC = "async";
+    private static final String CONTENT_TYPE_PDF = "application/pdf";
+    private static final String CONTENT_TYPE_PNG = "image/png";
+    private static final String CONTENT_TYPE_JSON = "application/json";
+
     protected Map<String, String> getParameterMap(
             final MultivaluedMap<String, String> queryParams) {
         Map<String, String> values = new HashMap<String, String>();
@@ -106,28 +127,22 @@ public class MapResource {
      */
     @GET
     @Path("service/thumbnail/maplink.pdf")
-    @Produces("application/pdf")
-    public StreamingOutput getSnapshotPDF(@Context UriInfo ui)
-            throws IOException {
-
-        StreamingPDFImpl result = null;
-        try {
-            MultivaluedMap<String, String> queryParams = ui
-                    .getQueryParameters();
-            Map<String, String> values = getParameterMap(queryParams);
-
-            final WebServiceMapProducerResource getmap = SharedMapProducerResource
-                    .acquire();
-
-            result = getmap
-                    .getMapPDF(values, getXClientInfo(getmap.getProps()));
-        } catch (Exception e) {
-            throw new IOException(e);
-        } finally {
-
-        }
-
-        return result;
+    @Produces({ CONTENT_TYPE_PDF, CONTENT_TYPE_JSON })
+    public Response getSnapshotPDF(@Context UriInfo ui,
+            @QueryParam(PARAM_ASYNC) boolean async) throws IOException {
+
+        final Map<String, String> values = getParameterMap(ui
+                .getQueryParameters());
+        final WebServiceMapProducerResource getmap = acquire();
+        final Map<String, String> xClientInfo = getXClientInfo(getmap
+                .getProps());
+
+        return render(getmap, CONTENT_TYPE_PDF, normalize(values), async,
+                new PrintRenderer() {
+                    public StreamingOutput render() throws Exception {
+                        return getmap.getMapPDF(values, xClientInfo);
+                    }
+                });
 
     }
 
@@ -142,23 +157,22 @@ public class MapResource {
     @POST
     @Path("service/thumbnail/maplinkgeojson.pdf")
     @Consumes("application/json")
-    @Produces("application/pdf")
-    public StreamingOutput getSnapshotPDFByActionRouteGeoJson(InputStream inp)
-            throws IOException {
-
-        StreamingOutput result = null;
-        try {
-            final WebServiceMapProducerResource getmap = SharedMapProducerResource
-                    .acquire();
-            result = getmap.getGeoJsonMapPDF(inp,
-                    getXClientInfo(getmap.getProps()));
-        } catch (Exception e) {
-            throw new IOException(e);
-        } finally {
-            inp.close();
-        }
-
-        return result;
+    @Produces({ CONTENT_TYPE_PDF, CONTENT_TYPE_JSON })
+    public Response getSnapshotPDFByActionRouteGeoJson(InputStream inp,
+            @QueryParam(PARAM_ASYNC) boolean async) throws IOException {
+
+        final byte[] body = readBody(inp);
+        final WebServiceMapProducerResource getmap = acquire();
+        final Map<String, String> xClientInfo = getXClientInfo(getmap
+                .getProps());
+
+        return render(getmap, CONTENT_TYPE_PDF, "geojson\n" + normalize(body),
+                async, new PrintRenderer() {
+                    public StreamingOutput render() throws Exception {
+                        return getmap.getGeoJsonMapPDF(
+                                new ByteArrayInputStream(body), xClientInfo);
+                    }
+                });
 
     }
 
@@ -174,22 +188,22 @@ public class MapResource {
     @POST
     @Path("service/thumbnail/maplinkjson.pdf")
     @Consumes("application/json")
-    @Produces("application/pdf")
-    public StreamingOutput getSnapshotPDFByActionRouteJson(InputStream inp)
-            throws IOException {
-
-        StreamingOutput result = null;
-        try {
-            final WebServiceMapProducerResource getmap = SharedMapProducerResource
-                    .acquire();
-            result = getmap.getMapPDF(inp, getXClientInfo(getmap.getProps()));
-        } catch (Exception e) {
-            throw new IOException(e);
-        } finally {
-            inp.close();
-        }
-
-        return result;
+    @Produces({ CONTENT_TYPE_PDF, CONTENT_TYPE_JSON })
+    public Response getSnapshotPDFByActionRouteJson(InputStream inp,
+            @QueryParam(PARAM_ASYNC) boolean async) throws IOException {
+
+        final byte[] body = readBody(inp);
+        final WebServiceMapProducerResource getmap = acquire();
+        final Map<String, String> xClientInfo = getXClientInfo(getmap
+                .getProps());
+
+        return render(getmap, CONTENT_TYPE_PDF, "json\n" + normalize(body),
+                async, new PrintRenderer() {
+                    public StreamingOutput render() throws Exception {
+                        return getmap.getMapPDF(new ByteArrayInputStream(body),
+                                xClientInfo);
+                    }
+                });
 
     }
 
@@ -204,33 +218,22 @@ public class MapResource {
      */
     @GET
     @Path("service/thumbnail/maplink.png")
-    @Produces("image/png")
-    public StreamingOutput getSnapshotPNG(@Context UriInfo ui)
-            throws IOException {
-
-        StreamingOutput result = null;
-        try {
-            final MultivaluedMap<String, String> queryParams = ui
-                    .getQueryParameters();
-            final Map<String, String> values = new HashMap<String, String>();
-
-            for (String mapLinkArg : MAPLINKARGS) {
-                String upper = new String(mapLinkArg).toUpperCase();
-                if (queryParams.get(mapLinkArg) == null) {
-                    continue;
-                }
-                values.put(upper, queryParams.get(mapLinkArg).get(0));
-            }
-
-            final WebServiceMapProducerResource getmap = SharedMapProducerResource
-                    .acquire();
-
-            result = getmap
-                    .getMapPNG(values, getXClientInfo(getmap.getProps()));
-        } catch (Exception e) {
-            throw new IOException(e);
-        }
-        return result;
+    @Produces({ CONTENT_TYPE_PNG, CONTENT_TYPE_JSON })
+    public Response getSnapshotPNG(@Context UriInfo ui,
+            @QueryParam(PARAM_ASYNC) boolean async) throws IOException {
+
+        final Map<String, String> values = getParameterMap(ui
+                .getQueryParameters());
+        final WebServiceMapProducerResource getmap = acquire();
+        final Map<String, String> xClientInfo = getXClientInfo(getmap
+                .getProps());
+
+        return render(getmap, CONTENT_TYPE_PNG, normalize(values), async,
+                new PrintRenderer() {
+                    public StreamingOutput render() throws Exception {
+                        return getmap.getMapPNG(values, xClientInfo);
+                    }
+                });
 
     }
 
@@ -245,23 +248,22 @@ public class MapResource {
     @POST
     @Path("service/thumbnail/maplinkgeojson.png")
     @Consumes("application/json")
-    @Produces("image/png")
-    public StreamingOutput getSnapshotPNGByActionRouteGeoJson(InputStream inp)
-            throws IOException {
-
-        StreamingOutput result = null;
-        try {
-            final WebServiceMapProducerResource getmap = SharedMapProducerResource
-                    .acquire();
-            result = getmap.getGeoJsonMapPNG(inp,
-                    getXClientInfo(getmap.getProps()));
-        } catch (Exception e) {
-            throw new IOException(e);
-        } finally {
-            inp.close();
-        }
-
-        return result;
+    @Produces({ CONTENT_TYPE_PNG, CONTENT_TYPE_JSON })
+    public Response getSnapshotPNGByActionRouteGeoJson(InputStream inp,
+            @QueryParam(PARAM_ASYNC) boolean async) throws IOException {
+
+        final byte[] body = readBody(inp);
+        final WebServiceMapProducerResource getmap = acquire();
+        final Map<String, String> xClientInfo = getXClientInfo(getmap
+                .getProps());
+
+        return render(getmap, CONTENT_TYPE_PNG, "geojson\n" + normalize(body),
+                async, new PrintRenderer() {
+                    public StreamingOutput render() throws Exception {
+                        return getmap.getGeoJsonMapPNG(
+                                new ByteArrayInputStream(body), xClientInfo);
+                    }
+                });
     }
 
     /**
@@ -276,24 +278,129 @@ public class MapResource {
     @POST
     @Path("service/thumbnail/maplinkjson.png")
     @Consumes("application/json")
-    @Produces("image/png")
-    public StreamingOutput getSnapshotPNGByActionRouteJson(InputStream inp)
+    @Produces({ CONTENT_TYPE_PNG, CONTENT_TYPE_JSON })
+    public Response getSnapshotPNGByActionRouteJson(InputStream inp,
+            @QueryParam(PARAM_ASYNC) boolean async) throws IOException {
+
+        final byte[] body = readBody(inp);
+        final WebServiceMapProducerResource getmap = acquire();
+        final Map<String, String> xClientInfo = getXClientInfo(getmap
+                .getProps());
+
+        return render(getmap, CONTENT_TYPE_PNG, "json\n" + normalize(body),
+                async, new PrintRenderer() {
+                    public StreamingOutput render() throws Exception {
+                        return getmap.getMapPNG(new ByteArrayInputStream(body),
+                                xClientInfo);
+                    }
+                });
+    };
+
+    /**
+     * Status of a print job started with async=true. Status is one of queued,
+     * running, done or error.
+     */
+    @GET
+    @Path("service/jobs/{id}")
+    @Produces(CONTENT_TYPE_JSON)
+    public Response getJobStatus(@PathParam("id") String id)
             throws IOException {
+        PrintJob job = PrintJobQueue.getInstance(acquire().getProps()).getJob(
+                id, null);
+        if (job == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok(job.getStatusJSON(), CONTENT_TYPE_JSON).build();
+    }
 
-        StreamingOutput result = null;
+    /**
+     * Output of a finished print job
+     */
+    @GET
+    @Path("service/jobs/{id}/result")
+    @Produces({ CONTENT_TYPE_PDF, CONTENT_TYPE_PNG })
+    public Response getJobResult(@PathParam("id") String id)
+            throws IOException {
+        PrintJob job = PrintJobQueue.getInstance(acquire().getProps()).getJob(
+                id, null);
+        if (job == null || job.getStatus() != PrintJob.Status.done) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
         try {
-            final WebServiceMapProducerResource getmap = SharedMapProducerResource
-                    .acquire();
+            return Response.ok(job.getResult(0), job.getContentType())
+                    .build();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Queues the printout and waits for the result or returns job status if
+     * async.
+     */
+    protected Response render(final WebServiceMapProducerResource getmap,
+            final String contentType, final String request,
+            final boolean async, final PrintRenderer renderer)
+            throws IOException {
+        final PrintJobQueue queue = PrintJobQueue.getInstance(getmap
+                .getProps());
+        final PrintJob job = queue.submit(
+                queue.getJobId(contentType, request, Cookie), getClientId(),
+                contentType, renderer);
+        if (async) {
+            return Response.ok(job.getStatusJSON(), CONTENT_TYPE_JSON).build();
+        }
+        try {
+            return Response.ok(job.getResult(queue.getTimeoutSeconds()),
+                    contentType).build();
+        } catch (TimeoutException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity("Print job timed out").build();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
 
-            result = getmap.getMapPNG(inp, getXClientInfo(getmap.getProps()));
+    protected WebServiceMapProducerResource acquire() throws IOException {
+        try {
+            return SharedMapProducerResource.acquire();
+        } catch (IOException e) {
+            throw e;
         } catch (Exception e) {
             throw new IOException(e);
+        }
+    }
+
+    protected String getClientId() {
+        String client = xForwardedFor != null ? xForwardedFor : forwardedFor;
+        if (client != null) {
+            // first address is the original client
+            return client.split(",")[0].trim();
+        }
+        return request != null ? request.getRemoteAddr() : "";
+    }
+
+    protected static String normalize(Map<String, String> values) {
+        return new TreeMap<String, String>(values).toString();
+    }
+
+    protected static String normalize(byte[] body) {
+        return new String(body, Charset.forName("UTF-8")).trim();
+    }
+
+    protected static byte[] readBody(InputStream inp) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = inp.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
         } finally {
             inp.close();
         }
-
-        return result;
-    };
+    }
     
     protected Map<String, String> getXClientInfo(final Properties props) {
 
@@ -0,0 +1,38 @@
+package fi.nls.oskari.printout.breeding.breeder;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileBreedingCheckpointTest {
+
+	@Test
+	public void testResume() throws Exception {
+		File file = File.createTempFile("breeding", ".properties");
+		file.delete();
+		try {
+			FileBreedingCheckpoint checkpoint = new FileBreedingCheckpoint(
+					file);
+			assertEquals(-1L, checkpoint.getNextRow("layer/grid/a/5"));
+			assertFalse(checkpoint.isFinished("layer/grid/a/5"));
+
+			checkpoint.saveRow("layer/grid/a/5", 12, 340);
+			checkpoint.saveFinished("layer/grid/b/5", 1000);
+
+			// progress is read back after a restart
+			FileBreedingCheckpoint resumed = new FileBreedingCheckpoint(file);
+			assertEquals(12L, resumed.getNextRow("layer/grid/a/5"));
+			assertEquals(340L, resumed.getTilesLoaded("layer/grid/a/5"));
+			assertFalse(resumed.isFinished("layer/grid/a/5"));
+			assertTrue(resumed.isFinished("layer/grid/b/5"));
+			assertEquals(-1L, resumed.getNextRow("layer/grid/b/5"));
+			assertEquals(1000L, resumed.getTilesLoaded("layer/grid/b/5"));
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package fi.nls.oskari.printout.jobs;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PrintJobQueueTest {
+
+    private Properties props;
+
+    @Before
+    public void setUp() {
+        props = new Properties();
+        props.setProperty("redis.blobcache", "false");
+        props.setProperty("print.jobs.workers", "2");
+        props.setProperty("print.jobs.client.max", "1");
+    }
+
+    private PrintRenderer createRenderer(final CountDownLatch release,
+            final AtomicInteger renders) {
+        return new PrintRenderer() {
+            public StreamingOutput render() throws Exception {
+                renders.incrementAndGet();
+                release.await(5, TimeUnit.SECONDS);
+                return new StreamingOutput() {
+                    public void write(OutputStream out) throws IOException {
+                        out.write(new byte[] { 1, 2, 3 });
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    public void testJobId() {
+        PrintJobQueue queue = new PrintJobQueue(props);
+        String id = queue.getJobId("image/png", "{a=1, b=2}", "JSESSIONID=1");
+        assertEquals(id,
+                queue.getJobId("image/png", "{a=1, b=2}", "JSESSIONID=1"));
+        assertFalse(id.equals(queue.getJobId("application/pdf", "{a=1, b=2}",
+                "JSESSIONID=1")));
+        assertFalse(id.equals(queue.getJobId("image/png", "{a=1, b=2}",
+                "JSESSIONID=2")));
+
+        props.setProperty("print.cache.shared", "true");
+        PrintJobQueue shared = new PrintJobQueue(props);
+        assertEquals(
+                shared.getJobId("image/png", "{a=1, b=2}", "JSESSIONID=1"),
+                shared.getJobId("image/png", "{a=1, b=2}", "JSESSIONID=2"));
+    }
+
+    @Test
+    public void testIdenticalRequestsShareJob() throws Exception {
+        PrintJobQueue queue = new PrintJobQueue(props);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger renders = new AtomicInteger();
+
+        PrintJob job = queue.submit("job1", "client1", "image/png",
+                createRenderer(release, renders));
+        // same job is returned without counting against the client limit
+        assertSame(job, queue.submit("job1", "client1", "image/png",
+                createRenderer(release, renders)));
+        release.countDown();
+
+        assertArrayEquals(new byte[] { 1, 2, 3 }, job.getResult(5));
+        assertEquals(1, renders.get());
+        assertSame(job, queue.getJob("job1", "image/png"));
+    }
+
+    @Test
+    public void testClientLimit() throws Exception {
+        PrintJobQueue queue = new PrintJobQueue(props);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger renders = new AtomicInteger();
+
+        PrintJob job = queue.submit("job1", "client1", "image/png",
+                createRenderer(release, renders));
+        try {
+            queue.submit("job2", "client1", "image/png",
+                    createRenderer(release, renders));
+            fail("Client should have only one job at a time");
+        } catch (WebApplicationException expected) {
+            assertEquals(429, expected.getResponse().getStatus());
+        }
+        // another client is not affected
+        PrintJob other = queue.submit("job3", "client2", "image/png",
+                createRenderer(release, renders));
+
+        release.countDown();
+        job.getResult(5);
+        other.getResult(5);
+
+        // the limit is released when the job has finished
+        boolean submitted = false;
+        for (int i = 0; i < 50 && !submitted; i++) {
+            try {
+                queue.submit("job4", "client1", "image/png",
+                        createRenderer(release, renders));
+                submitted = true;
+            } catch (WebApplicationException e) {
+                Thread.sleep(100);
+            }
+        }
+        assertTrue(submitted);
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        PrintJobQueue queue = new PrintJobQueue(props);
+        queue.shutdown();
+        // the rejected job isn't counted against the client limit so both
+        // attempts are rejected because of the shutdown
+        for (String id : new String[] { "job1", "job2" }) {
+            try {
+                queue.submit(id, "client1", "image/png", createRenderer(
+                        new CountDownLatch(0), new AtomicInteger()));
+                fail("Jobs shouldn't be accepted after shutdown");
+            } catch (WebApplicationException expected) {
+                assertEquals(503, expected.getResponse().getStatus());
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package fi.nls.oskari.printout.ws.jaxrs.format;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import fi.nls.oskari.printout.printing.PDFProducer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class StreamingPDFImplTest {
+
+	@Test
+	public void testScratchDocument() throws Exception {
+		File dir = File.createTempFile("printout", "");
+		dir.delete();
+		dir.mkdir();
+		try {
+			Properties props = new Properties();
+			props.setProperty("print.pdf.memory.max.mb", "0");
+			props.setProperty("print.pdf.scratch.dir", dir.getAbsolutePath());
+
+			File scratchDir = StreamingPDFImpl.reserveMemory(props, 1024);
+			assertNotNull("Budget is exceeded, scratch file should be used",
+					scratchDir);
+			assertEquals(dir.getAbsolutePath(), scratchDir.getAbsolutePath());
+
+			/* no PAGETEMPLATE */
+			PDFProducer pdf = new PDFProducer(PDFProducer.Page.A4);
+			pdf.openDocument(scratchDir);
+			assertEquals(1, dir.list().length);
+
+			pdf.addLayerImage(new BufferedImage(200, 100,
+					BufferedImage.TYPE_INT_RGB));
+			Envelope env = new Envelope(380000, 390000, 6670000, 6675000);
+			Point centre = new GeometryFactory().createPoint(new Coordinate(
+					385000, 6672500));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			pdf.writeLayeredPDF(out, env, centre);
+
+			assertEquals("Scratch file should be removed", 0,
+					dir.list().length);
+			PDDocument doc = PDDocument.load(new ByteArrayInputStream(out
+					.toByteArray()));
+			try {
+				assertEquals(1, doc.getNumberOfPages());
+			} finally {
+				doc.close();
+			}
+		} finally {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+}
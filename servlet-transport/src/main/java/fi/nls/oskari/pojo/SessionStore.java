@@ -1,11 +1,14 @@
 package fi.nls.oskari.pojo;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.transport.MessageParseHelper;
 import fi.nls.oskari.transport.TransportService;
+import fi.nls.oskari.util.ConversionHelper;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.JsonParser;
@@ -15,7 +18,10 @@ import org.codehaus.jackson.map.JsonMappingException;
 import org.codehaus.jackson.map.ObjectMapper;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,7 +39,13 @@ public class SessionStore {
      */
 	private static final ObjectMapper mapper = new ObjectMapper();
 
-	public static final String KEY = "Session_";
+	// redis hash of fields encoded with SessionStoreCodec
+	public static final String KEY = "SessionHash_";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[] VERSION_FIELD = toBytes(SessionStoreCodec.FIELD_VERSION);
+
+	// sessions of this node's clients, validated against the version field in redis before use
+	private static final Cache<SavedSession> localCache = CacheManager.getCache(SessionStore.class.getCanonicalName());
 
 	private String client; // bayeux session (used in redis key)
 	private String session; // liferay session
@@ -53,6 +65,18 @@ public class SessionStore {
     private PropertyFilter propertyFilter; // passed parameter - not saved
 	private boolean keepPrevious = false; // passed parameter - not saved
     private boolean geomRequest = false; // passed parameter - geom property returned or not - not saved
+    private Map<String, byte[]> savedFields; // fields as loaded from/saved to redis - not saved
+    private long savedVersion = -1; // version of savedFields - not saved
+
+    private static class SavedSession {
+        final long version;
+        final Map<String, byte[]> fields;
+
+        SavedSession(long version, Map<String, byte[]> fields) {
+            this.version = version;
+            this.fields = fields;
+        }
+    }
 
 	/**
 	 * Constructor with defined session key
@@ -431,16 +455,121 @@ public class SessionStore {
     }
 
     /**
-	 * Saves into redis
+	 * Saves into redis. Only the fields that have changed since the session was loaded
+	 * are written.
 	 * 
 	 * @return <code>true</code> if saved a valid session; <code>false</code>
 	 *         otherwise.
 	 */
 	public boolean save() {
-        JedisManager.setex(KEY + client, 86400, getAsJSON());
+        final Map<String, byte[]> fields;
+        try {
+            fields = SessionStoreCodec.encode(this);
+        } catch (IOException e) {
+            log.error(e, "Encoding session failed for client:", client);
+            return this.isValid();
+        }
+        final Map<byte[], byte[]> changed = new HashMap<byte[], byte[]>();
+        for (Map.Entry<String, byte[]> field : fields.entrySet()) {
+            final byte[] previous = savedFields == null ? null : savedFields.get(field.getKey());
+            if (!Arrays.equals(previous, field.getValue())) {
+                changed.put(toBytes(field.getKey()), field.getValue());
+            }
+        }
+        // a session that wasn't loaded from redis replaces any previous one
+        final Collection<String> previousFields = savedFields != null ?
+                savedFields.keySet() : JedisManager.hkeys(KEY + client);
+        final List<byte[]> removed = new ArrayList<byte[]>();
+        if (previousFields != null) {
+            for (String field : previousFields) {
+                if (!fields.containsKey(field) && !SessionStoreCodec.FIELD_VERSION.equals(field)) {
+                    removed.add(toBytes(field));
+                }
+            }
+        }
+        if (savedFields != null && changed.isEmpty() && removed.isEmpty()) {
+            return this.isValid();
+        }
+
+        final Long version = JedisManager.hupdate(toBytes(KEY + client), changed, removed,
+                VERSION_FIELD, JedisManager.EXPIRY_TIME_DAY);
+        if (version == null) {
+            // write failed, keep the previous state so the changes are written on the next save
+            localCache.remove(client);
+            return this.isValid();
+        }
+        // the local copy is only complete if nobody else wrote the session in between
+        if (savedFields == null || version == savedVersion + 1) {
+            localCache.put(client, new SavedSession(version, fields));
+        } else {
+            localCache.remove(client);
+        }
+        savedFields = fields;
+        savedVersion = version;
     	return this.isValid();
 	}
-	
+
+	/**
+	 * Loads session from the local cache if it's up to date with redis or from redis.
+	 *
+	 * @param client
+	 * @return session or null if there's no saved session for the client
+	 */
+	@JsonIgnore
+	public static SessionStore load(String client) {
+        final String key = KEY + client;
+        SavedSession saved = localCache.get(client);
+        if (saved != null &&
+                ConversionHelper.getLong(JedisManager.hget(key, SessionStoreCodec.FIELD_VERSION), -1) != saved.version) {
+            saved = null;
+        }
+        if (saved == null) {
+            final Map<byte[], byte[]> hash = JedisManager.hgetAll(toBytes(key));
+            if (hash == null || hash.isEmpty()) {
+                localCache.remove(client);
+                return null;
+            }
+            final Map<String, byte[]> fields = new HashMap<String, byte[]>();
+            long version = -1;
+            for (Map.Entry<byte[], byte[]> field : hash.entrySet()) {
+                final String name = new String(field.getKey(), UTF8);
+                if (SessionStoreCodec.FIELD_VERSION.equals(name)) {
+                    version = ConversionHelper.getLong(new String(field.getValue(), UTF8), -1);
+                } else {
+                    fields.put(name, field.getValue());
+                }
+            }
+            saved = new SavedSession(version, fields);
+            localCache.put(client, saved);
+        }
+        try {
+            final SessionStore store = SessionStoreCodec.decode(saved.fields);
+            if (store != null) {
+                store.savedFields = saved.fields;
+                store.savedVersion = saved.version;
+            }
+            return store;
+        } catch (IOException e) {
+            log.error(e, "Decoding session failed for client:", client);
+            localCache.remove(client);
+            return null;
+        }
+	}
+
+	/**
+	 * Removes saved session from redis and the local cache
+	 *
+	 * @param client
+	 */
+	public static void remove(String client) {
+        JedisManager.del(KEY + client);
+        localCache.remove(client);
+	}
+
+    private static byte[] toBytes(String value) {
+        return value.getBytes(UTF8);
+    }
+
 	/**
 	 * Transforms object to JSON String
 	 * 
@@ -697,18 +826,6 @@ public class SessionStore {
 		return store;
 	}
 
-	/**
-	 * Gets saved session from redis
-	 * 
-	 * @param client
-	 * @return layer as JSON String
-	 */
-	@JsonIgnore
-	public static String getCache(String client) {
-		return JedisManager.get(KEY + client);
-	}
-	
-
 	/**
 	 * Checks if session information is valid
 	 * 
@@ -0,0 +1,264 @@
+package fi.nls.oskari.pojo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of SessionStore used for storing the session in Redis.
+ *
+ * The session is split into hash fields so that a message changing only a part of the session
+ * (map location, single layer etc) rewrites only the affected fields. Each field starts with
+ * a format byte so that a session written by an incompatible version is discarded instead of
+ * being misread.
+ *
+ * @see SessionStore
+ */
+public class SessionStoreCodec {
+
+    private static final byte FORMAT = 1;
+
+    public static final String FIELD_META = "meta";
+    public static final String FIELD_LOCATION = "location";
+    public static final String FIELD_GRID = "grid";
+    public static final String FIELD_MAP_SIZE = "mapSize";
+    public static final String FIELD_LAYER_PREFIX = "layer:";
+    public static final String FIELD_VERSION = "version";
+
+    private SessionStoreCodec() {}
+
+    /**
+     * Encodes the saved state of the session as hash fields
+     *
+     * @param store
+     * @return field name -> encoded value
+     */
+    public static Map<String, byte[]> encode(SessionStore store) throws IOException {
+        Map<String, byte[]> fields = new HashMap<String, byte[]>();
+        fields.put(FIELD_META, encodeMeta(store));
+        fields.put(FIELD_LOCATION, encodeLocation(store.getLocation()));
+        fields.put(FIELD_GRID, encodeGrid(store.getGrid()));
+        fields.put(FIELD_MAP_SIZE, encodeTile(store.getMapSize()));
+        for (Map.Entry<String, Layer> layer : store.getLayers().entrySet()) {
+            fields.put(FIELD_LAYER_PREFIX + layer.getKey(), encodeLayer(layer.getValue()));
+        }
+        return fields;
+    }
+
+    /**
+     * Decodes session from hash fields
+     *
+     * @param fields field name -> encoded value
+     * @return session or null if fields don't contain a session
+     */
+    public static SessionStore decode(Map<String, byte[]> fields) throws IOException {
+        byte[] meta = fields.get(FIELD_META);
+        if (meta == null) {
+            return null;
+        }
+        SessionStore store = new SessionStore();
+        decodeMeta(store, meta);
+        if (fields.containsKey(FIELD_LOCATION)) {
+            store.setLocation(decodeLocation(fields.get(FIELD_LOCATION)));
+        }
+        if (fields.containsKey(FIELD_GRID)) {
+            store.setGrid(decodeGrid(fields.get(FIELD_GRID)));
+        }
+        if (fields.containsKey(FIELD_MAP_SIZE)) {
+            store.setMapSize(decodeTile(fields.get(FIELD_MAP_SIZE)));
+        }
+        for (Map.Entry<String, byte[]> field : fields.entrySet()) {
+            if (field.getKey().startsWith(FIELD_LAYER_PREFIX)) {
+                String layerId = field.getKey().substring(FIELD_LAYER_PREFIX.length());
+                store.setLayer(layerId, decodeLayer(layerId, field.getValue()));
+            }
+        }
+        return store;
+    }
+
+    private static byte[] encodeMeta(SessionStore store) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = start(bytes);
+        writeString(out, store.getClient());
+        writeString(out, store.getSession());
+        writeString(out, store.getRoute());
+        writeString(out, store.getUuid());
+        writeString(out, store.getLanguage());
+        writeString(out, store.getBrowser());
+        out.writeLong(store.getBrowserVersion());
+        writeTile(out, store.getTileSize());
+        writeDoubles(out, store.getMapScales());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void decodeMeta(SessionStore store, byte[] value) throws IOException {
+        DataInputStream in = open(value);
+        store.setClient(readString(in));
+        store.setSession(readString(in));
+        store.setRoute(readString(in));
+        store.setUuid(readString(in));
+        store.setLanguage(readString(in));
+        store.setBrowser(readString(in));
+        store.setBrowserVersion(in.readLong());
+        store.setTileSize(readTile(in));
+        store.setMapScales(readDoubles(in));
+    }
+
+    private static byte[] encodeLocation(Location location) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = start(bytes);
+        writeString(out, location.getSrs());
+        writeDoubles(out, location.getBbox());
+        out.writeLong(location.getZoom());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Location decodeLocation(byte[] value) throws IOException {
+        DataInputStream in = open(value);
+        Location location = new Location();
+        location.setSrs(readString(in));
+        List<Double> bbox = readDoubles(in);
+        if (bbox != null) {
+            location.setBbox(bbox);
+        }
+        location.setZoom(in.readLong());
+        return location;
+    }
+
+    private static byte[] encodeGrid(Grid grid) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = start(bytes);
+        out.writeInt(grid.getRows());
+        out.writeInt(grid.getColumns());
+        List<List<Double>> bounds = grid.getBounds();
+        if (bounds == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bounds.size());
+            for (List<Double> bound : bounds) {
+                writeDoubles(out, bound);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Grid decodeGrid(byte[] value) throws IOException {
+        DataInputStream in = open(value);
+        Grid grid = new Grid();
+        grid.setRows(in.readInt());
+        grid.setColumns(in.readInt());
+        int count = in.readInt();
+        if (count >= 0) {
+            List<List<Double>> bounds = new ArrayList<List<Double>>(count);
+            for (int i = 0; i < count; i++) {
+                bounds.add(readDoubles(in));
+            }
+            grid.setBounds(bounds);
+        }
+        return grid;
+    }
+
+    private static byte[] encodeTile(Tile tile) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+        DataOutputStream out = start(bytes);
+        writeTile(out, tile);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Tile decodeTile(byte[] value) throws IOException {
+        return readTile(open(value));
+    }
+
+    private static byte[] encodeLayer(Layer layer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = start(bytes);
+        writeString(out, layer.getStyleName());
+        out.writeBoolean(layer.isVisible());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Layer decodeLayer(String id, byte[] value) throws IOException {
+        DataInputStream in = open(value);
+        Layer layer = new Layer(id, readString(in));
+        layer.setVisible(in.readBoolean());
+        return layer;
+    }
+
+    private static DataOutputStream start(ByteArrayOutputStream bytes) throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT);
+        return out;
+    }
+
+    private static DataInputStream open(byte[] value) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+        byte format = in.readByte();
+        if (format != FORMAT) {
+            throw new IOException("Unknown session format: " + format);
+        }
+        return in;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDoubles(DataOutputStream out, List<Double> values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (Double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static List<Double> readDoubles(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        List<Double> values = new ArrayList<Double>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(in.readDouble());
+        }
+        return values;
+    }
+
+    private static void writeTile(DataOutputStream out, Tile tile) throws IOException {
+        out.writeBoolean(tile != null);
+        if (tile != null) {
+            out.writeInt(tile.getWidth());
+            out.writeInt(tile.getHeight());
+        }
+    }
+
+    private static Tile readTile(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        Tile tile = new Tile();
+        tile.setWidth(in.readInt());
+        tile.setHeight(in.readInt());
+        return tile;
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.nls.oskari.cache.CacheTags;
 import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -355,7 +356,7 @@ public class WFSCustomStyleStore {
      *         otherwise.
      */
     public void save() {
-        JedisManager.setex(KEY + client + "_" + layerId, 86400, getAsJSON());
+        JedisManager.setex(CacheTags.getKey(KEY + client, "_" + layerId), 86400, getAsJSON());
     }
 
     /**
@@ -417,6 +418,6 @@ public class WFSCustomStyleStore {
      */
     @JsonIgnore
     public static String getCache(String client, String layerId) {
-        return JedisManager.get(KEY + client + "_" + layerId);
+        return JedisManager.get(CacheTags.getKey(KEY + client, "_" + layerId));
     }
 }
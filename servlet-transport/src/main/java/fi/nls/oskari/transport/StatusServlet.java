@@ -16,6 +16,7 @@ import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.wfs.CachingSchemaLocator;
 import fi.nls.oskari.wfs.util.HttpHelper;
 import fi.nls.oskari.work.JobHelper;
+import fi.nls.oskari.work.LayerConfigurationCache;
 import fi.nls.oskari.work.hystrix.HystrixJobQueue;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -90,6 +91,8 @@ public class StatusServlet extends HttpServlet {
     public static String getStatusMessage() {
         JSONObject metricsJSON = new JSONObject();
         JSONHelper.putValue(metricsJSON, "schema.cache.size", CachingSchemaLocator.getCacheSize());
+        JSONHelper.putValue(metricsJSON, "schema.cache.weight", CachingSchemaLocator.getCacheWeight());
+        JSONHelper.putValue(metricsJSON, "layer.cache.size", LayerConfigurationCache.getSize());
         final HystrixJobQueue q = (HystrixJobQueue)TransportService.getQueue();
         JSONHelper.putValue(metricsJSON, "queue.size.current",  q.getQueueSize());
         JSONHelper.putValue(metricsJSON, "queue.size.max",  q.getMaxQueueLength());
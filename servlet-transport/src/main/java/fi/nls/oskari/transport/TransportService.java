@@ -1,6 +1,8 @@
 package fi.nls.oskari.transport;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import fi.nls.oskari.cache.CacheSweeper;
+import fi.nls.oskari.cache.CacheTags;
 import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -9,7 +11,6 @@ import fi.nls.oskari.service.OskariComponentManager;
 import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.utils.GeometryJSONOutputModule;
-import fi.nls.oskari.wfs.CachingSchemaLocator;
 import fi.nls.oskari.wfs.WFSImage;
 import fi.nls.oskari.wfs.pojo.WFSLayerStore;
 import fi.nls.oskari.wfs.util.HttpHelper;
@@ -146,7 +147,11 @@ public class TransportService extends AbstractService {
                 PropertyUtil.get("redis.hostname"),
                 PropertyUtil.getOptional("redis.port", 6379));
 
-        CachingSchemaLocator.init(); // init schemas
+        // remove invalidated tiles and custom styles in the background
+        CacheSweeper.register(WFSImage.KEY);
+        CacheSweeper.register(WFSCustomStyleStore.KEY);
+        // drop cached layer configurations when they are changed
+        LayerConfigurationCache.subscribe();
 
         addService(CHANNEL_DISCONNECT, "disconnect");
         addService(CHANNEL_INIT, "processRequest");
@@ -188,18 +193,9 @@ public class TransportService extends AbstractService {
      * @return session object
      */
     public SessionStore getStore(String client) {
-        String json = SessionStore.getCache(client);
-        if (json == null) {
-            log.debug("Created a new session for user (" + client + ")");
-            return new SessionStore(client);
-        }
-        SessionStore store = null;
-        try {
-            store = SessionStore.setJSON(json);
-        } catch (IOException e) {
-            log.error(e, "JSON parsing failed for SessionStore \n" + json);
-        }
+        SessionStore store = SessionStore.load(client);
         if (store == null) {
+            log.debug("Created a new session for user (" + client + ")");
             return new SessionStore(client);
         }
         return store;
@@ -222,18 +218,12 @@ public class TransportService extends AbstractService {
      */
     public void disconnect(ServerSession client, Message message)
     {
-        String json = SessionStore.getCache(client.getId());
-        if(json != null) {
-            SessionStore store;
-            try {
-                store = SessionStore.setJSON(json);
-                JedisManager.del(WFSLayerPermissionsStore.KEY + store.getSession());
-            } catch (IOException e) {
-                log.error(e, "JSON parsing failed for SessionStore \n" + json);
-            }
+        SessionStore store = SessionStore.load(client.getId());
+        if(store != null) {
+            JedisManager.del(WFSLayerPermissionsStore.KEY + store.getSession());
         }
-        JedisManager.del(SessionStore.KEY + client.getId());
-        JedisManager.delAll(WFSCustomStyleStore.KEY + client.getId());
+        SessionStore.remove(client.getId());
+        CacheTags.invalidate(WFSCustomStyleStore.KEY + client.getId(), JedisManager.EXPIRY_TIME_DAY);
 
         // TODO: remove styles from map
 
@@ -1,5 +1,6 @@
 package fi.nls.oskari.wfs;
 
+import fi.nls.oskari.cache.CacheTags;
 import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.domain.map.wfs.WFSSLDStyle;
 import fi.nls.oskari.log.LogFactory;
@@ -173,7 +174,8 @@ public class WFSImage {
         }
 
         String sBbox = bbox[0] + "-" + bbox[1] + "-" + bbox[2]+ "-" + bbox[3];
-        String sKey = KEY + layerId + "_" + styleName + "_"  + srs + "_" + sBbox + "_" + zoom;
+        // generation of the layer is part of the key so tiles can be invalidated with CacheTags
+        String sKey = CacheTags.getKey(KEY + layerId, "_" + styleName + "_" + srs + "_" + sBbox + "_" + zoom);
         if(!persistent) {
             sKey = sKey + "_temp";
         }
@@ -217,7 +219,8 @@ public class WFSImage {
 
         byte[] byteImage = imageToBytes(bufferedImage);
         String sBbox = bbox[0] + "-" + bbox[1] + "-" + bbox[2]+ "-" + bbox[3];
-        String sKey = KEY + layerId + "_" + styleName + "_" + srs + "_" + sBbox + "_" + zoom;
+        // generation of the layer is part of the key so tiles can be invalidated with CacheTags
+        String sKey = CacheTags.getKey(KEY + layerId, "_" + styleName + "_" + srs + "_" + sBbox + "_" + zoom);
         if(!persistent) {
             sKey = sKey + "_temp";
         }
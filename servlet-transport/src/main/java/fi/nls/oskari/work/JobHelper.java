@@ -115,7 +115,7 @@ public class JobHelper {
     }
 
     /**
-     * Gets layer configuration (uses cache)
+     * Gets layer configuration (uses in memory cache and redis)
      *
      * @param layerId
      * @param sessionId
@@ -123,6 +123,11 @@ public class JobHelper {
      * @return layer
      */
     public static WFSLayerStore getLayerConfiguration(String layerId, String sessionId, String route) {
+        WFSLayerStore layer = LayerConfigurationCache.get(layerId);
+        if(layer != null) {
+            return layer;
+        }
+        final long version = LayerConfigurationCache.getVersion();
         String json = WFSLayerStore.getCache(layerId);
         boolean fromCache = json != null;
         if(!fromCache) {
@@ -138,7 +143,9 @@ public class JobHelper {
             }
         }
         try {
-            return WFSLayerStore.setJSON(json);
+            layer = WFSLayerStore.setJSON(json);
+            LayerConfigurationCache.put(layerId, layer, version);
+            return layer;
         } catch (Exception e) {
             log.error(e, "JSON parsing failed for WFSLayerStore \n" + json);
         }
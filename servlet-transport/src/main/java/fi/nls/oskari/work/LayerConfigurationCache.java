@@ -0,0 +1,133 @@
+package fi.nls.oskari.work;
+
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.cache.JedisSubscriber;
+import fi.nls.oskari.domain.map.wfs.WFSLayerConfiguration;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+import fi.nls.oskari.wfs.pojo.WFSLayerStore;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps parsed layer configurations in memory so jobs don't need to read and parse the JSON from redis.
+ *
+ * Layer configurations are removed from the cache when a message with the layer id is published on
+ * WFSLayerConfiguration.LAYER_CHANNEL. Configurations are only cached while the subscription is active
+ * and are re-read from redis after a while in case a message was lost:
+ *
+ *     oskari.wfs.layer.cache.ttl=1800000
+ */
+public class LayerConfigurationCache extends JedisSubscriber {
+
+    private static final Logger log = LogFactory.getLogger(LayerConfigurationCache.class);
+
+    private static final long TTL_MS = PropertyUtil.getOptional("oskari.wfs.layer.cache.ttl", 30 * 60 * 1000);
+
+    private static final ConcurrentMap<String, CachedLayer> layers = new ConcurrentHashMap<String, CachedLayer>();
+    // incremented on each invalidation so a configuration read before it isn't cached after it
+    private static final AtomicLong version = new AtomicLong();
+    private static volatile boolean subscribed = false;
+
+    LayerConfigurationCache() {}
+
+    /**
+     * Starts listening to layer configuration changes
+     */
+    public static void subscribe() {
+        JedisManager.subscribe(new LayerConfigurationCache(), WFSLayerConfiguration.LAYER_CHANNEL);
+    }
+
+    /**
+     * @param layerId
+     * @return cached layer configuration or null if not cached
+     */
+    public static WFSLayerStore get(String layerId) {
+        final CachedLayer cached = layers.get(layerId);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.isExpired()) {
+            layers.remove(layerId, cached);
+            return null;
+        }
+        return cached.layer;
+    }
+
+    /**
+     * Version to pass to put() - should be read before reading the configuration from redis
+     * @return current version
+     */
+    public static long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Caches the layer configuration unless the layer has been invalidated after readVersion
+     * @param layerId
+     * @param layer
+     * @param readVersion value of getVersion() before the configuration was read
+     */
+    public static void put(String layerId, WFSLayerStore layer, long readVersion) {
+        if (!subscribed || layer == null) {
+            return;
+        }
+        layers.put(layerId, new CachedLayer(layer));
+        if (version.get() != readVersion) {
+            // an invalidation arrived while the configuration was being read
+            layers.remove(layerId);
+        }
+    }
+
+    public static void invalidate(String layerId) {
+        version.incrementAndGet();
+        layers.remove(layerId);
+    }
+
+    public static void clear() {
+        version.incrementAndGet();
+        layers.clear();
+    }
+
+    public static int getSize() {
+        return layers.size();
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+        if (!WFSLayerConfiguration.LAYER_CHANNEL.equals(channel) || message == null) {
+            return;
+        }
+        log.debug("Layer configuration changed:", message);
+        invalidate(message);
+    }
+
+    @Override
+    public void onSubscribe(String channel, int subscribedChannels) {
+        super.onSubscribe(channel, subscribedChannels);
+        subscribed = true;
+    }
+
+    @Override
+    public void onUnsubscribe(String channel, int subscribedChannels) {
+        // changes are no longer received
+        subscribed = false;
+        clear();
+    }
+
+    private static class CachedLayer {
+        private final WFSLayerStore layer;
+        private final long created = System.currentTimeMillis();
+
+        CachedLayer(WFSLayerStore layer) {
+            this.layer = layer;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - created > TTL_MS;
+        }
+    }
+}
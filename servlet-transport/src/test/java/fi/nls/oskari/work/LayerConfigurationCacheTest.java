@@ -0,0 +1,48 @@
+package fi.nls.oskari.work;
+
+import fi.nls.oskari.domain.map.wfs.WFSLayerConfiguration;
+import fi.nls.oskari.wfs.pojo.WFSLayerStore;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LayerConfigurationCacheTest {
+
+    private final LayerConfigurationCache subscriber = new LayerConfigurationCache();
+
+    @After
+    public void tearDown() {
+        subscriber.onUnsubscribe(WFSLayerConfiguration.LAYER_CHANNEL, 0);
+    }
+
+    @Test
+    public void testNotCachedWithoutSubscription() {
+        WFSLayerStore layer = new WFSLayerStore();
+        LayerConfigurationCache.put("1", layer, LayerConfigurationCache.getVersion());
+        assertNull(LayerConfigurationCache.get("1"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        subscriber.onSubscribe(WFSLayerConfiguration.LAYER_CHANNEL, 1);
+        WFSLayerStore layer = new WFSLayerStore();
+        LayerConfigurationCache.put("1", layer, LayerConfigurationCache.getVersion());
+        LayerConfigurationCache.put("2", layer, LayerConfigurationCache.getVersion());
+        assertSame(layer, LayerConfigurationCache.get("1"));
+
+        subscriber.onMessage(WFSLayerConfiguration.LAYER_CHANNEL, "1");
+        assertNull(LayerConfigurationCache.get("1"));
+        assertSame(layer, LayerConfigurationCache.get("2"));
+    }
+
+    @Test
+    public void testInvalidatedWhileReading() {
+        subscriber.onSubscribe(WFSLayerConfiguration.LAYER_CHANNEL, 1);
+        final long version = LayerConfigurationCache.getVersion();
+        // configuration changes after it has been read from redis
+        subscriber.onMessage(WFSLayerConfiguration.LAYER_CHANNEL, "1");
+        LayerConfigurationCache.put("1", new WFSLayerStore(), version);
+        assertNull(LayerConfigurationCache.get("1"));
+    }
+}